@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The command mix the simulated players choose their commands from, and the distribution of
+ * their think time between two commands.<p/>
+ *
+ * A script file has one command per line, preceded by its relative weight:
+ * <pre>
+ *     # Mostly moving around and looking
+ *     10 look
+ *      5 north
+ *      1 say Hello!
+ * </pre>
+ */
+class CommandScript {
+
+    /**
+     * The distributions of the think time.
+     */
+    enum ThinkTime {
+        FIXED,       // Always the mean.
+        UNIFORM,     // Uniform between 0 and twice the mean.
+        EXPONENTIAL  // Exponential with the given mean, as for independent arrivals.
+    }
+
+    /**
+     * The mix used if no script is given: a player exploring and chatting.
+     */
+    private static final List<String> DEFAULT_SCRIPT = Arrays.asList(
+            "20 look", "10 north", "10 south", "10 east", "10 west", "5 inventory", "5 score",
+            "5 say Hello everybody!", "3 get all", "2 who", "1 tell someone Are you there?");
+
+    // The commands, and the cumulative weights up to and including each command.
+    private final List<String> commands = new ArrayList<>();
+    private final List<Integer> weights = new ArrayList<>();
+    private int totalWeight = 0;
+
+    // The think time distribution, and its mean in nanoseconds.
+    private final ThinkTime thinkTime;
+    private final long thinkTimeMean;
+
+    /**
+     * Constructor
+     *
+     * @param lines The lines of the script.
+     * @param thinkTime The distribution of the think time.
+     * @param thinkTimeMean The mean think time in nanoseconds.
+     */
+    CommandScript(List<String> lines, ThinkTime thinkTime, long thinkTimeMean) {
+        this.thinkTime = thinkTime;
+        this.thinkTimeMean = thinkTimeMean;
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String weight = StringUtils.substringBefore(line, " ");
+            String command = StringUtils.substringAfter(line, " ").trim();
+            if (!StringUtils.isNumeric(weight) || command.isEmpty()) {
+                throw new IllegalArgumentException("Invalid script line, expected '<weight> <command>': " + line);
+            }
+            totalWeight += Integer.parseInt(weight);
+            commands.add(command);
+            weights.add(totalWeight);
+        }
+        if (totalWeight == 0) {
+            throw new IllegalArgumentException("The script contains no commands.");
+        }
+    }
+
+    /**
+     * Load a script file, or use the default script.
+     *
+     * @param file The script file, or {@code null} for the default script.
+     * @param thinkTime The distribution of the think time.
+     * @param thinkTimeMean The mean think time in nanoseconds.
+     * @return The script.
+     * @throws IOException if the file can't be read.
+     */
+    static CommandScript load(Path file, ThinkTime thinkTime, long thinkTimeMean) throws IOException {
+        List<String> lines = file != null ? Files.readAllLines(file, StandardCharsets.UTF_8) : DEFAULT_SCRIPT;
+        return new CommandScript(lines, thinkTime, thinkTimeMean);
+    }
+
+    /**
+     * @param random The random number generator to use.
+     * @return The next command, chosen by weight.
+     */
+    String nextCommand(Random random) {
+        int pick = random.nextInt(totalWeight);
+        for (int i = 0; i < commands.size(); i++) {
+            if (pick < weights.get(i)) {
+                return commands.get(i);
+            }
+        }
+        return commands.get(commands.size() - 1);
+    }
+
+    /**
+     * @param random The random number generator to use.
+     * @return The next think time in nanoseconds.
+     */
+    long nextThinkTime(Random random) {
+        switch (thinkTime) {
+            case UNIFORM:
+                return (long) (random.nextDouble() * 2 * thinkTimeMean);
+            case EXPONENTIAL:
+                return (long) (-Math.log(1.0 - random.nextDouble()) * thinkTimeMean);
+            case FIXED:
+            default:
+                return thinkTimeMean;
+        }
+    }
+}
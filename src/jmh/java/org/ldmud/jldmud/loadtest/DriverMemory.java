@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+
+/**
+ * The memory use of a driver running on the same machine: the heap as reported by the driver's
+ * JVM, which the generator attaches to, and the resident set size of the process as reported
+ * by Linux (where {@code /proc} is available). The peaks are tracked over the samples.
+ */
+class DriverMemory implements Closeable {
+
+    private final Path statusFile;
+    private final JMXConnector connector;
+    private final MemoryMXBean memory;
+
+    // The peaks of the samples, in bytes.
+    private long peakHeap = 0;
+    private long peakRss = 0;
+
+    /**
+     * Constructor, attaching to the driver.
+     *
+     * @param pid The process id of the driver.
+     * @throws IOException if the driver's JVM can't be attached to.
+     */
+    DriverMemory(long pid) throws IOException {
+        statusFile = Paths.get("/proc", Long.toString(pid), "status");
+        String address;
+        try {
+            VirtualMachine vm = VirtualMachine.attach(Long.toString(pid));
+            try {
+                address = vm.startLocalManagementAgent();
+            } finally {
+                vm.detach();
+            }
+        } catch (AttachNotSupportedException e) {
+            throw new IOException("Can't attach to process " + pid + ": " + e.getMessage(), e);
+        }
+        connector = JMXConnectorFactory.connect(new JMXServiceURL(address));
+        memory = ManagementFactory.newPlatformMXBeanProxy(connector.getMBeanServerConnection(),
+                ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class);
+    }
+
+    /**
+     * Sample the memory use, and update the peaks.
+     *
+     * @throws IOException if the driver can't be queried.
+     */
+    void sample() throws IOException {
+        peakHeap = Math.max(peakHeap, getHeap());
+        peakRss = Math.max(peakRss, getRss());
+    }
+
+    /**
+     * @return The heap used by the driver, in bytes.
+     */
+    long getHeap() {
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return The heap used by the driver after a full garbage collection, in bytes.
+     */
+    long getLiveHeap() {
+        memory.gc();
+        return getHeap();
+    }
+
+    /**
+     * @return The resident set size of the driver process in bytes, or 0 if unknown.
+     * @throws IOException if the process status can't be read.
+     */
+    long getRss() throws IOException {
+        if (!Files.exists(statusFile)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(statusFile, StandardCharsets.ISO_8859_1)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024L;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The peak heap use sampled, in bytes.
+     */
+    long getPeakHeap() {
+        return peakHeap;
+    }
+
+    /**
+     * @return The peak resident set size sampled, in bytes.
+     */
+    long getPeakRss() {
+        return peakRss;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        connector.close();
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples and computes their percentiles. The samples are kept as they are,
+ * so the percentiles are exact; a run of an hour with thousands of players produces a few
+ * million samples, which is cheap to keep and to sort.<p/>
+ *
+ * The class is not thread-safe.
+ */
+class LatencyRecorder {
+
+    // The samples in nanoseconds, and their number.
+    private long[] samples = new long[1024];
+    private int count = 0;
+
+    // {@code true} if the samples are sorted.
+    private boolean sorted = true;
+
+    /**
+     * @param latency A latency in nanoseconds.
+     */
+    void record(long latency) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = latency;
+        sorted = false;
+    }
+
+    /**
+     * @return The number of samples recorded.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return The latency in nanoseconds at the given percentile, or 0 if there are no samples.
+     */
+    long percentile(double percentile) {
+        if (count == 0) {
+            return 0L;
+        }
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return samples[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * @return The largest latency in nanoseconds, or 0 if there are no samples.
+     */
+    long max() {
+        return percentile(100.0);
+    }
+
+    /**
+     * Remove all samples.
+     */
+    void clear() {
+        count = 0;
+        sorted = true;
+    }
+}
@@ -0,0 +1,468 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.loadtest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A headless load generator: it connects a number of simulated telnet players to a running
+ * driver over the loopback interface, lets them send commands from a weighted command mix with
+ * random think times, and reports the command throughput and round-trip latency percentiles.<p/>
+ *
+ * The round trip of a command is measured with a GMCP {@code Core.Ping} sent right after it,
+ * which the driver echoes from its game loop: so the latency covers the network input, the
+ * command queue and budget of the {@code Communicator}, the {@code GameLoop} pass, and the output
+ * flush. All players are served by a single selector thread, so thousands of connections are
+ * cheap on the generator's side.<p/>
+ *
+ * The driver's admission control limits the connections from one address, so for more than a
+ * few players the driver has to run with {@code mud.net.acceptrate.address=0}, and with
+ * {@code mud.net.acceptrate} and {@code mud.net.pendinglogons} fitting the ramp-up. Many
+ * players also need a raised limit of open files, for both processes.<p/>
+ *
+ * With {@code --driver-pid}, the generator also samples the heap and resident set size of a driver
+ * on the same machine, and reports the peaks, and the live heap (after a full garbage collection)
+ * at the end of the run while the players are still connected.<p/>
+ *
+ * With {@code --compress}, the players accept MCCP compression (if the driver offers it with
+ * {@code mud.net.mccp}) and inflate the output, so that the latency includes the compression.<p/>
+ *
+ * Usage (with the {@code benchmark} profile):
+ * <pre>
+ *     mvn -Pbenchmark test-compile exec:exec@loadtest -Dloadtest.args="--players=2000 --duration=120"
+ * </pre>
+ */
+public class LoadGenerator implements SimulatedPlayer.Listener {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static final String USAGE =
+          "Options (all optional):\n"
+        + "  --host=<host>             The driver's host (default: 127.0.0.1).\n"
+        + "  --port=<port>             The driver's telnet port (default: 4242).\n"
+        + "  --players=<n>             The number of simulated players (default: 1000).\n"
+        + "  --rampup=<seconds>        The time over which the players connect (default: 10).\n"
+        + "  --duration=<seconds>      The total duration of the run, including the ramp-up (default: 60).\n"
+        + "  --script=<file>           The command mix, one '<weight> <command>' per line (default: built-in mix).\n"
+        + "  --think=<dist>:<ms>       The think time distribution (fixed, uniform, exponential) and mean\n"
+        + "                            (default: exponential:2000).\n"
+        + "  --interval=<seconds>      The interval of the progress reports (default: 5).\n"
+        + "  --compress                Accept compressed output (MCCP version 2).\n"
+        + "  --driver-pid=<pid>        Report the heap and RSS of the driver process.\n"
+        + "  --json=<file>             Write the final results as JSON to this file.\n";
+
+    // The configuration of the run.
+    private final InetSocketAddress address;
+    private final int playerCount;
+    private final long rampUp;
+    private final long duration;
+    private final long interval;
+    private final CommandScript script;
+    private final boolean compress;
+    private final Path jsonFile;
+
+    // The memory use of the driver, or {@code null} if not monitored; and its live heap at the end.
+    private DriverMemory driverMemory = null;
+    private long liveHeap = 0;
+
+    private final Random random = new Random();
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16384);
+
+    // All players, and the active ones ordered by the time of their next command.
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+    private final PriorityQueue<SimulatedPlayer> schedule = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.getNextCommandTime() - b.getNextCommandTime(), 0L));
+
+    // The latencies of the current interval, and of the whole run.
+    private final LatencyRecorder intervalLatencies = new LatencyRecorder();
+    private final LatencyRecorder totalLatencies = new LatencyRecorder();
+    private final LatencyRecorder connectLatencies = new LatencyRecorder();
+
+    // Counters.
+    private int connectionsStarted = 0;
+    private int activePlayers = 0;
+    private int failedConnections = 0;
+    private int refusedConnections = 0;
+    private int lostConnections = 0;
+    private long commandsSent = 0;
+
+    /**
+     * Constructor
+     *
+     * @param options The command line options.
+     * @throws IOException if the script can't be read, or the selector not opened.
+     */
+    LoadGenerator(Map<String, String> options) throws IOException {
+        address = new InetSocketAddress(options.getOrDefault("host", "127.0.0.1"),
+                                        Integer.parseInt(options.getOrDefault("port", "4242")));
+        playerCount = Integer.parseInt(options.getOrDefault("players", "1000"));
+        rampUp = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("rampup", "10")));
+        duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+        interval = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("interval", "5")));
+
+        String think = options.getOrDefault("think", "exponential:2000");
+        CommandScript.ThinkTime thinkTime = CommandScript.ThinkTime.valueOf(
+                StringUtils.substringBefore(think, ":").toUpperCase(Locale.ROOT));
+        long thinkTimeMean = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(StringUtils.substringAfter(think, ":")));
+        String scriptFile = options.get("script");
+        script = CommandScript.load(scriptFile != null ? Paths.get(scriptFile) : null, thinkTime, thinkTimeMean);
+
+        compress = Boolean.parseBoolean(options.getOrDefault("compress", "false"));
+
+        String json = options.get("json");
+        jsonFile = json != null ? Paths.get(json) : null;
+
+        String driverPid = options.get("driver-pid");
+        if (driverPid != null) {
+            driverMemory = new DriverMemory(Long.parseLong(driverPid));
+        }
+
+        selector = Selector.open();
+    }
+
+    /**
+     * Main method
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                System.err.print("Unknown argument '" + arg + "'.\n" + USAGE);
+                System.exit(1);
+            }
+            if (arg.contains("=")) {
+                options.put(StringUtils.substringBetween(arg, "--", "="), StringUtils.substringAfter(arg, "="));
+            } else {
+                options.put(arg.substring(2), "true");
+            }
+        }
+
+        LoadGenerator generator;
+        try {
+            generator = new LoadGenerator(options);
+        } catch (IllegalArgumentException e) {
+            System.err.print("Error: " + e.getMessage() + "\n" + USAGE);
+            System.exit(1);
+            return;
+        }
+        generator.run();
+    }
+
+    /**
+     * Execute the load test.
+     *
+     * @throws IOException if the selector fails.
+     */
+    void run() throws IOException {
+        System.out.printf("Connecting %d players to %s over %d s, running for %d s%n", playerCount, address,
+                TimeUnit.NANOSECONDS.toSeconds(rampUp), TimeUnit.NANOSECONDS.toSeconds(duration));
+        System.out.println("  time  players  cmds/s      p50      p90      p99      max  outstanding"
+                + (driverMemory != null ? "  heap MB   RSS MB" : ""));
+
+        long start = System.nanoTime();
+        long end = start + duration;
+        long nextReport = start + interval;
+        long intervalStart = start;
+
+        long now = start;
+        while (now - end < 0) {
+            // Connect the players due by now.
+            long due = rampUp > 0 ? Math.min(playerCount, (now - start) * playerCount / rampUp + 1) : playerCount;
+            while (connectionsStarted < due) {
+                connect(now);
+            }
+
+            // Send the commands due by now.
+            SimulatedPlayer player;
+            while ((player = schedule.peek()) != null && now - player.getNextCommandTime() >= 0) {
+                schedule.poll();
+                if (player.getState() == SimulatedPlayer.State.ACTIVE) {
+                    try {
+                        player.sendCommand(script.nextCommand(random), now);
+                        commandsSent++;
+                    } catch (IOException e) {
+                        lost(player);
+                    }
+                }
+            }
+
+            // Wait for the next event.
+            long wakeup = Math.min(end, nextReport);
+            if (connectionsStarted < playerCount) {
+                wakeup = Math.min(wakeup, start + (connectionsStarted * rampUp) / playerCount);
+            }
+            if (schedule.peek() != null) {
+                wakeup = Math.min(wakeup, schedule.peek().getNextCommandTime());
+            }
+            long timeout = TimeUnit.NANOSECONDS.toMillis(wakeup - now);
+            if (timeout > 0) {
+                selector.select(timeout);
+            } else {
+                selector.selectNow();
+            }
+            now = System.nanoTime();
+            handleSelectedKeys(now);
+
+            if (now - nextReport >= 0) {
+                report(now - start, now - intervalStart, intervalLatencies);
+                intervalLatencies.clear();
+                intervalStart = now;
+                nextReport += interval;
+            }
+        }
+
+        if (driverMemory != null) {
+            try {
+                liveHeap = driverMemory.getLiveHeap();
+            } catch (RuntimeException e) {
+                System.out.println("Can't query the driver's heap: " + e);
+            }
+        }
+        for (SimulatedPlayer player : players) {
+            player.close();
+        }
+        selector.close();
+        summarize(now - start);
+        if (driverMemory != null) {
+            driverMemory.close();
+        }
+    }
+
+    /**
+     * Open the connection of a new player.
+     */
+    private void connect(long now) {
+        connectionsStarted++;
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open();
+        } catch (IOException e) {
+            failedConnections++;
+            return;
+        }
+        SimulatedPlayer player = new SimulatedPlayer(connectionsStarted, channel, now, compress);
+        players.add(player);
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            player.setKey(channel.register(selector, SelectionKey.OP_CONNECT, player));
+            if (channel.connect(address)) {
+                player.finishConnect();
+            }
+        } catch (IOException e) {
+            failedConnections++;
+            player.close();
+        }
+    }
+
+    /**
+     * Handle the connections which became ready.
+     */
+    private void handleSelectedKeys(long now) {
+        for (Iterator<SelectionKey> iter = selector.selectedKeys().iterator(); iter.hasNext(); ) {
+            SelectionKey key = iter.next();
+            iter.remove();
+            SimulatedPlayer player = (SimulatedPlayer) key.attachment();
+            try {
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isConnectable()) {
+                    player.finishConnect();
+                    continue;
+                }
+                if (key.isWritable()) {
+                    player.flush();
+                }
+                if (key.isReadable()) {
+                    readBuffer.clear();
+                    int read = player.getChannel().read(readBuffer);
+                    if (read < 0) {
+                        lost(player);
+                        continue;
+                    }
+                    readBuffer.flip();
+                    player.received(readBuffer, this);
+                }
+            } catch (IOException e) {
+                if (player.getState() == SimulatedPlayer.State.CONNECTING) {
+                    failedConnections++;
+                    player.close();
+                } else {
+                    lost(player);
+                }
+            }
+        }
+    }
+
+    /**
+     * A player's connection was closed by the server, or failed.
+     */
+    private void lost(SimulatedPlayer player) {
+        if (player.getState() == SimulatedPlayer.State.ACTIVE) {
+            lostConnections++;
+            activePlayers--;
+        } else if (player.getState() != SimulatedPlayer.State.CLOSED) {
+            // Closed before the negotiation: refused by the admission control.
+            refusedConnections++;
+        }
+        player.close();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.loadtest.SimulatedPlayer.Listener#activated(org.ldmud.jldmud.loadtest.SimulatedPlayer)
+     */
+    @Override
+    public void activated(SimulatedPlayer player) {
+        long now = System.nanoTime();
+        activePlayers++;
+        connectLatencies.record(now - player.getConnectTime());
+        player.setNextCommandTime(now + script.nextThinkTime(random));
+        schedule.add(player);
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.loadtest.SimulatedPlayer.Listener#completed(org.ldmud.jldmud.loadtest.SimulatedPlayer, long)
+     */
+    @Override
+    public void completed(SimulatedPlayer player, long sentTime) {
+        long now = System.nanoTime();
+        intervalLatencies.record(now - sentTime);
+        totalLatencies.record(now - sentTime);
+        player.setNextCommandTime(now + script.nextThinkTime(random));
+        schedule.add(player);
+    }
+
+    /**
+     * @return The number of commands sent, but not yet answered.
+     */
+    private int getOutstandingCount() {
+        int outstanding = 0;
+        for (SimulatedPlayer player : players) {
+            if (player.getState() == SimulatedPlayer.State.ACTIVE && player.getCommandSentTime() != 0) {
+                outstanding++;
+            }
+        }
+        return outstanding;
+    }
+
+    /**
+     * Print the progress report of one interval.
+     */
+    private void report(long elapsed, long length, LatencyRecorder latencies) {
+        System.out.printf("%6d  %7d  %6.0f  %s  %s  %s  %s  %11d",
+                TimeUnit.NANOSECONDS.toSeconds(elapsed), activePlayers,
+                latencies.count() * 1e9 / Math.max(1L, length),
+                millis(latencies.percentile(50)), millis(latencies.percentile(90)),
+                millis(latencies.percentile(99)), millis(latencies.max()), getOutstandingCount());
+        if (driverMemory != null) {
+            try {
+                driverMemory.sample();
+                System.out.printf("  %7d  %7d", driverMemory.getHeap() / MEGABYTE, driverMemory.getRss() / MEGABYTE);
+            } catch (IOException | RuntimeException e) {
+                System.out.print("  " + e);
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Print the results of the whole run, and write them to the JSON file if requested.
+     */
+    private void summarize(long elapsed) throws IOException {
+        double throughput = totalLatencies.count() * 1e9 / Math.max(1L, elapsed);
+        System.out.println();
+        System.out.printf("Players: %d connected, %d refused, %d failed, %d lost%n",
+                connectLatencies.count(), refusedConnections, failedConnections, lostConnections);
+        System.out.printf("Commands: %d sent, %d completed, %.1f/s%n", commandsSent, totalLatencies.count(), throughput);
+        System.out.printf("Latency (ms): p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                millis(totalLatencies.percentile(50)), millis(totalLatencies.percentile(90)),
+                millis(totalLatencies.percentile(99)), millis(totalLatencies.percentile(99.9)),
+                millis(totalLatencies.max()));
+        System.out.printf("Logon (ms): p50 %s  p99 %s  max %s%n", millis(connectLatencies.percentile(50)),
+                millis(connectLatencies.percentile(99)), millis(connectLatencies.max()));
+        long receivedBytes = 0;
+        long inflatedBytes = 0;
+        int compressedPlayers = 0;
+        for (SimulatedPlayer player : players) {
+            receivedBytes += player.getReceivedBytes();
+            inflatedBytes += player.getInflatedBytes();
+            if (player.isCompressed()) {
+                compressedPlayers++;
+            }
+        }
+        System.out.printf("Output: %d KB received", receivedBytes / 1024);
+        if (compress) {
+            System.out.printf(", %d KB inflated by %d compressed players", inflatedBytes / 1024, compressedPlayers);
+        }
+        System.out.println();
+        if (driverMemory != null) {
+            System.out.printf("Driver memory (MB): heap peak %d, live %d with %d players; RSS peak %d%n",
+                    driverMemory.getPeakHeap() / MEGABYTE, liveHeap / MEGABYTE, activePlayers,
+                    driverMemory.getPeakRss() / MEGABYTE);
+        }
+
+        if (jsonFile != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(jsonFile, StandardCharsets.UTF_8))) {
+                out.println("{");
+                out.printf(Locale.ROOT, "  \"players\": %d,%n", playerCount);
+                out.printf(Locale.ROOT, "  \"durationSeconds\": %.3f,%n", elapsed / 1e9);
+                out.printf(Locale.ROOT, "  \"connected\": %d,%n", connectLatencies.count());
+                out.printf(Locale.ROOT, "  \"refused\": %d,%n", refusedConnections);
+                out.printf(Locale.ROOT, "  \"failed\": %d,%n", failedConnections);
+                out.printf(Locale.ROOT, "  \"lost\": %d,%n", lostConnections);
+                out.printf(Locale.ROOT, "  \"commandsSent\": %d,%n", commandsSent);
+                out.printf(Locale.ROOT, "  \"commandsCompleted\": %d,%n", totalLatencies.count());
+                out.printf(Locale.ROOT, "  \"commandsPerSecond\": %.1f,%n", throughput);
+                out.printf(Locale.ROOT, "  \"compressedPlayers\": %d,%n", compressedPlayers);
+                out.printf(Locale.ROOT, "  \"receivedBytes\": %d,%n", receivedBytes);
+                out.printf(Locale.ROOT, "  \"inflatedBytes\": %d,%n", inflatedBytes);
+                if (driverMemory != null) {
+                    out.printf(Locale.ROOT, "  \"driverMemoryBytes\": { \"heapPeak\": %d, \"heapLive\": %d, \"rssPeak\": %d },%n",
+                            driverMemory.getPeakHeap(), liveHeap, driverMemory.getPeakRss());
+                }
+                out.printf(Locale.ROOT, "  \"latencyMillis\": { \"p50\": %s, \"p90\": %s, \"p99\": %s, \"p99.9\": %s, \"max\": %s },%n",
+                        millis(totalLatencies.percentile(50)).trim(), millis(totalLatencies.percentile(90)).trim(),
+                        millis(totalLatencies.percentile(99)).trim(), millis(totalLatencies.percentile(99.9)).trim(),
+                        millis(totalLatencies.max()).trim());
+                out.printf(Locale.ROOT, "  \"logonMillis\": { \"p50\": %s, \"p99\": %s, \"max\": %s }%n",
+                        millis(connectLatencies.percentile(50)).trim(), millis(connectLatencies.percentile(99)).trim(),
+                        millis(connectLatencies.max()).trim());
+                out.println("}");
+            }
+            System.out.println("Results written to " + jsonFile);
+        }
+    }
+
+    /**
+     * @return The nanoseconds formatted as milliseconds.
+     */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%7.2f", nanos / 1e6);
+    }
+}
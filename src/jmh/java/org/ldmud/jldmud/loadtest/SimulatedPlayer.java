@@ -0,0 +1,417 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * One simulated player: a telnet connection which, once the server offered GMCP, sends a
+ * command followed by a GMCP {@code Core.Ping}, and waits for the ping's echo before thinking
+ * about the next command. The time from sending the command to receiving the echo is the
+ * round-trip latency of the command.<p/>
+ *
+ * All telnet options besides GMCP are declined, except for MCCP version 2 if the player is to
+ * accept compression: then everything after the server's {@code IAC SB COMPRESS2 IAC SE} is
+ * inflated before it is decoded, as a compressing client would.<p/>
+ *
+ * The players are driven by the single thread of the {@link LoadGenerator}.
+ */
+class SimulatedPlayer {
+
+    // Telnet protocol bytes.
+    private static final int IAC = 255;
+    private static final int DONT = 254;
+    private static final int DO = 253;
+    private static final int WONT = 252;
+    private static final int WILL = 251;
+    private static final int SB = 250;
+    private static final int SE = 240;
+    private static final int GMCP = 201;
+    private static final int COMPRESS2 = 86;
+
+    private static final String PING = "Core.Ping";
+
+    /**
+     * The states of the player.
+     */
+    enum State {
+        CONNECTING,  // Waiting for the connection to be established.
+        NEGOTIATING, // Waiting for the GMCP offer.
+        ACTIVE,      // Sending commands.
+        CLOSED       // The connection was closed.
+    }
+
+    // The states of the telnet decoder.
+    private enum TelnetState { DATA, IAC, COMMAND, SB, SB_DATA, SB_IAC }
+
+    private final int id;
+    private final SocketChannel channel;
+    private final boolean compress;
+    private SelectionKey key;
+    private State state = State.CONNECTING;
+
+    // The time the connection was opened, and the time the current command was sent (0 if none).
+    private final long connectTime;
+    private long commandSentTime = 0;
+
+    // The time the next command is due, in {@link System#nanoTime()} terms.
+    private long nextCommandTime;
+
+    // The telnet decoder state, the pending negotiation command, and the subnegotiation collected.
+    private TelnetState telnetState = TelnetState.DATA;
+    private int telnetCommand;
+    private int subnegotiationOption;
+    private final ByteArrayOutputStream subnegotiation = new ByteArrayOutputStream();
+
+    // Output not yet written because the socket buffer was full.
+    private ByteBuffer pendingOutput = null;
+
+    // The inflater of the compressed input (or {@code null} while the input is not compressed),
+    // and the buffer for the inflated data.
+    private Inflater inflater = null;
+    private ByteBuffer inflated = null;
+
+    // {@code true} once the server started compressing.
+    private boolean compressed = false;
+
+    // The bytes received, and the bytes after inflating them.
+    private long receivedBytes = 0;
+    private long inflatedBytes = 0;
+
+    /**
+     * Constructor
+     *
+     * @param id The number of the player.
+     * @param channel The non-blocking channel, with the connection initiated.
+     * @param now The current time.
+     * @param compress {@code true} if the player accepts compressed output.
+     */
+    SimulatedPlayer(int id, SocketChannel channel, long now, boolean compress) {
+        this.id = id;
+        this.channel = channel;
+        this.connectTime = now;
+        this.compress = compress;
+    }
+
+    /**
+     * Complete the connection.
+     *
+     * @return {@code true} if the connection is established.
+     * @throws IOException if the connection failed.
+     */
+    boolean finishConnect() throws IOException {
+        if (!channel.finishConnect()) {
+            return false;
+        }
+        state = State.NEGOTIATING;
+        key.interestOps(SelectionKey.OP_READ);
+        return true;
+    }
+
+    /**
+     * Process the data received from the server.
+     *
+     * @param data The data received.
+     * @param listener The listener to notify.
+     * @throws IOException if writing the negotiation replies failed, or the compressed data is corrupt.
+     */
+    void received(ByteBuffer data, Listener listener) throws IOException {
+        receivedBytes += data.remaining();
+        while (data.hasRemaining()) {
+            if (inflater == null) {
+                decode(data, listener);
+            } else {
+                inflate(data, listener);
+            }
+        }
+    }
+
+    /**
+     * Inflate the compressed data received, and decode it, until all data is consumed or the
+     * compressed stream ended.
+     */
+    private void inflate(ByteBuffer data, Listener listener) throws IOException {
+        inflater.setInput(data);
+        try {
+            int count;
+            do {
+                inflated.clear();
+                count = inflater.inflate(inflated);
+                inflatedBytes += count;
+                inflated.flip();
+                decode(inflated, listener);
+                if (inflater.finished()) {
+                    // The server ended the compression, the rest of the data is plain.
+                    inflater.end();
+                    inflater = null;
+                    return;
+                }
+            } while (count > 0);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed data: " + e.getMessage(), e);
+        }
+        if (data.hasRemaining()) {
+            throw new IOException("Compressed data can't be inflated");
+        }
+    }
+
+    /**
+     * Decode telnet data, until all data is decoded or the server starts compressing.
+     */
+    private void decode(ByteBuffer data, Listener listener) throws IOException {
+        while (data.hasRemaining()) {
+            int b = data.get() & 0xff;
+            switch (telnetState) {
+                case DATA:
+                    if (b == IAC) {
+                        telnetState = TelnetState.IAC;
+                    }
+                    // Plain text is ignored.
+                    break;
+                case IAC:
+                    if (b == SB) {
+                        telnetState = TelnetState.SB;
+                    } else if (b >= WILL && b <= DONT) {
+                        telnetCommand = b;
+                        telnetState = TelnetState.COMMAND;
+                    } else {
+                        telnetState = TelnetState.DATA;
+                    }
+                    break;
+                case COMMAND:
+                    negotiate(telnetCommand, b, listener);
+                    telnetState = TelnetState.DATA;
+                    break;
+                case SB:
+                    subnegotiationOption = b;
+                    subnegotiation.reset();
+                    telnetState = TelnetState.SB_DATA;
+                    break;
+                case SB_DATA:
+                    if (b == IAC) {
+                        telnetState = TelnetState.SB_IAC;
+                    } else {
+                        subnegotiation.write(b);
+                    }
+                    break;
+                case SB_IAC:
+                    if (b == SE) {
+                        telnetState = TelnetState.DATA;
+                        if (subnegotiationOption == COMPRESS2 && compress && inflater == null) {
+                            // Everything that follows is compressed.
+                            inflater = new Inflater();
+                            inflated = ByteBuffer.allocate(16384);
+                            compressed = true;
+                            return;
+                        }
+                        subnegotiated(listener);
+                    } else {
+                        subnegotiation.write(b);
+                        telnetState = TelnetState.SB_DATA;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Answer an option negotiation: accept GMCP, and compression if enabled; decline everything else.
+     */
+    private void negotiate(int command, int option, Listener listener) throws IOException {
+        if (command == WILL && option == COMPRESS2 && compress) {
+            write(new byte[] { (byte) IAC, (byte) DO, (byte) COMPRESS2 });
+        } else if (command == WILL && option == GMCP) {
+            write(new byte[] { (byte) IAC, (byte) DO, (byte) GMCP });
+            if (state == State.NEGOTIATING) {
+                state = State.ACTIVE;
+                listener.activated(this);
+            }
+        } else if (command == WILL) {
+            write(new byte[] { (byte) IAC, (byte) DONT, (byte) option });
+        } else if (command == DO) {
+            write(new byte[] { (byte) IAC, (byte) WONT, (byte) option });
+        }
+    }
+
+    /**
+     * Handle a complete subnegotiation: the echo of a GMCP ping completes the current command.
+     */
+    private void subnegotiated(Listener listener) {
+        if (subnegotiationOption == GMCP && commandSentTime != 0
+         && new String(subnegotiation.toByteArray(), StandardCharsets.UTF_8).startsWith(PING)) {
+            long sent = commandSentTime;
+            commandSentTime = 0;
+            listener.completed(this, sent);
+        }
+    }
+
+    /**
+     * Send a command, followed by the GMCP ping.
+     *
+     * @param command The command.
+     * @param now The current time.
+     * @throws IOException if writing failed.
+     */
+    void sendCommand(String command, long now) throws IOException {
+        byte[] line = (command + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] ping = PING.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(line.length + ping.length + 5);
+        buffer.put(line);
+        buffer.put((byte) IAC).put((byte) SB).put((byte) GMCP).put(ping).put((byte) IAC).put((byte) SE);
+        commandSentTime = now;
+        write(buffer.array());
+    }
+
+    /**
+     * Write data, keeping what doesn't fit into the socket buffer for later.
+     */
+    private void write(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (pendingOutput != null) {
+            ByteBuffer joined = ByteBuffer.allocate(pendingOutput.remaining() + data.length);
+            joined.put(pendingOutput).put(buffer).flip();
+            buffer = joined;
+        }
+        channel.write(buffer);
+        pendingOutput = buffer.hasRemaining() ? buffer : null;
+        key.interestOps(pendingOutput != null ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Write the output kept from previous writes.
+     *
+     * @throws IOException if writing failed.
+     */
+    void flush() throws IOException {
+        if (pendingOutput != null) {
+            channel.write(pendingOutput);
+            if (!pendingOutput.hasRemaining()) {
+                pendingOutput = null;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    /**
+     * Close the connection.
+     */
+    void close() {
+        state = State.CLOSED;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * @param key The selection key of the channel.
+     */
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * @return The channel.
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return The state of the player.
+     */
+    State getState() {
+        return state;
+    }
+
+    /**
+     * @return The time the connection was opened.
+     */
+    long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * @return The time the current command was sent, or 0 if none is outstanding.
+     */
+    long getCommandSentTime() {
+        return commandSentTime;
+    }
+
+    /**
+     * @return The number of bytes received.
+     */
+    long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * @return The number of bytes received after inflating the compressed data.
+     */
+    long getInflatedBytes() {
+        return inflatedBytes;
+    }
+
+    /**
+     * @return {@code true} if the server started sending compressed data.
+     */
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return The time the next command is due.
+     */
+    long getNextCommandTime() {
+        return nextCommandTime;
+    }
+
+    /**
+     * @param nextCommandTime The time the next command is due.
+     */
+    void setNextCommandTime(long nextCommandTime) {
+        this.nextCommandTime = nextCommandTime;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Player " + id + " (" + state + ")";
+    }
+
+    /**
+     * The events of a player the {@link LoadGenerator} is interested in.
+     */
+    interface Listener {
+        /**
+         * The server offered GMCP, the player is ready to send commands.
+         */
+        void activated(SimulatedPlayer player);
+
+        /**
+         * The echo of a command's ping was received.
+         *
+         * @param sentTime The time the command was sent.
+         */
+        void completed(SimulatedPlayer player, long sentTime);
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of the {@link EvalCost} budget on tight loops, as compiled mudlib code would charge it:
+ * once per iteration (the backward branch), and once per call of a small function.<p/>
+ *
+ * Each benchmark has a baseline without charging; the difference is the cost of the budget.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvalCostBenchmark {
+
+    @Param({"10000"})
+    public int iterations;
+
+    private EvalCost evalCost;
+    private int[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        evalCost = new EvalCost(new LiveConfiguration(null));
+        data = new int[iterations];
+        for (int i = 0; i < iterations; i++) {
+            data[i] = i * 31;
+        }
+    }
+
+    @Benchmark
+    public long loopBaseline() {
+        long sum = 0;
+        for (int i = 0; i < data.length; i++) {
+            sum += data[i] ^ (sum >>> 3);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long loopCharged() {
+        evalCost.begin();
+        long sum = 0;
+        for (int i = 0; i < data.length; i++) {
+            evalCost.tick();
+            sum += data[i] ^ (sum >>> 3);
+        }
+        return sum + evalCost.end();
+    }
+
+    @Benchmark
+    public long callBaseline() {
+        long sum = 0;
+        for (int i = 0; i < data.length; i++) {
+            sum = step(sum, data[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long callCharged() {
+        evalCost.begin();
+        long sum = 0;
+        for (int i = 0; i < data.length; i++) {
+            evalCost.tick();
+            sum = chargedStep(sum, data[i]);
+        }
+        return sum + evalCost.end();
+    }
+
+    private long step(long sum, int value) {
+        return sum + (value ^ (sum >>> 3));
+    }
+
+    private long chargedStep(long sum, int value) {
+        evalCost.tick();
+        return sum + (value ^ (sum >>> 3));
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the {@link Communicator}'s scan for pending interactives, which the game loop runs
+ * after every signal, with a given number of connected players.<p/>
+ *
+ * In the 'idle' case no interactive has input, so every scan visits all of them to find nothing;
+ * in the 'one' case a single interactive has input, and the scan rotates through the others
+ * to reach it again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommunicatorBenchmark {
+
+    @Param({"10", "1000"})
+    public int interactiveCount;
+
+    @Param({"idle", "one"})
+    public String pending;
+
+    private Communicator communicator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        communicator = new Communicator(new LiveConfiguration(new Configuration()), null);
+        for (int i = 0; i < interactiveCount; i++) {
+            Interactive interactive = new Interactive(communicator);
+            interactive.setState(Interactive.State.ACTIVE);
+            communicator.add(interactive);
+            if (i == interactiveCount / 2 && "one".equals(pending)) {
+                // The line is never taken, so the interactive stays pending.
+                interactive.received(ByteBuffer.wrap("look\n".getBytes(StandardCharsets.ISO_8859_1)));
+            }
+        }
+    }
+
+    @Benchmark
+    public Interactive nextPendingInteractive() {
+        return communicator.nextPendingInteractive();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the MCCP compression of a connection's output: every operation deflates one MB of
+ * game output, as the I/O threads do, so the reported time is the time per MB.<p/>
+ *
+ * The output is a mix of room descriptions, combat messages, channel chatter and prompts with
+ * ANSI colours, sent in messages of the given size; as every message ends with a sync flush,
+ * small messages compress worse and cost more. In the 'session' case, every message is sent
+ * by a new connection, which takes its deflater and buffer from the pools and returns them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MccpBenchmark {
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private static final String[] LINES = {
+        "\u001b[1;36mThe Village Square\u001b[0m\r\n",
+        "You are standing in the square of a small village. A fountain splashes in the middle, "
+                + "and narrow lanes lead off in all directions.\r\n",
+        "\u001b[33mThere are four obvious exits: north, east, south and west.\u001b[0m\r\n",
+        "A rusty sword lies on the ground.\r\n",
+        "The orc hits you hard with its club.\r\n",
+        "You slash the orc with your sword. The orc is badly wounded.\r\n",
+        "\u001b[32m[chat] Gandalf: does anyone know where to find the dragon's lair?\u001b[0m\r\n",
+        "\u001b[32m[chat] Frodo: north of the swamp, past the old mill\u001b[0m\r\n",
+        "Merry arrives from the east.\r\n",
+        "HP: 132/150  SP: 88/90  EP: 40/40 > ",
+    };
+
+    @Param({"100", "1000", "4096"})
+    public int messageSize;
+
+    @Param({"stream", "session"})
+    public String connection;
+
+    private final DeflaterPool deflaterPool = new DeflaterPool(16);
+    private final BufferPool bufferPool = new BufferPool(Communicator.OUTPUT_CHUNK_SIZE, false, 16);
+    private final ByteBuffer[] input = new ByteBuffer[1];
+    private final List<ByteBuffer> messages = new ArrayList<>();
+    private final Sink sink = new Sink();
+    private MccpCompressor compressor;
+
+    /**
+     * A channel consuming everything written to it.
+     */
+    private static class Sink implements GatheringByteChannel {
+        long bytes = 0;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            bytes += length;
+            return length;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += write(srcs[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close.
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(MEGABYTE + 1000);
+        while (text.length() < MEGABYTE) {
+            text.append(LINES[random.nextInt(LINES.length)]);
+        }
+        byte[] bytes = text.substring(0, MEGABYTE).getBytes(StandardCharsets.ISO_8859_1);
+        for (int offset = 0; offset < bytes.length; offset += messageSize) {
+            messages.add(ByteBuffer.wrap(bytes, offset, Math.min(messageSize, bytes.length - offset)).slice());
+        }
+        compressor = new MccpCompressor(deflaterPool, bufferPool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compressor.release();
+    }
+
+    @Benchmark
+    public long compressMegabyte() throws Exception {
+        boolean session = "session".equals(connection);
+        for (ByteBuffer message : messages) {
+            message.rewind();
+            input[0] = message;
+            if (session) {
+                compressor.release();
+                compressor = new MccpCompressor(deflaterPool, bufferPool);
+            }
+            do {
+                compressor.compress(input, 1);
+                compressor.writeTo(sink);
+            } while (message.hasRemaining() || compressor.hasPending());
+        }
+        return sink.bytes;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the {@link TelnetDecoder} on a read buffer's worth of input, either plain
+ * text or text interspersed with escaped IACs, option negotiations and subnegotiations.<p/>
+ *
+ * Run with {@code -prof gc} to verify that the decoding doesn't allocate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TelnetDecoderBenchmark {
+
+    @Param({"plain", "telnet"})
+    public String input;
+
+    private ByteBuffer template;
+    private ByteBuffer buffer;
+    private TelnetDecoder decoder;
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        template = ByteBuffer.allocateDirect(8192);
+        byte[] line = "say The quick brown fox jumps over the lazy dog.\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        byte[] commands = {
+            (byte) 255, (byte) 255,                                                     // Escaped IAC
+            (byte) 255, (byte) 251, 31,                                                 // IAC WILL NAWS
+            (byte) 255, (byte) 250, 31, 0, 80, 0, 24, (byte) 255, (byte) 240           // IAC SB NAWS ... IAC SE
+        };
+        while (template.remaining() >= line.length + commands.length) {
+            template.put(line);
+            if ("telnet".equals(input)) {
+                template.put(commands);
+            }
+        }
+        template.flip();
+        buffer = ByteBuffer.allocateDirect(template.capacity());
+        decoder = new TelnetDecoder(new TelnetDecoder.Handler() {
+            @Override
+            public void negotiate(int command, int option) {
+                TelnetDecoderBenchmark.this.blackhole.consume(option);
+            }
+
+            @Override
+            public void subnegotiate(int option, byte[] data, int length) {
+                TelnetDecoderBenchmark.this.blackhole.consume(length);
+            }
+        });
+    }
+
+    @Benchmark
+    public int decode() {
+        buffer.clear();
+        template.rewind();
+        buffer.put(template);
+        buffer.flip();
+        decoder.decode(buffer);
+        return buffer.remaining();
+    }
+}
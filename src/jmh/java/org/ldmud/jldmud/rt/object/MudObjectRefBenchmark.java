@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.object;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of dereferencing a {@link MudObject.Ref}, for a live object, and for a destroyed one
+ * after the reference discovered it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MudObjectRefBenchmark {
+
+    private MudObjects objects;
+    private MudObject live;
+    private MudObject destroyed;
+    private MudObject.Ref liveRef;
+    private MudObject.Ref destroyedRef;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objects = new MudObjects();
+        live = objects.createObject("/std/live");
+        destroyed = objects.createObject("/std/destroyed");
+        liveRef = live.ref();
+        destroyedRef = destroyed.ref();
+        destroyed.destroy();
+        objects.removeDestroyedObjects();
+    }
+
+    @Benchmark
+    public MudObject getLive() {
+        return liveRef.get();
+    }
+
+    @Benchmark
+    public MudObject getObjectLive() {
+        return liveRef.getObject();
+    }
+
+    @Benchmark
+    public MudObject getDestroyed() {
+        return destroyedRef.get();
+    }
+
+    @Benchmark
+    public MudObject.Ref createRef() {
+        return live.ref();
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.object;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the {@link MudObjects} object table operations, with a given number of objects
+ * already in the game.<p/>
+ *
+ * The life cycle benchmark creates, destroys and removes one object per invocation, so that
+ * the table size stays constant; the lookup benchmarks cycle through all existing objects,
+ * so that they aren't served from a single hot cache line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MudObjectsBenchmark {
+
+    @Param({"1000", "100000"})
+    public int objectCount;
+
+    private MudObjects objects;
+    private long[] ids;
+    private String[] names;
+    private int next;
+    private long created;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objects = new MudObjects();
+        ids = new long[objectCount];
+        names = new String[objectCount];
+        for (int i = 0; i < objectCount; i++) {
+            MudObject obj = objects.createObject("/std/thing#" + i);
+            ids[i] = obj.getId();
+            names[i] = obj.getName();
+        }
+    }
+
+    @Benchmark
+    public MudObject findById() {
+        next = (next + 1) % objectCount;
+        return objects.find(ids[next]);
+    }
+
+    @Benchmark
+    public MudObject findByName() {
+        next = (next + 1) % objectCount;
+        return objects.find(names[next]);
+    }
+
+    @Benchmark
+    public MudObject createAndDestroy() {
+        MudObject obj = objects.createObject("/std/clone#" + created++);
+        obj.destroy();
+        objects.removeDestroyedObjects();
+        return obj;
+    }
+
+    @Benchmark
+    public int destroyBatch() {
+        // A typical game loop pass: a handful of objects destroyed, then removed at the end of the pass.
+        for (int i = 0; i < 10; i++) {
+            objects.createObject("/std/clone#" + created++).destroy();
+        }
+        int destroyed = objects.getDestroyedObjects().size();
+        objects.removeDestroyedObjects();
+        return destroyed;
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.value;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ldmud.jldmud.rt.object.MudObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of copying and dereferencing an {@link ObjectRef} value, as done whenever an object
+ * value is assigned or passed around.<p/>
+ *
+ * Run with {@code -prof gc} to see the allocation per copy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObjectRefBenchmark {
+
+    private MudObject obj;
+    private ObjectRef ref;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        obj = new MudObject("/std/thing", null);
+        ref = new ObjectRef(obj);
+    }
+
+    @Benchmark
+    public ObjectRef copy() {
+        return ref.copy();
+    }
+
+    @Benchmark
+    public MudObject get() {
+        return ref.get();
+    }
+
+    @Benchmark
+    public MudObject copyAndGet() {
+        return ref.copy().get();
+    }
+
+    @Benchmark
+    public ObjectRef create() {
+        return new ObjectRef(obj);
+    }
+}
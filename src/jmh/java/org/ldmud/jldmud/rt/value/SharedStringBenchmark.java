@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.value;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory retained by the string data of a game's objects, held as plain {@link String}s and as
+ * {@link StringValue}s of a {@link SharedStringTable}.<p/>
+ *
+ * The population mimics the objects of a mudlib: every object has a dozen properties, whose names
+ * are the same for all objects, and whose short and long descriptions, ids and materials are drawn
+ * from a limited vocabulary. Every string is created anew, as if read from a save file or compiled
+ * from a separate program.<p/>
+ *
+ * The score is the time to build the population; the counter {@code bytesPerObject} is the
+ * heap retained per object, measured after a full garbage collection. As JMH sums the counter over
+ * the measurement iterations, there is only one.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SharedStringBenchmark {
+
+    private static final String[] PROPERTIES = {
+        "short", "long", "ids", "adjectives", "plural", "material", "weight", "value",
+        "smell", "noise", "light", "read_msg", "wield_msg", "owner"
+    };
+    private static final String[] ADJECTIVES = {
+        "rusty", "shiny", "old", "small", "large", "heavy", "wooden", "iron", "silver", "golden",
+        "broken", "dusty", "ancient", "crude", "fine", "battered", "elven", "dwarven", "black", "white"
+    };
+    private static final String[] NOUNS = {
+        "sword", "dagger", "shield", "helmet", "ring", "amulet", "torch", "rope", "bag", "coin",
+        "axe", "mace", "bow", "arrow", "cloak", "boots", "gloves", "potion", "scroll", "key",
+        "lamp", "book", "bottle", "stone", "chest"
+    };
+    private static final String[] MATERIALS = { "iron", "steel", "wood", "leather", "cloth", "glass", "gold", "silver" };
+
+    @Param({"20000"})
+    public int objects;
+
+    /**
+     * The heap retained per object.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerObject;
+    }
+
+    @Benchmark
+    public Object plainStrings(Footprint footprint) {
+        long before = usedHeap();
+        Object[] population = populate(s -> new String(s));
+        footprint.bytesPerObject = (usedHeap() - before) / objects;
+        return population;
+    }
+
+    @Benchmark
+    public Object sharedStrings(Footprint footprint) {
+        long before = usedHeap();
+        SharedStringTable table = new SharedStringTable();
+        Object[] population = populate(s -> table.intern(new String(s)));
+        footprint.bytesPerObject = (usedHeap() - before) / objects;
+        return new Object[] { table, population };
+    }
+
+    /**
+     * Create the properties of the objects.
+     *
+     * @param string Turns the text of a string into the string value held.
+     * @return The properties, one map per object.
+     */
+    private Object[] populate(Function<String, Object> string) {
+        Random random = new Random(42);
+        Object[] population = new Object[objects];
+        for (int i = 0; i < objects; i++) {
+            String adjective = ADJECTIVES[random.nextInt(ADJECTIVES.length)];
+            String noun = NOUNS[random.nextInt(NOUNS.length)];
+            String material = MATERIALS[random.nextInt(MATERIALS.length)];
+
+            Map<Object, Object> properties = new HashMap<>();
+            properties.put(string.apply(PROPERTIES[0]), string.apply("a " + adjective + " " + noun));
+            properties.put(string.apply(PROPERTIES[1]), string.apply("This is a " + adjective + " " + noun + ", made of " + material + ".\n"));
+            properties.put(string.apply(PROPERTIES[2]), new Object[] { string.apply(noun), string.apply(adjective + " " + noun) });
+            properties.put(string.apply(PROPERTIES[3]), new Object[] { string.apply(adjective) });
+            properties.put(string.apply(PROPERTIES[4]), string.apply(noun + "s"));
+            properties.put(string.apply(PROPERTIES[5]), string.apply(material));
+            properties.put(string.apply(PROPERTIES[6]), random.nextInt(50));
+            properties.put(string.apply(PROPERTIES[7]), random.nextInt(1000));
+            for (int p = 8; p < PROPERTIES.length; p++) {
+                if (random.nextInt(4) == 0) {
+                    properties.put(string.apply(PROPERTIES[p]), string.apply("The " + noun + " has no " + PROPERTIES[p] + ".\n"));
+                }
+            }
+            population[i] = properties;
+        }
+        return population;
+    }
+
+    /**
+     * @return The used heap after a full garbage collection.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
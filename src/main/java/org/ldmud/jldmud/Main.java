@@ -4,14 +4,25 @@
  */
 package org.ldmud.jldmud;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.ldmud.jldmud.config.CommandLineArguments;
 import org.ldmud.jldmud.config.Configuration;
 import org.ldmud.jldmud.config.ConfigurationLoader;
+import org.ldmud.jldmud.config.LiveConfiguration;
 import org.ldmud.jldmud.config.Version;
 import org.ldmud.jldmud.log.Logging;
 import org.ldmud.jldmud.rt.GameLoop;
+import org.ldmud.jldmud.rt.PhaseAllocations;
+import org.ldmud.jldmud.rt.journal.JournalReader;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -37,7 +48,7 @@ public final class Main {
         System.out.println(Version.DRIVER_NAME + " " + Version.getVersionString());
 
         Injector injector = Guice.createInjector(new MainModule());
-        Configuration config = injector.getInstance(Configuration.class);
+        Configuration config = new Configuration();
 
         // Read the driver's configuration, then jettison the utility classes by GC.
         {
@@ -53,6 +64,11 @@ public final class Main {
             }
         }
 
+        // The settings file (which is watched for changes) and the journal to replay are given relative
+        // to the directory the driver was started in.
+        File settingsFile = new File(cliArgs.getSettingsFilename()).getAbsoluteFile();
+        File replayFile = cliArgs.getReplayFilename() != null ? new File(cliArgs.getReplayFilename()).getAbsoluteFile() : null;
+
         // Java doesn't directly allow to change the current working directory of the process itself;
         // but by changing the 'user.dir' system property the same effect is achieved as the property
         // is used when the Java runtime resolves relative paths.
@@ -64,10 +80,25 @@ public final class Main {
         Logging.config(config);
         log = LogManager.getLogger(Main.class);
 
+        injector.getInstance(LiveConfiguration.class).publish(config, settingsFile, cliArgs.getConfigSettings());
+
         Logging.mudLog.info(Version.DRIVER_NAME + " " + Version.getVersionString() + " starting up.");
         log.info(Version.DRIVER_NAME + " " + Version.getVersionString() + " starting up.");
 
+        // TODO: Preload stage: compile the master object's preload list in parallel (fork/join, ordered by
+        //       inherit dependencies) and hand the finished programs to the game thread. Requires the compiler.
         GameLoop gameLoop = injector.getInstance(GameLoop.class);
+        if (replayFile != null) {
+            try (JournalReader reader = new JournalReader(new FileInputStream(replayFile))) {
+                String report = gameLoop.replay(reader).report() + "\n" + injector.getInstance(PhaseAllocations.class).report();
+                log.info(report);
+                System.out.println(report);
+            } catch (IOException e) {
+                System.err.println("Error: Can't replay '" + replayFile + "': " + e.toString());
+                System.exit(1);
+            }
+            System.exit(checkAllocationBudgets(injector.getInstance(PhaseAllocations.class), cliArgs.getAllocationBudgets()) ? 0 : 2);
+        }
         gameLoop.run();
 
         /* TODO: More stuff here? */
@@ -75,4 +106,29 @@ public final class Main {
         Logging.mudLog.info(Version.DRIVER_NAME + " " + Version.getVersionString() + " stopped.");
         log.info(Version.DRIVER_NAME + " " + Version.getVersionString() + " stopped.");
     }
+
+    /**
+     * Check the allocations of a replay against the budgets given on the command line.
+     *
+     * @param allocations The allocations of the replay.
+     * @param budgets The budgets in bytes, by name of the phase.
+     * @return {@code true} if all budgets were kept.
+     */
+    private static boolean checkAllocationBudgets(PhaseAllocations allocations, Properties budgets) {
+        Map<String, Long> limits = new LinkedHashMap<>();
+        try {
+            for (String name : budgets.stringPropertyNames()) {
+                limits.put(name, Long.valueOf(budgets.getProperty(name)));
+            }
+            List<String> exceeded = allocations.checkBudgets(limits);
+            for (String message : exceeded) {
+                System.err.println("Allocation budget exceeded: " + message);
+            }
+            return exceeded.isEmpty();
+        } catch (IllegalArgumentException e) {
+            // Includes the NumberFormatException.
+            System.err.println("Error: Invalid allocation budget: " + e.getMessage());
+            return false;
+        }
+    }
 }
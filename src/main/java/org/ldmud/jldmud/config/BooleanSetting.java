@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.config;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Setting holding a boolean. Recognized are 'true', 'yes', 'on', 'false', 'no' and 'off',
+ * regardless of case.
+ */
+public class BooleanSetting extends SettingBase<Boolean> {
+
+    public BooleanSetting(String name, String description, Boolean defaultValue) {
+        super(name, description, defaultValue);
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.config.SettingBase#parseValueImpl(java.lang.String)
+     */
+    @Override
+    protected String parseValueImpl(String v) {
+        if (! StringUtils.isEmpty(v)) {
+            if ("true".equalsIgnoreCase(v) || "yes".equalsIgnoreCase(v) || "on".equalsIgnoreCase(v)) {
+                value = Boolean.TRUE;
+            } else if ("false".equalsIgnoreCase(v) || "no".equalsIgnoreCase(v) || "off".equalsIgnoreCase(v)) {
+                value = Boolean.FALSE;
+            } else {
+                return "'"+v+"' is not a recognized boolean value.";
+            }
+        }
+        return null;
+    }
+}
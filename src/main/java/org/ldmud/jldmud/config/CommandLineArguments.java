@@ -39,6 +39,12 @@ public class CommandLineArguments {
     /* Print the effective configuration after the system is loaded. */
     private boolean printConfiguration = false;
 
+    /* Name of the input journal to replay instead of running the game */
+    private String replayFilename = null;
+
+    /* Allocation budgets (mean bytes by phase name) the replay must keep */
+    private Properties allocationBudgets = new Properties();
+
     /* -- Other variables -- */
     private int exitCode = 0;
 
@@ -66,6 +72,12 @@ public class CommandLineArguments {
             Option version = OptionBuilder.withLongOpt("version").withDescription("Print the driver version and exit.").create("V");
             Option printConfig = OptionBuilder.withLongOpt("print-config").withDescription("Print the effective configuration settings to stdout and exit.").create();
             Option printLicense = OptionBuilder.withLongOpt("license").withDescription("Print the software license and exit.").create();
+            Option replay = OptionBuilder.withLongOpt("replay").withArgName("journal").hasArg()
+                                         .withDescription("Replay the input journal (see setting mud.journal.record) as fast as possible instead of running the game, print the latencies and exit.")
+                                         .create();
+            Option allocationBudget = OptionBuilder.withLongOpt("alloc-budget").withArgName("phase=bytes").hasArgs(2).withValueSeparator()
+                                                   .withDescription("With --replay: fail if the game thread allocates more than the given mean bytes per game loop phase (MEMORY, PERIODIC, ERQ, COMMANDS, CLEANUP, OUTPUT), pass (PASS) or tick (TICK).")
+                                                   .create();
 
             Options options = new Options();
             options.addOption(help);
@@ -74,6 +86,8 @@ public class CommandLineArguments {
             options.addOption(configSetting);
             options.addOption(printConfig);
             options.addOption(printLicense);
+            options.addOption(replay);
+            options.addOption(allocationBudget);
 
             CommandLineParser parser = new PosixParser();
             CommandLine line = parser.parse(options, args);
@@ -143,6 +157,14 @@ public class CommandLineArguments {
                 printConfiguration = true;
             }
 
+            if (line.hasOption(replay.getLongOpt())) {
+                replayFilename = line.getOptionValue(replay.getLongOpt());
+            }
+
+            if (line.hasOption(allocationBudget.getLongOpt())) {
+                allocationBudgets = line.getOptionProperties(allocationBudget.getLongOpt());
+            }
+
             if (line.getArgs().length > 1) {
                 throw new ParseException("Too many arguments");
             }
@@ -195,4 +217,12 @@ public class CommandLineArguments {
     public boolean getPrintConfiguration() {
         return printConfiguration;
     }
+
+    public String getReplayFilename() {
+        return replayFilename;
+    }
+
+    public Properties getAllocationBudgets() {
+        return allocationBudgets;
+    }
 }
@@ -7,14 +7,56 @@ package org.ldmud.jldmud.config;
 import java.io.File;
 
 /**
- * Class holding various configuration parameters.
+ * Class holding various configuration parameters.<p/>
+ *
+ * Once published through {@link LiveConfiguration}, an instance is a snapshot which is not modified anymore;
+ * a changed configuration is published as a new instance.
  */
 public class Configuration {
+
+    /**
+     * The ways the network connections can be served.
+     */
+    public enum IoMode {
+        SELECTOR, // All connections are multiplexed by one selector thread.
+        THREADS   // Every connection is served by its own (virtual, if available) thread.
+    }
+
     private File mudDirectory;
     private File driverDirectory;
     private File driverLogDirectory;
     private File mudLogDirectory;
     private Long memoryReserve;
+    private Long port;
+    private IoMode ioMode;
+    private Long outputLimit;
+    private Boolean mccp;
+    private Long webSocketPort;
+    private Long tlsPort;
+    private File tlsKeystore;
+    private String tlsPassword;
+    private Long commandQueueLimit;
+    private Long commandsPerTick;
+    private Long evalCostPerTick;
+    private Long acceptRate;
+    private Long addressAcceptRate;
+    private Long maxPendingLogons;
+    private Long logonsPerTick;
+    private Long erqThreads;
+    private File erqDirectory;
+    private Long logonTimeout;
+    private Long idleTimeout;
+    private Long memoryEvictThreshold;
+    private Long memoryNoLoginThreshold;
+    private Long memoryShutdownThreshold;
+    private Long statsInterval;
+    private Long statsTopCount;
+    private Long evalCostLimit;
+    private Long censusInterval;
+    private Long censusSlice;
+    private Boolean journalRecord;
+    private Long slowPassThreshold;
+    private Boolean configWatch;
 
     /**
      * @return The absolute root directory of the mud library.
@@ -58,6 +100,62 @@ public class Configuration {
         this.memoryReserve = memoryReserve;
     }
 
+    /**
+     * @return The port number for telnet connections, or 0 if no port is to be opened.
+     */
+    public Long getPort() {
+        return port;
+    }
+
+    /**
+     * @param port The port number for telnet connections, or 0 if no port is to be opened.
+     */
+    public void setPort(Long port) {
+        this.port = port;
+    }
+
+    /**
+     * @return The way network connections are served.
+     */
+    public IoMode getIoMode() {
+        return ioMode;
+    }
+
+    /**
+     * @param ioMode The way network connections are served.
+     */
+    public void setIoMode(IoMode ioMode) {
+        this.ioMode = ioMode;
+    }
+
+    /**
+     * @return The maximum number of bytes of output to hold pending for one connection.
+     */
+    public Long getOutputLimit() {
+        return outputLimit;
+    }
+
+    /**
+     * @param outputLimit The maximum number of bytes of output to hold pending for one connection.
+     */
+    public void setOutputLimit(Long outputLimit) {
+        this.outputLimit = outputLimit;
+    }
+
+    /**
+     * @return {@code true} if output compression (MCCP) is offered to clients.
+     */
+    public Boolean getMccp() {
+        return mccp;
+    }
+
+    /**
+     * @param mccp {@code true} if output compression (MCCP) is offered to clients.
+     */
+    public void setMccp(Boolean mccp) {
+        this.mccp = mccp;
+    }
+
     /**
      * @param mudDirectory The absolute directory of the mud library.
      */
@@ -69,7 +167,7 @@ public class Configuration {
      * @param driverDirectory The absolute directory of the driver files.
      */
     public void setDriverDirectory(File driverDirectory) {
-        this.driverDirectory = mudDirectory;
+        this.driverDirectory = driverDirectory;
     }
 
     /**
@@ -86,4 +184,368 @@ public class Configuration {
         this.mudLogDirectory = mudLogDirectory;
     }
 
+
+    /**
+     * @return The port number for WebSocket connections, or 0 if no port is to be opened.
+     */
+    public Long getWebSocketPort() {
+        return webSocketPort;
+    }
+
+    /**
+     * @param webSocketPort The port number for WebSocket connections, or 0 if no port is to be opened.
+     */
+    public void setWebSocketPort(Long webSocketPort) {
+        this.webSocketPort = webSocketPort;
+    }
+
+    /**
+     * @return The port number for TLS connections, or 0 if no port is to be opened.
+     */
+    public Long getTlsPort() {
+        return tlsPort;
+    }
+
+    /**
+     * @param tlsPort The port number for TLS connections, or 0 if no port is to be opened.
+     */
+    public void setTlsPort(Long tlsPort) {
+        this.tlsPort = tlsPort;
+    }
+
+    /**
+     * @return The keystore holding the key and certificate for TLS connections.
+     */
+    public File getTlsKeystore() {
+        return tlsKeystore;
+    }
+
+    /**
+     * @param tlsKeystore The keystore holding the key and certificate for TLS connections.
+     */
+    public void setTlsKeystore(File tlsKeystore) {
+        this.tlsKeystore = tlsKeystore;
+    }
+
+    /**
+     * @return The password of the TLS keystore, or {@code null} if none is set.
+     */
+    public String getTlsPassword() {
+        return tlsPassword;
+    }
+
+    /**
+     * @param tlsPassword The password of the TLS keystore.
+     */
+    public void setTlsPassword(String tlsPassword) {
+        this.tlsPassword = tlsPassword;
+    }
+
+    /**
+     * @return The maximum number of input lines queued for one connection, or 0 if unlimited.
+     */
+    public Long getCommandQueueLimit() {
+        return commandQueueLimit;
+    }
+
+    /**
+     * @param commandQueueLimit The maximum number of input lines queued for one connection, or 0 if unlimited.
+     */
+    public void setCommandQueueLimit(Long commandQueueLimit) {
+        this.commandQueueLimit = commandQueueLimit;
+    }
+
+    /**
+     * @return The maximum number of commands one connection may execute per tick, or 0 if unlimited.
+     */
+    public Long getCommandsPerTick() {
+        return commandsPerTick;
+    }
+
+    /**
+     * @param commandsPerTick The maximum number of commands one connection may execute per tick, or 0 if unlimited.
+     */
+    public void setCommandsPerTick(Long commandsPerTick) {
+        this.commandsPerTick = commandsPerTick;
+    }
+
+    /**
+     * @return The evaluation cost the commands of one connection may use up per tick, or 0 if unlimited.
+     */
+    public Long getEvalCostPerTick() {
+        return evalCostPerTick;
+    }
+
+    /**
+     * @param evalCostPerTick The evaluation cost the commands of one connection may use up per tick, or 0 if unlimited.
+     */
+    public void setEvalCostPerTick(Long evalCostPerTick) {
+        this.evalCostPerTick = evalCostPerTick;
+    }
+
+    /**
+     * @return The maximum number of new connections accepted per second, or 0 if unlimited.
+     */
+    public Long getAcceptRate() {
+        return acceptRate;
+    }
+
+    /**
+     * @param acceptRate The maximum number of new connections accepted per second, or 0 if unlimited.
+     */
+    public void setAcceptRate(Long acceptRate) {
+        this.acceptRate = acceptRate;
+    }
+
+    /**
+     * @return The maximum number of new connections accepted from one address per minute, or 0 if unlimited.
+     */
+    public Long getAddressAcceptRate() {
+        return addressAcceptRate;
+    }
+
+    /**
+     * @param addressAcceptRate The maximum number of new connections accepted from one address per minute, or 0 if unlimited.
+     */
+    public void setAddressAcceptRate(Long addressAcceptRate) {
+        this.addressAcceptRate = addressAcceptRate;
+    }
+
+    /**
+     * @return The maximum number of new connections waiting for their logon, or 0 if unlimited.
+     */
+    public Long getMaxPendingLogons() {
+        return maxPendingLogons;
+    }
+
+    /**
+     * @param maxPendingLogons The maximum number of new connections waiting for their logon, or 0 if unlimited.
+     */
+    public void setMaxPendingLogons(Long maxPendingLogons) {
+        this.maxPendingLogons = maxPendingLogons;
+    }
+
+    /**
+     * @return The maximum number of logons processed per tick, or 0 if unlimited.
+     */
+    public Long getLogonsPerTick() {
+        return logonsPerTick;
+    }
+
+    /**
+     * @param logonsPerTick The maximum number of logons processed per tick, or 0 if unlimited.
+     */
+    public void setLogonsPerTick(Long logonsPerTick) {
+        this.logonsPerTick = logonsPerTick;
+    }
+
+    /**
+     * @return The number of threads running external requests.
+     */
+    public Long getErqThreads() {
+        return erqThreads;
+    }
+
+    /**
+     * @param erqThreads The number of threads running external requests.
+     */
+    public void setErqThreads(Long erqThreads) {
+        this.erqThreads = erqThreads;
+    }
+
+    /**
+     * @return The directory holding the programs the mudlib may run, or {@code null} if none may be run.
+     */
+    public File getErqDirectory() {
+        return erqDirectory;
+    }
+
+    /**
+     * @param erqDirectory The directory holding the programs the mudlib may run.
+     */
+    public void setErqDirectory(File erqDirectory) {
+        this.erqDirectory = erqDirectory;
+    }
+
+    /**
+     * @return The time in seconds a new connection has to complete its logon, or 0 if unlimited.
+     */
+    public Long getLogonTimeout() {
+        return logonTimeout;
+    }
+
+    /**
+     * @param logonTimeout The time in seconds a new connection has to complete its logon, or 0 if unlimited.
+     */
+    public void setLogonTimeout(Long logonTimeout) {
+        this.logonTimeout = logonTimeout;
+    }
+
+    /**
+     * @return The time in seconds a connection may be idle before it is closed, or 0 if unlimited.
+     */
+    public Long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout The time in seconds a connection may be idle before it is closed, or 0 if unlimited.
+     */
+    public void setIdleTimeout(Long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return The heap usage in percent at which to swap out objects and evict caches, or 0 if disabled.
+     */
+    public Long getMemoryEvictThreshold() {
+        return memoryEvictThreshold;
+    }
+
+    /**
+     * @param memoryEvictThreshold The heap usage in percent at which to swap out objects and evict caches, or 0 if disabled.
+     */
+    public void setMemoryEvictThreshold(Long memoryEvictThreshold) {
+        this.memoryEvictThreshold = memoryEvictThreshold;
+    }
+
+    /**
+     * @return The heap usage in percent at which to refuse new connections, or 0 if disabled.
+     */
+    public Long getMemoryNoLoginThreshold() {
+        return memoryNoLoginThreshold;
+    }
+
+    /**
+     * @param memoryNoLoginThreshold The heap usage in percent at which to refuse new connections, or 0 if disabled.
+     */
+    public void setMemoryNoLoginThreshold(Long memoryNoLoginThreshold) {
+        this.memoryNoLoginThreshold = memoryNoLoginThreshold;
+    }
+
+    /**
+     * @return The heap usage in percent at which to shut down the game, or 0 if disabled.
+     */
+    public Long getMemoryShutdownThreshold() {
+        return memoryShutdownThreshold;
+    }
+
+    /**
+     * @param memoryShutdownThreshold The heap usage in percent at which to shut down the game, or 0 if disabled.
+     */
+    public void setMemoryShutdownThreshold(Long memoryShutdownThreshold) {
+        this.memoryShutdownThreshold = memoryShutdownThreshold;
+    }
+
+    /**
+     * @return The interval in seconds of the execution cost reports, or 0 if no reports are written.
+     */
+    public Long getStatsInterval() {
+        return statsInterval;
+    }
+
+    /**
+     * @param statsInterval The interval in seconds of the execution cost reports, or 0 if no reports are written.
+     */
+    public void setStatsInterval(Long statsInterval) {
+        this.statsInterval = statsInterval;
+    }
+
+    /**
+     * @return The number of objects and programs listed in the execution cost report.
+     */
+    public Long getStatsTopCount() {
+        return statsTopCount;
+    }
+
+    /**
+     * @param statsTopCount The number of objects and programs listed in the execution cost report.
+     */
+    public void setStatsTopCount(Long statsTopCount) {
+        this.statsTopCount = statsTopCount;
+    }
+
+    /**
+     * @return The maximum evaluation cost of one execution, or 0 if unlimited.
+     */
+    public Long getEvalCostLimit() {
+        return evalCostLimit;
+    }
+
+    /**
+     * @param evalCostLimit The maximum evaluation cost of one execution, or 0 if unlimited.
+     */
+    public void setEvalCostLimit(Long evalCostLimit) {
+        this.evalCostLimit = evalCostLimit;
+    }
+
+    /**
+     * @return The interval in seconds of the periodic memory census, or 0 if none is taken.
+     */
+    public Long getCensusInterval() {
+        return censusInterval;
+    }
+
+    /**
+     * @param censusInterval The interval in seconds of the periodic memory census, or 0 if none is taken.
+     */
+    public void setCensusInterval(Long censusInterval) {
+        this.censusInterval = censusInterval;
+    }
+
+    /**
+     * @return The time in milliseconds a memory census may take per game loop pass.
+     */
+    public Long getCensusSlice() {
+        return censusSlice;
+    }
+
+    /**
+     * @param censusSlice The time in milliseconds a memory census may take per game loop pass.
+     */
+    public void setCensusSlice(Long censusSlice) {
+        this.censusSlice = censusSlice;
+    }
+
+    /**
+     * @return {@code true} if the input journal is recorded.
+     */
+    public Boolean getJournalRecord() {
+        return journalRecord;
+    }
+
+    /**
+     * @param journalRecord {@code true} if the input journal is recorded.
+     */
+    public void setJournalRecord(Boolean journalRecord) {
+        this.journalRecord = journalRecord;
+    }
+
+    /**
+     * @return The time in milliseconds after which a game loop pass is reported as slow, or 0 if not watched.
+     */
+    public Long getSlowPassThreshold() {
+        return slowPassThreshold;
+    }
+
+    /**
+     * @param slowPassThreshold The time in milliseconds after which a game loop pass is reported as slow, or 0 if not watched.
+     */
+    public void setSlowPassThreshold(Long slowPassThreshold) {
+        this.slowPassThreshold = slowPassThreshold;
+    }
+
+    /**
+     * @return {@code true} if the settings file is watched for changes.
+     */
+    public Boolean getConfigWatch() {
+        return configWatch;
+    }
+
+    /**
+     * @param configWatch {@code true} if the settings file is watched for changes.
+     */
+    public void setConfigWatch(Boolean configWatch) {
+        this.configWatch = configWatch;
+    }
 }
@@ -9,6 +9,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
@@ -62,6 +63,155 @@ public class ConfigurationLoader {
             "The amount of memory (in MBytes) to reserve at startup as a safeguard for an out-of-memory situation. If set to 0, no memory is being reserved. "+
             "If the driver runs out of memory, it will use this reserve to allow for a graceful shutdown.",
             0L);
+    private final UnsignedNumberSetting memoryEvictThreshold = new UnsignedNumberSetting(
+            "mud.memorythreshold.evict",
+            "The heap usage after a garbage collection (in percent of the maximum heap) at which the driver starts to swap out objects "+
+            "and to evict caches. If set to 0, this stage is disabled.",
+            70L);
+    private final UnsignedNumberSetting memoryNoLoginThreshold = new UnsignedNumberSetting(
+            "mud.memorythreshold.nologin",
+            "The heap usage after a garbage collection (in percent of the maximum heap) at which the driver refuses new connections. "+
+            "If set to 0, this stage is disabled.",
+            85L);
+    private final UnsignedNumberSetting memoryShutdownThreshold = new UnsignedNumberSetting(
+            "mud.memorythreshold.shutdown",
+            "The heap usage after a garbage collection (in percent of the maximum heap) at which the driver shuts down the game gracefully. "+
+            "If set to 0, this stage is disabled.",
+            95L);
+    private final UnsignedNumberSetting port = new UnsignedNumberSetting(
+            "mud.port",
+            "The port number on which the driver accepts telnet connections. If set to 0, no port is opened.",
+            4242L);
+    private final EnumSetting<Configuration.IoMode> ioMode = new EnumSetting<>(
+            "mud.net.iomode",
+            "How the network connections are served: 'selector' multiplexes all connections in one thread; "+
+            "'threads' serves every connection with its own thread doing blocking reads (virtual threads if the Java runtime supports them).",
+            Configuration.IoMode.class, Configuration.IoMode.SELECTOR);
+    private final UnsignedNumberSetting outputLimit = new UnsignedNumberSetting(
+            "mud.net.outputlimit",
+            "The maximum number of bytes of output held pending for a connection which doesn't keep up with it. "+
+            "Output beyond this limit is discarded until the connection has caught up.",
+            256000L);
+    private final BooleanSetting mccp = new BooleanSetting(
+            "mud.net.mccp",
+            "If enabled, output compression (MCCP version 2) is offered to the clients.",
+            true);
+    private final UnsignedNumberSetting webSocketPort = new UnsignedNumberSetting(
+            "mud.ws.port",
+            "The port number on which the driver accepts WebSocket connections from web clients. If set to 0, no port is opened.",
+            0L);
+    private final UnsignedNumberSetting tlsPort = new UnsignedNumberSetting(
+            "mud.tls.port",
+            "The port number on which the driver accepts TLS-encrypted telnet connections. If set to 0, no port is opened.",
+            0L);
+    private final GameFileSetting tlsKeystore = new GameFileSetting(
+            "mud.tls.keystore",
+            "The keystore (PKCS12 or JKS) holding the key and certificate chain for TLS connections, "+
+            "which may be specified relative to the driver process' working directory. "+
+            "If the path name starts with '${mud.dir.driver}', it is interpreted relative to the mud.dir.driver setting. "+
+            "Required if mud.tls.port is set.",
+            false, driverDirectory);
+    private final PasswordSetting tlsPassword = new PasswordSetting(
+            "mud.tls.password",
+            "The password of the TLS keystore and its key.",
+            false);
+    private final UnsignedNumberSetting commandQueueLimit = new UnsignedNumberSetting(
+            "mud.commands.queuelimit",
+            "The maximum number of input lines held waiting for execution for one connection. "+
+            "Lines received beyond this limit are discarded. If set to 0, the number is not limited.",
+            100L);
+    private final UnsignedNumberSetting commandsPerTick = new UnsignedNumberSetting(
+            "mud.commands.pertick",
+            "The maximum number of commands a connection may execute per tick (one second). "+
+            "Further commands wait for the next tick, so that a player sending many commands at once can't delay the commands of the others. "+
+            "If set to 0, the number is not limited.",
+            20L);
+    private final UnsignedNumberSetting evalCostPerTick = new UnsignedNumberSetting(
+            "mud.commands.evalcost",
+            "The total evaluation cost the commands of a connection may use up per tick (one second); "+
+            "once it is reached, further commands wait for the next tick. If set to 0, the cost is not limited.",
+            5000000L);
+    private final UnsignedNumberSetting evalCostLimit = new UnsignedNumberSetting(
+            "mud.evalcost.limit",
+            "The maximum evaluation cost of one execution (a command, a heartbeat, a call-out...); once it is reached, "+
+            "the execution is aborted with a 'too long evaluation' error. If set to 0, the cost is not limited - "+
+            "and a runaway loop in the mudlib will freeze the game.",
+            1000000L);
+    private final UnsignedNumberSetting acceptRate = new UnsignedNumberSetting(
+            "mud.net.acceptrate",
+            "The maximum number of new connections accepted per second, with bursts of up to the same number. "+
+            "Connections beyond the rate are refused with a message to try again later. If set to 0, the rate is not limited.",
+            100L);
+    private final UnsignedNumberSetting addressAcceptRate = new UnsignedNumberSetting(
+            "mud.net.acceptrate.address",
+            "The maximum number of new connections accepted from one network address per minute, with bursts of up to the same number. "+
+            "Connections beyond the rate are refused with a message to try again later. If set to 0, the rate is not limited.",
+            20L);
+    private final UnsignedNumberSetting maxPendingLogons = new UnsignedNumberSetting(
+            "mud.net.pendinglogons",
+            "The maximum number of new connections waiting for the game to process their logon. "+
+            "Further connections are refused with a message to try again later. If set to 0, the number is not limited.",
+            200L);
+    private final UnsignedNumberSetting logonsPerTick = new UnsignedNumberSetting(
+            "mud.net.logonspertick",
+            "The maximum number of logons of new connections processed per tick (one second), "+
+            "so that a flood of logons doesn't delay the game. If set to 0, the number is not limited.",
+            50L);
+    private final UnsignedNumberSetting erqThreads = new UnsignedNumberSetting(
+            "mud.erq.threads",
+            "The number of threads running the external requests of the mudlib (name lookups, external programs, outgoing connections).",
+            4L);
+    private final GameDirectorySetting erqDirectory = new GameDirectorySetting(
+            "mud.erq.dir",
+            "The directory holding the external programs the mudlib may run, which may be specified relative to the driver process' working directory. "+
+            "If the path name starts with '${mud.dir.driver}', it is interpreted relative to the mud.dir.driver setting. "+
+            "If not set, no external programs can be run.",
+            false, driverDirectory);
+    private final UnsignedNumberSetting logonTimeout = new UnsignedNumberSetting(
+            "mud.net.logontimeout",
+            "The time in seconds a new connection has to complete its logon, including the TLS handshake or WebSocket upgrade. "+
+            "Connections exceeding it are closed. If set to 0, the time is not limited.",
+            60L);
+    private final UnsignedNumberSetting idleTimeout = new UnsignedNumberSetting(
+            "mud.net.idletimeout",
+            "The time in seconds a connection may go without sending a command before it is closed; "+
+            "this also catches connections which died without being closed. If set to 0, the time is not limited.",
+            3600L);
+    private final UnsignedNumberSetting statsInterval = new UnsignedNumberSetting(
+            "mud.stats.interval",
+            "The interval (in seconds) in which the objects and programs with the highest execution cost are reported in the driver log. "+
+            "If set to 0, no reports are written.",
+            300L);
+    private final UnsignedNumberSetting statsTopCount = new UnsignedNumberSetting(
+            "mud.stats.top",
+            "The number of objects and programs listed in the execution cost report.",
+            10L);
+    private final UnsignedNumberSetting censusInterval = new UnsignedNumberSetting(
+            "mud.census.interval",
+            "The interval (in seconds) in which a census of the memory retained by the objects of each program is taken "+
+            "and reported in the driver log. A census is also taken when the memory use reaches mud.memorythreshold.evict. "+
+            "If set to 0, no periodic census is taken.",
+            0L);
+    private final UnsignedNumberSetting censusSlice = new UnsignedNumberSetting(
+            "mud.census.slice",
+            "The time (in milliseconds) a memory census may take per game loop pass; a census of a large game is spread over many passes.",
+            2L);
+    private final BooleanSetting journalRecord = new BooleanSetting(
+            "mud.journal.record",
+            "If enabled, the input of all connections and the timer ticks are recorded into a journal in the driver log directory, "+
+            "which can be replayed with the --replay option to compare the performance of driver versions on real traffic. "+
+            "The journal contains all input, including passwords - keep it private.",
+            false);
+    private final UnsignedNumberSetting slowPassThreshold = new UnsignedNumberSetting(
+            "mud.slowpass.threshold",
+            "The time (in milliseconds) after which a game loop pass counts as slow: the driver then samples what the game is doing, "+
+            "and writes a report into the driver log directory (at most one per minute). If set to 0, slow passes are not watched.",
+            100L);
+    private final BooleanSetting configWatch = new BooleanSetting(
+            "mud.config.watch",
+            "If enabled, the settings file is checked for changes once per second, and the changed settings take effect without a restart. "+
+            "Settings which are only read at startup, like the directories and ports, keep their values until the next restart.",
+            true);
 
     /*
      * This list tracks all settings as they are defined.
@@ -75,6 +225,36 @@ public class ConfigurationLoader {
         allSettings.add(driverLogDirectory);
         allSettings.add(mudLogDirectory);
         allSettings.add(memoryReserve);
+        allSettings.add(memoryEvictThreshold);
+        allSettings.add(memoryNoLoginThreshold);
+        allSettings.add(memoryShutdownThreshold);
+        allSettings.add(port);
+        allSettings.add(ioMode);
+        allSettings.add(outputLimit);
+        allSettings.add(mccp);
+        allSettings.add(webSocketPort);
+        allSettings.add(tlsPort);
+        allSettings.add(tlsKeystore);
+        allSettings.add(tlsPassword);
+        allSettings.add(commandQueueLimit);
+        allSettings.add(commandsPerTick);
+        allSettings.add(evalCostPerTick);
+        allSettings.add(evalCostLimit);
+        allSettings.add(acceptRate);
+        allSettings.add(addressAcceptRate);
+        allSettings.add(maxPendingLogons);
+        allSettings.add(logonsPerTick);
+        allSettings.add(erqThreads);
+        allSettings.add(erqDirectory);
+        allSettings.add(logonTimeout);
+        allSettings.add(idleTimeout);
+        allSettings.add(statsInterval);
+        allSettings.add(statsTopCount);
+        allSettings.add(censusInterval);
+        allSettings.add(censusSlice);
+        allSettings.add(journalRecord);
+        allSettings.add(slowPassThreshold);
+        allSettings.add(configWatch);
     }
 
     /**
@@ -88,34 +268,98 @@ public class ConfigurationLoader {
      * @return {@code true} if the file was successfully loaded.
      */
     public boolean loadProperties(String propertyFileName, Properties overrideProperties, Configuration config) {
+        List<String> warnings = new ArrayList<>();
+        List<String> errors = loadProperties(propertyFileName, overrideProperties, false, config, warnings);
+        for (String warning : warnings) {
+            System.err.println("Warning: ".concat(warning));
+        }
+        if (errors.size() == 1 && errors.get(0).startsWith("Problem loading ")) {
+            System.err.println("Error: ".concat(errors.get(0)));
+        } else if (!errors.isEmpty()) {
+            System.err.println("Error: Property validation problems loading the configuration '" + propertyFileName + "':");
+            for (String entry : errors) {
+                System.err.println("  " + entry);
+            }
+        }
+        return errors.isEmpty();
+    }
+
+    /**
+     * Load the settings from the given input source and/or the override properties, and validate them,
+     * collecting the problems instead of printing them.
+     *
+     * @param propertyFileName The name of the settings file in properties format.
+     * @param overrideProperties A manually created set of properties, overriding those in the settings file. If this set
+     *          is not empty, the {@code propertyFileName} need not exist, unless {@code fileRequired} is set.
+     * @param fileRequired If {@code true}, a settings file which can't be read is an error even with override properties.
+     * @param config The configuration class to load the data into; it is left unchanged if there are errors.
+     * @param warnings The list to add the warnings to.
+     * @return A list of errors, empty if the configuration was loaded.
+     */
+    List<String> loadProperties(String propertyFileName, Properties overrideProperties, boolean fileRequired, Configuration config,
+                                List<String> warnings) {
         Properties properties = new Properties();
         try (InputStream in = new FileInputStream(propertyFileName)) {
             properties.load(in);
         } catch (IOException ioe) {
             final String message = (ioe instanceof FileNotFoundException) ? "File not found" : ioe.toString();
-            if (overrideProperties.isEmpty()) {
-                System.err.println("Error: Problem loading ".concat(propertyFileName).concat(": ").concat(message));
-                return false;
+            if (fileRequired || overrideProperties.isEmpty()) {
+                List<String> errors = new ArrayList<>();
+                errors.add("Problem loading ".concat(propertyFileName).concat(": ").concat(message));
+                return errors;
             }
-            System.err.println("Warning: Problem loading ".concat(propertyFileName).concat(": ").concat(message));
+            warnings.add("Problem loading ".concat(propertyFileName).concat(": ").concat(message));
         }
 
         List<String> errors = loadProperties(properties, overrideProperties, allSettings);
-
-        if (!errors.isEmpty()) {
-            System.err.println("Error: Property validation problems loading the configuration '" + propertyFileName + "':");
-            for (String entry : errors) {
-                System.err.println("  " + entry);
+        if (errors.isEmpty() && tlsPort.getEffectiveValue() != 0L && tlsKeystore.getEffectiveValue() == null) {
+            errors.add("Setting '" + tlsKeystore.name + "': Setting is required if '" + tlsPort.name + "' is set.");
+        }
+        for (UnsignedNumberSetting threshold : Arrays.asList(memoryEvictThreshold, memoryNoLoginThreshold, memoryShutdownThreshold)) {
+            if (threshold.getEffectiveValue() != null && threshold.getEffectiveValue() > 100L) {
+                errors.add("Setting '" + threshold.name + "': Value must not exceed 100.");
             }
-        } else {
+        }
+
+        if (errors.isEmpty()) {
             config.setMudDirectory(mudDirectory.getEffectiveValue());
             config.setDriverDirectory(driverDirectory.getEffectiveValue());
             config.setMudLogDirectory(mudLogDirectory.getEffectiveValue());
             config.setDriverLogDirectory(driverLogDirectory.getEffectiveValue());
             config.setMemoryReserve(memoryReserve.getEffectiveValue());
+            config.setMemoryEvictThreshold(memoryEvictThreshold.getEffectiveValue());
+            config.setMemoryNoLoginThreshold(memoryNoLoginThreshold.getEffectiveValue());
+            config.setMemoryShutdownThreshold(memoryShutdownThreshold.getEffectiveValue());
+            config.setPort(port.getEffectiveValue());
+            config.setIoMode(ioMode.getEffectiveValue());
+            config.setOutputLimit(outputLimit.getEffectiveValue());
+            config.setMccp(mccp.getEffectiveValue());
+            config.setWebSocketPort(webSocketPort.getEffectiveValue());
+            config.setTlsPort(tlsPort.getEffectiveValue());
+            config.setTlsKeystore(tlsKeystore.getEffectiveValue());
+            config.setTlsPassword(tlsPassword.getEffectiveValue());
+            config.setCommandQueueLimit(commandQueueLimit.getEffectiveValue());
+            config.setCommandsPerTick(commandsPerTick.getEffectiveValue());
+            config.setEvalCostPerTick(evalCostPerTick.getEffectiveValue());
+            config.setEvalCostLimit(evalCostLimit.getEffectiveValue());
+            config.setAcceptRate(acceptRate.getEffectiveValue());
+            config.setAddressAcceptRate(addressAcceptRate.getEffectiveValue());
+            config.setMaxPendingLogons(maxPendingLogons.getEffectiveValue());
+            config.setLogonsPerTick(logonsPerTick.getEffectiveValue());
+            config.setErqThreads(erqThreads.getEffectiveValue());
+            config.setErqDirectory(erqDirectory.getEffectiveValue());
+            config.setLogonTimeout(logonTimeout.getEffectiveValue());
+            config.setIdleTimeout(idleTimeout.getEffectiveValue());
+            config.setStatsInterval(statsInterval.getEffectiveValue());
+            config.setStatsTopCount(statsTopCount.getEffectiveValue());
+            config.setCensusInterval(censusInterval.getEffectiveValue());
+            config.setCensusSlice(censusSlice.getEffectiveValue());
+            config.setJournalRecord(journalRecord.getEffectiveValue());
+            config.setSlowPassThreshold(slowPassThreshold.getEffectiveValue());
+            config.setConfigWatch(configWatch.getEffectiveValue());
         }
 
-        return errors.isEmpty();
+        return errors;
     }
 
     /**
@@ -17,6 +17,7 @@ public class ConfigurationModule extends AbstractModule {
      */
     @Override
     protected void configure() {
-        bind(Configuration.class).in(Singleton.class);
+        bind(LiveConfiguration.class).in(Singleton.class);
+        bind(Configuration.class).toProvider(LiveConfiguration.class);
     }
 }
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.config;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Setting holding one of the constants of an enum. The value is matched case-insensitively
+ * against the constant names.
+ *
+ * @param <E> The enum type of the setting value.
+ */
+public class EnumSetting<E extends Enum<E>> extends SettingBase<E> {
+
+    private final Class<E> enumType;
+
+    public EnumSetting(String name, String description, Class<E> enumType, E defaultValue) {
+        super(name, description, defaultValue);
+        this.enumType = enumType;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.config.SettingBase#parseValueImpl(java.lang.String)
+     */
+    @Override
+    protected String parseValueImpl(String v) {
+        if (! StringUtils.isEmpty(v)) {
+            for (E constant : enumType.getEnumConstants()) {
+                if (constant.name().equalsIgnoreCase(v)) {
+                    value = constant;
+                    return null;
+                }
+            }
+            return "'" + v + "' is not one of " + Arrays.toString(enumType.getEnumConstants()).toLowerCase() + ".";
+        }
+        return null;
+    }
+}
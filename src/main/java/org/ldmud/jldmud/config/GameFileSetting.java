@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.config;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A setting holding a file, which must exist, and can be relative to given root directories.
+ * The effective value will be the absolute canonical file path.
+ */
+public class GameFileSetting extends SettingBase<File> {
+
+    File effectiveValue;
+    DirectorySetting rootDirectories[];
+
+    public GameFileSetting(String name, String description, boolean required, DirectorySetting... rootDirectories) {
+        super(name, description, required);
+        this.rootDirectories = rootDirectories;
+    }
+
+    @Override
+    public String parseValueImpl(String v) {
+        if (!StringUtils.isEmpty(v)) {
+            File f = null;
+            for (DirectorySetting entry : rootDirectories) {
+                String prefix = "${"+entry.name+"}";
+                if (v.startsWith(prefix)) {
+                    if (entry.getEffectiveValue() == null) {
+                        return "'" + v + "' references uninitialized setting '" + entry.name+"'.";
+                    }
+                    f = new File(entry.getEffectiveValue(), StringUtils.removeStart(v.substring(prefix.length()), "/"));
+                    break;
+                }
+            }
+            if (f == null) {
+                if (v.startsWith("${")) {
+                    return "'" + v + "' references an undefined setting.";
+                }
+                f = new File(v);
+            }
+            if (!f.isFile()) {
+                return "'" + v + "' doesn't exist, or is not a file.";
+            }
+            try {
+                effectiveValue = f.getAbsoluteFile().getCanonicalFile();
+            } catch (IOException e) {
+                return "'" + v + "' can't be resolved to a canonical path.";
+            }
+            value = new File(v);
+        }
+
+        return null;
+    }
+
+    @Override
+    public File getEffectiveValue() {
+        return effectiveValue;
+    }
+}
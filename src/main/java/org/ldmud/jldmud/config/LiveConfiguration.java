@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.config;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+/**
+ * Singleton class holding the current {@link Configuration} snapshot, and replacing it when the
+ * settings file changes.<p/>
+ *
+ * The modules reading settings while the game runs keep this instance instead of a {@link Configuration},
+ * and get the current snapshot with {@link #get()} for every use: a read of a volatile field, without locks.
+ * A reload reads the settings file through the {@link ConfigurationLoader}, and publishes the new snapshot
+ * only if it validates; otherwise the current one stays in effect. The settings only read at startup,
+ * like the directories and ports, keep their startup values; changing them is logged as needing a restart.<p/>
+ *
+ * A reload is triggered by the game loop once per second if the settings file was modified (unless
+ * disabled by {@code mud.config.watch}), or via JMX.
+ */
+public class LiveConfiguration implements Provider<Configuration>, LiveConfigurationMXBean {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * The JMX name under which the administration is published.
+     */
+    static final String MBEAN_NAME = "org.ldmud.jldmud:type=Configuration";
+
+    /**
+     * A setting which is only read at startup.
+     */
+    private static class RestartSetting<T> {
+        private final String name;
+        private final Function<Configuration, T> getter;
+        private final BiConsumer<Configuration, T> setter;
+
+        RestartSetting(String name, Function<Configuration, T> getter, BiConsumer<Configuration, T> setter) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        /**
+         * Copy the value of the setting from the current to the new configuration.
+         *
+         * @return {@code true} if the new configuration had a different value.
+         */
+        boolean keep(Configuration current, Configuration config) {
+            T value = getter.apply(current);
+            boolean changed = !Objects.equals(value, getter.apply(config));
+            setter.accept(config, value);
+            return changed;
+        }
+    }
+
+    // The settings which take effect only after a restart.
+    private static final List<RestartSetting<?>> RESTART_SETTINGS = Arrays.asList(
+            new RestartSetting<>("mud.dir.driver", Configuration::getDriverDirectory, Configuration::setDriverDirectory),
+            new RestartSetting<>("mud.dir.lib", Configuration::getMudDirectory, Configuration::setMudDirectory),
+            new RestartSetting<>("mud.dir.driverlog", Configuration::getDriverLogDirectory, Configuration::setDriverLogDirectory),
+            new RestartSetting<>("mud.dir.gamelog", Configuration::getMudLogDirectory, Configuration::setMudLogDirectory),
+            new RestartSetting<>("mud.memoryreserve", Configuration::getMemoryReserve, Configuration::setMemoryReserve),
+            new RestartSetting<>("mud.memorythreshold.evict", Configuration::getMemoryEvictThreshold, Configuration::setMemoryEvictThreshold),
+            new RestartSetting<>("mud.memorythreshold.nologin", Configuration::getMemoryNoLoginThreshold, Configuration::setMemoryNoLoginThreshold),
+            new RestartSetting<>("mud.memorythreshold.shutdown", Configuration::getMemoryShutdownThreshold, Configuration::setMemoryShutdownThreshold),
+            new RestartSetting<>("mud.port", Configuration::getPort, Configuration::setPort),
+            new RestartSetting<>("mud.net.iomode", Configuration::getIoMode, Configuration::setIoMode),
+            new RestartSetting<>("mud.ws.port", Configuration::getWebSocketPort, Configuration::setWebSocketPort),
+            new RestartSetting<>("mud.tls.port", Configuration::getTlsPort, Configuration::setTlsPort),
+            new RestartSetting<>("mud.tls.keystore", Configuration::getTlsKeystore, Configuration::setTlsKeystore),
+            new RestartSetting<>("mud.tls.password", Configuration::getTlsPassword, Configuration::setTlsPassword),
+            new RestartSetting<>("mud.net.acceptrate", Configuration::getAcceptRate, Configuration::setAcceptRate),
+            new RestartSetting<>("mud.net.acceptrate.address", Configuration::getAddressAcceptRate, Configuration::setAddressAcceptRate),
+            new RestartSetting<>("mud.net.pendinglogons", Configuration::getMaxPendingLogons, Configuration::setMaxPendingLogons),
+            new RestartSetting<>("mud.erq.threads", Configuration::getErqThreads, Configuration::setErqThreads),
+            new RestartSetting<>("mud.erq.dir", Configuration::getErqDirectory, Configuration::setErqDirectory),
+            new RestartSetting<>("mud.journal.record", Configuration::getJournalRecord, Configuration::setJournalRecord));
+
+    // The current snapshot.
+    private volatile Configuration current;
+
+    // The source of the configuration, and the modification time of the settings file when it was last read.
+    private File settingsFile = null;
+    private Properties overrideProperties = new Properties();
+    private long lastModified = 0;
+
+    // The reload statistics.
+    private long reloadCount = 0;
+    private String[] reloadProblems = new String[0];
+
+    /**
+     * Constructor, holding an empty configuration until one is published.
+     */
+    @Inject
+    LiveConfiguration() {
+        this(new Configuration());
+    }
+
+    /**
+     * Constructor, holding the given configuration until another one is published.
+     *
+     * @param config The configuration, may be {@code null}.
+     */
+    public LiveConfiguration(Configuration config) {
+        super();
+        this.current = config;
+    }
+
+    /**
+     * @return The current configuration snapshot; it must not be modified.
+     */
+    @Override
+    public Configuration get() {
+        return current;
+    }
+
+    /**
+     * Publish the configuration loaded at startup.
+     *
+     * @param config The configuration.
+     * @param settingsFile The settings file it was loaded from.
+     * @param overrideProperties The properties overriding those in the settings file.
+     */
+    public synchronized void publish(Configuration config, File settingsFile, Properties overrideProperties) {
+        this.settingsFile = settingsFile.getAbsoluteFile();
+        this.overrideProperties = overrideProperties;
+        this.lastModified = this.settingsFile.lastModified();
+        this.current = config;
+    }
+
+    /**
+     * Publish the administration via JMX.
+     */
+    public void start() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            log.warn("Can't publish the configuration administration: {}", e.toString());
+        }
+    }
+
+    /**
+     * Withdraw the administration from JMX.
+     */
+    public void stop() {
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.debug("Error withdrawing the configuration administration: {}", e.toString());
+        }
+    }
+
+    /**
+     * Reload the settings file if it was modified since it was last read, unless watching it is disabled;
+     * called by the game loop once per second.
+     */
+    public synchronized void checkForChanges() {
+        Configuration config = current;
+        if (settingsFile == null || config == null || Boolean.FALSE.equals(config.getConfigWatch())) {
+            return;
+        }
+        if (settingsFile.lastModified() != lastModified) {
+            reload();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.config.LiveConfigurationMXBean#reload()
+     */
+    @Override
+    public synchronized boolean reload() {
+        if (settingsFile == null) {
+            reloadProblems = new String[] { "The configuration wasn't loaded from a settings file." };
+            return false;
+        }
+        lastModified = settingsFile.lastModified();
+        Configuration previous = current;
+
+        // The directories may have been given relative to the directory the driver was started in,
+        // so they are passed on as resolved at startup.
+        Properties overrides = new Properties();
+        overrides.putAll(overrideProperties);
+        for (RestartSetting<?> setting : RESTART_SETTINGS) {
+            Object value = setting.getter.apply(previous);
+            if (value instanceof File && !overrides.containsKey(setting.name)) {
+                overrides.setProperty(setting.name, ((File) value).getAbsolutePath());
+            }
+        }
+
+        Configuration config = new Configuration();
+        List<String> warnings = new ArrayList<>();
+        List<String> errors = new ConfigurationLoader().loadProperties(settingsFile.getPath(), overrides, true, config, warnings);
+        for (String warning : warnings) {
+            log.warn("Reloading the configuration: {}", warning);
+        }
+        if (!errors.isEmpty()) {
+            log.error("The configuration {} is invalid, keeping the current one: {}", settingsFile, String.join("; ", errors));
+            reloadProblems = errors.toArray(new String[errors.size()]);
+            return false;
+        }
+
+        for (RestartSetting<?> setting : RESTART_SETTINGS) {
+            if (setting.keep(previous, config)) {
+                log.warn("Setting '{}' was changed, but takes effect only after a restart.", setting.name);
+            }
+        }
+        current = config;
+        reloadCount++;
+        reloadProblems = new String[0];
+        log.info("Configuration reloaded from {}", settingsFile);
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.config.LiveConfigurationMXBean#getSettingsFile()
+     */
+    @Override
+    public synchronized String getSettingsFile() {
+        return settingsFile != null ? settingsFile.getPath() : null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.config.LiveConfigurationMXBean#getReloadCount()
+     */
+    @Override
+    public synchronized long getReloadCount() {
+        return reloadCount;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.config.LiveConfigurationMXBean#getReloadProblems()
+     */
+    @Override
+    public synchronized String[] getReloadProblems() {
+        return reloadProblems.clone();
+    }
+}
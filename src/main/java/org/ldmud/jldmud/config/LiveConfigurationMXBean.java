@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.config;
+
+/**
+ * The administration of the live configuration, published via JMX under the name
+ * {@value LiveConfiguration#MBEAN_NAME}.
+ */
+public interface LiveConfigurationMXBean {
+
+    /**
+     * @return The path of the settings file, or {@code null} if the configuration wasn't loaded from one.
+     */
+    String getSettingsFile();
+
+    /**
+     * @return The number of times the configuration was reloaded successfully.
+     */
+    long getReloadCount();
+
+    /**
+     * @return The problems of the last reload; empty if it succeeded.
+     */
+    String[] getReloadProblems();
+
+    /**
+     * Reload the settings file, and publish the new configuration if it is valid.
+     *
+     * @return {@code true} if the new configuration was published.
+     */
+    boolean reload();
+}
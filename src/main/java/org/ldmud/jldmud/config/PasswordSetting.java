@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.config;
+
+/**
+ * Setting holding a password. The value is taken verbatim, and never shown in the
+ * description of the effective settings.
+ */
+public class PasswordSetting extends SettingBase<String> {
+
+    public PasswordSetting(String name, String description, boolean required) {
+        super(name, description, required);
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.config.SettingBase#parseValueImpl(java.lang.String)
+     */
+    @Override
+    protected String parseValueImpl(String v) {
+        value = v;
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.config.SettingBase#effective()
+     */
+    @Override
+    public String effective() {
+        StringBuilder sb = new StringBuilder("# ");
+        if (!required) {
+            sb.append("Optional: ");
+        }
+        sb.append(description).append(System.lineSeparator());
+        sb.append("# ").append(name).append("=").append(value != null ? "<hidden>" : "");
+        sb.append(System.lineSeparator());
+        return ConfigurationLoader.wrap(sb.toString());
+    }
+}
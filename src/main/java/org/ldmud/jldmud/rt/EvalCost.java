@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+
+import com.google.inject.Inject;
+
+/**
+ * The evaluation cost budget of the current execution, guarding the game thread against
+ * runaway mudlib code.<p/>
+ *
+ * The executed code charges the budget at every backward branch and every call, with
+ * {@link #tick()} or {@link #charge(int)}: that is one decrement and one compare of a plain
+ * field, cheap enough to be always on. Once the budget is used up, a
+ * {@link TooLongEvaluationException} is thrown. As in LDMud, the error can be caught; the catching
+ * code gets a small reserve of {@link #CATCH_RESERVE} to handle it, and once that is used up as
+ * well, every further charge throws again.<p/>
+ *
+ * Executions don't nest: the budget is started by {@link #begin()} when the main thread starts
+ * an execution (a command, a heartbeat, a call-out...), and read by {@link #end()} afterwards.
+ * The class is used by the main thread only.
+ */
+public class EvalCost {
+
+    /**
+     * The evaluation cost granted to the code catching a {@link TooLongEvaluationException}.
+     */
+    public static final long CATCH_RESERVE = 2000L;
+
+    /**
+     * The default limit, if not configured.
+     */
+    static final long DEFAULT_LIMIT = 1000000L;
+
+    // External modules.
+    private final LiveConfiguration liveConfig;
+
+    // The budget left in the current execution.
+    private long remaining = Long.MAX_VALUE;
+
+    // The budget granted to the current execution so far, including the catch reserve.
+    private long granted = Long.MAX_VALUE;
+
+    // {@code true} if the catch reserve has been granted in the current execution.
+    private boolean reserveGranted = false;
+
+    /**
+     * Constructor
+     *
+     * @param liveConfig The {@link LiveConfiguration} holding the current configuration, which may be {@code null}.
+     */
+    @Inject
+    EvalCost(LiveConfiguration liveConfig) {
+        super();
+        this.liveConfig = liveConfig;
+    }
+
+    /**
+     * Start the budget of a new execution.
+     */
+    public void begin() {
+        long limit = getLimit();
+        granted = limit != 0 ? limit : Long.MAX_VALUE;
+        remaining = granted;
+        reserveGranted = false;
+    }
+
+    /**
+     * End the current execution.
+     *
+     * @return The evaluation cost used by the execution.
+     */
+    public long end() {
+        long used = getUsed();
+        granted = Long.MAX_VALUE;
+        remaining = Long.MAX_VALUE;
+        return used;
+    }
+
+    /**
+     * Charge one unit, e.g. for a backward branch or call.
+     *
+     * @throws TooLongEvaluationException if the budget is used up.
+     */
+    public void tick() {
+        if (--remaining < 0) {
+            exceeded();
+        }
+    }
+
+    /**
+     * Charge a number of units, e.g. for an expensive operation.
+     *
+     * @param cost The cost to charge.
+     * @throws TooLongEvaluationException if the budget is used up.
+     */
+    public void charge(int cost) {
+        if ((remaining -= cost) < 0) {
+            exceeded();
+        }
+    }
+
+    /**
+     * @return The evaluation cost used so far in the current execution.
+     */
+    public long getUsed() {
+        return granted - Math.max(remaining, 0L);
+    }
+
+    /**
+     * @return The evaluation cost left in the current execution.
+     */
+    public long getRemaining() {
+        return Math.max(remaining, 0L);
+    }
+
+    /**
+     * The budget is used up: grant the catch reserve the first time, and throw.
+     * This is kept out of {@link #tick()} so that the fast path stays small enough to be inlined.
+     */
+    private void exceeded() {
+        long used = granted - remaining;
+        remaining = 0;
+        if (!reserveGranted) {
+            reserveGranted = true;
+            granted += CATCH_RESERVE;
+            remaining = CATCH_RESERVE;
+        }
+        throw new TooLongEvaluationException(used);
+    }
+
+    /**
+     * @return The maximum evaluation cost of one execution, or 0 if unlimited.
+     */
+    long getLimit() {
+        Configuration config = liveConfig.get();
+        return config != null && config.getEvalCostLimit() != null ? config.getEvalCostLimit() : DEFAULT_LIMIT;
+    }
+}
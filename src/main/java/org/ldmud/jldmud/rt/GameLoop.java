@@ -4,10 +4,26 @@
  */
 package org.ldmud.jldmud.rt;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.ldmud.jldmud.rt.erq.ErqService;
+import org.ldmud.jldmud.rt.jfr.CommandEvent;
+import org.ldmud.jldmud.rt.jfr.GameLoopPassEvent;
+import org.ldmud.jldmud.rt.jfr.GameLoopPhaseEvent;
+import org.ldmud.jldmud.rt.journal.InputJournal;
+import org.ldmud.jldmud.rt.journal.JournalReader;
+import org.ldmud.jldmud.rt.journal.JournalRecord;
+import org.ldmud.jldmud.rt.journal.ReplayStatistics;
 import org.ldmud.jldmud.rt.net.Communicator;
 import org.ldmud.jldmud.rt.net.Interactive;
+import org.ldmud.jldmud.rt.object.CostAccounting;
+import org.ldmud.jldmud.rt.object.MemoryCensus;
+import org.ldmud.jldmud.rt.object.MudObject;
 import org.ldmud.jldmud.rt.object.MudObjects;
 
 import com.google.inject.Inject;
@@ -18,11 +34,52 @@ import com.google.inject.Inject;
 public class GameLoop {
     private Logger log = LogManager.getLogger(this.getClass());
 
+    /**
+     * The message sent to all players when the game shuts down for lack of memory.
+     */
+    static final String SHUTDOWN_MESSAGE = "The game is running out of memory and is shutting down - please come back later.\r\n";
+
+    /**
+     * The GMCP message a client sends to measure the round-trip time, and which the driver echoes.
+     */
+    static final String GMCP_PING = "Core.Ping";
+
+    /**
+     * The phases of a game loop pass, as recorded in the {@link GameLoopPhaseEvent}s and
+     * measured by the {@link PhaseAllocations}.
+     */
+    public enum Phase {
+        /** Reacting to memory pressure. */
+        MEMORY,
+        /** The periodic tasks of a new tick. */
+        PERIODIC,
+        /** Delivering the results of external requests. */
+        ERQ,
+        /** Executing the commands of the interactives. */
+        COMMANDS,
+        /** Removing the destroyed objects. */
+        CLEANUP,
+        /** Sending the output of the pass. */
+        OUTPUT
+    }
+
     // External modules.
     private MemoryReserve memoryReserve;
     private MudObjects objects;
     private Communicator communicator;
     private GameStateSignals gameStateSignals;
+    private ErqService erq;
+    private MemoryMonitor memoryMonitor;
+    private CostAccounting costs;
+    private EvalCost evalCost;
+    private MemoryCensus census;
+    private InputJournal journal;
+    private PhaseAllocations allocations;
+    private SlowPassWatchdog watchdog;
+    private LiveConfiguration liveConfig;
+
+    // The number of commands executed in the current pass.
+    private int passCommands;
 
     // The thread pinging the game loop once every second, and the runnable class.
     private Thread oneSecondTimerThread = null;
@@ -34,14 +91,36 @@ public class GameLoop {
      * @param memoryReserve The {@link MemoryReserve} instance.
      * @param objects The {@link MudObjects} management class.
      * @param communicator The {@link Communicator} network management class.
+     * @param gameStateSignals The {@link GameStateSignals} instance.
+     * @param erq The {@link ErqService} running external requests.
+     * @param memoryMonitor The {@link MemoryMonitor} watching the heap usage.
+     * @param costs The {@link CostAccounting} of the executions.
+     * @param evalCost The {@link EvalCost} budget of the executions.
+     * @param census The {@link MemoryCensus} of the objects.
+     * @param journal The {@link InputJournal} recording the input.
+     * @param allocations The {@link PhaseAllocations} of the game thread.
+     * @param watchdog The {@link SlowPassWatchdog} reporting slow passes.
+     * @param liveConfig The {@link LiveConfiguration} reloading the changed settings.
      */
     @Inject
-    GameLoop(MemoryReserve memoryReserve, MudObjects objects, Communicator communicator, GameStateSignals gameStateSignals) {
+    GameLoop(MemoryReserve memoryReserve, MudObjects objects, Communicator communicator, GameStateSignals gameStateSignals,
+             ErqService erq, MemoryMonitor memoryMonitor, CostAccounting costs, EvalCost evalCost,
+             MemoryCensus census, InputJournal journal, PhaseAllocations allocations,
+             SlowPassWatchdog watchdog, LiveConfiguration liveConfig) {
         super();
         this.memoryReserve = memoryReserve;
         this.objects = objects;
         this.communicator = communicator;
         this.gameStateSignals = gameStateSignals;
+        this.erq = erq;
+        this.memoryMonitor = memoryMonitor;
+        this.costs = costs;
+        this.evalCost = evalCost;
+        this.census = census;
+        this.journal = journal;
+        this.allocations = allocations;
+        this.watchdog = watchdog;
+        this.liveConfig = liveConfig;
 
         oneSecondTimerThreadInstance = new OneSecondTimerThread();
         oneSecondTimerThread = new Thread(oneSecondTimerThreadInstance);
@@ -54,53 +133,86 @@ public class GameLoop {
     public void run() {
         log.info("Main loop start");
 
+        try {
+            communicator.start();
+        } catch (IOException e) {
+            log.error("Can't start the network communication: {}", e.toString());
+            communicator.shutdown();
+            return;
+        }
+
+        erq.start();
+        memoryMonitor.start();
         oneSecondTimerThread.start();
+        journal.start();
+        allocations.start();
+        watchdog.start(Thread.currentThread());
+        liveConfig.start();
 
         try {
             while (!gameStateSignals.isGameIsBeingShutdown()) {
-                if (!communicator.areInteractivesPending()) {
-                    log.debug("No command pending - waiting for signal");
-                    gameStateSignals.waitForSignal();
-                }
+                // Every pass processes all work signalled before it, so with no new signal
+                // there is nothing to do.
+                int events = gameStateSignals.waitForSignal();
 
-                if (gameStateSignals.isGameIsBeingShutdown()) {
+                if ((events & GameStateSignals.SHUTDOWN) != 0 || gameStateSignals.isGameIsBeingShutdown()) {
                     break;
                 }
 
-                log.debug("Executing loop");
+                log.debug("Executing loop for events {}", events);
                 long loopStartTime = System.currentTimeMillis();
+                GameLoopPassEvent passEvent = new GameLoopPassEvent();
+                passEvent.begin();
+                passCommands = 0;
+                journal.pass(events);
+                allocations.startPass((events & GameStateSignals.TIMER) != 0);
+                watchdog.passStarted(events);
 
+                GameLoopPhaseEvent phaseEvent = startPhase(Phase.MEMORY);
                 if (! memoryReserve.isAvailable() ) {
                     log.warn("Memory reserve has been freed - initiating shutdown");
                     memoryReserve.reset();
-                    // TODO: Initiate graceful shutdown, but continue to run
+                    initiateShutdown();
+                } else if ((events & GameStateSignals.MEMORY) != 0) {
+                    handleMemoryPressure(memoryMonitor.getLevel());
                 }
+                endPhase(phaseEvent, Phase.MEMORY);
 
                 // TODO: Cleanup stuff, e.g. replace existing programs
-                // TODO: Check soft malloc limit?
-
-                // Handle the next pending interactive instance.
-                Interactive interactive = communicator.nextPendingInteractive();
-                if (interactive != null) {
-                    if (interactive.getMudObject() == null) {
-                        // TODO: New connection
-                    } else {
-                        // TODO: Execute command
-                    }
+
+                if ((events & GameStateSignals.TIMER) != 0) {
+                    periodicTasks();
                 }
 
-                // Periodic tasks
-                if (gameStateSignals.isOneSecondTimerSignal()) {
-                    log.debug("Executing periodic tasks");
-                    gameStateSignals.setOneSecondTimerSignal(false);
+                // Deliver the results of completed external requests.
+                if ((events & GameStateSignals.ERQ) != 0) {
+                    phaseEvent = startPhase(Phase.ERQ);
+                    erq.processCompletions();
+                    endPhase(phaseEvent, Phase.ERQ);
+                }
 
-                    // TODO: Heartbeat
-                    // TODO: Call-out
-                    // TODO: Swap, Reset, Cleanup
+                // Handle the pending interactives round-robin, one command each per round, until all input
+                // is processed or the interactives used up their budget for this tick. Besides new input,
+                // a new tick can make interactives pending by renewing their budgets.
+                if ((events & (GameStateSignals.IO | GameStateSignals.TIMER)) != 0) {
+                    phaseEvent = startPhase(Phase.COMMANDS);
+                    Interactive interactive;
+                    while ((interactive = communicator.nextPendingInteractive()) != null) {
+                        handleInteractive(interactive);
+                    }
+                    endPhase(phaseEvent, Phase.COMMANDS);
                 }
 
-                // Truly drop all previously destroyed objects.
-                objects.removeDestroyedObjects();
+                finishPass();
+                allocations.endPass();
+                watchdog.passEnded();
+
+                passEvent.end();
+                if (passEvent.shouldCommit()) {
+                    passEvent.signals = events;
+                    passEvent.commands = passCommands;
+                    passEvent.commit();
+                }
 
                 log.debug("Loop executed in {} ms", System.currentTimeMillis() - loopStartTime);
             }
@@ -114,11 +226,288 @@ public class GameLoop {
         log.info("Game is being shut down");
         oneSecondTimerThreadInstance.setStopTimer(true);
         // TODO: General shutdown handling here?
+        journal.stop();
+        allocations.stop();
+        watchdog.stop();
+        liveConfig.stop();
+        memoryMonitor.stop();
+        erq.shutdown();
         communicator.shutdown();
 
         log.info("Main loop end");
     }
 
+    /**
+     * Replay an input journal as fast as possible, instead of running the game. Every recorded pass
+     * is executed with the recorded input, in the recorded order, but without network, timer,
+     * memory events or external requests.
+     *
+     * @param reader The journal to replay.
+     * @return The latencies of the replayed passes.
+     * @throws IOException if the journal can't be read.
+     */
+    public ReplayStatistics replay(JournalReader reader) throws IOException {
+        log.info("Replay start");
+        ReplayStatistics statistics = new ReplayStatistics();
+
+        // The interactives standing in for the recorded ones, by recorded id.
+        Map<Long, Interactive> interactives = new HashMap<>();
+
+        long replayStart = System.nanoTime();
+        long passStart = 0;
+        long recordedTime = 0;
+        boolean inPass = false;
+        boolean tick = false;
+        GameLoopPhaseEvent phaseEvent = null;
+
+        JournalRecord record;
+        while ((record = reader.next()) != null) {
+            if (record.getType() == JournalRecord.Type.PASS) {
+                if (inPass) {
+                    endPhase(phaseEvent, Phase.COMMANDS);
+                    finishPass();
+                    allocations.endPass();
+                    statistics.addPass(System.nanoTime() - passStart, tick);
+                }
+                inPass = true;
+                passStart = System.nanoTime();
+                recordedTime = record.getTime();
+                tick = (record.getSignals() & GameStateSignals.TIMER) != 0;
+                allocations.startPass(tick);
+                if (tick) {
+                    periodicTasks();
+                }
+                phaseEvent = startPhase(Phase.COMMANDS);
+                continue;
+            }
+
+            // The recording may have started after the logon of an interactive.
+            Interactive interactive = interactives.get(record.getInteractiveId());
+            if (interactive == null) {
+                interactive = new Interactive(communicator);
+                interactives.put(record.getInteractiveId(), interactive);
+                logon(interactive);
+            }
+
+            switch (record.getType()) {
+                case COMMAND:
+                case REDACTED:
+                    executeCommand(interactive, record.getText());
+                    statistics.addCommand();
+                    break;
+                case GMCP:
+                    handleGmcp(interactive, record.getText());
+                    break;
+                case DISCONNECT:
+                    interactives.remove(record.getInteractiveId());
+                    interactive.remove();
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (inPass) {
+            endPhase(phaseEvent, Phase.COMMANDS);
+            finishPass();
+            allocations.endPass();
+            statistics.addPass(System.nanoTime() - passStart, tick);
+        }
+        statistics.setTimes(recordedTime, System.nanoTime() - replayStart);
+
+        log.info("Replay end");
+        return statistics;
+    }
+
+    /**
+     * Start a phase of the current pass.
+     *
+     * @param phase The phase.
+     * @return The event recording the phase, to be passed to {@link #endPhase(GameLoopPhaseEvent, Phase)}.
+     */
+    private GameLoopPhaseEvent startPhase(Phase phase) {
+        allocations.startPhase();
+        watchdog.phaseStarted(phase);
+        return GameLoopPhaseEvent.start(phase.name());
+    }
+
+    /**
+     * End a phase of the current pass.
+     *
+     * @param phaseEvent The event returned by {@link #startPhase(Phase)}.
+     * @param phase The phase.
+     */
+    private void endPhase(GameLoopPhaseEvent phaseEvent, Phase phase) {
+        phaseEvent.finish();
+        allocations.endPhase(phase);
+    }
+
+    /**
+     * Execute the periodic tasks of a new tick.
+     */
+    private void periodicTasks() {
+        log.debug("Executing periodic tasks");
+        GameLoopPhaseEvent phaseEvent = startPhase(Phase.PERIODIC);
+
+        communicator.nextTick();
+        communicator.checkTimeouts();
+        costs.nextTick();
+        census.nextTick();
+        liveConfig.checkForChanges();
+
+        // TODO: Heartbeat
+        // TODO: Call-out
+        // TODO: Swap, Reset, Cleanup
+        endPhase(phaseEvent, Phase.PERIODIC);
+    }
+
+    /**
+     * End a game loop pass: clean up, and send the output.
+     */
+    private void finishPass() {
+        // Truly drop all previously destroyed objects, and continue a memory census.
+        GameLoopPhaseEvent phaseEvent = startPhase(Phase.CLEANUP);
+        objects.removeDestroyedObjects();
+        census.step();
+        endPhase(phaseEvent, Phase.CLEANUP);
+
+        // Send the output generated in this pass.
+        phaseEvent = startPhase(Phase.OUTPUT);
+        communicator.flushOutput();
+        endPhase(phaseEvent, Phase.OUTPUT);
+    }
+
+    /**
+     * React to a change of the memory pressure. The stages are cumulative.
+     *
+     * @param level The current level of memory pressure.
+     */
+    private void handleMemoryPressure(MemoryMonitor.Level level) {
+        if (level.compareTo(MemoryMonitor.Level.EVICT) >= 0) {
+            communicator.trimPools();
+            if (census.start()) {
+                log.info("High memory use - taking a memory census");
+            }
+            // TODO: Swap out objects, and evict caches.
+        }
+        communicator.setLogonsRefused(level.compareTo(MemoryMonitor.Level.NO_LOGIN) >= 0);
+        if (level == MemoryMonitor.Level.SHUTDOWN) {
+            log.warn("Running out of memory - initiating shutdown");
+            initiateShutdown();
+        }
+    }
+
+    /**
+     * Shut down the game gracefully: tell the players, and let the loop finish the current pass,
+     * so that their output is still sent.
+     */
+    private void initiateShutdown() {
+        communicator.setLogonsRefused(true);
+        communicator.broadcast(SHUTDOWN_MESSAGE, communicator.getInteractives());
+        // TODO: Let the master save the game state.
+        gameStateSignals.setGameIsBeingShutdown(true);
+    }
+
+    /**
+     * Process the pending event or data of an {@link Interactive}.
+     *
+     * @param interactive The {@link Interactive} to process.
+     */
+    private void handleInteractive(Interactive interactive) {
+        switch (interactive.getState()) {
+            case NEW:
+                journal.logon(interactive.getId());
+                logon(interactive);
+                break;
+            case ACTIVE:
+                if (interactive.hasCommandBudget()) {
+                    String command = interactive.nextInputLine();
+                    if (command != null) {
+                        journal.command(interactive.getId(), command, interactive.isInputRedacted());
+                        executeCommand(interactive, command);
+                    }
+                }
+                if (interactive.hasCommandBudget()) {
+                    String gmcpMessage = interactive.nextGmcpMessage();
+                    if (gmcpMessage != null) {
+                        journal.gmcp(interactive.getId(), gmcpMessage);
+                        handleGmcp(interactive, gmcpMessage);
+                    }
+                }
+                break;
+            case CONNECTION_LOST:
+                // TODO: Notify the associated object
+                journal.disconnect(interactive.getId());
+                interactive.remove();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Process the logon of a new {@link Interactive}.
+     *
+     * @param interactive The {@link Interactive}.
+     */
+    private void logon(Interactive interactive) {
+        // TODO: New connection: get the logon object from the master, and call its logon()
+        communicator.logonExecuted();
+        interactive.setState(Interactive.State.ACTIVE);
+    }
+
+    /**
+     * Execute a command of an {@link Interactive}.
+     *
+     * @param interactive The {@link Interactive}.
+     * @param command The command.
+     */
+    private void executeCommand(Interactive interactive, String command) {
+        CommandEvent commandEvent = new CommandEvent();
+        commandEvent.begin();
+        watchdog.executionStarted(interactive.getMudObject(), "command");
+        costs.begin();
+        evalCost.begin();
+        try {
+            // TODO: Execute command
+        } catch (TooLongEvaluationException e) {
+            // The command itself isn't logged, as it may be a password typed at a prompt.
+            MudObject obj = interactive.getMudObject();
+            log.warn("Command of interactive #{} ({}) aborted: too long evaluation, cost {}",
+                     interactive.getId(), obj != null ? obj.getName() : "no object", e.getEvalCost());
+            commandEvent.aborted = true;
+        } finally {
+            long used = evalCost.end();
+            costs.end(interactive.getMudObject(), used);
+            interactive.commandExecuted(used);
+            passCommands++;
+            watchdog.executionEnded();
+
+            commandEvent.end();
+            if (commandEvent.shouldCommit()) {
+                MudObject obj = interactive.getMudObject();
+                commandEvent.objectName = obj != null ? obj.getName() : null;
+                commandEvent.interactiveId = interactive.getId();
+                commandEvent.evalCost = used;
+                commandEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * Handle a GMCP message received from an {@link Interactive}.
+     *
+     * @param interactive The {@link Interactive}.
+     * @param message The message.
+     */
+    private void handleGmcp(Interactive interactive, String message) {
+        if (message.equals(GMCP_PING) || message.startsWith(GMCP_PING + " ")) {
+            // The client measures its round-trip time: reply with the output of this pass.
+            interactive.sendGmcp(GMCP_PING);
+        }
+        // TODO: Pass the message to the mudlib, and charge its evaluation cost
+        interactive.commandExecuted(0);
+    }
+
     /**
      * This thread sends a signal to the main thread every second.
      */
@@ -140,8 +529,7 @@ public class GameLoop {
                     }
                     lastRun = System.currentTimeMillis();
                     log.debug("Tick");
-                    gameStateSignals.setOneSecondTimerSignal(true);
-                    gameStateSignals.signalMainThread();
+                    gameStateSignals.signal(GameStateSignals.TIMER);
                 }
             } catch (InterruptedException e) {
                 Thread.interrupted();
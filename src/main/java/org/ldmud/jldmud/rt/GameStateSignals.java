@@ -4,36 +4,57 @@
  */
 package org.ldmud.jldmud.rt;
 
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import com.google.inject.Inject;
 
 /**
  * This class holds various signal flags of global interest,
  * as well as the methods necessary to signal the main game loop
- * that something interesting has happened.
+ * that something interesting has happened.<p/>
+ *
+ * The signals are a bitmask of the event types, so that the main thread knows which work
+ * to do. Raising a signal which is already pending is a single read of a volatile field;
+ * otherwise it is an atomic update, plus an unpark of the main thread if it was the first
+ * signal since the main thread last took them. No locks are involved.
  */
 public class GameStateSignals {
-    private Logger log = LogManager.getLogger(this.getClass());
 
-    // Classes to signal the main thread.
-    private Lock lock = new ReentrantLock();
-    private Condition signalCondition = lock.newCondition();
+    /**
+     * Signal: network input or a connection event is waiting.
+     */
+    public static final int IO = 1 << 0;
+
+    /**
+     * Signal: the one second timer expired.
+     */
+    public static final int TIMER = 1 << 1;
+
+    /**
+     * Signal: external requests have been completed.
+     */
+    public static final int ERQ = 1 << 2;
 
     /**
-     * {@code True}: the main thread has been signaled by something.
+     * Signal: the game is to be shut down.
      */
-    private volatile boolean signaled = false;
+    public static final int SHUTDOWN = 1 << 3;
 
     /**
-     * {@code True}: the timer thread raised the 1-second signal.
+     * Signal: the memory pressure changed.
      */
-    private volatile boolean oneSecondTimerSignal = false;
+    public static final int MEMORY = 1 << 4;
+
+    /**
+     * The pending signals, not yet taken by the main thread.
+     */
+    private final AtomicInteger signals = new AtomicInteger();
+
+    /**
+     * The main thread while it waits for a signal, {@code null} otherwise.
+     */
+    private volatile Thread waiter = null;
 
     /**
      * {@code True}: the games is being shut down
@@ -50,50 +71,58 @@ public class GameStateSignals {
 
     /**
      * Send a signal to the main thread that something happened
-     * which requires its attention.
+     * which requires its attention. This can be called from any thread.
+     *
+     * @param events The event type(s), a combination of {@link #IO}, {@link #TIMER}, {@link #ERQ},
+     *   {@link #SHUTDOWN} and {@link #MEMORY}.
      */
-    public void signalMainThread() {
-        log.debug("Signalling main thread: current signal: {}", signaled);
-        lock.lock();
-        try {
-            signaled = true;
-            signalCondition.signal();
-        } finally {
-            lock.unlock();
+    public void signal(int events) {
+        if ((signals.get() & events) == events) {
+            return;
+        }
+        int previous = signals.getAndAccumulate(events, (current, added) -> current | added);
+        if (previous == 0) {
+            // Only the first signal needs to wake the main thread: it takes all of them at once.
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
         }
     }
 
     /**
-     * Method for the main thread to wait for a signal. The 'signaled' flag will be reset
+     * Method for the main thread to wait for a signal. The pending signals will be reset
      * upon return.
      *
-     * @throws InterruptedException
+     * @return The signals raised since the last call, never 0.
+     * @throws InterruptedException if the thread was interrupted while waiting.
      */
-    public void waitForSignal() throws InterruptedException {
-        log.trace("Main thread waiting for signal: current signal: {}", signaled);
-        lock.lock();
+    public int waitForSignal() throws InterruptedException {
+        int events = signals.getAndSet(0);
+        if (events != 0) {
+            return events;
+        }
+        waiter = Thread.currentThread();
         try {
-            while (!signaled) {
-                signalCondition.await();
+            while ((events = signals.getAndSet(0)) == 0) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
             }
-            signaled = false;
         } finally {
-            lock.unlock();
+            waiter = null;
         }
+        return events;
     }
 
     /**
-     * @return The oneSecondTimerSignal value
-     */
-    public boolean isOneSecondTimerSignal() {
-        return oneSecondTimerSignal;
-    }
-
-    /**
-     * @param oneSecondTimerSignal the oneSecondTimerSignal value to set
+     * Method for the main thread to take the pending signals without waiting.
+     *
+     * @return The signals raised since the last call, or 0 if there are none.
      */
-    public void setOneSecondTimerSignal(boolean oneSecondTimerSignal) {
-        this.oneSecondTimerSignal = oneSecondTimerSignal;
+    public int takeSignals() {
+        return signals.getAndSet(0);
     }
 
     /**
@@ -104,9 +133,13 @@ public class GameStateSignals {
     }
 
     /**
-     * @param gameIsBeingShutdown The gameIsBeingShutdown value to set
+     * @param gameIsBeingShutdown The gameIsBeingShutdown value to set; if {@code true}, the main
+     *   thread is signalled.
      */
     public void setGameIsBeingShutdown(boolean gameIsBeingShutdown) {
         this.gameIsBeingShutdown = gameIsBeingShutdown;
+        if (gameIsBeingShutdown) {
+            signal(SHUTDOWN);
+        }
     }
 }
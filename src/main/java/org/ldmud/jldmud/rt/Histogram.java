@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of positive values with power-of-two buckets: bucket 0 counts the zeros, bucket
+ * {@code i} the values from 2<sup>i-1</sup> to 2<sup>i</sup>-1. That is precise enough to spot a
+ * regression, and recording a value is a few instructions without allocation.<p/>
+ *
+ * The histogram is written by one thread; other threads reading it may see a slightly
+ * inconsistent state, which is good enough for monitoring.
+ */
+public class Histogram {
+
+    /**
+     * The number of buckets.
+     */
+    public static final int BUCKETS = 65;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    /**
+     * Record a value.
+     *
+     * @param value The value; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[64 - Long.numberOfLeadingZeros(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * @return The number of values recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sum of the values recorded.
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return The mean of the values recorded, or 0 if none.
+     */
+    public long getMean() {
+        return count != 0 ? sum / count : 0L;
+    }
+
+    /**
+     * @return The largest value recorded.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return The upper bound of the bucket holding the percentile, but at most the largest value;
+     *   0 if no values were recorded.
+     */
+    public long getPercentile(double percentile) {
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0L : Math.min(i == 64 ? Long.MAX_VALUE : (1L << i) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return A copy of the bucket counts.
+     */
+    public long[] getCounts() {
+        return Arrays.copyOf(counts, BUCKETS);
+    }
+}
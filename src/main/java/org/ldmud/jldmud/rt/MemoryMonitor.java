@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.Configuration;
+
+import com.google.inject.Inject;
+
+/**
+ * This class watches the heap usage after garbage collections, and derives the memory pressure
+ * the game has to react to.<p/>
+ *
+ * The usage is measured on the heap pools which support collection usage thresholds (i.e.
+ * the old generation), right after a collection, so that it reflects the live data and not
+ * the garbage not yet collected. The monitor is driven by the notifications of the JVM - the
+ * collection usage threshold of the pools, and the end of every garbage collection - so it
+ * costs nothing between collections.<p/>
+ *
+ * When the pressure changes, the main thread is signalled with {@link GameStateSignals#MEMORY}.
+ */
+public class MemoryMonitor {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * The levels of memory pressure, in increasing order.
+     */
+    public enum Level {
+        NORMAL,   // Nothing to do.
+        EVICT,    // Swap out objects and evict caches aggressively.
+        NO_LOGIN, // Additionally refuse new connections.
+        SHUTDOWN  // Shut down the game gracefully.
+    }
+
+    /**
+     * The number of percentage points the usage has to fall below a threshold to lower the level again.
+     */
+    static final int HYSTERESIS = 5;
+
+    // External modules.
+    private final GameStateSignals gameStateSignals;
+
+    // The thresholds in percent of the maximum heap, for EVICT, NO_LOGIN and SHUTDOWN; 0 if not used.
+    private final int[] thresholds = new int[3];
+
+    // The pools measured, and the emitters the listener is registered with.
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = (Notification notification, Object handback) -> check();
+
+    // The current level of memory pressure.
+    private volatile Level level = Level.NORMAL;
+
+    /**
+     * Constructor
+     *
+     * @param config The {@link Configuration} instance.
+     * @param gameStateSignals The {@link GameStateSignals} instance.
+     */
+    @Inject
+    MemoryMonitor(Configuration config, GameStateSignals gameStateSignals) {
+        super();
+        this.gameStateSignals = gameStateSignals;
+        thresholds[0] = percent(config.getMemoryEvictThreshold());
+        thresholds[1] = percent(config.getMemoryNoLoginThreshold());
+        thresholds[2] = percent(config.getMemoryShutdownThreshold());
+    }
+
+    /**
+     * Start watching the heap.
+     */
+    public void start() {
+        int lowest = 0;
+        for (int threshold : thresholds) {
+            if (threshold != 0 && (lowest == 0 || threshold < lowest)) {
+                lowest = threshold;
+            }
+        }
+        if (lowest == 0) {
+            log.info("Memory pressure monitoring disabled.");
+            return;
+        }
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                long max = getMax(pool.getUsage());
+                pool.setCollectionUsageThreshold(max / 100 * lowest);
+                pools.add(pool);
+                log.info("Watching memory pool '{}' with {} MB", pool.getName(), max / 1000000);
+            }
+        }
+        if (pools.isEmpty()) {
+            log.warn("No memory pool supports usage thresholds - memory pressure monitoring disabled.");
+            return;
+        }
+
+        addListener(ManagementFactory.getMemoryMXBean());
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            addListener(collector);
+        }
+    }
+
+    /**
+     * Stop watching the heap.
+     */
+    public void stop() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                // Already gone.
+            }
+        }
+        emitters.clear();
+        pools.clear();
+    }
+
+    /**
+     * @return The current level of memory pressure.
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Measure the heap usage after the last collection, and update the level.
+     * This is called by the JVM's notification thread.
+     */
+    void check() {
+        int usage = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage collectionUsage = pool.getCollectionUsage();
+            if (collectionUsage != null) {
+                long max = getMax(pool.getUsage());
+                usage = Math.max(usage, (int) (collectionUsage.getUsed() * 100 / max));
+            }
+        }
+        update(usage);
+    }
+
+    /**
+     * Update the level for the given heap usage, and signal the main thread if it changed.
+     *
+     * @param usage The heap usage in percent.
+     */
+    synchronized void update(int usage) {
+        Level newLevel = evaluate(level, usage);
+        if (newLevel != level) {
+            if (newLevel.compareTo(level) > 0) {
+                log.warn("Memory pressure raised to {}: heap usage {}% after collection", newLevel, usage);
+            } else {
+                log.info("Memory pressure lowered to {}: heap usage {}% after collection", newLevel, usage);
+            }
+            level = newLevel;
+            gameStateSignals.signal(GameStateSignals.MEMORY);
+        }
+    }
+
+    /**
+     * Determine the new level of memory pressure: it rises as soon as the usage reaches a
+     * threshold, but falls only once the usage is {@link #HYSTERESIS} points below it. Once
+     * the level reached {@code SHUTDOWN}, it stays there.
+     *
+     * @param current The current level.
+     * @param usage The heap usage in percent.
+     * @return The new level.
+     */
+    Level evaluate(Level current, int usage) {
+        if (current == Level.SHUTDOWN) {
+            return current;
+        }
+        Level raised = levelFor(usage);
+        if (raised.compareTo(current) >= 0) {
+            return raised;
+        }
+        Level lowered = levelFor(usage + HYSTERESIS);
+        return lowered.compareTo(current) < 0 ? lowered : current;
+    }
+
+    /**
+     * @param usage The heap usage in percent.
+     * @return The highest level whose threshold is reached by the usage.
+     */
+    private Level levelFor(int usage) {
+        Level result = Level.NORMAL;
+        for (int i = 0; i < thresholds.length; i++) {
+            if (thresholds[i] != 0 && usage >= thresholds[i]) {
+                result = Level.values()[i + 1];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Register the listener with an MXBean, if it emits notifications.
+     */
+    private void addListener(Object bean) {
+        if (bean instanceof NotificationEmitter) {
+            NotificationEmitter emitter = (NotificationEmitter) bean;
+            emitter.addNotificationListener(listener, null, null);
+            emitters.add(emitter);
+        }
+    }
+
+    /**
+     * @return The maximum size of a pool; if undefined, the maximum heap size.
+     */
+    private static long getMax(MemoryUsage usage) {
+        return usage.getMax() > 0 ? usage.getMax() : Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * @return The threshold setting as percentage, 0 if not set.
+     */
+    private static int percent(Long setting) {
+        return setting != null ? (int) Math.min(setting, 100L) : 0;
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.rt.GameLoop.Phase;
+
+import com.google.inject.Inject;
+
+/**
+ * Singleton class measuring the memory allocated by the game thread in every phase of the
+ * game loop, every pass and every tick, as the allocation rate of the game thread drives the
+ * frequency of the garbage collections.<p/>
+ *
+ * The allocated bytes are read from the {@link ThreadMXBean} at the start and end of every phase,
+ * which costs a few dozen nanoseconds each, and recorded in a {@link Histogram} per phase. The
+ * allocations of a tick are those of all passes from one timer pass to the next.<p/>
+ *
+ * Benchmark runs, like the replay of an input journal, can check the mean allocation per phase
+ * against budgets with {@link #checkBudgets(Map)}, and fail if a phase regressed.<p/>
+ *
+ * The measuring methods are called by the main thread only.
+ */
+public class PhaseAllocations implements PhaseAllocationsMXBean {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * The JMX name under which the histograms are published.
+     */
+    static final String MBEAN_NAME = "org.ldmud.jldmud:type=PhaseAllocations";
+
+    /**
+     * The name of the histogram of the allocations per pass.
+     */
+    public static final String PASS = "PASS";
+
+    /**
+     * The name of the histogram of the allocations per tick.
+     */
+    public static final String TICK = "TICK";
+
+    // The allocation measurement, or {@code null} if not supported by the JVM.
+    private final com.sun.management.ThreadMXBean allocations;
+
+    // The histograms, by name.
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final Histogram[] phases = new Histogram[Phase.values().length];
+    private final Histogram passes = new Histogram();
+    private final Histogram ticks = new Histogram();
+
+    // The allocated bytes of the main thread at the start of the current pass and phase.
+    private long passStart;
+    private long phaseStart;
+
+    // The bytes allocated in the current tick so far, and {@code true} once the first tick started.
+    private long tickBytes = 0;
+    private boolean tickStarted = false;
+
+    /**
+     * Constructor
+     */
+    @Inject
+    PhaseAllocations() {
+        super();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threads instanceof com.sun.management.ThreadMXBean
+         && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) threads;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            log.info("Measuring allocations per thread is not supported - allocations per phase won't be measured.");
+        }
+        allocations = allocationBean;
+
+        for (Phase phase : Phase.values()) {
+            phases[phase.ordinal()] = new Histogram();
+            histograms.put(phase.name(), phases[phase.ordinal()]);
+        }
+        histograms.put(PASS, passes);
+        histograms.put(TICK, ticks);
+    }
+
+    /**
+     * Publish the histograms via JMX.
+     */
+    public void start() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            log.warn("Can't publish the allocation metrics: {}", e.toString());
+        }
+    }
+
+    /**
+     * Withdraw the histograms from JMX.
+     */
+    public void stop() {
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.debug("Error withdrawing the allocation metrics: {}", e.toString());
+        }
+    }
+
+    /**
+     * Start measuring a game loop pass.
+     *
+     * @param tick {@code true} if the pass starts a new tick.
+     */
+    public void startPass(boolean tick) {
+        if (tick) {
+            if (tickStarted) {
+                ticks.record(tickBytes);
+            }
+            tickStarted = true;
+            tickBytes = 0;
+        }
+        passStart = getAllocatedBytes();
+    }
+
+    /**
+     * End measuring the current game loop pass.
+     */
+    public void endPass() {
+        long bytes = getAllocatedBytes() - passStart;
+        passes.record(bytes);
+        tickBytes += bytes;
+    }
+
+    /**
+     * Start measuring a phase of the current pass.
+     */
+    public void startPhase() {
+        phaseStart = getAllocatedBytes();
+    }
+
+    /**
+     * End measuring a phase of the current pass.
+     *
+     * @param phase The phase.
+     */
+    public void endPhase(Phase phase) {
+        phases[phase.ordinal()].record(getAllocatedBytes() - phaseStart);
+    }
+
+    /**
+     * @param name The name of a phase, or {@link #PASS} or {@link #TICK}.
+     * @return The histogram.
+     * @throws IllegalArgumentException if there is no such histogram.
+     */
+    public Histogram getHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            throw new IllegalArgumentException("No allocation histogram '" + name + "'");
+        }
+        return histogram;
+    }
+
+    /**
+     * Check the mean allocations against budgets.
+     *
+     * @param budgets The maximum mean bytes, by name of the phase (or {@link #PASS} or {@link #TICK}).
+     * @return The descriptions of the budgets exceeded; empty if none.
+     * @throws IllegalArgumentException if a budget names no histogram.
+     */
+    public List<String> checkBudgets(Map<String, Long> budgets) {
+        List<String> exceeded = new ArrayList<>();
+        for (Map.Entry<String, Long> budget : budgets.entrySet()) {
+            long mean = getHistogram(budget.getKey()).getMean();
+            if (mean > budget.getValue()) {
+                exceeded.add(String.format("%s allocates %d bytes on average, exceeding its budget of %d bytes",
+                                           budget.getKey(), mean, budget.getValue()));
+            }
+        }
+        return exceeded;
+    }
+
+    /**
+     * @return A report of the allocations per phase, pass and tick.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Allocations of the game thread (bytes):");
+        report.append(String.format("\n    %-10s %10s %10s %10s %10s %12s", "", "count", "mean", "p50", "p99", "max"));
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            report.append(String.format("\n    %-10s %10d %10d %10d %10d %12d", entry.getKey(), histogram.getCount(),
+                                        histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(99),
+                                        histogram.getMax()));
+        }
+        return report.toString();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.PhaseAllocationsMXBean#getHistogramNames()
+     */
+    @Override
+    public String[] getHistogramNames() {
+        return histograms.keySet().toArray(new String[histograms.size()]);
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.PhaseAllocationsMXBean#getCount(java.lang.String)
+     */
+    @Override
+    public long getCount(String name) {
+        return getHistogram(name).getCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.PhaseAllocationsMXBean#getMeanBytes(java.lang.String)
+     */
+    @Override
+    public long getMeanBytes(String name) {
+        return getHistogram(name).getMean();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.PhaseAllocationsMXBean#getPercentileBytes(java.lang.String, double)
+     */
+    @Override
+    public long getPercentileBytes(String name, double percentile) {
+        return getHistogram(name).getPercentile(percentile);
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.PhaseAllocationsMXBean#getMaxBytes(java.lang.String)
+     */
+    @Override
+    public long getMaxBytes(String name) {
+        return getHistogram(name).getMax();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.PhaseAllocationsMXBean#getBucketCounts(java.lang.String)
+     */
+    @Override
+    public long[] getBucketCounts(String name) {
+        return getHistogram(name).getCounts();
+    }
+
+    /**
+     * @return The bytes allocated by the current thread, or 0 if not supported.
+     */
+    private long getAllocatedBytes() {
+        return allocations != null ? allocations.getCurrentThreadAllocatedBytes() : 0L;
+    }
+}
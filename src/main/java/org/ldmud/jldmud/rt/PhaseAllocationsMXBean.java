@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+/**
+ * The memory allocated by the game thread per game loop phase, pass and tick, published via JMX
+ * under the name {@value PhaseAllocations#MBEAN_NAME}. The histograms are named after the
+ * {@link GameLoop.Phase}s, plus {@value PhaseAllocations#PASS} and {@value PhaseAllocations#TICK}.
+ */
+public interface PhaseAllocationsMXBean {
+
+    /**
+     * @return The names of the histograms.
+     */
+    String[] getHistogramNames();
+
+    /**
+     * @param name The name of the histogram.
+     * @return The number of phases, passes or ticks measured.
+     */
+    long getCount(String name);
+
+    /**
+     * @param name The name of the histogram.
+     * @return The mean bytes allocated per phase, pass or tick.
+     */
+    long getMeanBytes(String name);
+
+    /**
+     * @param name The name of the histogram.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The bytes allocated per phase, pass or tick at the percentile, rounded up to the next power of two.
+     */
+    long getPercentileBytes(String name, double percentile);
+
+    /**
+     * @param name The name of the histogram.
+     * @return The most bytes allocated in one phase, pass or tick.
+     */
+    long getMaxBytes(String name);
+
+    /**
+     * @param name The name of the histogram.
+     * @return The counts of the power-of-two buckets; bucket {@code i} counts the allocations
+     *   from 2<sup>i-1</sup> to 2<sup>i</sup>-1 bytes.
+     */
+    long[] getBucketCounts(String name);
+}
@@ -4,6 +4,8 @@
  */
 package org.ldmud.jldmud.rt;
 
+import org.ldmud.jldmud.rt.erq.RuntimeErqModule;
+import org.ldmud.jldmud.rt.journal.RuntimeJournalModule;
 import org.ldmud.jldmud.rt.net.RuntimeNetModule;
 import org.ldmud.jldmud.rt.object.RuntimeObjectModule;
 
@@ -20,10 +22,16 @@ public class RuntimeModule extends AbstractModule {
      */
     @Override
     protected void configure() {
+        install(new RuntimeErqModule());
+        install(new RuntimeJournalModule());
         install(new RuntimeNetModule());
         install(new RuntimeObjectModule());
         bind(GameLoop.class).in(Singleton.class);
         bind(GameStateSignals.class).in(Singleton.class);
         bind(MemoryReserve.class).in(Singleton.class);
+        bind(MemoryMonitor.class).in(Singleton.class);
+        bind(EvalCost.class).in(Singleton.class);
+        bind(PhaseAllocations.class).in(Singleton.class);
+        bind(SlowPassWatchdog.class).in(Singleton.class);
     }
 }
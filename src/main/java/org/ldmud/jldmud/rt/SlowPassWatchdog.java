@@ -0,0 +1,411 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.ldmud.jldmud.rt.GameLoop.Phase;
+import org.ldmud.jldmud.rt.object.MudObject;
+
+import com.google.inject.Inject;
+
+/**
+ * Singleton class watching the game loop for passes which take too long, and reporting what the
+ * game thread was doing meanwhile.<p/>
+ *
+ * The game loop tells the watchdog when a pass starts and ends, which phase it is in, and which
+ * object executes what; these are a few writes of volatile fields. The watchdog thread wakes up every
+ * {@link #SAMPLE_INTERVAL} ms, and once the current pass has been running for longer than the
+ * configured threshold, it samples the stack of the game thread along with the phase and the executing
+ * object. When the slow pass ends, the samples are aggregated, and the report is written to the
+ * driver log directory as {@code slowpass-<time>.txt}; the identical samples are counted once, the
+ * most frequent first, which points to where the time went. A pass still running after
+ * {@link #HANG_FACTOR} times the threshold may never end, so it is reported right away; the
+ * report is rewritten with all samples if it ends after all.<p/>
+ *
+ * To not flood the disk while the game is overloaded, at most one report is written per
+ * {@link #REPORT_INTERVAL} seconds; the other slow passes are only logged. Likewise, at most
+ * {@link #MAX_SAMPLES} distinct samples are kept per pass, further ones are only counted.
+ */
+public class SlowPassWatchdog {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * The interval in which the watchdog checks the game loop, in milliseconds.
+     */
+    static final long SAMPLE_INTERVAL = 10L;
+
+    /**
+     * The minimum time between two reports, in seconds.
+     */
+    static final long REPORT_INTERVAL = 60L;
+
+    /**
+     * The maximum number of stack frames reported per sample.
+     */
+    static final int MAX_FRAMES = 40;
+
+    /**
+     * The multiple of the threshold after which a pass still running is reported.
+     */
+    static final int HANG_FACTOR = 10;
+
+    /**
+     * The maximum number of distinct samples kept per pass.
+     */
+    static final int MAX_SAMPLES = 100;
+
+    /**
+     * The default threshold, if not configured.
+     */
+    static final long DEFAULT_THRESHOLD = 100L;
+
+    // External modules.
+    private final LiveConfiguration liveConfig;
+
+    // The state of the game thread, written by the game thread. passStart is 0 while no pass is running.
+    private volatile long passSequence = 0;
+    private volatile long passStart = 0;
+    private volatile int passSignals = 0;
+    private volatile Phase phase = null;
+    private volatile MudObject object = null;
+    private volatile String function = null;
+
+    // The duration of the last pass, and its sequence number, written by the game thread.
+    private volatile long lastDuration = 0;
+    private volatile long lastSequence = 0;
+
+    // The game thread, and the watchdog thread.
+    private Thread gameThread = null;
+    private Thread watchdogThread = null;
+    private volatile boolean stopped = false;
+
+    // The state of the watchdog thread: the pass being sampled (or 0), its distinct samples and the count
+    // of the samples not kept, whether it was reported while running and to which file (if any), and the
+    // time of the last report.
+    private long sampledSequence = 0;
+    private long sampledStart = 0;
+    private int sampledSignals = 0;
+    private final Map<String, Integer> samples = new LinkedHashMap<>();
+    private int otherSamples = 0;
+    private boolean hangReported = false;
+    private File reportFile = null;
+    private long lastReport = 0;
+    private boolean reported = false;
+
+    /**
+     * Constructor
+     *
+     * @param liveConfig The {@link LiveConfiguration} holding the current configuration, which may be {@code null}.
+     */
+    @Inject
+    SlowPassWatchdog(LiveConfiguration liveConfig) {
+        super();
+        this.liveConfig = liveConfig;
+    }
+
+    /**
+     * Start watching the game thread. The watchdog thread runs even while watching is disabled
+     * by the configuration, so that the threshold can be changed without a restart.
+     *
+     * @param gameThread The game thread.
+     */
+    public void start(Thread gameThread) {
+        if (watchdogThread != null) {
+            return;
+        }
+        this.gameThread = gameThread;
+        stopped = false;
+        watchdogThread = new Thread(this::watch, "SlowPassWatchdog");
+        watchdogThread.setDaemon(true);
+        watchdogThread.start();
+    }
+
+    /**
+     * Stop watching.
+     */
+    public void stop() {
+        stopped = true;
+        if (watchdogThread != null) {
+            watchdogThread.interrupt();
+            try {
+                watchdogThread.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            watchdogThread = null;
+        }
+    }
+
+    /**
+     * Called by the game thread when a pass starts.
+     *
+     * @param signals The signals handled by the pass.
+     */
+    public void passStarted(int signals) {
+        passSignals = signals;
+        passSequence++;
+        passStart = System.nanoTime();
+    }
+
+    /**
+     * Called by the game thread when the current pass ends.
+     */
+    public void passEnded() {
+        long duration = System.nanoTime() - passStart;
+        passStart = 0;
+        phase = null;
+        lastDuration = duration;
+        lastSequence = passSequence;
+    }
+
+    /**
+     * Called by the game thread when a phase of the pass starts.
+     *
+     * @param phase The phase.
+     */
+    public void phaseStarted(Phase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Called by the game thread when an object starts executing.
+     *
+     * @param object The object, may be {@code null}.
+     * @param function The function or activity executed.
+     */
+    public void executionStarted(MudObject object, String function) {
+        this.object = object;
+        this.function = function;
+    }
+
+    /**
+     * Called by the game thread when the execution ends.
+     */
+    public void executionEnded() {
+        this.object = null;
+        this.function = null;
+    }
+
+    /**
+     * The watchdog thread.
+     */
+    private void watch() {
+        try {
+            while (!stopped) {
+                Thread.sleep(SAMPLE_INTERVAL);
+                check(System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        }
+    }
+
+    /**
+     * Check the game loop: sample a slow pass, and report it once it ended, or when it seems to hang.
+     *
+     * @param now The current time in {@link System#nanoTime()} terms.
+     */
+    void check(long now) {
+        long start = passStart;
+        long sequence = passSequence;
+
+        if (sampledSequence != 0 && (start == 0 || sequence != sampledSequence)) {
+            // The sampled pass has ended.
+            long duration = lastSequence == sampledSequence ? lastDuration : now - sampledStart;
+            passCompleted(duration);
+            sampledSequence = 0;
+            samples.clear();
+            otherSamples = 0;
+            hangReported = false;
+            reportFile = null;
+        }
+
+        long threshold = getThreshold();
+        if (start != 0 && threshold != 0 && now - start > threshold * 1000000L) {
+            if (sampledSequence != sequence) {
+                sampledSequence = sequence;
+                sampledStart = start;
+                sampledSignals = passSignals;
+            }
+            sample();
+            if (!hangReported && now - start > HANG_FACTOR * threshold * 1000000L) {
+                passRunning(now - start);
+            }
+        }
+    }
+
+    /**
+     * Take a sample of the game thread.
+     */
+    private void sample() {
+        Phase currentPhase = phase;
+        MudObject currentObject = object;
+        String currentFunction = function;
+        StackTraceElement[] stack = gameThread.getStackTrace();
+
+        StringBuilder sample = new StringBuilder();
+        sample.append("phase ").append(currentPhase != null ? currentPhase.name() : "-");
+        if (currentObject != null || currentFunction != null) {
+            sample.append(", executing ").append(currentFunction != null ? currentFunction : "-")
+                  .append(" in ").append(currentObject != null ? currentObject.getName() : "-");
+        }
+        for (StackTraceElement frame : Arrays.asList(stack).subList(0, Math.min(stack.length, MAX_FRAMES))) {
+            sample.append("\n        at ").append(frame);
+        }
+        if (stack.length > MAX_FRAMES) {
+            sample.append("\n        ... ").append(stack.length - MAX_FRAMES).append(" more");
+        }
+        addSample(sample.toString());
+    }
+
+    /**
+     * Count a sample of the sampled pass.
+     *
+     * @param sample The description of the sample.
+     */
+    void addSample(String sample) {
+        Integer count = samples.get(sample);
+        if (count != null) {
+            samples.put(sample, count + 1);
+        } else if (samples.size() < MAX_SAMPLES) {
+            samples.put(sample, 1);
+        } else {
+            otherSamples++;
+        }
+    }
+
+    /**
+     * The sampled pass is still running after {@link #HANG_FACTOR} times the threshold: report it now,
+     * or later if a report was written recently.
+     *
+     * @param duration The duration of the pass so far in nanoseconds.
+     */
+    private void passRunning(long duration) {
+        File directory = getReportDirectory();
+        if (directory == null) {
+            log.warn("Game loop pass still running after {} ms", duration / 1000000L);
+        } else if (!isReportDue()) {
+            return;
+        } else {
+            reportFile = newReportFile(directory);
+            writeReport(duration, true);
+        }
+        hangReported = true;
+    }
+
+    /**
+     * A sampled pass has ended: write its report, or just log it if a report was written recently.
+     *
+     * @param duration The duration of the pass in nanoseconds.
+     */
+    private void passCompleted(long duration) {
+        if (reportFile == null) {
+            // Not reported while running.
+            File directory = getReportDirectory();
+            if (directory == null || !isReportDue()) {
+                log.warn("Slow game loop pass: {} ms, {} samples", duration / 1000000L, getSampleCount());
+                return;
+            }
+            reportFile = newReportFile(directory);
+        }
+        writeReport(duration, false);
+    }
+
+    /**
+     * @return The directory to write the reports to, or {@code null} if none is configured.
+     */
+    private File getReportDirectory() {
+        Configuration config = liveConfig.get();
+        return config != null ? config.getDriverLogDirectory() : null;
+    }
+
+    /**
+     * @return {@code true} if no report was written in the last {@link #REPORT_INTERVAL} seconds.
+     */
+    private boolean isReportDue() {
+        return !reported || System.currentTimeMillis() - lastReport >= REPORT_INTERVAL * 1000L;
+    }
+
+    /**
+     * Start a new report.
+     *
+     * @param directory The directory to write the report to.
+     * @return The file of the report.
+     */
+    private File newReportFile(File directory) {
+        long now = System.currentTimeMillis();
+        reported = true;
+        lastReport = now;
+        return new File(directory, "slowpass-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(now)) + ".txt");
+    }
+
+    /**
+     * Write (or rewrite) the report of the sampled pass to the {@link #reportFile}.
+     *
+     * @param duration The duration of the pass (so far) in nanoseconds.
+     * @param running {@code true} if the pass is still running.
+     */
+    private void writeReport(long duration, boolean running) {
+        String what = running ? "Game loop pass still running after" : "Slow game loop pass:";
+        try (PrintWriter out = new PrintWriter(reportFile, "UTF-8")) {
+            out.println(report(duration, running));
+            log.warn("{} {} ms, report written to {}", what, duration / 1000000L, reportFile);
+        } catch (IOException e) {
+            log.warn("{} {} ms; can't write the report {}: {}", what, duration / 1000000L, reportFile, e.toString());
+        }
+    }
+
+    /**
+     * @return The number of samples taken of the sampled pass.
+     */
+    private int getSampleCount() {
+        return samples.values().stream().mapToInt(Integer::intValue).sum() + otherSamples;
+    }
+
+    /**
+     * @param duration The duration of the pass (so far) in nanoseconds.
+     * @param running {@code true} if the pass is still running.
+     * @return The report of the sampled pass.
+     */
+    String report(long duration, boolean running) {
+        int count = getSampleCount();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%s game loop pass at %s: %d ms%s (threshold %d ms), signals %d, %d samples every %d ms",
+                                    running ? "Running" : "Slow", new Date(), duration / 1000000L, running ? " so far" : "",
+                                    getThreshold(), sampledSignals, count, SAMPLE_INTERVAL));
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(samples.entrySet());
+        entries.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        for (Map.Entry<String, Integer> entry : entries) {
+            report.append(String.format("\n\n%4d samples (%d%%): ", entry.getValue(), entry.getValue() * 100 / count))
+                  .append(entry.getKey());
+        }
+        if (otherSamples > 0) {
+            report.append(String.format("\n\n%4d samples (%d%%) of other stacks, not listed", otherSamples, otherSamples * 100 / count));
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return The threshold of a slow pass in milliseconds, or 0 if disabled.
+     */
+    long getThreshold() {
+        Configuration config = liveConfig.get();
+        return config != null && config.getSlowPassThreshold() != null ? config.getSlowPassThreshold() : DEFAULT_THRESHOLD;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+/**
+ * Thrown when an execution exceeds its evaluation cost limit. The exception is unchecked, as it
+ * may be raised at any backward branch or call of the executed code; the mudlib can catch it,
+ * with the small reserve granted by {@link EvalCost} to handle it.
+ */
+public class TooLongEvaluationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    // The evaluation cost used when the limit was hit.
+    private final long evalCost;
+
+    /**
+     * Constructor
+     *
+     * @param evalCost The evaluation cost used when the limit was hit.
+     */
+    public TooLongEvaluationException(long evalCost) {
+        super("Too long evaluation (" + evalCost + "). Execution aborted.", null, false, false);
+        this.evalCost = evalCost;
+    }
+
+    /**
+     * @return The evaluation cost used when the limit was hit.
+     */
+    public long getEvalCost() {
+        return evalCost;
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.erq;
+
+import java.io.IOException;
+
+/**
+ * The callback receiving the result of an external request. It is always called by the main thread.
+ *
+ * @param <T> The type of the result.
+ */
+@FunctionalInterface
+public interface ErqCallback<T> {
+
+    /**
+     * The request has been completed.
+     *
+     * @param result The result of the request, or {@code null} if it failed.
+     * @param error The reason the request failed, or {@code null} if it succeeded.
+     */
+    void completed(T result, IOException error);
+}
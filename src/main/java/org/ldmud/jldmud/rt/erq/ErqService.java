@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.erq;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.rt.GameStateSignals;
+
+import com.google.inject.Inject;
+
+/**
+ * The external request service, the equivalent of LDMud's ERQ: it runs requests which may
+ * block for a long time - name lookups, external commands, outgoing connections - in a pool
+ * of worker threads.<p/>
+ *
+ * The results are delivered to the callbacks of the requests by the main thread: the workers
+ * put the completed requests into a lock-free queue and signal the main thread, which
+ * then calls {@link #processCompletions()}.
+ */
+public class ErqService {
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * The maximum number of requests waiting for a worker; further requests fail right away.
+     */
+    static final int MAX_QUEUED_REQUESTS = 1000;
+
+    /**
+     * The maximum number of output bytes returned from an external command.
+     */
+    static final int MAX_OUTPUT = 64 * 1024;
+
+    /**
+     * The time in seconds an external command may run before it is killed.
+     */
+    static final long EXECUTE_TIMEOUT = 60;
+
+    /**
+     * The time in milliseconds an outgoing connection may take to be established.
+     */
+    static final int CONNECT_TIMEOUT = 30000;
+
+    /**
+     * The default number of worker threads.
+     */
+    static final int DEFAULT_THREADS = 4;
+
+    // External modules.
+    private final Configuration config;
+    private final GameStateSignals gameStateSignals;
+    private final Resolver resolver;
+
+    // The worker threads, or {@code null} if the service is not running.
+    private volatile ThreadPoolExecutor workers;
+
+    // The completed requests, waiting for their callbacks to be called by the main thread.
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A request, run by a worker thread.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    private interface Request<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param config The {@link Configuration} instance.
+     * @param gameStateSignals The {@link GameStateSignals} instance.
+     * @param resolver The {@link Resolver} for name lookups.
+     */
+    @Inject
+    ErqService(Configuration config, GameStateSignals gameStateSignals, Resolver resolver) {
+        super();
+        this.config = config;
+        this.gameStateSignals = gameStateSignals;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    public void start() {
+        int threads = DEFAULT_THREADS;
+        if (config != null && config.getErqThreads() != null) {
+            threads = (int) Math.max(1L, Math.min(config.getErqThreads(), 1000L));
+        }
+        AtomicLong threadCount = new AtomicLong();
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_REQUESTS), runnable -> {
+                    Thread thread = new Thread(runnable);
+                    thread.setName("Erq-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("ERQ service started with {} workers", threads);
+    }
+
+    /**
+     * Stop the worker threads, abandoning all requests not yet completed.
+     */
+    public void shutdown() {
+        ThreadPoolExecutor pool = workers;
+        workers = null;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        completions.clear();
+    }
+
+    /**
+     * Look up the addresses of a host name.
+     *
+     * @param hostname The host name.
+     * @param callback The callback receiving the addresses.
+     */
+    public void lookup(String hostname, ErqCallback<List<InetAddress>> callback) {
+        submit("lookup " + hostname, () -> resolver.lookup(hostname), callback);
+    }
+
+    /**
+     * Look up the host name of an address, e.g. of a player's connection.
+     *
+     * @param address The address.
+     * @param callback The callback receiving the host name.
+     */
+    public void reverseLookup(InetAddress address, ErqCallback<String> callback) {
+        submit("reverse lookup " + address.getHostAddress(), () -> resolver.reverseLookup(address), callback);
+    }
+
+    /**
+     * Run an external command. Only programs in the configured ERQ directory can be run, and they
+     * run in that directory. A command not finished after {@link #EXECUTE_TIMEOUT} seconds is killed.
+     *
+     * @param program The name of the program in the ERQ directory.
+     * @param arguments The arguments for the program.
+     * @param callback The callback receiving the exit status and output.
+     */
+    public void execute(String program, List<String> arguments, ErqCallback<ExecResult> callback) {
+        submit("execute " + program, () -> runProgram(program, arguments), callback);
+    }
+
+    /**
+     * Open an outgoing TCP connection.
+     *
+     * @param address The address to connect to.
+     * @param callback The callback receiving the connected (blocking) channel; the receiver is responsible for closing it.
+     */
+    public void connect(InetSocketAddress address, ErqCallback<SocketChannel> callback) {
+        submit("connect " + address, () -> {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().connect(address, CONNECT_TIMEOUT);
+                return channel;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }, callback);
+    }
+
+    /**
+     * @return {@code true} if completed requests are waiting for their callbacks.
+     */
+    public boolean hasCompletions() {
+        return !completions.isEmpty();
+    }
+
+    /**
+     * Call the callbacks of all completed requests. This is called by the main thread.
+     *
+     * @return The number of callbacks called.
+     */
+    public int processCompletions() {
+        int count = 0;
+        Runnable completion;
+        while ((completion = completions.poll()) != null) {
+            count++;
+            try {
+                completion.run();
+            } catch (RuntimeException e) {
+                log.error("Error in ERQ callback: {}", e.toString(), e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Hand a request to the workers; if that is not possible, fail it right away.
+     *
+     * @param description The description of the request for the log.
+     * @param request The request.
+     * @param callback The callback receiving the result.
+     */
+    private <T> void submit(String description, Request<T> request, ErqCallback<T> callback) {
+        ThreadPoolExecutor pool = workers;
+        if (pool == null) {
+            complete(callback, null, new IOException("ERQ service is not running"));
+            return;
+        }
+        try {
+            pool.execute(() -> {
+                log.debug("ERQ request: {}", description);
+                try {
+                    complete(callback, request.run(), null);
+                } catch (IOException e) {
+                    log.debug("ERQ request '{}' failed: {}", description, e.toString());
+                    complete(callback, null, e);
+                } catch (RuntimeException e) {
+                    log.warn("ERQ request '{}' failed: {}", description, e.toString(), e);
+                    complete(callback, null, new IOException(e.toString(), e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("ERQ request '{}' rejected: too many pending requests", description);
+            complete(callback, null, new IOException("Too many pending ERQ requests"));
+        }
+    }
+
+    /**
+     * Queue a result for delivery by the main thread, and wake up the main thread.
+     *
+     * @param callback The callback to receive the result.
+     * @param result The result, or {@code null} if the request failed.
+     * @param error The error, or {@code null} if the request succeeded.
+     */
+    private <T> void complete(ErqCallback<T> callback, T result, IOException error) {
+        completions.add(() -> callback.completed(result, error));
+        if (gameStateSignals != null) {
+            gameStateSignals.signal(GameStateSignals.ERQ);
+        }
+    }
+
+    /**
+     * Run an external command, and collect its output. This is called by a worker thread.
+     *
+     * @param program The name of the program in the ERQ directory.
+     * @param arguments The arguments for the program.
+     * @return The result of the command.
+     * @throws IOException if the command can't be run.
+     */
+    private ExecResult runProgram(String program, List<String> arguments) throws IOException {
+        File directory = config != null ? config.getErqDirectory() : null;
+        if (directory == null) {
+            throw new IOException("No ERQ directory configured");
+        }
+        if (StringUtils.isEmpty(program) || StringUtils.containsAny(program, "/\\") || program.startsWith(".")) {
+            throw new IOException("Illegal program name '" + program + "'");
+        }
+        File executable = new File(directory, program);
+        if (!executable.isFile() || !executable.canExecute()) {
+            throw new IOException("No program '" + program + "' in the ERQ directory");
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(executable.getPath());
+        command.addAll(arguments);
+
+        // The output goes into a file, so that the command can't block on a full pipe, and
+        // the timeout can be enforced without a thread reading the output.
+        File outputFile = File.createTempFile("erq", ".out");
+        try {
+            Process process = new ProcessBuilder(command)
+                    .directory(directory)
+                    .redirectErrorStream(true)
+                    .redirectOutput(outputFile)
+                    .start();
+            process.getOutputStream().close();
+            try {
+                if (!process.waitFor(EXECUTE_TIMEOUT, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    throw new IOException("Program '" + program + "' timed out");
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("Program '" + program + "' was interrupted");
+            }
+
+            byte[] output = new byte[(int) Math.min(outputFile.length(), MAX_OUTPUT)];
+            int length = 0;
+            try (InputStream in = Files.newInputStream(outputFile.toPath())) {
+                int n;
+                while (length < output.length && (n = in.read(output, length, output.length - length)) > 0) {
+                    length += n;
+                }
+            }
+            return new ExecResult(process.exitValue(), new String(output, 0, length, StandardCharsets.UTF_8),
+                                  outputFile.length() > MAX_OUTPUT);
+        } finally {
+            Files.deleteIfExists(outputFile.toPath());
+        }
+    }
+}
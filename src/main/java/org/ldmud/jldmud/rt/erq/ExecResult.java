@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.erq;
+
+/**
+ * The result of an external command run by the {@link ErqService}.
+ */
+public class ExecResult {
+    private final int exitStatus;
+    private final String output;
+    private final boolean truncated;
+
+    /**
+     * Constructor
+     *
+     * @param exitStatus The exit status of the command.
+     * @param output The output of the command (standard output and error combined).
+     * @param truncated {@code true} if the output was cut off at {@link ErqService#MAX_OUTPUT} bytes.
+     */
+    ExecResult(int exitStatus, String output, boolean truncated) {
+        super();
+        this.exitStatus = exitStatus;
+        this.output = output;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @return The exit status of the command.
+     */
+    public int getExitStatus() {
+        return exitStatus;
+    }
+
+    /**
+     * @return The output of the command (standard output and error combined).
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * @return {@code true} if the output was cut off.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.erq;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * The name service used by the {@link ErqService}. The methods may block, and are called
+ * by the worker threads.
+ */
+public interface Resolver {
+
+    /**
+     * Look up the addresses of a host name.
+     *
+     * @param hostname The host name.
+     * @return The addresses of the host, never empty.
+     * @throws IOException if the name can't be resolved.
+     */
+    List<InetAddress> lookup(String hostname) throws IOException;
+
+    /**
+     * Look up the host name of an address.
+     *
+     * @param address The address.
+     * @return The host name, or the textual address if it has no name.
+     * @throws IOException if the lookup failed.
+     */
+    String reverseLookup(InetAddress address) throws IOException;
+}
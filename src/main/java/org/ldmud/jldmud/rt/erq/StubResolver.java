@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.erq;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Resolver} answering from a fixed table of names, for running without network access.
+ */
+public class StubResolver implements Resolver {
+
+    // The known hosts, and the names of the known addresses.
+    private final Map<String, List<InetAddress>> addresses = new ConcurrentHashMap<>();
+    private final Map<InetAddress, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Add a host to the table. The first name added for an address is used for its reverse lookup.
+     *
+     * @param hostname The host name.
+     * @param address An address of the host.
+     * @return This instance.
+     */
+    public StubResolver add(String hostname, InetAddress address) {
+        addresses.computeIfAbsent(hostname.toLowerCase(), h -> Collections.synchronizedList(new ArrayList<>())).add(address);
+        names.putIfAbsent(address, hostname);
+        return this;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.erq.Resolver#lookup(java.lang.String)
+     */
+    @Override
+    public List<InetAddress> lookup(String hostname) throws IOException {
+        List<InetAddress> result = addresses.get(hostname.toLowerCase());
+        if (result == null) {
+            throw new UnknownHostException(hostname);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.erq.Resolver#reverseLookup(java.net.InetAddress)
+     */
+    @Override
+    public String reverseLookup(InetAddress address) throws IOException {
+        String name = names.get(address);
+        return name != null ? name : address.getHostAddress();
+    }
+}
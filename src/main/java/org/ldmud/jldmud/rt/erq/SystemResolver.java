@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.erq;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.inject.Inject;
+
+/**
+ * The {@link Resolver} using the name service of the operating system.
+ */
+public class SystemResolver implements Resolver {
+
+    /**
+     * Constructor
+     */
+    @Inject
+    SystemResolver() {
+        super();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.erq.Resolver#lookup(java.lang.String)
+     */
+    @Override
+    public List<InetAddress> lookup(String hostname) throws IOException {
+        return Arrays.asList(InetAddress.getAllByName(hostname));
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.erq.Resolver#reverseLookup(java.net.InetAddress)
+     */
+    @Override
+    public String reverseLookup(InetAddress address) throws IOException {
+        return InetAddress.getByAddress(address.getAddress()).getCanonicalHostName();
+    }
+}
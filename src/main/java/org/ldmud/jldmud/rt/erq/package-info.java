@@ -0,0 +1,10 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+
+/**
+ * The external request service (ERQ), running slow requests of the mudlib like name lookups
+ * and external commands off the game thread.
+ */
+package org.ldmud.jldmud.rt.erq;
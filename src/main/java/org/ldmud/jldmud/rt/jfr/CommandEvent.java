@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The execution of a player command. The command text isn't recorded, as it may be a password.
+ */
+@Name("org.ldmud.jldmud.Command")
+@Label("Command")
+@Description("The execution of a player command")
+@Category({"jLDMud", "Execution"})
+public final class CommandEvent extends Event {
+
+    @Label("Object")
+    @Description("The name of the object executing the command")
+    public String objectName;
+
+    @Label("Interactive")
+    @Description("The id of the connection the command came from")
+    public long interactiveId;
+
+    @Label("Evaluation Cost")
+    public long evalCost;
+
+    @Label("Aborted")
+    @Description("The execution was aborted for a too long evaluation")
+    public boolean aborted;
+}
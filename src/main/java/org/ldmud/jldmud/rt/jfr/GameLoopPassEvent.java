@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One pass of the game loop, from taking the signals to flushing the output.
+ */
+@Name("org.ldmud.jldmud.GameLoopPass")
+@Label("Game Loop Pass")
+@Description("One pass of the game loop, handling the signals raised since the previous pass")
+@Category({"jLDMud", "Game Loop"})
+public final class GameLoopPassEvent extends Event {
+
+    @Label("Signals")
+    @Description("The bitmask of the signals handled by the pass")
+    public int signals;
+
+    @Label("Commands")
+    @Description("The number of commands executed in the pass")
+    public int commands;
+}
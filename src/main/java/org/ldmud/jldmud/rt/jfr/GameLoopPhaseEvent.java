@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One phase of a game loop pass.
+ */
+@Name("org.ldmud.jldmud.GameLoopPhase")
+@Label("Game Loop Phase")
+@Description("One phase of a game loop pass")
+@Category({"jLDMud", "Game Loop"})
+public final class GameLoopPhaseEvent extends Event {
+
+    @Label("Phase")
+    public String phase;
+
+    /**
+     * Create an event, and start its timing.
+     *
+     * @param phase The name of the phase.
+     * @return The event, to be ended with {@link #finish()}.
+     */
+    public static GameLoopPhaseEvent start(String phase) {
+        GameLoopPhaseEvent event = new GameLoopPhaseEvent();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End the timing of the event, and commit it if it is recorded.
+     */
+    public void finish() {
+        end();
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
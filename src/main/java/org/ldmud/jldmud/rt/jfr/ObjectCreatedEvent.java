@@ -0,0 +1,25 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The creation of a game object.
+ */
+@Name("org.ldmud.jldmud.ObjectCreated")
+@Label("Object Created")
+@Category({"jLDMud", "Objects"})
+public final class ObjectCreatedEvent extends Event {
+
+    @Label("Object")
+    public String objectName;
+
+    @Label("Object Id")
+    public long objectId;
+}
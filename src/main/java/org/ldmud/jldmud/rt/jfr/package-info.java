@@ -0,0 +1,14 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+
+/**
+ * Java Flight Recorder events of the game: the phases of the game loop, command executions and
+ * the object life cycle, so that a recording relates GC pauses and lock contention to the game's
+ * activity.<p/>
+ *
+ * When no recording is running, creating, beginning and committing an event compiles to (almost)
+ * nothing; filling in the fields is guarded by {@code shouldCommit()} or {@code isEnabled()}.
+ */
+package org.ldmud.jldmud.rt.jfr;
@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.rt.journal.JournalRecord.Type;
+
+import com.google.inject.Inject;
+
+/**
+ * Singleton class recording the input journal of the game, if enabled by the configuration.<p/>
+ *
+ * The game loop reports the start of every pass, and every input of an interactive it processes,
+ * in the order it processes them; a replay processing the same records in the same order sees the
+ * same game. When no journal is recorded, every call is a single test.<p/>
+ *
+ * The journal is written to the driver log directory, named after the start time. As it holds
+ * everything the players typed, it is readable by its owner only (where the file system supports
+ * POSIX permissions), and commands marked as private by the interactive are recorded with their
+ * length only. If writing fails, the recording is stopped; the game goes on. The class is used by the main thread only.
+ */
+public class InputJournal {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    // External modules.
+    private final Configuration config;
+
+    // The journal being written, or {@code null} if none.
+    private JournalWriter writer = null;
+    private File file = null;
+
+    /**
+     * Constructor
+     *
+     * @param config The {@link Configuration} instance, may be {@code null}.
+     */
+    @Inject
+    InputJournal(Configuration config) {
+        super();
+        this.config = config;
+    }
+
+    /**
+     * Start recording, if enabled by the configuration.
+     */
+    public void start() {
+        if (config == null || !Boolean.TRUE.equals(config.getJournalRecord()) || config.getDriverLogDirectory() == null) {
+            return;
+        }
+        String name = "input-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".journal";
+        start(new File(config.getDriverLogDirectory(), name));
+    }
+
+    /**
+     * Start recording into a given file.
+     *
+     * @param file The file to write the journal to.
+     */
+    public void start(File file) {
+        stop();
+        try {
+            writer = new JournalWriter(createFile(file.toPath()), System.nanoTime());
+            this.file = file;
+            log.info("Recording the input journal {}", file);
+        } catch (IOException e) {
+            log.error("Can't create the input journal {}: {}", file, e.toString());
+        }
+    }
+
+    /**
+     * Create (or replace) a journal file, readable and writable by its owner only.
+     *
+     * @param path The path of the file.
+     * @return The stream to write the file.
+     * @throws IOException if the file can't be created.
+     */
+    private static OutputStream createFile(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        return Files.newOutputStream(path);
+    }
+
+    /**
+     * Stop recording, and close the journal.
+     */
+    public void stop() {
+        if (writer != null) {
+            try {
+                writer.close();
+                log.info("Input journal {} closed after {} s", file, writer.getDuration() / 1000000000L);
+            } catch (IOException e) {
+                log.error("Error closing the input journal {}: {}", file, e.toString());
+            }
+            writer = null;
+            file = null;
+        }
+    }
+
+    /**
+     * @return {@code true} if a journal is being recorded.
+     */
+    public boolean isRecording() {
+        return writer != null;
+    }
+
+    /**
+     * Record the start of a game loop pass.
+     *
+     * @param signals The signals handled by the pass.
+     */
+    public void pass(int signals) {
+        if (writer != null) {
+            try {
+                writer.pass(System.nanoTime(), signals);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    /**
+     * Record the logon of a new interactive.
+     *
+     * @param interactiveId The id of the interactive.
+     */
+    public void logon(long interactiveId) {
+        record(Type.LOGON, interactiveId, null);
+    }
+
+    /**
+     * Record the execution of a command.
+     *
+     * @param interactiveId The id of the interactive.
+     * @param command The command.
+     * @param redacted If {@code true}, the command is private, and only its length is recorded.
+     */
+    public void command(long interactiveId, String command, boolean redacted) {
+        record(redacted ? Type.REDACTED : Type.COMMAND, interactiveId, command);
+    }
+
+    /**
+     * Record a GMCP message received.
+     *
+     * @param interactiveId The id of the interactive.
+     * @param message The message.
+     */
+    public void gmcp(long interactiveId, String message) {
+        record(Type.GMCP, interactiveId, message);
+    }
+
+    /**
+     * Record the loss of a connection.
+     *
+     * @param interactiveId The id of the interactive.
+     */
+    public void disconnect(long interactiveId) {
+        record(Type.DISCONNECT, interactiveId, null);
+    }
+
+    /**
+     * Write a record of an interactive, if recording.
+     */
+    private void record(Type type, long interactiveId, String text) {
+        if (writer != null) {
+            try {
+                writer.interactive(type, interactiveId, text);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    /**
+     * Writing the journal failed: stop recording.
+     */
+    private void failed(IOException e) {
+        log.error("Error writing the input journal {} - recording stopped: {}", file, e.toString());
+        try {
+            writer.close();
+        } catch (IOException e2) {
+            // Already reported.
+        }
+        writer = null;
+        file = null;
+    }
+}
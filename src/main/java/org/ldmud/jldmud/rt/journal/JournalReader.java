@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.journal;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang.StringUtils;
+import org.ldmud.jldmud.rt.journal.JournalRecord.Type;
+
+/**
+ * Reads an input journal written by the {@link JournalWriter}.
+ */
+public class JournalReader implements Closeable {
+
+    private static final Type[] TYPES = Type.values();
+
+    private final DataInputStream in;
+
+    // The record returned by next(), reused for every record.
+    private final JournalRecord record = new JournalRecord();
+
+    /**
+     * Constructor, reading the header.
+     *
+     * @param in The stream to read from; it is buffered by the reader.
+     * @throws IOException if the header can't be read, or is not that of a journal.
+     */
+    public JournalReader(InputStream in) throws IOException {
+        super();
+        this.in = new DataInputStream(new BufferedInputStream(in, 65536));
+        if (this.in.readInt() != JournalWriter.MAGIC) {
+            throw new IOException("Not an input journal");
+        }
+        int version = this.in.readUnsignedByte();
+        // Version 1 differs only by lacking the redacted records.
+        if (version != JournalWriter.VERSION && version != 1) {
+            throw new IOException("Unsupported input journal version " + version);
+        }
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return The record, or {@code null} at the end of the journal. The instance is reused by the next call.
+     * @throws IOException if the record can't be read.
+     */
+    public JournalRecord next() throws IOException {
+        int type = in.read();
+        if (type <= 0) {
+            // A journal cut off by a crash ends without the end marker.
+            return null;
+        }
+        if (type > TYPES.length) {
+            throw new IOException("Corrupt input journal: unknown record type " + type);
+        }
+        record.type = TYPES[type - 1];
+        record.text = null;
+        try {
+            if (record.type == Type.PASS) {
+                record.time += readNumber();
+                record.signals = (int) readNumber();
+            } else {
+                record.interactiveId = readNumber();
+                if (record.type == Type.COMMAND || record.type == Type.GMCP) {
+                    byte[] bytes = new byte[(int) readNumber()];
+                    in.readFully(bytes);
+                    record.text = new String(bytes, StandardCharsets.UTF_8);
+                } else if (record.type == Type.REDACTED) {
+                    record.text = StringUtils.repeat("*", (int) readNumber());
+                }
+            }
+        } catch (EOFException e) {
+            // The last record was cut off as well.
+            return null;
+        }
+        return record;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Read a variable length integer.
+     */
+    private long readNumber() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt input journal: number too long");
+    }
+}
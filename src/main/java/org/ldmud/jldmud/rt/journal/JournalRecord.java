@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.journal;
+
+/**
+ * One record of an input journal, as read by the {@link JournalReader}. The reader reuses the
+ * instance for every record.
+ */
+public class JournalRecord {
+
+    /**
+     * The kinds of records.
+     */
+    public enum Type {
+        PASS,       // The start of a game loop pass.
+        LOGON,      // The logon of a new interactive.
+        COMMAND,    // A command executed for an interactive.
+        GMCP,       // A GMCP message received from an interactive.
+        DISCONNECT, // The connection of an interactive was lost.
+        REDACTED    // A private command (like a password) executed for an interactive, of which only the length is recorded.
+    }
+
+    Type type;
+    long time;
+    int signals;
+    long interactiveId;
+    String text;
+
+    /**
+     * @return The kind of record.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The time of the pass this record belongs to, in nanoseconds since the start of the recording.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return For a {@link Type#PASS}, the signals the pass handled.
+     */
+    public int getSignals() {
+        return signals;
+    }
+
+    /**
+     * @return The id of the interactive, as it was in the recording driver.
+     */
+    public long getInteractiveId() {
+        return interactiveId;
+    }
+
+    /**
+     * @return For a {@link Type#COMMAND} or {@link Type#GMCP}, the command resp. message; for
+     *   a {@link Type#REDACTED} command, a placeholder of its length.
+     */
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.ldmud.jldmud.rt.journal.JournalRecord.Type;
+
+/**
+ * Writes an input journal.<p/>
+ *
+ * The journal starts with the {@link #MAGIC} number and the {@link #VERSION}, followed by the
+ * records, and ends with a 0 byte. Every record starts with its type (the ordinal of
+ * {@link JournalRecord.Type} plus one); the numbers are written as variable length integers
+ * of seven bits per byte, the strings as their length and UTF-8 bytes. A pass record holds
+ * the time since the previous pass in nanoseconds and the signals; the other records hold the
+ * interactive id, and the command or message. Of a redacted command only the length in characters
+ * is written, so that private input like passwords doesn't end up in the journal. A record of a few bytes per command keeps the
+ * journal of a busy game at a few megabytes per hour.
+ */
+public class JournalWriter implements Closeable {
+
+    /**
+     * The magic number starting a journal ("JLDJ").
+     */
+    static final int MAGIC = 0x4a4c444a;
+
+    /**
+     * The version of the journal format.
+     */
+    static final int VERSION = 2;
+
+    // The interval in which the buffered records are written out, in nanoseconds.
+    private static final long FLUSH_INTERVAL = 1000000000L;
+
+    private final DataOutputStream out;
+
+    // The time of the start of the recording, and of the previous pass.
+    private final long startTime;
+    private long lastTime;
+
+    // The time the records were last written out.
+    private long lastFlush;
+
+    /**
+     * Constructor, writing the header.
+     *
+     * @param out The stream to write to; it is buffered by the writer.
+     * @param startTime The time the recording starts, in {@link System#nanoTime()} terms.
+     * @throws IOException if the header can't be written.
+     */
+    public JournalWriter(OutputStream out, long startTime) throws IOException {
+        super();
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        this.startTime = startTime;
+        this.lastTime = startTime;
+        this.lastFlush = startTime;
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    /**
+     * Record the start of a game loop pass. At most once per second, the buffered records are
+     * written out, so that a crash loses little of the journal.
+     *
+     * @param time The time of the pass, in {@link System#nanoTime()} terms.
+     * @param signals The signals handled by the pass.
+     * @throws IOException if the record can't be written.
+     */
+    public void pass(long time, int signals) throws IOException {
+        out.writeByte(Type.PASS.ordinal() + 1);
+        writeNumber(Math.max(time - lastTime, 0L));
+        writeNumber(signals);
+        lastTime = Math.max(time, lastTime);
+        if (time - lastFlush >= FLUSH_INTERVAL) {
+            out.flush();
+            lastFlush = time;
+        }
+    }
+
+    /**
+     * Record a record of an interactive.
+     *
+     * @param type The kind of record.
+     * @param interactiveId The id of the interactive.
+     * @param text The command or message, or {@code null} if the record has none.
+     * @throws IOException if the record can't be written.
+     */
+    public void interactive(Type type, long interactiveId, String text) throws IOException {
+        out.writeByte(type.ordinal() + 1);
+        writeNumber(interactiveId);
+        if (type == Type.COMMAND || type == Type.GMCP) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeNumber(bytes.length);
+            out.write(bytes);
+        } else if (type == Type.REDACTED) {
+            writeNumber(text.length());
+        }
+    }
+
+    /**
+     * @return The time since the start of the recording, in nanoseconds.
+     */
+    public long getDuration() {
+        return lastTime - startTime;
+    }
+
+    /**
+     * Write the end marker, and close the journal.
+     *
+     * @throws IOException if the journal can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeByte(0);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write a positive number as variable length integer.
+     */
+    private void writeNumber(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
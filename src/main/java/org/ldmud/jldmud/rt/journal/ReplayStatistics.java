@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.journal;
+
+import java.util.Arrays;
+
+/**
+ * The latencies measured by the replay of an input journal: the duration of every game loop
+ * pass, and separately of the passes which started a new tick.
+ */
+public class ReplayStatistics {
+
+    // The durations of all passes, and of the tick passes, in nanoseconds.
+    private long[] passes = new long[1024];
+    private long[] ticks = new long[1024];
+    private int passCount = 0;
+    private int tickCount = 0;
+
+    // The number of commands replayed, the recorded duration, and the replay's duration in nanoseconds.
+    private long commands = 0;
+    private long recordedTime = 0;
+    private long replayTime = 0;
+
+    /**
+     * Add a pass.
+     *
+     * @param duration The duration of the pass in nanoseconds.
+     * @param tick {@code true} if the pass started a new tick.
+     */
+    public void addPass(long duration, boolean tick) {
+        if (passCount == passes.length) {
+            passes = Arrays.copyOf(passes, passCount * 2);
+        }
+        passes[passCount++] = duration;
+        if (tick) {
+            if (tickCount == ticks.length) {
+                ticks = Arrays.copyOf(ticks, tickCount * 2);
+            }
+            ticks[tickCount++] = duration;
+        }
+    }
+
+    /**
+     * Count a replayed command.
+     */
+    public void addCommand() {
+        commands++;
+    }
+
+    /**
+     * @param recordedTime The time covered by the recording in nanoseconds.
+     * @param replayTime The time the replay took in nanoseconds.
+     */
+    public void setTimes(long recordedTime, long replayTime) {
+        this.recordedTime = recordedTime;
+        this.replayTime = replayTime;
+    }
+
+    /**
+     * @return The number of passes replayed.
+     */
+    public int getPassCount() {
+        return passCount;
+    }
+
+    /**
+     * @return The number of tick passes replayed.
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return The number of commands replayed.
+     */
+    public long getCommandCount() {
+        return commands;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @param tickPasses {@code true} for the tick passes only, {@code false} for all passes.
+     * @return The pass duration at the given percentile in nanoseconds, or 0 if there were no passes.
+     */
+    public long getPercentile(double percentile, boolean tickPasses) {
+        long[] sorted = Arrays.copyOf(tickPasses ? ticks : passes, tickPasses ? tickCount : passCount);
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.min(Math.max(index, 0), sorted.length - 1)];
+    }
+
+    /**
+     * @return A report of the replay.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format("Replayed %d passes (%d ticks, %d commands) of %.1f s in %.1f s.",
+                                                               passCount, tickCount, commands, recordedTime / 1e9, replayTime / 1e9));
+        report.append("\nPass latency (us):      p50 %8d  p90 %8d  p99 %8d  max %8d");
+        report.append("\nTick pass latency (us): p50 %8d  p90 %8d  p99 %8d  max %8d");
+        return String.format(report.toString(),
+                             getPercentile(50, false) / 1000, getPercentile(90, false) / 1000,
+                             getPercentile(99, false) / 1000, getPercentile(100, false) / 1000,
+                             getPercentile(50, true) / 1000, getPercentile(90, true) / 1000,
+                             getPercentile(99, true) / 1000, getPercentile(100, true) / 1000);
+    }
+}
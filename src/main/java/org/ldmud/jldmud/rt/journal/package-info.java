@@ -0,0 +1,11 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+
+/**
+ * The input journal: a compact binary recording of the game loop passes and the input of the
+ * interactives they processed, which can be replayed by a fresh driver as fast as possible to
+ * compare the latency of different driver versions on real traffic.
+ */
+package org.ldmud.jldmud.rt.journal;
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The admission control deciding whether a new connection is accepted. Connections are
+ * limited by rate, both globally and per remote address, with token buckets which allow short
+ * bursts, and by the number of connections still waiting for their logon.<p/>
+ *
+ * The methods are called by the accepting threads.
+ */
+class AdmissionControl {
+
+    /**
+     * The decision on a new connection.
+     */
+    enum Verdict {
+        ACCEPT,             // The connection is accepted.
+        ADDRESS_RATE,       // Too many connections from the same address.
+        GLOBAL_RATE,        // Too many connections overall.
+        LOGON_QUEUE_FULL,   // Too many connections waiting for their logon.
+        LOGONS_REFUSED      // No new connections are accepted at the moment (e.g. for lack of memory).
+    }
+
+    /**
+     * The time after which idle per-address buckets are dropped.
+     */
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    // The global rate in connections per second, the per-address rate in connections
+    // per minute, and the maximum number of pending logons; 0 for no limit.
+    private final long globalRate;
+    private final long addressRate;
+    private final int maxPendingLogons;
+
+    // The global bucket, and the buckets of the recently seen addresses.
+    private final Bucket globalBucket;
+    private final Map<InetAddress, Bucket> addressBuckets = new HashMap<>();
+
+    // The time the address buckets were last swept.
+    private long lastSweep;
+
+    /**
+     * Constructor
+     *
+     * @param globalRate The maximum number of connections accepted per second, or 0 for no limit.
+     * @param addressRate The maximum number of connections accepted from one address per minute, or 0 for no limit.
+     * @param maxPendingLogons The maximum number of connections waiting for their logon, or 0 for no limit.
+     * @param now The current time in nanoseconds.
+     */
+    AdmissionControl(long globalRate, long addressRate, int maxPendingLogons, long now) {
+        super();
+        this.globalRate = globalRate;
+        this.addressRate = addressRate;
+        this.maxPendingLogons = maxPendingLogons;
+        globalBucket = new Bucket(globalRate, now);
+        lastSweep = now;
+    }
+
+    /**
+     * Decide on a new connection, and charge it to the buckets if accepted.
+     *
+     * @param address The remote address of the connection.
+     * @param pendingLogons The number of connections currently waiting for their logon.
+     * @param now The current time in nanoseconds.
+     * @return The decision.
+     */
+    synchronized Verdict admit(InetAddress address, int pendingLogons, long now) {
+        if (maxPendingLogons != 0 && pendingLogons >= maxPendingLogons) {
+            return Verdict.LOGON_QUEUE_FULL;
+        }
+        if (addressRate != 0 && address != null) {
+            sweep(now);
+            Bucket bucket = addressBuckets.computeIfAbsent(address, a -> new Bucket(addressRate, now));
+            if (!bucket.take(addressRate, TimeUnit.MINUTES.toNanos(1), now)) {
+                return Verdict.ADDRESS_RATE;
+            }
+        }
+        if (globalRate != 0 && !globalBucket.take(globalRate, TimeUnit.SECONDS.toNanos(1), now)) {
+            return Verdict.GLOBAL_RATE;
+        }
+        return Verdict.ACCEPT;
+    }
+
+    /**
+     * Drop the buckets of addresses which haven't connected long enough for their bucket to be full again.
+     *
+     * @param now The current time in nanoseconds.
+     */
+    private void sweep(long now) {
+        if (now - lastSweep < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweep = now;
+        for (Iterator<Bucket> iter = addressBuckets.values().iterator(); iter.hasNext(); ) {
+            if (now - iter.next().updated >= SWEEP_INTERVAL) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The number of addresses currently tracked.
+     */
+    synchronized int getTrackedAddressCount() {
+        return addressBuckets.size();
+    }
+
+    /**
+     * A token bucket, holding up to {@code rate} tokens, and refilled with {@code rate} tokens per period.
+     */
+    private static class Bucket {
+        private double tokens;
+        private long updated;
+
+        Bucket(long rate, long now) {
+            tokens = rate;
+            updated = now;
+        }
+
+        /**
+         * Refill the bucket for the time passed, and take one token out of it.
+         *
+         * @param rate The capacity of the bucket, and the tokens added per period.
+         * @param period The refill period in nanoseconds.
+         * @param now The current time in nanoseconds.
+         * @return {@code true} if a token was available.
+         */
+        boolean take(long rate, long period, long now) {
+            tokens = Math.min(rate, tokens + (double) (now - updated) * rate / period);
+            updated = now;
+            if (tokens < 1.0) {
+                return false;
+            }
+            tokens -= 1.0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of equally sized {@link ByteBuffer}s, which can be shared between threads.<p/>
+ *
+ * Buffers are allocated on demand; released buffers are kept for reuse up to a maximum number,
+ * beyond which they are left to the GC.
+ */
+class BufferPool {
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final int maxPooled;
+
+    // The buffers available for reuse, and their number.
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Constructor
+     *
+     * @param bufferSize The size of the buffers.
+     * @param direct {@code true} if direct buffers are to be allocated.
+     * @param maxPooled The maximum number of released buffers to keep for reuse.
+     */
+    BufferPool(int bufferSize, boolean direct, int maxPooled) {
+        super();
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return A cleared buffer, either reused or newly allocated.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. The caller must not use the buffer afterwards.
+     *
+     * @param buffer The buffer to release, which must have been acquired from this pool.
+     */
+    void release(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.add(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Drop all buffers kept for reuse, leaving them to the GC.
+     */
+    void trim() {
+        while (pool.poll() != null) {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return The size of the buffers in this pool.
+     */
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The number of buffers currently available for reuse.
+     */
+    int getPooledCount() {
+        return pooled.get();
+    }
+}
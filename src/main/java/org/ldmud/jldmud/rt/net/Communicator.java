@@ -4,12 +4,37 @@
  */
 package org.ldmud.jldmud.rt.net;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
 import org.ldmud.jldmud.rt.GameStateSignals;
 
 import com.google.inject.Inject;
@@ -17,29 +42,299 @@ import com.google.inject.Inject;
 /**
  * This class handles the telnet network I/O, and manages the {@code Interactive} instances.
  */
-public class Communicator {
+public class Communicator implements CommunicatorMXBean {
     private Logger log = LogManager.getLogger(this.getClass());
 
+    /**
+     * The size of the chunks in which output text is buffered.
+     */
+    static final int OUTPUT_CHUNK_SIZE = 4096;
+
+    /**
+     * The maximum number of unused output chunks kept for reuse.
+     */
+    private static final int MAX_POOLED_OUTPUT_CHUNKS = 1024;
+
+    /**
+     * The maximum number of unused deflaters kept for reuse.
+     */
+    private static final int MAX_POOLED_DEFLATERS = 64;
+
+    /**
+     * The JMX name under which the metrics are published.
+     */
+    static final String MBEAN_NAME = "org.ldmud.jldmud:type=Communicator";
+
+    /**
+     * The time in milliseconds the pending output is given to be written on shutdown.
+     */
+    static final long SHUTDOWN_DRAIN_TIME = 1000L;
+
+    /**
+     * The time in milliseconds the pending output of a removed interactive is given to be written
+     * before its connection is closed.
+     */
+    static final long CLOSE_DRAIN_TIME = 1000L;
+
+    /**
+     * The messages sent to the connections closed for exceeding their logon or idle timeout.
+     */
+    static final String LOGON_TIMEOUT_MESSAGE = "Timeout waiting for the logon - closing the connection.\n";
+    static final String IDLE_TIMEOUT_MESSAGE = "You have been idle for too long - closing the connection.\n";
+
+    /**
+     * The message sent to telnet connections refused for load reasons.
+     */
+    private static final String BUSY_MESSAGE = "The game is too busy right now - please try again in a minute.\r\n";
+
+    /**
+     * The response sent to WebSocket connections refused for load reasons.
+     */
+    private static final String BUSY_RESPONSE = "HTTP/1.1 503 Service Unavailable\r\nRetry-After: 60\r\n"
+                                              + "Content-Length: 0\r\nConnection: close\r\n\r\n";
+
     // External Modules
+    private LiveConfiguration liveConfig;
     private GameStateSignals gameStateSignals;
 
     // All known {@link Interactive} instances, kept in a ring-buffer for fair processing.
     // TODO: Maybe use two queues (processed and unprocessed), and switch them around double buffer style
     private Queue<Interactive> allInteractives = new LinkedList<>();
 
+    // The handler serving the connections.
+    private IoHandler ioHandler;
+
+    // The TLS setup, if TLS connections are accepted.
+    private TlsContext tlsContext;
+
+    // The open listening sockets.
+    private List<ServerSocketChannel> listeners = new ArrayList<>();
+
+    // The pool of output text chunks, shared by all interactives.
+    private final BufferPool outputPool = new BufferPool(OUTPUT_CHUNK_SIZE, false, MAX_POOLED_OUTPUT_CHUNKS);
+
+    // The pool of deflaters for compressed connections.
+    private final DeflaterPool deflaterPool = new DeflaterPool(MAX_POOLED_DEFLATERS);
+
+    // The time the communication was started.
+    private long startTime = System.currentTimeMillis();
+
+    // The interactives which received output during the current game loop pass.
+    // Only accessed by the main thread.
+    private List<Interactive> outputPending = new ArrayList<>();
+
+    // The removed interactives whose connection is closed once their output is written, with the
+    // time by which it is closed regardless. Only accessed by the main thread.
+    private final Map<Interactive, Long> closing = new LinkedHashMap<>();
+
+    // The number of the current tick; every tick renews the command budgets of the interactives.
+    // Only accessed by the main thread.
+    private long commandTick = 0;
+
+    // The number of new interactives whose logon was processed in the current tick.
+    // Only accessed by the main thread.
+    private long tickLogons = 0;
+
+    // The admission control for new connections.
+    private AdmissionControl admissionControl = new AdmissionControl(0L, 0L, 0, System.nanoTime());
+
+    // The number of interactives waiting for their logon, and the number of connections refused.
+    private final AtomicInteger pendingLogons = new AtomicInteger();
+    private final AtomicLong refusedConnections = new AtomicLong();
+
+    // The deadlines of the connections for their logon, and for being idle.
+    private final ConnectionTimers timers = new ConnectionTimers();
+
+    // The logon and idle timeouts the deadlines were computed with.
+    private long scheduledLogonTimeout;
+    private long scheduledIdleTimeout;
+
+    // {@code true} while no new connections are accepted.
+    private volatile boolean logonsRefused = false;
+
+    // The number of connections closed for exceeding a timeout.
+    private volatile long timedOutConnections = 0;
+
+    // The number of input lines discarded for full command queues, and the number of commands executed.
+    private final AtomicLong discardedCommands = new AtomicLong();
+    private volatile long executedCommands = 0;
+
     /**
      * Constructor
+     *
+     * @param liveConfig The {@link LiveConfiguration} holding the current configuration.
+     * @param gameStateSignals The {@link GameStateSignals} instance.
      */
     @Inject
-    Communicator(GameStateSignals gameStateSignals) {
+    Communicator(LiveConfiguration liveConfig, GameStateSignals gameStateSignals) {
         super();
+        this.liveConfig = liveConfig;
         this.gameStateSignals = gameStateSignals;
+        this.scheduledLogonTimeout = getLogonTimeout();
+        this.scheduledIdleTimeout = getIdleTimeout();
+    }
+
+    /**
+     * Start the network I/O, and open the configured listening ports.
+     *
+     * @throws IOException if the port can't be opened.
+     */
+    public void start() throws IOException {
+        Configuration config = liveConfig.get();
+        startTime = System.currentTimeMillis();
+        admissionControl = new AdmissionControl(
+                config.getAcceptRate() != null ? config.getAcceptRate() : 0L,
+                config.getAddressAcceptRate() != null ? config.getAddressAcceptRate() : 0L,
+                config.getMaxPendingLogons() != null ? (int) Math.min(config.getMaxPendingLogons(), Integer.MAX_VALUE) : 0,
+                System.nanoTime());
+        if (config.getIoMode() == Configuration.IoMode.THREADS) {
+            ioHandler = new ThreadedIoHandler(gameStateSignals);
+        } else {
+            ioHandler = new SelectorIoHandler(gameStateSignals);
+        }
+        ioHandler.start();
+        registerMBean();
+
+        if (config.getPort() != 0L) {
+            listen(new InetSocketAddress(config.getPort().intValue()));
+        }
+        if (config.getTlsPort() != null && config.getTlsPort() != 0L) {
+            try {
+                tlsContext = TlsContext.load(config.getTlsKeystore(), config.getTlsPassword());
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Can't set up TLS from " + config.getTlsKeystore() + ": " + e.toString(), e);
+            }
+            listen(new InetSocketAddress(config.getTlsPort().intValue()), tlsContext, false);
+        }
+        if (config.getWebSocketPort() != null && config.getWebSocketPort() != 0L) {
+            listen(new InetSocketAddress(config.getWebSocketPort().intValue()), null, true);
+        }
+    }
+
+    /**
+     * Publish the metrics of this instance via JMX.
+     */
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            log.warn("Can't publish the network metrics: {}", e.toString());
+        }
+    }
+
+    /**
+     * Open a listening socket, and start accepting plain connections on it.
+     *
+     * @param address The address to listen on.
+     * @return The address actually bound to.
+     * @throws IOException if the socket can't be opened.
+     */
+    InetSocketAddress listen(InetSocketAddress address) throws IOException {
+        return listen(address, null, false);
+    }
+
+    /**
+     * Open a listening socket, and start accepting connections on it.
+     *
+     * @param address The address to listen on.
+     * @param tls The {@link TlsContext} if the connections are TLS-encrypted, {@code null} otherwise.
+     * @param webSocket {@code true} if the connections speak the WebSocket protocol instead of telnet.
+     * @return The address actually bound to.
+     * @throws IOException if the socket can't be opened.
+     */
+    synchronized InetSocketAddress listen(InetSocketAddress address, TlsContext tls, boolean webSocket) throws IOException {
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        listener.bind(address);
+        listeners.add(listener);
+
+        InetSocketAddress boundAddress = (InetSocketAddress) listener.getLocalAddress();
+        log.info("Accepting {}{} connections on port {}", tls != null ? "TLS " : "", webSocket ? "WebSocket" : "telnet",
+                 boundAddress.getPort());
+
+        Thread acceptor = new Thread(() -> accept(listener, tls, webSocket));
+        acceptor.setName("NetAccept-" + boundAddress.getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        return boundAddress;
+    }
+
+    /**
+     * Accept new connections on a listening socket until it is closed, and create
+     * an {@link Interactive} for each of them.
+     *
+     * @param listener The listening socket.
+     * @param tls The {@link TlsContext} if the connections are TLS-encrypted, {@code null} otherwise.
+     * @param webSocket {@code true} if the connections speak the WebSocket protocol instead of telnet.
+     */
+    private void accept(ServerSocketChannel listener, TlsContext tls, boolean webSocket) {
+        while (listener.isOpen()) {
+            try {
+                SocketChannel channel = listener.accept();
+                InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                AdmissionControl.Verdict verdict = logonsRefused ? AdmissionControl.Verdict.LOGONS_REFUSED
+                        : admissionControl.admit(remote != null ? remote.getAddress() : null, pendingLogons.get(), System.nanoTime());
+                if (verdict != AdmissionControl.Verdict.ACCEPT) {
+                    refuse(channel, tls != null, webSocket, verdict);
+                    continue;
+                }
+                Interactive interactive = new Interactive(this, channel, tls, webSocket);
+                log.info("New connection from {}: {}", channel.getRemoteAddress(), interactive);
+                add(interactive);
+                ioHandler.register(interactive);
+                if (!webSocket) {
+                    Configuration config = liveConfig.get();
+                    interactive.startNegotiation(config != null && config.getMccp() != null ? config.getMccp() : true);
+                }
+                gameStateSignals.signal(GameStateSignals.IO);
+            } catch (ClosedChannelException e) {
+                // The listener was closed.
+            } catch (IOException e) {
+                log.warn("Error accepting connection: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Refuse a new connection for load reasons: tell the client to come back later if its protocol
+     * allows it, and close the connection.
+     *
+     * @param channel The new connection.
+     * @param tls {@code true} if the connection is TLS-encrypted; nothing can be sent before the handshake.
+     * @param webSocket {@code true} if the connection speaks the WebSocket protocol.
+     * @param verdict The reason for refusing the connection.
+     */
+    private void refuse(SocketChannel channel, boolean tls, boolean webSocket, AdmissionControl.Verdict verdict) {
+        refusedConnections.incrementAndGet();
+        try {
+            log.debug("Refusing connection from {}: {}", channel.getRemoteAddress(), verdict);
+            if (!tls) {
+                // The socket buffer of a fresh connection takes the message without blocking.
+                channel.write(ByteBuffer.wrap((webSocket ? BUSY_RESPONSE : BUSY_MESSAGE).getBytes(StandardCharsets.ISO_8859_1)));
+                channel.shutdownOutput();
+            }
+        } catch (IOException e) {
+            log.debug("Error refusing connection: {}", e.toString());
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Error closing refused connection: {}", e.toString());
+            }
+        }
     }
 
     /**
+     * Only used by the tests; the game loop polls {@link #nextPendingInteractive()} instead.
+     *
      * @return {@code true} if there is an {@link Interactive} with data or events to process.
      */
-    public synchronized boolean areInteractivesPending() {
+    synchronized boolean areInteractivesPending() {
         for (Iterator<Interactive> iter = allInteractives.iterator(); iter.hasNext(); ) {
             Interactive interactive = iter.next();
             if (isInteractivePending(interactive)) {
@@ -93,6 +388,10 @@ public class Communicator {
         if (interactive.getState() == Interactive.State.ACTIVE) {
             return interactive.isDataPending();
         }
+        if (interactive.getState() == Interactive.State.NEW) {
+            long maxLogons = getLogonsPerTick();
+            return maxLogons == 0 || tickLogons < maxLogons;
+        }
         if (interactive.getState() != Interactive.State.CLOSED) {
             return true;
         }
@@ -100,36 +399,546 @@ public class Communicator {
         return false;
     }
 
+    /**
+     * Notify the main thread that an {@link Interactive} has new input. This can be called from any thread.
+     */
+    void inputAvailable() {
+        if (gameStateSignals != null) {
+            gameStateSignals.signal(GameStateSignals.IO);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.CommunicatorMXBean#getInteractiveCount()
+     */
+    @Override
+    public synchronized int getInteractiveCount() {
+        return allInteractives.size();
+    }
+
+    /**
+     * @return A snapshot of all connected {@link Interactive}s.
+     */
+    public synchronized List<Interactive> getInteractives() {
+        return new ArrayList<>(allInteractives);
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.CommunicatorMXBean#getCommandQueueDepth()
+     */
+    @Override
+    public synchronized int getCommandQueueDepth() {
+        int depth = 0;
+        for (Interactive interactive : allInteractives) {
+            depth += interactive.getCommandQueueDepth();
+        }
+        return depth;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.CommunicatorMXBean#getMaxCommandQueueDepth()
+     */
+    @Override
+    public synchronized int getMaxCommandQueueDepth() {
+        int depth = 0;
+        for (Interactive interactive : allInteractives) {
+            depth = Math.max(depth, interactive.getCommandQueueDepth());
+        }
+        return depth;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.CommunicatorMXBean#getPendingLogonCount()
+     */
+    @Override
+    public int getPendingLogonCount() {
+        return pendingLogons.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.CommunicatorMXBean#getRefusedConnectionCount()
+     */
+    @Override
+    public long getRefusedConnectionCount() {
+        return refusedConnections.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.CommunicatorMXBean#getTimedOutConnectionCount()
+     */
+    @Override
+    public long getTimedOutConnectionCount() {
+        return timedOutConnections;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.CommunicatorMXBean#getDiscardedCommandCount()
+     */
+    @Override
+    public long getDiscardedCommandCount() {
+        return discardedCommands.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.CommunicatorMXBean#getExecutedCommandCount()
+     */
+    @Override
+    public long getExecutedCommandCount() {
+        return executedCommands;
+    }
+
+    /**
+     * Start a new tick, renewing the command budgets of all interactives, and the number of
+     * logons which may be processed. This is called by the main thread once every second.
+     */
+    public void nextTick() {
+        commandTick++;
+        tickLogons = 0;
+    }
+
+    /**
+     * @return The number of the current command tick.
+     */
+    long getCommandTick() {
+        return commandTick;
+    }
+
+    /**
+     * @return The maximum number of input lines queued for one interactive, or 0 if unlimited.
+     */
+    int getCommandQueueLimit() {
+        Configuration config = liveConfig.get();
+        if (config == null || config.getCommandQueueLimit() == null) {
+            return Interactive.DEFAULT_COMMAND_QUEUE_LIMIT;
+        }
+        return (int) Math.min(config.getCommandQueueLimit(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return The maximum number of commands one interactive may execute per tick, or 0 if unlimited.
+     */
+    long getCommandsPerTick() {
+        Configuration config = liveConfig.get();
+        return config != null && config.getCommandsPerTick() != null ? config.getCommandsPerTick() : 0L;
+    }
+
+    /**
+     * @return The evaluation cost the commands of one interactive may use up per tick, or 0 if unlimited.
+     */
+    long getEvalCostPerTick() {
+        Configuration config = liveConfig.get();
+        return config != null && config.getEvalCostPerTick() != null ? config.getEvalCostPerTick() : 0L;
+    }
+
+    /**
+     * @param logonsRefused {@code true} if new connections are to be refused, {@code false} to accept them again.
+     */
+    public void setLogonsRefused(boolean logonsRefused) {
+        if (this.logonsRefused != logonsRefused) {
+            log.warn(logonsRefused ? "Refusing new connections" : "Accepting new connections again");
+            this.logonsRefused = logonsRefused;
+        }
+    }
+
+    /**
+     * Free the buffers and compressors kept for reuse, to make memory available.
+     */
+    public void trimPools() {
+        outputPool.trim();
+        deflaterPool.trim();
+        if (tlsContext != null) {
+            tlsContext.trimPools();
+        }
+    }
+
+    /**
+     * @return The maximum number of new interactives whose logon may be processed per tick, or 0 if unlimited.
+     */
+    long getLogonsPerTick() {
+        Configuration config = liveConfig.get();
+        return config != null && config.getLogonsPerTick() != null ? config.getLogonsPerTick() : 0L;
+    }
+
+    /**
+     * Called by the main thread when the logon of a new interactive has been processed.
+     */
+    public void logonExecuted() {
+        tickLogons++;
+    }
+
+    /**
+     * Called when a new {@link Interactive} is created, which now waits for its logon.
+     */
+    void logonQueued() {
+        pendingLogons.incrementAndGet();
+    }
+
+    /**
+     * Called when an {@link Interactive} no longer waits for its logon.
+     */
+    void logonDequeued() {
+        pendingLogons.decrementAndGet();
+    }
+
+    /**
+     * Called by the I/O thread when an input line was discarded because the command queue was full.
+     */
+    void commandDiscarded() {
+        discardedCommands.incrementAndGet();
+    }
+
+    /**
+     * Called by the main thread when a command has been executed.
+     */
+    void commandExecuted() {
+        executedCommands++;
+    }
+
+    /**
+     * @return The time the communication was started, in milliseconds since the epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
     /**
      * @param interactive A new {@link Interactive} (with active connection) to add.
      */
     public synchronized void add (Interactive interactive) {
         allInteractives.add(interactive);
+        scheduleTimeout(interactive);
+    }
+
+    /**
+     * Schedule the next timeout check of an {@link Interactive}, if it is subject to a timeout.
+     *
+     * @param interactive The {@link Interactive}.
+     * @return The deadline, or {@code null} if the interactive is not subject to a timeout.
+     */
+    private Long scheduleTimeout(Interactive interactive) {
+        Long deadline = getDeadline(interactive);
+        if (deadline != null) {
+            timers.schedule(interactive, deadline);
+        }
+        return deadline;
+    }
+
+    /**
+     * Compute the time by which an {@link Interactive} has to complete its logon (including
+     * the TLS handshake or WebSocket upgrade), or has to show activity.
+     *
+     * @param interactive The {@link Interactive}.
+     * @return The deadline in {@link System#nanoTime()} terms, or {@code null} if there is none.
+     */
+    private Long getDeadline(Interactive interactive) {
+        Long deadline = null;
+        long logonTimeout = getLogonTimeout();
+        if (logonTimeout != 0 && (interactive.getState() == Interactive.State.NEW || !interactive.isWritable())) {
+            deadline = interactive.getCreatedTime() + TimeUnit.SECONDS.toNanos(logonTimeout);
+        }
+        long idleTimeout = getIdleTimeout();
+        if (idleTimeout != 0) {
+            long idleDeadline = interactive.getLastActivity() + TimeUnit.SECONDS.toNanos(idleTimeout);
+            if (deadline == null || idleDeadline - deadline < 0) {
+                deadline = idleDeadline;
+            }
+        }
+        return deadline;
+    }
+
+    /**
+     * Close the connections which exceeded their logon or idle timeout, and reschedule those
+     * whose deadline has been moved by activity. Only the connections whose previous deadline
+     * has passed are visited, unless the timeouts were changed by the configuration: then all
+     * connections are rescheduled. This is called by the main thread once every second.
+     */
+    public void checkTimeouts() {
+        checkTimeouts(System.nanoTime());
+    }
+
+    /**
+     * Close the connections which exceeded their logon or idle timeout.
+     *
+     * @param now The current time in {@link System#nanoTime()} terms.
+     */
+    synchronized void checkTimeouts(long now) {
+        long logonTimeout = getLogonTimeout();
+        long idleTimeout = getIdleTimeout();
+        if (logonTimeout != scheduledLogonTimeout || idleTimeout != scheduledIdleTimeout) {
+            scheduledLogonTimeout = logonTimeout;
+            scheduledIdleTimeout = idleTimeout;
+            timers.clear();
+            for (Interactive i : allInteractives) {
+                if (i.getState() != Interactive.State.CLOSED) {
+                    scheduleTimeout(i);
+                }
+            }
+        }
+
+        Interactive interactive;
+        while ((interactive = timers.pollExpired(now)) != null) {
+            if (interactive.getState() == Interactive.State.CONNECTION_LOST) {
+                continue;
+            }
+            Long deadline = getDeadline(interactive);
+            if (deadline != null && now - deadline >= 0) {
+                boolean logon = interactive.getState() == Interactive.State.NEW || !interactive.isWritable();
+                log.info("Closing {}: {} timeout", interactive, logon ? "logon" : "idle");
+                timedOutConnections++;
+                interactive.timedOut(logon ? LOGON_TIMEOUT_MESSAGE : IDLE_TIMEOUT_MESSAGE);
+            } else if (deadline != null) {
+                timers.schedule(interactive, deadline);
+            }
+        }
+    }
+
+    /**
+     * @return The time in seconds a new connection has to complete its logon, or 0 if unlimited.
+     */
+    long getLogonTimeout() {
+        Configuration config = liveConfig.get();
+        return config != null && config.getLogonTimeout() != null ? config.getLogonTimeout() : 0L;
+    }
+
+    /**
+     * @return The time in seconds a connection may be idle, or 0 if unlimited.
+     */
+    long getIdleTimeout() {
+        Configuration config = liveConfig.get();
+        return config != null && config.getIdleTimeout() != null ? config.getIdleTimeout() : 0L;
+    }
+
+    /**
+     * Encode a text once, so that it can be sent to several interactives without being copied.
+     *
+     * @param text The text to encode.
+     * @param utf8 {@code true} if the text is to be encoded for UTF-8 connections.
+     * @return The encoded text, for use with {@link Interactive#send(ByteBuffer)}.
+     */
+    public static ByteBuffer encode(String text, boolean utf8) {
+        return OutputBuffer.encode(text, utf8);
+    }
+
+    /**
+     * Send the same text to several interactives. The text is encoded once per character set,
+     * and the encoded bytes are shared between all recipients.
+     *
+     * @param text The text to send.
+     * @param recipients The {@link Interactive}s to send the text to.
+     */
+    public void broadcast(String text, Collection<Interactive> recipients) {
+        ByteBuffer latin1 = null;
+        ByteBuffer utf8 = null;
+        for (Interactive interactive : recipients) {
+            if (interactive.isUtf8()) {
+                if (utf8 == null) {
+                    utf8 = encode(text, true);
+                }
+                interactive.send(utf8);
+            } else {
+                if (latin1 == null) {
+                    latin1 = encode(text, false);
+                }
+                interactive.send(latin1);
+            }
+        }
+    }
+
+    /**
+     * @return A new, empty {@link OutputBuffer} for an {@link Interactive}.
+     */
+    OutputBuffer newOutputBuffer() {
+        Configuration config = liveConfig.get();
+        long limit = config != null && config.getOutputLimit() != null ? config.getOutputLimit() : Interactive.DEFAULT_OUTPUT_LIMIT;
+        return new OutputBuffer(outputPool, limit);
+    }
+
+    /**
+     * @return A new {@link MccpCompressor} for an {@link Interactive}.
+     */
+    MccpCompressor newCompressor() {
+        return new MccpCompressor(deflaterPool, outputPool);
+    }
+
+    /**
+     * Start writing the output of an {@link Interactive} right away, outside of the regular
+     * flush at the end of the game loop pass. This can be called from any thread.
+     *
+     * @param interactive The {@link Interactive}.
+     */
+    void flushNow(Interactive interactive) {
+        if (ioHandler != null && interactive.getChannel() != null) {
+            ioHandler.flush(Collections.singletonList(interactive));
+        }
+    }
+
+    /**
+     * Continue the I/O of an {@link Interactive} after its TLS handshake made progress.
+     * This can be called from any thread.
+     *
+     * @param interactive The {@link Interactive}.
+     */
+    void resume(Interactive interactive) {
+        if (ioHandler != null) {
+            ioHandler.resume(interactive);
+        }
+    }
+
+    /**
+     * Note an {@link Interactive} as having received output in this game loop pass.
+     *
+     * @param interactive The {@link Interactive}.
+     */
+    void outputPending(Interactive interactive) {
+        outputPending.add(interactive);
+    }
+
+    /**
+     * Start writing the output of all interactives which received output since the last call,
+     * and close the connections of the removed interactives whose output has been written.
+     * This is called by the main thread at the end of every game loop pass.
+     */
+    public void flushOutput() {
+        if (!outputPending.isEmpty()) {
+            for (Interactive interactive : outputPending) {
+                interactive.flushStarted();
+                if (interactive.getChannel() == null) {
+                    // Nowhere to send the output to.
+                    interactive.getOutput().clear();
+                }
+            }
+            outputPending.removeIf(interactive -> interactive.getChannel() == null);
+            if (ioHandler != null) {
+                ioHandler.flush(outputPending);
+            }
+            outputPending.clear();
+        }
+        if (!closing.isEmpty()) {
+            closeDrained(System.nanoTime());
+        }
     }
 
     /**
      * Close the connection on an {@link Interactive} instance and remove it from the internal lists.
+     * If output is still pending, like a farewell message sent in the same pass, the connection
+     * is closed once the output is written, or after {@link #CLOSE_DRAIN_TIME} milliseconds.
      *
-     * @param interactiveThe {@link Interactive} to remove.
+     * @param interactive The {@link Interactive} to remove.
      */
     public synchronized void remove(Interactive interactive) {
         log.info("Removing interactive {}", interactive);
-        // TODO: Close the connection
         interactive.setState(Interactive.State.CLOSED);
+        if (interactive.getChannel() != null && interactive.isWritePending()) {
+            closing.put(interactive, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_DRAIN_TIME));
+        } else {
+            close(interactive);
+        }
         // It will be removed from the allInteractives list on the next round-robin.
     }
 
+    /**
+     * Close the connections of the removed interactives whose output has been written, or whose
+     * time to write it has passed.
+     *
+     * @param now The current time in {@link System#nanoTime()} terms.
+     */
+    private synchronized void closeDrained(long now) {
+        for (Iterator<Map.Entry<Interactive, Long>> iter = closing.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<Interactive, Long> entry = iter.next();
+            if (!entry.getKey().isWritePending() || now - entry.getValue() >= 0) {
+                close(entry.getKey());
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Close the connection of a removed {@link Interactive}, and release its buffers.
+     *
+     * @param interactive The {@link Interactive}.
+     */
+    private void close(Interactive interactive) {
+        interactive.closeChannel();
+        interactive.releaseBuffers();
+    }
+
     /**
      * Shutdown all connections still open. This is called when the game is being shutdown,
-     * and no new events will be processed.
+     * and no new events will be processed.<p/>
+     *
+     * The output still pending, like a shutdown message, is given up to {@link #SHUTDOWN_DRAIN_TIME}
+     * milliseconds to be written before the connections are closed.
      */
-    public synchronized void shutdown () {
+    public void shutdown() {
+        drainOutput();
+        closeAll();
+    }
+
+    /**
+     * Write the pending output of all interactives, and wait until it is written, or
+     * {@link #SHUTDOWN_DRAIN_TIME} has passed. The lock is not held while waiting, as the
+     * I/O threads may need it to remove a connection that failed.
+     */
+    private void drainOutput() {
+        flushOutput();
+        if (ioHandler == null) {
+            return;
+        }
+        List<Interactive> interactives = getInteractives();
+        interactives.addAll(closing.keySet());
+        long deadline = System.nanoTime() + SHUTDOWN_DRAIN_TIME * 1000000L;
+        while (interactives.stream().anyMatch(i -> i.getChannel() != null && i.isWritePending())) {
+            if (System.nanoTime() - deadline > 0) {
+                log.info("Closing the connections with output still pending");
+                return;
+            }
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Close the listeners and all connections.
+     */
+    private synchronized void closeAll() {
         log.info("Shutting down all remaining connections");
+        for (ServerSocketChannel listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                log.debug("Error closing listener: {}", e.toString());
+            }
+        }
+        listeners.clear();
+        if (ioHandler != null) {
+            ioHandler.shutdown();
+        }
+        if (tlsContext != null) {
+            tlsContext.shutdown();
+        }
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.debug("Error withdrawing the network metrics: {}", e.toString());
+        }
         for (Interactive i : allInteractives) {
-            // TODO: Close the connection
             i.setState(Interactive.State.CLOSED);
+            close(i);
         }
         allInteractives.clear();
+        for (Interactive i : closing.keySet()) {
+            close(i);
+        }
+        closing.clear();
+        timers.clear();
     }
 
     /**
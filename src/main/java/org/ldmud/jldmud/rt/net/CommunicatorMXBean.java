@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+/**
+ * The metrics of the {@link Communicator}, published via JMX under the name
+ * {@value Communicator#MBEAN_NAME}.
+ */
+public interface CommunicatorMXBean {
+
+    /**
+     * @return The number of connected {@link Interactive}s.
+     */
+    int getInteractiveCount();
+
+    /**
+     * @return The number of new connections waiting for their logon.
+     */
+    int getPendingLogonCount();
+
+    /**
+     * @return The number of new connections refused by the admission control.
+     */
+    long getRefusedConnectionCount();
+
+    /**
+     * @return The number of connections closed for exceeding their logon or idle timeout.
+     */
+    long getTimedOutConnectionCount();
+
+    /**
+     * @return The number of input lines waiting for execution, summed over all connections.
+     */
+    int getCommandQueueDepth();
+
+    /**
+     * @return The largest number of input lines waiting for execution for a single connection.
+     */
+    int getMaxCommandQueueDepth();
+
+    /**
+     * @return The number of input lines discarded because a connection's command queue was full.
+     */
+    long getDiscardedCommandCount();
+
+    /**
+     * @return The number of commands executed and GMCP messages handled since the start.
+     */
+    long getExecutedCommandCount();
+}
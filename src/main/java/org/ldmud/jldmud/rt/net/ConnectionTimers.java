@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.util.PriorityQueue;
+
+/**
+ * The deadlines of the connections, ordered by time, so that checking for timed out connections
+ * only visits those whose deadline has passed.<p/>
+ *
+ * Activity on a connection doesn't touch its timer: instead, when the deadline is reached, the
+ * owner computes the actual deadline from the connection's last activity, and either times out
+ * the connection, or schedules it again. That way a busy connection costs one timer visit per
+ * timeout period, independent of its traffic.<p/>
+ *
+ * Likewise, the deadline of a closed connection isn't removed, which would take a search of the
+ * whole queue; it is discarded once reached.<p/>
+ *
+ * The class is not thread-safe.
+ */
+class ConnectionTimers {
+
+    /**
+     * One scheduled deadline.
+     */
+    private static class Timer implements Comparable<Timer> {
+        final long deadline;
+        final Interactive interactive;
+
+        Timer(long deadline, Interactive interactive) {
+            this.deadline = deadline;
+            this.interactive = interactive;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        @Override
+        public int compareTo(Timer other) {
+            return Long.compare(deadline - other.deadline, 0L);
+        }
+    }
+
+    // The scheduled deadlines, the earliest first.
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+
+    /**
+     * Schedule a deadline for a connection.
+     *
+     * @param interactive The connection.
+     * @param deadline The deadline, in {@link System#nanoTime()} terms.
+     */
+    void schedule(Interactive interactive, long deadline) {
+        timers.add(new Timer(deadline, interactive));
+    }
+
+    /**
+     * Remove the earliest deadline of an open connection if it has passed, discarding the passed
+     * deadlines of closed connections.
+     *
+     * @param now The current time, in {@link System#nanoTime()} terms.
+     * @return The connection whose deadline has passed, or {@code null} if there is none.
+     */
+    Interactive pollExpired(long now) {
+        Timer first;
+        while ((first = timers.peek()) != null && now - first.deadline >= 0) {
+            timers.poll();
+            if (first.interactive.getState() != Interactive.State.CLOSED) {
+                return first.interactive;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of scheduled deadlines.
+     */
+    int size() {
+        return timers.size();
+    }
+
+    /**
+     * Remove all deadlines.
+     */
+    void clear() {
+        timers.clear();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * A pool of {@link Deflater}s, so that the native zlib state is not created
+ * and destroyed for every compressed connection.
+ */
+class DeflaterPool {
+
+    private final int maxPooled;
+
+    // The deflaters available for reuse, and their number.
+    private final Queue<Deflater> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Constructor
+     *
+     * @param maxPooled The maximum number of released deflaters to keep for reuse.
+     */
+    DeflaterPool(int maxPooled) {
+        super();
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return A deflater at the start of a new stream, either reused or newly created.
+     */
+    Deflater acquire() {
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION);
+        }
+        pooled.decrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * Return a deflater to the pool. The caller must not use the deflater afterwards.
+     *
+     * @param deflater The deflater to release.
+     */
+    void release(Deflater deflater) {
+        deflater.reset();
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.add(deflater);
+        } else {
+            pooled.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Free all deflaters kept for reuse.
+     */
+    void trim() {
+        Deflater deflater;
+        while ((deflater = pool.poll()) != null) {
+            pooled.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return The number of deflaters currently available for reuse.
+     */
+    int getPooledCount() {
+        return pooled.get();
+    }
+}
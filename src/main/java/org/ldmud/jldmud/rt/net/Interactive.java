@@ -4,6 +4,15 @@
  */
 package org.ldmud.jldmud.rt.net;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
@@ -17,12 +26,36 @@ import org.ldmud.jldmud.rt.object.MudObject;
 public class Interactive /* implements Shell */ {
     private final Logger log = LogManager.getLogger(this.getClass());
 
+    /**
+     * The maximum length of an input line; longer lines are broken up.
+     */
+    static final int MAX_LINE_LENGTH = 2048;
+
+    /**
+     * The output limit of instances created without a {@link Communicator}.
+     */
+    static final long DEFAULT_OUTPUT_LIMIT = 256000L;
+
+    /**
+     * The command queue limit of instances created without a {@link Communicator}.
+     */
+    static final int DEFAULT_COMMAND_QUEUE_LIMIT = 100;
+
     // Incrementing ID, assigned to new instances.
     private static AtomicLong currentInteractiveId = new AtomicLong();
 
     // The {@link Communicator} handling this instance.
     private Communicator communicator;
 
+    // The network connection, may be {@code null} for connection-less instances.
+    private SocketChannel channel;
+
+    // The TLS layer on top of the connection, or {@code null} for plain connections.
+    private TlsChannel tls;
+
+    // The WebSocket layer on top of the connection (or its TLS layer), or {@code null} for telnet connections.
+    private WebSocketChannel webSocket;
+
     // The instance id, uniquely identifying the instance, used to
     // provide a hashcode.
     private long id;
@@ -35,26 +68,108 @@ public class Interactive /* implements Shell */ {
     /**
      * The state of the interactive.
      */
-    enum State {
+    public enum State {
         NEW,             // A new interactive, not yet associated with a mud object
         ACTIVE,          // Active interactive
         CONNECTION_LOST, // Active interactive which lost connection
         CLOSED           // Inactive interactive which hasn't been purged yet.
     };
-    private State state;
+    private volatile State state = State.NEW;
+
+    // {@code true} while the instance is counted as waiting for its logon.
+    private final AtomicBoolean logonPending;
+
+    // The time the instance was created, and the time the last command or message was received,
+    // in {@link System#nanoTime()} terms.
+    private final long createdTime = System.nanoTime();
+    private volatile long lastActivity = createdTime;
 
     // A pretty name for this instance
     private String name;
 
+    // The input line being assembled by the I/O thread, and its current length.
+    private final byte[] lineBuffer = new byte[MAX_LINE_LENGTH];
+    private int lineLength = 0;
+
+    // Complete input lines, filled by the I/O thread and consumed by the main thread.
+    private final Queue<String> inputQueue = new ConcurrentLinkedQueue<>();
+
+    // The number of lines in the input queue, and the maximum number allowed (0 for no limit).
+    private final AtomicInteger inputQueueLength = new AtomicInteger();
+    private final int inputQueueLimit;
+
+    // The command tick the budget applies to, and the number and evaluation cost of the
+    // commands executed in it. Only used by the main thread.
+    private long budgetTick = -1;
+    private long tickCommands = 0;
+    private long tickEvalCost = 0;
+
+    // {@code true} if the input is private, like a password. Only used by the main thread.
+    private boolean inputRedacted = false;
+
+    // The pending output.
+    private final OutputBuffer output;
+
+    // The telnet option negotiation, and the decoder of the input (only used by the I/O thread).
+    private final TelnetNegotiation telnet;
+    private final TelnetDecoder telnetDecoder;
+
+    // Out-of-band (GMCP) messages received, consumed by the main thread.
+    private final Queue<String> gmcpQueue = new ConcurrentLinkedQueue<>();
+
+    // {@code true} if the instance is scheduled for the next output flush.
+    private boolean flushScheduled = false;
+
     /**
-     * Construct this instance.
+     * Construct this instance without a network connection.
      *
      * @param communicator The {@link Communicator} to handle this instance.
      */
     public Interactive(Communicator communicator) {
+        this(communicator, null);
+    }
+
+    /**
+     * Construct this instance.
+     *
+     * @param communicator The {@link Communicator} to handle this instance.
+     * @param channel The network connection of this instance.
+     */
+    public Interactive(Communicator communicator, SocketChannel channel) {
+        this(communicator, channel, null, false);
+    }
+
+    /**
+     * Construct this instance for a connection which is possibly encrypted, or a WebSocket.
+     *
+     * @param communicator The {@link Communicator} to handle this instance.
+     * @param channel The network connection of this instance.
+     * @param tlsContext The {@link TlsContext} if the connection is TLS-encrypted, {@code null} otherwise.
+     * @param webSocket {@code true} if the connection speaks the WebSocket protocol instead of telnet.
+     */
+    Interactive(Communicator communicator, SocketChannel channel, TlsContext tlsContext, boolean webSocket) {
         super();
         id = currentInteractiveId.incrementAndGet();
         this.communicator = communicator;
+        this.channel = channel;
+        if (tlsContext != null) {
+            tls = new TlsChannel(channel, tlsContext, () -> communicator.resume(this));
+        }
+        logonPending = new AtomicBoolean(communicator != null);
+        if (communicator != null) {
+            communicator.logonQueued();
+            output = communicator.newOutputBuffer();
+            inputQueueLimit = communicator.getCommandQueueLimit();
+        } else {
+            output = new OutputBuffer(new BufferPool(Communicator.OUTPUT_CHUNK_SIZE, false, 0), DEFAULT_OUTPUT_LIMIT);
+            inputQueueLimit = DEFAULT_COMMAND_QUEUE_LIMIT;
+        }
+        telnet = new TelnetNegotiation(this, communicator);
+        telnetDecoder = new TelnetDecoder(telnet);
+        if (webSocket) {
+            this.webSocket = new WebSocketChannel(channel, tls != null ? tls : channel);
+            telnet.useUtf8();
+        }
         calculateName();
     }
 
@@ -116,10 +231,10 @@ public class Interactive /* implements Shell */ {
     }
 
     /**
-     * @return The associated game object.
+     * @return The associated game object, or {@code null} if there is none.
      */
     public MudObject getMudObject() {
-        return mudObject.get();
+        return MudObject.get(mudObject);
     }
 
     /**
@@ -143,6 +258,18 @@ public class Interactive /* implements Shell */ {
      */
     public void setState(State state) {
         this.state = state;
+        if (state != State.NEW) {
+            logonDone();
+        }
+    }
+
+    /**
+     * Stop counting this instance as waiting for its logon.
+     */
+    private void logonDone() {
+        if (logonPending.compareAndSet(true, false)) {
+            communicator.logonDequeued();
+        }
     }
 
     /**
@@ -163,9 +290,449 @@ public class Interactive /* implements Shell */ {
     }
 
     /**
-     * @return {@code true} if there is data pending for processing.
+     * @return The network connection, or {@code null} if there is none.
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Close the network connection (if any). A thread blocked reading from it will be released.
+     */
+    void closeChannel() {
+        if (channel != null) {
+            try {
+                if (tls != null) {
+                    tls.close();
+                } else {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                log.debug("Error closing connection of {}: {}", name, e.toString());
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the connection is TLS-encrypted.
+     */
+    public boolean isSecure() {
+        return tls != null;
+    }
+
+    /**
+     * @return {@code true} if the connection is a WebSocket (usually from a browser).
+     */
+    public boolean isWebSocket() {
+        return webSocket != null;
+    }
+
+    /**
+     * Read data from the network connection, decrypting it if necessary. This is called
+     * by the I/O thread.
+     *
+     * @param buffer The buffer to read into.
+     * @return The number of bytes read, or -1 at the end of the stream.
+     * @throws IOException if the read failed.
+     */
+    int read(ByteBuffer buffer) throws IOException {
+        return tls != null ? tls.read(buffer) : channel.read(buffer);
+    }
+
+    /**
+     * @return {@code true} if decrypted input is available without reading from the network.
+     */
+    boolean isInputBuffered() {
+        return tls != null && tls.hasBufferedInput();
+    }
+
+    /**
+     * Write as much of the pending output as the network takes, encrypting it if necessary.
+     * This is called by the I/O thread.
+     *
+     * @throws IOException if the write failed.
+     */
+    void write() throws IOException {
+        if (tls != null && !(tls.flush() && tls.isHandshakeDone())) {
+            return;
+        }
+        if (webSocket != null) {
+            if (webSocket.flush() && webSocket.isUpgraded()) {
+                output.writeTo(webSocket);
+            }
+        } else {
+            output.writeTo(tls != null ? tls : channel);
+        }
+    }
+
+    /**
+     * @return {@code true} if output can be written; for TLS connections only after the handshake,
+     *   for WebSockets only after the upgrade.
+     */
+    boolean isWritable() {
+        return (tls == null || tls.isHandshakeDone()) && (webSocket == null || webSocket.isUpgraded());
+    }
+
+    /**
+     * @return {@code true} if there is output waiting to be written.
+     */
+    boolean isWritePending() {
+        return (output.hasPending() && isWritable()) || isTransportPending();
+    }
+
+    /**
+     * @return {@code true} if protocol data (of the TLS handshake, or WebSocket control frames)
+     *   is waiting to be written.
+     */
+    boolean isTransportPending() {
+        return (tls != null && tls.hasPendingOutput()) || (webSocket != null && webSocket.hasPendingOutput());
+    }
+
+    /**
+     * Called by the I/O thread with data received from the network: handle the telnet
+     * protocol, assemble the data into input lines, and queue the complete lines for the main thread.
+     *
+     * @param data The received data, which will be consumed completely.
+     * @return {@code true} if at least one complete line was queued.
+     */
+    boolean received(ByteBuffer data) {
+        if (webSocket != null) {
+            webSocket.decode(data);
+            if (webSocket.hasPendingOutput() && communicator != null) {
+                communicator.flushNow(this);
+            }
+        }
+        telnetDecoder.decode(data);
+        boolean lineQueued = false;
+        while (data.hasRemaining()) {
+            byte b = data.get();
+            if (b == '\n') {
+                lineQueued |= queueLine();
+            } else if (b != '\r' && b != 0) {
+                lineBuffer[lineLength++] = b;
+                if (lineLength == MAX_LINE_LENGTH) {
+                    lineQueued |= queueLine();
+                }
+            }
+        }
+        if (webSocket != null && webSocket.takePendingNewline()) {
+            // The text message ended with the full buffer, leaving no room for the line end.
+            lineQueued |= queueLine();
+        }
+        return lineQueued;
+    }
+
+    /**
+     * Move the assembled input line into the input queue, or discard it if the queue is full.
+     *
+     * @return {@code true} if the line was queued.
+     */
+    private boolean queueLine() {
+        int length = lineLength;
+        lineLength = 0;
+        if (inputQueueLimit != 0 && inputQueueLength.get() >= inputQueueLimit) {
+            log.debug("Command queue of {} is full - discarding input", name);
+            if (communicator != null) {
+                communicator.commandDiscarded();
+            }
+            return false;
+        }
+        inputQueue.add(new String(lineBuffer, 0, length, telnet.isUtf8() ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1));
+        inputQueueLength.incrementAndGet();
+        lastActivity = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Called by the I/O thread when the connection has been lost.
+     */
+    void connectionLost() {
+        if (state != State.CLOSED) {
+            log.debug("Connection lost for {}", name);
+            state = State.CONNECTION_LOST;
+            logonDone();
+        }
+    }
+
+    /**
+     * Called by the main thread when the connection exceeded one of its timeouts: tell the client,
+     * and handle it like a lost connection. The connection is closed once the interactive is removed,
+     * and the message written.
+     *
+     * @param message The message telling the client why the connection is closed.
+     */
+    void timedOut(String message) {
+        if (isWritable()) {
+            send(message);
+        }
+        connectionLost();
+    }
+
+    /**
+     * @return The time the instance was created, in {@link System#nanoTime()} terms.
+     */
+    long getCreatedTime() {
+        return createdTime;
+    }
+
+    /**
+     * @return The time the last command or message was received, in {@link System#nanoTime()} terms.
+     */
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * @return The number of seconds since the last command or message was received.
+     */
+    public long getIdleTime() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - lastActivity);
+    }
+
+    /**
+     * Discard all pending input and output, and release the buffers. This is called when
+     * the connection has been closed.
+     */
+    void releaseBuffers() {
+        output.dispose();
+        inputQueue.clear();
+        inputQueueLength.set(0);
+        gmcpQueue.clear();
+    }
+
+    /**
+     * @return The next complete input line, or {@code null} if there is none.
+     */
+    public String nextInputLine() {
+        String line = inputQueue.poll();
+        if (line != null) {
+            inputQueueLength.decrementAndGet();
+        }
+        return line;
+    }
+
+    /**
+     * @return {@code true} if the input is private, and not to be recorded verbatim.
+     */
+    public boolean isInputRedacted() {
+        return inputRedacted;
+    }
+
+    /**
+     * Mark the following input as private, like a password, while asking for it with the echo
+     * turned off: the input journal then records the length of the commands only.
+     *
+     * @param inputRedacted {@code true} if the input is private.
+     */
+    public void setInputRedacted(boolean inputRedacted) {
+        this.inputRedacted = inputRedacted;
+    }
+
+    /**
+     * @return The number of input lines waiting for execution.
+     */
+    public int getCommandQueueDepth() {
+        return inputQueueLength.get();
+    }
+
+    /**
+     * Test if this instance may execute another command (or handle another GMCP message)
+     * in the current command tick. This is called by the main thread.
+     *
+     * @return {@code true} if the budget for the current tick is not yet used up.
+     */
+    public boolean hasCommandBudget() {
+        if (communicator == null) {
+            return true;
+        }
+        renewCommandBudget();
+        long maxCommands = communicator.getCommandsPerTick();
+        long maxEvalCost = communicator.getEvalCostPerTick();
+        return (maxCommands == 0 || tickCommands < maxCommands) && (maxEvalCost == 0 || tickEvalCost < maxEvalCost);
+    }
+
+    /**
+     * Charge a command executed by the main thread to the budget of the current tick.
+     *
+     * @param evalCost The evaluation cost used by the command.
+     */
+    public void commandExecuted(long evalCost) {
+        if (communicator != null) {
+            renewCommandBudget();
+            communicator.commandExecuted();
+        }
+        tickCommands++;
+        tickEvalCost += evalCost;
+    }
+
+    /**
+     * Reset the command budget if a new command tick has begun since it was last used.
+     */
+    private void renewCommandBudget() {
+        long tick = communicator.getCommandTick();
+        if (tick != budgetTick) {
+            budgetTick = tick;
+            tickCommands = 0;
+            tickEvalCost = 0;
+        }
+    }
+
+    /**
+     * Send text to the connection. The text is written at the end of the current
+     * game loop pass.
+     *
+     * @param text The text to send; line feeds are sent as telnet line ends.
+     * @return {@code false} if the text was discarded because the connection is too far behind.
+     */
+    public boolean send(String text) {
+        scheduleFlush();
+        return output.append(text);
+    }
+
+    /**
+     * Send an encoded payload to the connection, without copying it. The payload is written
+     * at the end of the current game loop pass.
+     *
+     * @param payload The payload, as created by {@link Communicator#encode(String, boolean)}
+     *   for the connection's character set.
+     * @return {@code false} if the payload was discarded because the connection is too far behind.
+     */
+    public boolean send(ByteBuffer payload) {
+        scheduleFlush();
+        return output.append(payload);
+    }
+
+    /**
+     * Send an out-of-band message with GMCP. The message is written at the end of the current
+     * game loop pass.
+     *
+     * @param message The message, consisting of the package name and the optional JSON data.
+     * @return {@code false} if the client doesn't support GMCP, or the message was discarded
+     *   because the connection is too far behind.
+     */
+    public boolean sendGmcp(String message) {
+        ByteBuffer sequence = telnet.gmcpMessage(message);
+        if (sequence == null) {
+            return false;
+        }
+        scheduleFlush();
+        return output.append(sequence);
+    }
+
+    /**
+     * Send a telnet command sequence to the connection right away. This can be called from
+     * any thread.
+     *
+     * @param sequence The bytes of the command sequence.
+     */
+    void sendTelnet(int... sequence) {
+        ByteBuffer buffer = ByteBuffer.allocate(sequence.length);
+        for (int b : sequence) {
+            buffer.put((byte) b);
+        }
+        buffer.flip();
+        sendTelnet(buffer);
+    }
+
+    /**
+     * Send a telnet command sequence to the connection right away. This can be called from
+     * any thread.
+     *
+     * @param sequence The command sequence.
+     */
+    void sendTelnet(ByteBuffer sequence) {
+        output.append(sequence);
+        if (communicator != null) {
+            communicator.flushNow(this);
+        }
+    }
+
+    /**
+     * Start the telnet option negotiation.
+     *
+     * @param offerCompression {@code true} if output compression is to be offered.
+     */
+    void startNegotiation(boolean offerCompression) {
+        telnet.start(offerCompression);
+    }
+
+    /**
+     * Called by the I/O thread with a GMCP message received from the client.
+     *
+     * @param message The message.
+     */
+    void gmcpReceived(String message) {
+        gmcpQueue.add(message);
+        lastActivity = System.nanoTime();
+        if (communicator != null) {
+            communicator.inputAvailable();
+        }
+    }
+
+    /**
+     * @return The next GMCP message received, or {@code null} if there is none.
+     */
+    public String nextGmcpMessage() {
+        return gmcpQueue.poll();
+    }
+
+    /**
+     * @return The width of the client's window, or 0 if unknown.
+     */
+    public int getWindowWidth() {
+        return telnet.getWindowWidth();
+    }
+
+    /**
+     * @return The height of the client's window, or 0 if unknown.
+     */
+    public int getWindowHeight() {
+        return telnet.getWindowHeight();
+    }
+
+    /**
+     * @return The client's terminal type, or {@code null} if unknown.
+     */
+    public String getTerminalType() {
+        return telnet.getTerminalType();
+    }
+
+    /**
+     * @return {@code true} if the connection uses UTF-8 instead of ISO-8859-1.
+     */
+    public boolean isUtf8() {
+        return telnet.isUtf8();
+    }
+
+    /**
+     * Make sure this instance is included in the next output flush.
+     */
+    private void scheduleFlush() {
+        if (!flushScheduled && communicator != null) {
+            flushScheduled = true;
+            communicator.outputPending(this);
+        }
+    }
+
+    /**
+     * Called by the {@link Communicator} when the instance's output is being flushed.
+     */
+    void flushStarted() {
+        flushScheduled = false;
+    }
+
+    /**
+     * @return The pending output.
+     */
+    OutputBuffer getOutput() {
+        return output;
+    }
+
+    /**
+     * @return {@code true} if there is data pending for processing, and the command budget
+     *   of the current tick allows to process it.
      */
     public boolean isDataPending() {
-        return false;
+        return (!inputQueue.isEmpty() || !gmcpQueue.isEmpty()) && hasCommandBudget();
     }
 }
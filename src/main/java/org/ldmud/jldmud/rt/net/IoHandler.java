@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The strategy by which the network connections of {@link Interactive} instances are served.<p/>
+ *
+ * Implementations read the incoming data off the main thread, hand it to
+ * {@link Interactive#received(java.nio.ByteBuffer)}, and signal the main thread when
+ * complete input lines are available or a connection has been lost. They also write the
+ * pending output of the interactives when asked to.
+ */
+interface IoHandler {
+
+    /**
+     * Start serving connections.
+     *
+     * @throws IOException if the handler can't be started.
+     */
+    void start() throws IOException;
+
+    /**
+     * Begin serving the connection of a newly accepted {@link Interactive}.
+     *
+     * @param interactive The new {@link Interactive}.
+     */
+    void register(Interactive interactive);
+
+    /**
+     * Write the pending output of the given interactives. The writes happen asynchronously,
+     * and will continue as long as the connections accept data.
+     *
+     * @param interactives The {@link Interactive}s with new output.
+     */
+    void flush(List<Interactive> interactives);
+
+    /**
+     * Continue the I/O of a connection after its TLS handshake made progress in another
+     * thread. This can be called from any thread.
+     *
+     * @param interactive The {@link Interactive}.
+     */
+    void resume(Interactive interactive);
+
+    /**
+     * Stop serving connections. The connections themselves are not closed.
+     */
+    void shutdown();
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.zip.Deflater;
+
+/**
+ * The compressed output stream of a connection using MCCP (Mud Client Compression Protocol).<p/>
+ *
+ * The compressor deflates the output into a buffer of limited size, and writes that buffer
+ * to the connection. After all available output has been deflated, the stream is sync-flushed
+ * so that the client can decompress everything sent so far.<p/>
+ *
+ * The compressor is used by one I/O thread at a time, outside of the {@link OutputBuffer}'s lock;
+ * only {@link #hasPending()} may be called by other threads.
+ */
+class MccpCompressor {
+
+    // Input set on the deflater when it is idle, so that it holds no reference to recycled buffers.
+    private static final ByteBuffer NO_INPUT = ByteBuffer.allocate(0);
+
+    private final DeflaterPool deflaterPool;
+    private final BufferPool bufferPool;
+
+    private Deflater deflater;
+
+    // The compressed data not yet written, in write mode.
+    private ByteBuffer compressed;
+
+    // {@code true} if input was deflated since the last sync flush.
+    private boolean flushNeeded = false;
+
+    // {@code true} if there is compressed data not yet written, or not yet flushed;
+    // updated after every compression and write, for the threads not using the compressor.
+    private volatile boolean pending = false;
+
+    /**
+     * Constructor
+     *
+     * @param deflaterPool The pool to take the deflater from.
+     * @param bufferPool The pool to take the buffer for the compressed data from.
+     */
+    MccpCompressor(DeflaterPool deflaterPool, BufferPool bufferPool) {
+        super();
+        this.deflaterPool = deflaterPool;
+        this.bufferPool = bufferPool;
+        this.deflater = deflaterPool.acquire();
+        this.compressed = bufferPool.acquire();
+    }
+
+    /**
+     * Deflate as much of the input as fits into the compressed data buffer.
+     *
+     * @param input The buffers to compress; their positions are advanced over the consumed data.
+     * @param count The number of buffers in {@code input}.
+     * @return The number of bytes consumed.
+     */
+    long compress(ByteBuffer[] input, int count) {
+        long consumed = 0L;
+        for (int i = 0; i < count && compressed.hasRemaining(); i++) {
+            ByteBuffer buffer = input[i];
+            int remaining = buffer.remaining();
+            deflater.setInput(buffer);
+            while (!deflater.needsInput() && compressed.hasRemaining()) {
+                deflater.deflate(compressed, Deflater.NO_FLUSH);
+            }
+            consumed += remaining - buffer.remaining();
+            flushNeeded = true;
+        }
+        deflater.setInput(NO_INPUT);
+
+        while (flushNeeded && compressed.hasRemaining()) {
+            deflater.deflate(compressed, Deflater.SYNC_FLUSH);
+            if (compressed.hasRemaining()) {
+                // Everything fit - the flush is complete.
+                flushNeeded = false;
+            }
+        }
+        pending = compressed.position() > 0 || flushNeeded;
+        return consumed;
+    }
+
+    /**
+     * Write the compressed data to the channel.
+     *
+     * @param channel The channel to write to.
+     * @return The number of bytes written.
+     * @throws IOException if the write fails.
+     */
+    long writeTo(GatheringByteChannel channel) throws IOException {
+        compressed.flip();
+        long written = channel.write(compressed);
+        compressed.compact();
+        pending = compressed.position() > 0 || flushNeeded;
+        return written;
+    }
+
+    /**
+     * @return {@code true} if there is compressed data not yet written, or not yet flushed.
+     */
+    boolean hasPending() {
+        return pending;
+    }
+
+    /**
+     * Return the deflater and buffer to their pools. The compressor must not be used afterwards.
+     */
+    void release() {
+        if (deflater != null) {
+            deflaterPool.release(deflater);
+            bufferPool.release(compressed);
+            deflater = null;
+            compressed = null;
+        }
+    }
+}
@@ -0,0 +1,440 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The pending network output of an {@link Interactive}.<p/>
+ *
+ * The output is kept as a sequence of buffers: text written for this connection only is encoded
+ * into chunks taken from a {@link BufferPool}, while payloads shared between several connections
+ * (e.g. broadcasts) are referenced as read-only views of the one encoded buffer. The buffers are
+ * written with a single gathering write.<p/>
+ *
+ * The main thread appends output, and an I/O thread writes it; the buffer is safe for this use.
+ * If the pending output exceeds the configured limit, further output is discarded until the
+ * connection catches up.<p/>
+ *
+ * Once compression is started, all output appended afterwards is compressed by an
+ * {@link MccpCompressor} as part of the write. Like the write itself, compression happens on the
+ * I/O thread outside of the buffer's lock, so that appending output doesn't wait for it.
+ */
+class OutputBuffer {
+    private static final Logger log = LogManager.getLogger(OutputBuffer.class);
+
+    // Telnet 'Interpret As Command', which has to be doubled in output text.
+    private static final byte IAC = (byte) 255;
+
+    // The maximum number of bytes a single character can be encoded into.
+    private static final int MAX_ENCODED_LENGTH = 4;
+
+    private final BufferPool pool;
+    private final long limit;
+
+    // The buffers ready to be written, in order.
+    private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+
+    // The chunk currently being filled with text, or {@code null}.
+    private ByteBuffer current;
+
+    // The number of bytes pending, inclusive those in {@link #current}.
+    private long pendingBytes = 0L;
+
+    // {@code true} if text is encoded in UTF-8 instead of ISO-8859-1.
+    private boolean utf8 = false;
+
+    // The number of bytes discarded because the limit was exceeded.
+    private long discardedBytes = 0L;
+
+    // The array passed to the gathering write, reused between writes.
+    private ByteBuffer[] writeArray = new ByteBuffer[16];
+
+    // {@code true} while an I/O thread is scheduled to write this buffer.
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    // The compressor of the output, or {@code null} if the output is not compressed.
+    private MccpCompressor compressor;
+
+    // The number of pending buffers at the head which predate the start of compression.
+    private int uncompressedBuffers = 0;
+
+    // {@code true} while an I/O thread writes outside of the lock.
+    private boolean writing = false;
+
+    // {@code true} if compression is to be ended once the current write is done.
+    private boolean endCompressionRequested = false;
+
+    // {@code true} once the connection is closed; all output is discarded, and the buffers
+    // are released (after the current write, if there is one).
+    private boolean disposed = false;
+
+    /**
+     * Constructor
+     *
+     * @param pool The pool to take text chunks from.
+     * @param limit The maximum number of bytes to hold pending.
+     */
+    OutputBuffer(BufferPool pool, long limit) {
+        super();
+        this.pool = pool;
+        this.limit = limit;
+    }
+
+    /**
+     * Encode a text for a telnet connection: characters are mapped to UTF-8, or ISO-8859-1
+     * (with '?' for unmappable characters), line feeds become CR LF, and IAC bytes are doubled.
+     *
+     * @param text The text to encode.
+     * @param utf8 {@code true} if the text is to be encoded in UTF-8.
+     * @return A read-only buffer holding the encoded text, suitable for {@link #append(ByteBuffer)}.
+     */
+    static ByteBuffer encode(String text, boolean utf8) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(text, utf8));
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            put(buffer, c, utf8);
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Append text to the output.
+     *
+     * @param text The text to append.
+     * @return {@code false} if the text was discarded because the output limit is exceeded.
+     */
+    synchronized boolean append(String text) {
+        if (disposed) {
+            return false;
+        }
+        int length = encodedLength(text, utf8);
+        if (!admit(length)) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); ) {
+            if (current == null || current.remaining() < MAX_ENCODED_LENGTH) {
+                seal();
+                current = pool.acquire();
+            }
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            put(current, c, utf8);
+        }
+        pendingBytes += length;
+        return true;
+    }
+
+    /**
+     * Append an already encoded payload to the output. The payload itself is not copied
+     * or modified, so the same payload can be appended to several buffers.
+     *
+     * @param payload The encoded payload, as returned by {@link #encode(String, boolean)}.
+     * @return {@code false} if the payload was discarded because the output limit is exceeded.
+     */
+    synchronized boolean append(ByteBuffer payload) {
+        if (disposed) {
+            return false;
+        }
+        int length = payload.remaining();
+        if (!admit(length)) {
+            return false;
+        }
+        seal();
+        pending.add(payload.asReadOnlyBuffer());
+        pendingBytes += length;
+        return true;
+    }
+
+    /**
+     * Write as much of the pending output to the channel as it accepts.
+     * Only one thread at a time may call this method.
+     *
+     * @param channel The channel to write to.
+     * @return The number of bytes written.
+     * @throws IOException if the write fails.
+     */
+    long writeTo(GatheringByteChannel channel) throws IOException {
+        MccpCompressor writingCompressor = null;
+        int count;
+        synchronized (this) {
+            if (compressor != null && uncompressedBuffers == 0) {
+                count = collect(pending.size());
+                writingCompressor = compressor;
+            } else {
+                count = collect(compressor != null ? uncompressedBuffers : pending.size());
+                if (count == 0) {
+                    return 0L;
+                }
+            }
+            writing = true;
+        }
+
+        try {
+            if (writingCompressor != null) {
+                // The collected buffers are sealed, so output appended meanwhile doesn't touch them.
+                release(writingCompressor.compress(writeArray, count));
+                return writingCompressor.writeTo(channel);
+            }
+            long written = channel.write(writeArray, 0, count);
+            release(written);
+            return written;
+        } finally {
+            synchronized (this) {
+                writing = false;
+                if (disposed) {
+                    dispose();
+                } else if (endCompressionRequested) {
+                    endCompression();
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the current text chunk to the pending buffers, and collect these into
+     * {@link #writeArray}.
+     *
+     * @param max The maximum number of buffers to collect.
+     * @return The number of buffers collected.
+     */
+    private synchronized int collect(int max) {
+        seal();
+        int count = Math.min(max, pending.size());
+        if (writeArray.length < count) {
+            writeArray = new ByteBuffer[Math.max(count, writeArray.length * 2)];
+        }
+        Iterator<ByteBuffer> iter = pending.iterator();
+        for (int i = 0; i < count; i++) {
+            writeArray[i] = iter.next();
+        }
+        return count;
+    }
+
+    /**
+     * Start compressing the output. The given start sequence, and all output appended before,
+     * is still sent uncompressed.
+     *
+     * @param startSequence The sequence announcing the start of compression to the client.
+     * @param compressor The compressor to use.
+     */
+    synchronized void startCompression(ByteBuffer startSequence, MccpCompressor compressor) {
+        seal();
+        pending.add(startSequence.asReadOnlyBuffer());
+        pendingBytes += startSequence.remaining();
+        uncompressedBuffers = pending.size();
+        this.compressor = compressor;
+    }
+
+    /**
+     * Stop compressing the output, and release the compressor's resources. This is only used
+     * when the connection is closed, as the compressed stream is not terminated.
+     */
+    synchronized void endCompression() {
+        if (writing) {
+            // The compressor is released once the write is done.
+            endCompressionRequested = true;
+        } else if (compressor != null) {
+            compressor.release();
+            compressor = null;
+            uncompressedBuffers = 0;
+            endCompressionRequested = false;
+        }
+    }
+
+    /**
+     * @return {@code true} if the output is being compressed.
+     */
+    synchronized boolean isCompressing() {
+        return compressor != null;
+    }
+
+    /**
+     * Remove the completely written buffers, recycling the text chunks.
+     *
+     * @param written The number of bytes written.
+     */
+    private synchronized void release(long written) {
+        pendingBytes -= written;
+        while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+            ByteBuffer buffer = pending.poll();
+            if (!buffer.isReadOnly()) {
+                pool.release(buffer);
+            }
+            if (uncompressedBuffers > 0) {
+                uncompressedBuffers--;
+            }
+        }
+        if (discardedBytes != 0L && pendingBytes <= limit / 2) {
+            log.info("Output resumed after discarding {} bytes", discardedBytes);
+            discardedBytes = 0L;
+        }
+        Arrays.fill(writeArray, null);
+    }
+
+    /**
+     * Discard all pending output, and return the text chunks to the pool.
+     */
+    synchronized void clear() {
+        seal();
+        for (ByteBuffer buffer : pending) {
+            if (!buffer.isReadOnly()) {
+                pool.release(buffer);
+            }
+        }
+        pending.clear();
+        pendingBytes = 0L;
+        uncompressedBuffers = 0;
+    }
+
+    /**
+     * Discard all pending output and release all buffers and the compressor, as the connection
+     * has been closed. If an I/O thread is writing right now, the buffers are released once it is
+     * done. Output appended afterwards is discarded.
+     */
+    synchronized void dispose() {
+        disposed = true;
+        if (!writing) {
+            clear();
+            endCompression();
+        }
+    }
+
+    /**
+     * Check if output of the given length may be appended.
+     *
+     * @param length The number of bytes to append.
+     * @return {@code true} if the output can be appended.
+     */
+    private boolean admit(int length) {
+        if (discardedBytes == 0L && pendingBytes + length <= limit) {
+            return true;
+        }
+        if (discardedBytes == 0L) {
+            log.info("Output limit of {} bytes exceeded - discarding output", limit);
+        }
+        discardedBytes += length;
+        return false;
+    }
+
+    /**
+     * Move the current text chunk (if any) to the pending buffers.
+     */
+    private void seal() {
+        if (current != null) {
+            current.flip();
+            if (current.hasRemaining()) {
+                pending.add(current);
+            } else {
+                pool.release(current);
+            }
+            current = null;
+        }
+    }
+
+    /**
+     * Encode one character into a buffer with at least {@link #MAX_ENCODED_LENGTH} bytes remaining.
+     */
+    private static void put(ByteBuffer buffer, int c, boolean utf8) {
+        if (c == '\n') {
+            buffer.put((byte) '\r').put((byte) '\n');
+        } else if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (!utf8) {
+            if (c == 0xFF) {
+                buffer.put(IAC).put(IAC);
+            } else {
+                buffer.put(c < 0x100 ? (byte) c : (byte) '?');
+            }
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (c < 0x10000) {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else {
+            buffer.put((byte) (0xF0 | (c >> 18)));
+            buffer.put((byte) (0x80 | ((c >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    /**
+     * @return The number of bytes the text will take encoded.
+     */
+    private static int encodedLength(String text, boolean utf8) {
+        int length = 0;
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            if (c == '\n' || (!utf8 && c == 0xFF)) {
+                length += 2;
+            } else if (c < 0x80 || !utf8) {
+                length += 1;
+            } else {
+                length += c < 0x800 ? 2 : (c < 0x10000 ? 3 : 4);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return {@code true} if text is encoded in UTF-8, {@code false} for ISO-8859-1.
+     */
+    synchronized boolean isUtf8() {
+        return utf8;
+    }
+
+    /**
+     * @param utf8 {@code true} if text is to be encoded in UTF-8, {@code false} for ISO-8859-1.
+     */
+    synchronized void setUtf8(boolean utf8) {
+        this.utf8 = utf8;
+    }
+
+    /**
+     * @return {@code true} if there is output pending.
+     */
+    synchronized boolean hasPending() {
+        return pendingBytes > 0L || (compressor != null && compressor.hasPending());
+    }
+
+    /**
+     * @return The number of bytes pending.
+     */
+    synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Mark the buffer as scheduled for writing by an I/O thread.
+     *
+     * @return {@code true} if the buffer was not already scheduled.
+     */
+    boolean startFlush() {
+        return flushing.compareAndSet(false, true);
+    }
+
+    /**
+     * Clear the mark set by {@link #startFlush()}.
+     */
+    void endFlush() {
+        flushing.set(false);
+    }
+}
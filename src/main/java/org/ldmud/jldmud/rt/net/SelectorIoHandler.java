@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.rt.GameStateSignals;
+
+/**
+ * {@link IoHandler} multiplexing all connections with non-blocking channels in one selector thread.
+ */
+class SelectorIoHandler implements IoHandler, Runnable {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    // Size of the read buffer.
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    // External Modules
+    private GameStateSignals gameStateSignals;
+
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running = false;
+
+    // New interactives to be registered with the selector by the selector thread.
+    private final Queue<Interactive> registrations = new ConcurrentLinkedQueue<>();
+
+    // Interactives with new output to be written by the selector thread.
+    private final Queue<Interactive> flushRequests = new ConcurrentLinkedQueue<>();
+
+    // Interactives whose reading and writing is to be continued by the selector thread.
+    private final Queue<Interactive> resumeRequests = new ConcurrentLinkedQueue<>();
+
+    // The buffer all connections read into; the data is consumed immediately.
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    /**
+     * Constructor
+     *
+     * @param gameStateSignals The {@link GameStateSignals} instance.
+     */
+    SelectorIoHandler(GameStateSignals gameStateSignals) {
+        super();
+        this.gameStateSignals = gameStateSignals;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#start()
+     */
+    @Override
+    public void start() throws IOException {
+        selector = Selector.open();
+        running = true;
+        thread = new Thread(this);
+        thread.setName("NetIO");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#register(org.ldmud.jldmud.rt.net.Interactive)
+     */
+    @Override
+    public void register(Interactive interactive) {
+        registrations.add(interactive);
+        selector.wakeup();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#flush(java.util.List)
+     */
+    @Override
+    public void flush(List<Interactive> interactives) {
+        flushRequests.addAll(interactives);
+        selector.wakeup();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#resume(org.ldmud.jldmud.rt.net.Interactive)
+     */
+    @Override
+    public void resume(Interactive interactive) {
+        resumeRequests.add(interactive);
+        selector.wakeup();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#shutdown()
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        log.info("Selector I/O thread start");
+        try {
+            while (running) {
+                selector.select();
+                processRegistrations();
+                processFlushRequests();
+                processResumeRequests();
+
+                for (Iterator<SelectionKey> iter = selector.selectedKeys().iterator(); iter.hasNext(); ) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Selector I/O thread failed: {}", e.toString());
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.debug("Error closing selector: {}", e.toString());
+            }
+        }
+        log.info("Selector I/O thread end");
+    }
+
+    /**
+     * Register all newly added interactives with the selector, and start writing the output
+     * queued for them so far: a flush requested before the registration finds no key and is dropped.
+     */
+    private void processRegistrations() {
+        Interactive interactive;
+        while ((interactive = registrations.poll()) != null) {
+            try {
+                interactive.getChannel().configureBlocking(false);
+                SelectionKey key = interactive.getChannel().register(selector, SelectionKey.OP_READ, interactive);
+                if (interactive.isWritePending()) {
+                    write(key);
+                }
+            } catch (IOException e) {
+                log.info("Can't register {}: {}", interactive, e.toString());
+                lost(interactive);
+            }
+        }
+    }
+
+    /**
+     * Start writing the output of all interactives which requested a flush.
+     */
+    private void processFlushRequests() {
+        Interactive interactive;
+        while ((interactive = flushRequests.poll()) != null) {
+            SelectionKey key = interactive.getChannel().keyFor(selector);
+            if (key != null && key.isValid()) {
+                write(key);
+            }
+        }
+    }
+
+    /**
+     * Continue reading and writing the connections of all interactives which requested it.
+     */
+    private void processResumeRequests() {
+        Interactive interactive;
+        while ((interactive = resumeRequests.poll()) != null) {
+            SelectionKey key = interactive.getChannel().keyFor(selector);
+            if (key != null && key.isValid()) {
+                read(key);
+            }
+            if (key != null && key.isValid()) {
+                write(key);
+            }
+        }
+    }
+
+    /**
+     * Write the pending output of a connection, and register interest in the connection becoming
+     * writable again if not all output could be written.
+     *
+     * @param key The selection key of the connection.
+     */
+    private void write(SelectionKey key) {
+        Interactive interactive = (Interactive) key.attachment();
+        try {
+            interactive.write();
+            if (interactive.isWritePending()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            log.debug("Error writing to {}: {}", interactive, e.toString());
+            key.cancel();
+            lost(interactive);
+        }
+    }
+
+    /**
+     * Read the data available for a connection and pass it to its {@link Interactive}.
+     *
+     * @param key The selection key of the readable connection.
+     */
+    private void read(SelectionKey key) {
+        Interactive interactive = (Interactive) key.attachment();
+        try {
+            do {
+                readBuffer.clear();
+                int count = interactive.read(readBuffer);
+                if (count < 0) {
+                    key.cancel();
+                    lost(interactive);
+                    return;
+                }
+                readBuffer.flip();
+                if (interactive.received(readBuffer)) {
+                    gameStateSignals.signal(GameStateSignals.IO);
+                }
+            } while (interactive.isInputBuffered());
+            if (interactive.isTransportPending()) {
+                write(key);
+            }
+        } catch (IOException e) {
+            log.debug("Error reading from {}: {}", interactive, e.toString());
+            key.cancel();
+            lost(interactive);
+        }
+    }
+
+    /**
+     * Mark the connection of an interactive as lost, and notify the main thread.
+     */
+    private void lost(Interactive interactive) {
+        interactive.connectionLost();
+        gameStateSignals.signal(GameStateSignals.IO);
+    }
+}
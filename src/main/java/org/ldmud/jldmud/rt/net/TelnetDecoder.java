@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder for the telnet protocol of one connection.<p/>
+ *
+ * The decoder removes the telnet commands from the received data in place, and passes
+ * the option negotiations and subnegotiations on to a {@link Handler}. Escaped IAC bytes are
+ * unescaped. Since a command can be split across several reads, the decoder keeps its state
+ * between calls.<p/>
+ *
+ * The state is of fixed size, including the buffer collecting the subnegotiation data, so that
+ * the decoder does not allocate memory while decoding. Subnegotiations exceeding the buffer
+ * are truncated.
+ */
+class TelnetDecoder {
+
+    // Telnet commands
+    static final int IAC = 255;
+    static final int DONT = 254;
+    static final int DO = 253;
+    static final int WONT = 252;
+    static final int WILL = 251;
+    static final int SB = 250;
+    static final int SE = 240;
+
+    // Telnet options
+    static final int TTYPE = 24;
+    static final int NAWS = 31;
+    static final int CHARSET = 42;
+    static final int MSSP = 70;
+    static final int COMPRESS2 = 86;
+    static final int GMCP = 201;
+
+    /**
+     * The size of the subnegotiation buffer.
+     */
+    static final int MAX_SUBNEGOTIATION_LENGTH = 2048;
+
+    /**
+     * The receiver of the option negotiations.
+     */
+    interface Handler {
+        /**
+         * An option negotiation was received.
+         *
+         * @param command The command: {@link #WILL}, {@link #WONT}, {@link #DO} or {@link #DONT}.
+         * @param option The option negotiated.
+         */
+        void negotiate(int command, int option);
+
+        /**
+         * A subnegotiation was received. The data is only valid during the call.
+         *
+         * @param option The option of the subnegotiation.
+         * @param data The buffer holding the unescaped subnegotiation data.
+         * @param length The length of the data; if the subnegotiation was longer than the
+         *   buffer, the data is truncated.
+         */
+        void subnegotiate(int option, byte[] data, int length);
+    }
+
+    /**
+     * The states of the decoder.
+     */
+    private enum State {
+        DATA,        // Plain data
+        IAC,         // After IAC
+        NEGOTIATION, // After IAC WILL/WONT/DO/DONT
+        SB_OPTION,   // After IAC SB
+        SB,          // In a subnegotiation
+        SB_IAC       // After IAC in a subnegotiation
+    }
+
+    private final Handler handler;
+
+    private State state = State.DATA;
+
+    // The negotiation command being received.
+    private int command;
+
+    // The option of the subnegotiation being received.
+    private int subnegotiationOption;
+
+    // The subnegotiation data received so far, and its length.
+    private final byte[] subnegotiation = new byte[MAX_SUBNEGOTIATION_LENGTH];
+    private int subnegotiationLength;
+
+    /**
+     * Constructor
+     *
+     * @param handler The receiver of the option negotiations.
+     */
+    TelnetDecoder(Handler handler) {
+        super();
+        this.handler = handler;
+    }
+
+    /**
+     * Decode the received data in place: upon return, the buffer's remaining bytes are the
+     * data bytes with all telnet commands removed.
+     *
+     * @param buffer The received data.
+     */
+    void decode(ByteBuffer buffer) {
+        final int limit = buffer.limit();
+        int read = buffer.position();
+
+        // Fast path: as long as there are no commands, the data stays where it is.
+        if (state == State.DATA) {
+            while (read < limit && buffer.get(read) != (byte) IAC) {
+                read++;
+            }
+        }
+
+        int write = read;
+        for (; read < limit; read++) {
+            byte b = buffer.get(read);
+            switch (state) {
+                case DATA:
+                    if (b == (byte) IAC) {
+                        state = State.IAC;
+                    } else {
+                        buffer.put(write++, b);
+                    }
+                    break;
+                case IAC:
+                    state = command(b & 0xFF, buffer, write);
+                    if (b == (byte) IAC) {
+                        write++;
+                    }
+                    break;
+                case NEGOTIATION:
+                    state = State.DATA;
+                    handler.negotiate(command, b & 0xFF);
+                    break;
+                case SB_OPTION:
+                    subnegotiationOption = b & 0xFF;
+                    subnegotiationLength = 0;
+                    state = State.SB;
+                    break;
+                case SB:
+                    if (b == (byte) IAC) {
+                        state = State.SB_IAC;
+                    } else {
+                        collect(b);
+                    }
+                    break;
+                case SB_IAC:
+                    if (b == (byte) IAC) {
+                        collect(b);
+                        state = State.SB;
+                    } else if (b == (byte) SE) {
+                        state = State.DATA;
+                        handler.subnegotiate(subnegotiationOption, subnegotiation, subnegotiationLength);
+                    } else {
+                        // Broken subnegotiation - treat the byte as command.
+                        state = command(b & 0xFF, buffer, write);
+                    }
+                    break;
+            }
+        }
+        buffer.limit(write);
+    }
+
+    /**
+     * Handle the command byte following an IAC.
+     *
+     * @param b The command byte.
+     * @param buffer The buffer being decoded.
+     * @param write The current write position in the buffer.
+     * @return The new state.
+     */
+    private State command(int b, ByteBuffer buffer, int write) {
+        if (b == IAC) {
+            buffer.put(write, (byte) IAC);
+            return State.DATA;
+        }
+        if (b >= WILL && b <= DONT) {
+            command = b;
+            return State.NEGOTIATION;
+        }
+        if (b == SB) {
+            return State.SB_OPTION;
+        }
+        // Other commands carry no meaning for us.
+        return State.DATA;
+    }
+
+    /**
+     * Add a byte to the subnegotiation data, if there is room.
+     */
+    private void collect(byte b) {
+        if (subnegotiationLength < subnegotiation.length) {
+            subnegotiation[subnegotiationLength++] = b;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import static org.ldmud.jldmud.rt.net.TelnetDecoder.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.Version;
+
+/**
+ * The telnet option negotiation of one {@link Interactive}, and the option values negotiated.<p/>
+ *
+ * Supported are NAWS (window size), TTYPE (terminal type), CHARSET (to switch to UTF-8),
+ * GMCP (out-of-band messages), MSSP (server status) and COMPRESS2 (output compression).
+ * The negotiation follows the rules of RFC 1143 closely enough to avoid negotiation loops:
+ * requests are only answered if they change the state of an option.<p/>
+ *
+ * The negotiation is driven by the I/O thread; the option states and negotiated values can be read
+ * from any thread.
+ */
+class TelnetNegotiation implements TelnetDecoder.Handler {
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    // Subnegotiation commands
+    private static final int TTYPE_IS = 0;
+    private static final int TTYPE_SEND = 1;
+    private static final int CHARSET_REQUEST = 1;
+    private static final int CHARSET_ACCEPTED = 2;
+    private static final int MSSP_VAR = 1;
+    private static final int MSSP_VAL = 2;
+
+    // The character sets offered, in order of preference.
+    private static final String CHARSET_OFFER = ";UTF-8;ISO-8859-1";
+
+    // Option state flags.
+    private static final int LOCAL = 1;          // We perform the option
+    private static final int REMOTE = 2;         // The client performs the option
+    private static final int LOCAL_OFFERED = 4;  // We sent WILL, and await the answer
+    private static final int REMOTE_OFFERED = 8; // We sent DO, and await the answer
+
+    private final Interactive interactive;
+    private final Communicator communicator;
+
+    // The state flags of every option; the game thread reads them when sending GMCP messages.
+    private final AtomicIntegerArray options = new AtomicIntegerArray(256);
+
+    // The negotiated values.
+    private volatile int windowWidth = 0;
+    private volatile int windowHeight = 0;
+    private volatile String terminalType = null;
+    private volatile boolean utf8 = false;
+
+    /**
+     * Constructor
+     *
+     * @param interactive The {@link Interactive} negotiating.
+     * @param communicator The {@link Communicator} handling the interactive; may be {@code null} for tests.
+     */
+    TelnetNegotiation(Interactive interactive, Communicator communicator) {
+        super();
+        this.interactive = interactive;
+        this.communicator = communicator;
+    }
+
+    /**
+     * Start the negotiation by offering our options and asking for the client's.
+     *
+     * @param offerCompression {@code true} if output compression is to be offered.
+     */
+    void start(boolean offerCompression) {
+        setFlag(CHARSET, LOCAL_OFFERED);
+        setFlag(GMCP, LOCAL_OFFERED);
+        setFlag(MSSP, LOCAL_OFFERED);
+        setFlag(NAWS, REMOTE_OFFERED);
+        setFlag(TTYPE, REMOTE_OFFERED);
+        if (offerCompression) {
+            setFlag(COMPRESS2, LOCAL_OFFERED);
+            interactive.sendTelnet(IAC, WILL, COMPRESS2, IAC, WILL, CHARSET, IAC, WILL, GMCP, IAC, WILL, MSSP,
+                                   IAC, DO, NAWS, IAC, DO, TTYPE);
+        } else {
+            interactive.sendTelnet(IAC, WILL, CHARSET, IAC, WILL, GMCP, IAC, WILL, MSSP,
+                                   IAC, DO, NAWS, IAC, DO, TTYPE);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.TelnetDecoder.Handler#negotiate(int, int)
+     */
+    @Override
+    public void negotiate(int command, int option) {
+        switch (command) {
+            case DO:
+                if (!hasFlag(option, LOCAL)) {
+                    if (isSupportedLocally(option)) {
+                        if (!hasFlag(option, LOCAL_OFFERED)) {
+                            interactive.sendTelnet(IAC, WILL, option);
+                        }
+                        setFlag(option, LOCAL);
+                        clearFlag(option, LOCAL_OFFERED);
+                        enabledLocally(option);
+                    } else {
+                        interactive.sendTelnet(IAC, WONT, option);
+                    }
+                }
+                break;
+            case DONT:
+                if (option == COMPRESS2 && interactive.getOutput().isCompressing()) {
+                    // Compression, once started, continues as terminating the stream is not supported,
+                    // so the request is not confirmed; clients don't send it in practice.
+                    log.debug("Ignoring the request of {} to end the output compression", interactive);
+                    break;
+                }
+                if (hasFlag(option, LOCAL)) {
+                    clearFlag(option, LOCAL);
+                    interactive.sendTelnet(IAC, WONT, option);
+                }
+                clearFlag(option, LOCAL_OFFERED);
+                break;
+            case WILL:
+                if (!hasFlag(option, REMOTE)) {
+                    if (isSupportedRemotely(option)) {
+                        if (!hasFlag(option, REMOTE_OFFERED)) {
+                            interactive.sendTelnet(IAC, DO, option);
+                        }
+                        setFlag(option, REMOTE);
+                        clearFlag(option, REMOTE_OFFERED);
+                        enabledRemotely(option);
+                    } else {
+                        interactive.sendTelnet(IAC, DONT, option);
+                    }
+                }
+                break;
+            case WONT:
+                if (hasFlag(option, REMOTE)) {
+                    clearFlag(option, REMOTE);
+                    interactive.sendTelnet(IAC, DONT, option);
+                }
+                clearFlag(option, REMOTE_OFFERED);
+                break;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.TelnetDecoder.Handler#subnegotiate(int, byte[], int)
+     */
+    @Override
+    public void subnegotiate(int option, byte[] data, int length) {
+        switch (option) {
+            case NAWS:
+                if (length >= 4) {
+                    windowWidth = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+                    windowHeight = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+                }
+                break;
+            case TTYPE:
+                if (length >= 1 && data[0] == TTYPE_IS) {
+                    terminalType = new String(data, 1, length - 1, StandardCharsets.US_ASCII);
+                    log.debug("Terminal type of {}: {}", interactive, terminalType);
+                }
+                break;
+            case CHARSET:
+                if (length >= 1 && data[0] == CHARSET_ACCEPTED) {
+                    utf8 = "UTF-8".equalsIgnoreCase(new String(data, 1, length - 1, StandardCharsets.US_ASCII));
+                    interactive.getOutput().setUtf8(utf8);
+                    log.debug("Character set of {}: {}", interactive, utf8 ? "UTF-8" : "ISO-8859-1");
+                }
+                break;
+            case GMCP:
+                if (hasFlag(GMCP, LOCAL)) {
+                    interactive.gmcpReceived(new String(data, 0, length, StandardCharsets.UTF_8));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return {@code true} if the given state flag of the option is set.
+     */
+    private boolean hasFlag(int option, int flag) {
+        return (options.get(option) & flag) != 0;
+    }
+
+    /**
+     * Set a state flag of the option.
+     */
+    private void setFlag(int option, int flag) {
+        options.accumulateAndGet(option, flag, (state, f) -> state | f);
+    }
+
+    /**
+     * Clear a state flag of the option.
+     */
+    private void clearFlag(int option, int flag) {
+        options.accumulateAndGet(option, flag, (state, f) -> state & ~f);
+    }
+
+    /**
+     * @return {@code true} if we are able to perform the given option.
+     */
+    private boolean isSupportedLocally(int option) {
+        switch (option) {
+            case CHARSET:
+            case GMCP:
+            case MSSP:
+                return true;
+            case COMPRESS2:
+                return hasFlag(COMPRESS2, LOCAL_OFFERED);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return {@code true} if we want the client to perform the given option.
+     */
+    private boolean isSupportedRemotely(int option) {
+        return option == NAWS || option == TTYPE;
+    }
+
+    /**
+     * Act on an option we now perform.
+     */
+    private void enabledLocally(int option) {
+        switch (option) {
+            case COMPRESS2:
+                if (interactive.getOutput().isCompressing()) {
+                    break;
+                }
+                log.debug("Starting output compression for {}", interactive);
+                interactive.getOutput().startCompression(sequence(IAC, SB, COMPRESS2, IAC, SE).flip(),
+                                                         communicator.newCompressor());
+                communicator.flushNow(interactive);
+                break;
+            case CHARSET:
+                ByteBuffer request = sequence(IAC, SB, CHARSET, CHARSET_REQUEST);
+                request.put(CHARSET_OFFER.getBytes(StandardCharsets.US_ASCII));
+                interactive.sendTelnet(endSubnegotiation(request));
+                break;
+            case MSSP:
+                interactive.sendTelnet(msspData());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Act on an option the client now performs.
+     */
+    private void enabledRemotely(int option) {
+        if (option == TTYPE) {
+            interactive.sendTelnet(IAC, SB, TTYPE, TTYPE_SEND, IAC, SE);
+        }
+    }
+
+    /**
+     * Create a GMCP message.
+     *
+     * @param message The message, consisting of the package name and the optional JSON data.
+     * @return The message, ready for sending, or {@code null} if the client doesn't support GMCP.
+     */
+    ByteBuffer gmcpMessage(String message) {
+        if (!hasFlag(GMCP, LOCAL)) {
+            return null;
+        }
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(data.length + 5);
+        buffer.put((byte) IAC).put((byte) SB).put((byte) GMCP).put(data);
+        return endSubnegotiation(buffer);
+    }
+
+    /**
+     * @return The MSSP subnegotiation describing the server.
+     */
+    private ByteBuffer msspData() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.put((byte) IAC).put((byte) SB).put((byte) MSSP);
+        // TODO: NAME, once the mud has a name setting
+        putMsspVariable(buffer, "PLAYERS", communicator != null ? Integer.toString(communicator.getInteractiveCount()) : "0");
+        putMsspVariable(buffer, "UPTIME", communicator != null ? Long.toString(communicator.getStartTime() / 1000L) : "0");
+        putMsspVariable(buffer, "CODEBASE", Version.DRIVER_NAME + " " + Version.getVersionString());
+        return endSubnegotiation(buffer);
+    }
+
+    /**
+     * Add an MSSP variable to a subnegotiation.
+     */
+    private static void putMsspVariable(ByteBuffer buffer, String name, String value) {
+        buffer.put((byte) MSSP_VAR).put(name.getBytes(StandardCharsets.US_ASCII));
+        buffer.put((byte) MSSP_VAL).put(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Create a buffer holding a byte sequence, with room for more data.
+     */
+    private static ByteBuffer sequence(int... bytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 64);
+        for (int b : bytes) {
+            buffer.put((byte) b);
+        }
+        return buffer;
+    }
+
+    /**
+     * Terminate a subnegotiation being built, and prepare the buffer for sending.
+     */
+    private static ByteBuffer endSubnegotiation(ByteBuffer buffer) {
+        buffer.put((byte) IAC).put((byte) SE);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return The width of the client's window, or 0 if unknown.
+     */
+    int getWindowWidth() {
+        return windowWidth;
+    }
+
+    /**
+     * @return The height of the client's window, or 0 if unknown.
+     */
+    int getWindowHeight() {
+        return windowHeight;
+    }
+
+    /**
+     * @return The client's terminal type, or {@code null} if unknown.
+     */
+    String getTerminalType() {
+        return terminalType;
+    }
+
+    /**
+     * Use UTF-8 without negotiation, for connections whose protocol mandates it.
+     */
+    void useUtf8() {
+        utf8 = true;
+        interactive.getOutput().setUtf8(true);
+    }
+
+    /**
+     * @return {@code true} if the client agreed to use UTF-8.
+     */
+    boolean isUtf8() {
+        return utf8;
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.rt.GameStateSignals;
+
+/**
+ * {@link IoHandler} serving every connection with its own thread doing blocking reads.<p/>
+ *
+ * If the Java runtime supports virtual threads, these are used; otherwise the connections
+ * are served by platform threads.
+ */
+class ThreadedIoHandler implements IoHandler {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    // Size of the per-connection read buffer.
+    private static final int READ_BUFFER_SIZE = 2048;
+
+    // External Modules
+    private GameStateSignals gameStateSignals;
+
+    private ExecutorService executor;
+
+    /**
+     * Constructor
+     *
+     * @param gameStateSignals The {@link GameStateSignals} instance.
+     */
+    ThreadedIoHandler(GameStateSignals gameStateSignals) {
+        super();
+        this.gameStateSignals = gameStateSignals;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#start()
+     */
+    @Override
+    public void start() throws IOException {
+        executor = newPerConnectionExecutor();
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#register(org.ldmud.jldmud.rt.net.Interactive)
+     */
+    @Override
+    public void register(Interactive interactive) {
+        executor.execute(() -> serve(interactive));
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#flush(java.util.List)
+     */
+    @Override
+    public void flush(List<Interactive> interactives) {
+        for (Interactive interactive : interactives) {
+            if (interactive.getOutput().startFlush()) {
+                executor.execute(() -> write(interactive));
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#resume(org.ldmud.jldmud.rt.net.Interactive)
+     */
+    @Override
+    public void resume(Interactive interactive) {
+        // The serving thread drives the reading itself; only the output held back
+        // during the handshake needs to be written.
+        flush(Collections.singletonList(interactive));
+    }
+
+    /* (non-Javadoc)
+     * @see org.ldmud.jldmud.rt.net.IoHandler#shutdown()
+     */
+    @Override
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Read from the connection of an {@link Interactive} until it is lost or closed.
+     *
+     * @param interactive The {@link Interactive} to serve.
+     */
+    private void serve(Interactive interactive) {
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try {
+            while (interactive.read(readBuffer) >= 0) {
+                readBuffer.flip();
+                if (interactive.received(readBuffer)) {
+                    gameStateSignals.signal(GameStateSignals.IO);
+                }
+                readBuffer.clear();
+            }
+        } catch (ClosedChannelException e) {
+            // The connection was closed by the driver.
+        } catch (IOException e) {
+            log.debug("Error reading from {}: {}", interactive, e.toString());
+        }
+        interactive.connectionLost();
+        gameStateSignals.signal(GameStateSignals.IO);
+    }
+
+    /**
+     * Write the pending output of an {@link Interactive}. As the channel is blocking, this
+     * returns only once all output has been written, or a TLS connection is still handshaking.
+     *
+     * @param interactive The {@link Interactive} to write.
+     */
+    private void write(Interactive interactive) {
+        OutputBuffer output = interactive.getOutput();
+        try {
+            do {
+                while (interactive.isWritePending()) {
+                    interactive.write();
+                }
+                output.endFlush();
+                // Output appended after the last write, but before the flush mark was cleared,
+                // has not been scheduled by anyone else.
+            } while (interactive.isWritePending() && output.startFlush());
+        } catch (IOException e) {
+            output.endFlush();
+            log.debug("Error writing to {}: {}", interactive, e.toString());
+            interactive.closeChannel();
+        }
+    }
+
+    /**
+     * Create the executor running the per-connection tasks: one virtual thread per task if the
+     * runtime supports it (Java 21+), otherwise a pool of platform daemon threads.
+     *
+     * @return The executor.
+     */
+    private ExecutorService newPerConnectionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            log.info("Serving connections with virtual threads");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads not supported - serving connections with platform threads");
+        }
+
+        AtomicLong threadCount = new AtomicLong();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("NetIO-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,462 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A TLS connection on top of a {@link SocketChannel}, which can be blocking or non-blocking.<p/>
+ *
+ * Reading decrypts the received data; writing encrypts the data given. The handshake is driven
+ * by both as needed. On non-blocking channels, the delegated handshake tasks are run by the
+ * {@link TlsContext} threads; the I/O handler is asked to resume the connection once they are
+ * done. Likewise it is asked to resume once the initial handshake finished, as no application
+ * data can be written before.<p/>
+ *
+ * Reading and writing may happen in different threads. The network and application buffers
+ * are taken from the pools of the {@link TlsContext}, and returned on {@link #close()}.
+ */
+class TlsChannel implements ByteChannel, GatheringByteChannel {
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    private static final ByteBuffer[] NO_DATA = { ByteBuffer.allocate(0) };
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final TlsContext context;
+
+    // Called when the I/O of the connection can continue after the handshake made progress.
+    private final Runnable resume;
+
+    // Guarding the input buffers and unwrapping.
+    private final ReentrantLock readLock = new ReentrantLock();
+
+    // Guarding the output buffer, wrapping, and writing to the channel.
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Received data not yet decrypted, kept ready for filling.
+    private ByteBuffer networkIn;
+
+    // Decrypted data not yet read, kept ready for draining.
+    private ByteBuffer applicationIn;
+
+    // Encrypted data not yet written, kept ready for filling.
+    private ByteBuffer networkOut;
+
+    // Single buffer array for {@link #write(ByteBuffer)}.
+    private final ByteBuffer[] singleBuffer = new ByteBuffer[1];
+
+    // {@code true} if received records are left undecrypted as the application buffer was full.
+    private boolean unwrapPending = false;
+
+    private volatile boolean handshakeDone = false;
+    private volatile boolean tasksRunning = false;
+    private volatile boolean closed = false;
+    private final AtomicBoolean closing = new AtomicBoolean();
+
+    /**
+     * Constructor
+     *
+     * @param channel The connection.
+     * @param context The {@link TlsContext} providing the engine and buffers.
+     * @param resume Called (from any thread) when the I/O of the connection can continue
+     *   after the handshake made progress outside of reading and writing.
+     */
+    TlsChannel(SocketChannel channel, TlsContext context, Runnable resume) {
+        super();
+        this.channel = channel;
+        this.context = context;
+        this.resume = resume;
+        engine = context.newEngine();
+        networkIn = context.getNetworkPool().acquire();
+        networkOut = context.getNetworkPool().acquire();
+        applicationIn = context.getApplicationPool().acquire();
+        applicationIn.flip();
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.ReadableByteChannel#read(java.nio.ByteBuffer)
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        readLock.lock();
+        try {
+            checkOpen();
+            if (!applicationIn.hasRemaining() && fill() < 0 && !applicationIn.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(applicationIn.remaining(), dst.remaining());
+            ByteBuffer slice = applicationIn.duplicate();
+            slice.limit(slice.position() + count);
+            dst.put(slice);
+            applicationIn.position(applicationIn.position() + count);
+            return count;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} if decrypted data is available without reading from the network.
+     */
+    boolean hasBufferedInput() {
+        readLock.lock();
+        try {
+            return !closed && (applicationIn.hasRemaining() || unwrapPending);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Read from the network, and decrypt what has been received.
+     *
+     * @return The number of bytes read from the network, or -1 at the end of the stream.
+     */
+    private int fill() throws IOException {
+        if (networkIn.position() > 0 && !tasksRunning && handshake(engine.getHandshakeStatus())) {
+            unwrap();
+            if (applicationIn.hasRemaining()) {
+                return 0;
+            }
+        }
+        int count = networkIn.hasRemaining() ? channel.read(networkIn) : 0;
+        if (count < 0) {
+            try {
+                engine.closeInbound();
+            } catch (SSLException e) {
+                log.debug("Connection closed without TLS close_notify: {}", e.toString());
+            }
+        }
+        if (!tasksRunning && handshake(engine.getHandshakeStatus())) {
+            unwrap();
+        }
+        return count;
+    }
+
+    /**
+     * Decrypt the received data as far as possible.
+     */
+    private void unwrap() throws IOException {
+        unwrapPending = false;
+        networkIn.flip();
+        applicationIn.compact();
+        try {
+            while (networkIn.hasRemaining()) {
+                SSLEngineResult result = engine.unwrap(networkIn, applicationIn);
+                switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW:
+                        return; // Wait for the rest of the record
+                    case BUFFER_OVERFLOW:
+                        if (applicationIn.position() == 0) {
+                            throw new SSLException("Application buffer too small for TLS record");
+                        }
+                        unwrapPending = true;
+                        return; // Wait for the data to be read
+                    case CLOSED:
+                        return;
+                    default:
+                        break;
+                }
+                if (!handshake(result.getHandshakeStatus())) {
+                    return;
+                }
+                if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                    return;
+                }
+            }
+        } finally {
+            networkIn.compact();
+            applicationIn.flip();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.WritableByteChannel#write(java.nio.ByteBuffer)
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        writeLock.lock();
+        try {
+            singleBuffer[0] = src;
+            return (int) write(singleBuffer, 0, 1);
+        } finally {
+            singleBuffer[0] = null;
+            writeLock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.GatheringByteChannel#write(java.nio.ByteBuffer[])
+     */
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * Encrypt and write the data of the given buffers. Nothing is written before the initial
+     * handshake has finished; on non-blocking channels, less than given may be written if the
+     * network can't take it.
+     *
+     * @return The number of bytes consumed from the buffers.
+     * @see java.nio.channels.GatheringByteChannel#write(java.nio.ByteBuffer[], int, int)
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (!flushNetwork() || !handshakeDone) {
+                return 0L;
+            }
+            long consumed = 0L;
+            while (hasRemaining(srcs, offset, length)) {
+                SSLEngineResult result = engine.wrap(srcs, offset, length, networkOut);
+                consumed += result.bytesConsumed();
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    throw new ClosedChannelException();
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW && networkOut.position() == 0) {
+                    throw new SSLException("Network buffer too small for TLS record");
+                }
+                handshake(result.getHandshakeStatus());
+                if (!flushNetwork()) {
+                    break;
+                }
+            }
+            return consumed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write the encrypted data still pending, and continue the handshake if it waits for that.
+     *
+     * @return {@code true} if all encrypted data has been written.
+     */
+    boolean flush() throws IOException {
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (flushNetwork() && engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+                handshake(HandshakeStatus.NEED_WRAP);
+            }
+            return networkOut.position() == 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} if encrypted data is waiting for the network to accept it.
+     */
+    boolean hasPendingOutput() {
+        writeLock.lock();
+        try {
+            return !closed && networkOut.position() > 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} if the initial handshake has finished, and application data can be written.
+     */
+    boolean isHandshakeDone() {
+        return handshakeDone;
+    }
+
+    /**
+     * Perform the handshake steps which don't need data from the client.
+     *
+     * @param status The current handshake status.
+     * @return {@code false} if the handshake tasks continue in the background.
+     */
+    private boolean handshake(HandshakeStatus status) throws IOException {
+        boolean finished = false;
+        try {
+            while (true) {
+                switch (status) {
+                    case NEED_TASK:
+                        if (!runTasks()) {
+                            return false;
+                        }
+                        status = engine.getHandshakeStatus();
+                        break;
+                    case NEED_WRAP:
+                        status = wrapHandshake();
+                        if (status == null) {
+                            return true; // Continued by flush() once the network takes more data
+                        }
+                        break;
+                    case FINISHED:
+                        // There may be post-handshake messages (session tickets) to send.
+                        finished = true;
+                        status = engine.getHandshakeStatus();
+                        break;
+                    default:
+                        return true;
+                }
+            }
+        } finally {
+            if (finished && !handshakeDone) {
+                handshakeDone = true;
+                log.debug("TLS handshake finished: {} {}", engine.getSession().getProtocol(),
+                          engine.getSession().getCipherSuite());
+                resume.run();
+            }
+        }
+    }
+
+    /**
+     * Produce and write the next handshake message.
+     *
+     * @return The new handshake status, or {@code null} if the message couldn't be written completely.
+     */
+    private HandshakeStatus wrapHandshake() throws IOException {
+        writeLock.lock();
+        try {
+            if (!flushNetwork()) {
+                return null;
+            }
+            SSLEngineResult result = engine.wrap(NO_DATA, networkOut);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED && result.bytesProduced() == 0) {
+                throw new ClosedChannelException();
+            }
+            return flushNetwork() ? result.getHandshakeStatus() : null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Run the delegated handshake tasks: right away if the channel is blocking (and thus
+     * served by its own thread), otherwise in the background.
+     *
+     * @return {@code true} if the tasks have been run.
+     */
+    private boolean runTasks() {
+        if (channel.isBlocking()) {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            return true;
+        }
+        tasksRunning = true;
+        context.execute(() -> {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            tasksRunning = false;
+            resume.run();
+        });
+        return false;
+    }
+
+    /**
+     * Write the pending encrypted data to the network; the write lock must be held.
+     *
+     * @return {@code true} if all data has been written.
+     */
+    private boolean flushNetwork() throws IOException {
+        if (networkOut.position() == 0) {
+            return true;
+        }
+        networkOut.flip();
+        try {
+            while (networkOut.hasRemaining() && channel.write(networkOut) > 0) {
+                // Continue until written, or the network doesn't take more
+            }
+        } finally {
+            networkOut.compact();
+        }
+        return networkOut.position() == 0;
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] srcs, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (srcs[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    /**
+     * Close the connection, and return the buffers to the pools. On non-blocking channels,
+     * a TLS close_notify is sent if the network takes it right away.
+     *
+     * @see java.nio.channels.Channel#close()
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        engine.closeOutbound();
+        if (!channel.isBlocking() && writeLock.tryLock()) {
+            try {
+                if (handshakeDone && flushNetwork()) {
+                    engine.wrap(NO_DATA, networkOut);
+                    flushNetwork();
+                }
+            } catch (IOException e) {
+                log.debug("Error sending TLS close_notify: {}", e.toString());
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        closed = true;
+        // Closing the channel first releases threads blocked on it, and thus the locks.
+        channel.close();
+
+        readLock.lock();
+        try {
+            context.getNetworkPool().release(networkIn);
+            context.getApplicationPool().release(applicationIn);
+        } finally {
+            readLock.unlock();
+        }
+        writeLock.lock();
+        try {
+            context.getNetworkPool().release(networkOut);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
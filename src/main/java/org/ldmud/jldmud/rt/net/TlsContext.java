@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The server side TLS setup shared by all TLS connections: the {@link SSLContext} with its
+ * session cache, the pools of network and application buffers, and the threads running the
+ * expensive handshake steps (key exchange and certificate operations) off the I/O thread.
+ */
+class TlsContext {
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * The maximum number of TLS sessions cached for resumption.
+     */
+    private static final int SESSION_CACHE_SIZE = 10000;
+
+    /**
+     * The time in seconds a cached TLS session can be resumed.
+     */
+    private static final int SESSION_TIMEOUT = 24 * 60 * 60;
+
+    /**
+     * The maximum number of unused buffers of each kind kept for reuse.
+     */
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private final SSLContext sslContext;
+
+    // The pool of buffers holding encrypted data.
+    private final BufferPool networkPool;
+
+    // The pool of buffers holding decrypted data.
+    private final BufferPool applicationPool;
+
+    // The threads running the delegated handshake tasks.
+    private final ExecutorService handshakeExecutor;
+
+    /**
+     * Create the context for a server key stored in a keystore.
+     *
+     * @param keystore The keystore file (PKCS12 or JKS) holding the key and certificate chain.
+     * @param password The password of the keystore and the key; may be {@code null}.
+     * @return The new context.
+     * @throws IOException if the keystore can't be read.
+     * @throws GeneralSecurityException if the keystore content can't be used.
+     */
+    static TlsContext load(File keystore, String password) throws IOException, GeneralSecurityException {
+        char[] secret = password != null ? password.toCharArray() : new char[0];
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (InputStream in = new FileInputStream(keystore)) {
+            keyStore.load(in, secret);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, secret);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), null, null);
+        return new TlsContext(sslContext);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param sslContext The initialized {@link SSLContext} to create the connections from.
+     */
+    TlsContext(SSLContext sslContext) {
+        super();
+        this.sslContext = sslContext;
+
+        SSLSessionContext sessions = sslContext.getServerSessionContext();
+        sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(SESSION_TIMEOUT);
+
+        SSLSession prototype = sslContext.createSSLEngine().getSession();
+        networkPool = new BufferPool(prototype.getPacketBufferSize(), true, MAX_POOLED_BUFFERS);
+        applicationPool = new BufferPool(prototype.getApplicationBufferSize(), false, MAX_POOLED_BUFFERS);
+
+        AtomicLong threadCount = new AtomicLong();
+        handshakeExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("TlsHandshake-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("TLS enabled: {}, packet buffer size {}", sslContext.getProtocol(), networkPool.getBufferSize());
+    }
+
+    /**
+     * @return A new server side {@link SSLEngine}.
+     */
+    SSLEngine newEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    /**
+     * @return The pool of buffers for encrypted data.
+     */
+    BufferPool getNetworkPool() {
+        return networkPool;
+    }
+
+    /**
+     * @return The pool of buffers for decrypted data.
+     */
+    BufferPool getApplicationPool() {
+        return applicationPool;
+    }
+
+    /**
+     * Drop the buffers kept for reuse.
+     */
+    void trimPools() {
+        networkPool.trim();
+        applicationPool.trim();
+    }
+
+    /**
+     * Run a delegated handshake task in the background.
+     *
+     * @param task The task.
+     */
+    void execute(Runnable task) {
+        handshakeExecutor.execute(task);
+    }
+
+    /**
+     * Stop the handshake threads.
+     */
+    void shutdown() {
+        handshakeExecutor.shutdown();
+    }
+}
@@ -0,0 +1,522 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The WebSocket protocol (RFC 6455) of a browser connection, presenting it as an ordinary
+ * byte stream to the {@link Interactive}.<p/>
+ *
+ * Received data is decoded in place by {@link #decode(ByteBuffer)}: first the HTTP upgrade
+ * request is answered, then the frames are unmasked, and their payload is passed on. Every
+ * text message is terminated as an input line (by the {@link Interactive} if there is no room for
+ * the line end, see {@link #takePendingNewline()}). Pings are answered, and a close request is
+ * confirmed before the connection is shut down.<p/>
+ *
+ * Written data is sent in binary frames, as a frame may end in the middle of a UTF-8 sequence.
+ * The frame header is written together with the output buffers in one gathering write;
+ * responses and control frames are only sent between data frames.
+ */
+class WebSocketChannel implements GatheringByteChannel {
+    private final Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * The maximum length of the HTTP upgrade request.
+     */
+    static final int MAX_REQUEST_LENGTH = 4096;
+
+    // The magic value for the handshake key hash.
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    // Opcodes
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    // Close status codes
+    private static final int STATUS_PROTOCOL_ERROR = 1002;
+
+    // The maximum length of a control frame payload.
+    private static final int MAX_CONTROL_LENGTH = 125;
+
+    // The maximum length of a frame header: 2 bytes, 8 bytes extended length, 4 bytes mask.
+    private static final int MAX_HEADER_LENGTH = 14;
+
+    // The size of the buffer for responses and control frames.
+    private static final int CONTROL_BUFFER_SIZE = 1024;
+
+    private final SocketChannel socket;
+    private final GatheringByteChannel lower;
+
+    // Decoder state, only used by the reading thread.
+    private final byte[] request = new byte[MAX_REQUEST_LENGTH];
+    private int requestLength = 0;
+    private final byte[] header = new byte[MAX_HEADER_LENGTH];
+    private int headerLength = 0;
+    private boolean inHeader = true;
+    private int opcode;
+    private boolean fin;
+    private int messageOpcode;
+    private long payloadRemaining;
+    private final byte[] mask = new byte[4];
+    private int maskIndex;
+    private final byte[] controlPayload = new byte[MAX_CONTROL_LENGTH];
+    private int controlLength;
+    private byte lastDataByte;
+    private boolean newlinePending = false;
+
+    // Set by the reading thread, read by the writing thread.
+    private volatile boolean upgraded = false;
+    private volatile boolean closing = false;
+    private boolean outputShutdown = false;
+
+    // Writer state, guarded by the instance lock.
+    private final ByteBuffer control = ByteBuffer.allocate(CONTROL_BUFFER_SIZE);
+    private final ByteBuffer frameHeader = ByteBuffer.allocate(MAX_HEADER_LENGTH);
+    private long frameRemaining = 0L;
+    private ByteBuffer[] gather = new ByteBuffer[16];
+
+    /**
+     * Constructor
+     *
+     * @param socket The connection, used to shut it down after the close handshake;
+     *   may be {@code null} for tests.
+     * @param lower The channel to write the frames to: the socket itself, or its TLS layer.
+     */
+    WebSocketChannel(SocketChannel socket, GatheringByteChannel lower) {
+        super();
+        this.socket = socket;
+        this.lower = lower;
+        frameHeader.flip();
+    }
+
+    /**
+     * Decode the received data in place: upon return, the buffer's remaining bytes are the
+     * payload of the data frames.
+     *
+     * @param buffer The received data.
+     */
+    void decode(ByteBuffer buffer) {
+        final int limit = buffer.limit();
+        int read = buffer.position();
+        int write = read;
+
+        if (!upgraded && !closing) {
+            read = readRequest(buffer, read, limit);
+        }
+        while (read < limit && upgraded && !closing) {
+            if (newlinePending && write < read) {
+                buffer.put(write++, (byte) '\n');
+                newlinePending = false;
+            }
+            if (inHeader) {
+                header[headerLength++] = buffer.get(read++);
+                if (headerLength >= 2 && headerLength == headerSize()) {
+                    startFrame();
+                } else {
+                    continue;
+                }
+            } else {
+                int count = (int) Math.min(payloadRemaining, limit - read);
+                if (isControl(opcode)) {
+                    for (int i = 0; i < count; i++) {
+                        byte b = (byte) (buffer.get(read++) ^ mask[maskIndex++ & 3]);
+                        if (controlLength < MAX_CONTROL_LENGTH) {
+                            controlPayload[controlLength++] = b;
+                        }
+                    }
+                } else if (count > 0) {
+                    for (int i = 0; i < count; i++) {
+                        buffer.put(write++, (byte) (buffer.get(read++) ^ mask[maskIndex++ & 3]));
+                    }
+                    lastDataByte = buffer.get(write - 1);
+                }
+                payloadRemaining -= count;
+            }
+            if (!inHeader && payloadRemaining == 0) {
+                endFrame();
+            }
+        }
+        if (newlinePending && write < buffer.capacity() && (write < read || read == limit)) {
+            buffer.limit(Math.max(limit, write + 1));
+            buffer.put(write++, (byte) '\n');
+            newlinePending = false;
+        }
+        buffer.limit(write);
+    }
+
+    /**
+     * Take the line end of a text message which the last {@link #decode(ByteBuffer)} couldn't
+     * append, as the message's payload filled the buffer up to its capacity.
+     *
+     * @return {@code true} if the input line is to be terminated after the decoded data.
+     */
+    boolean takePendingNewline() {
+        boolean pending = newlinePending;
+        newlinePending = false;
+        return pending;
+    }
+
+    /**
+     * Collect the HTTP upgrade request, and answer it once complete.
+     *
+     * @return The position after the consumed request bytes.
+     */
+    private int readRequest(ByteBuffer buffer, int read, int limit) {
+        while (read < limit && !upgraded && !closing) {
+            if (requestLength == MAX_REQUEST_LENGTH) {
+                reject("431 Request Header Fields Too Large");
+                break;
+            }
+            request[requestLength++] = buffer.get(read++);
+            if (requestLength >= 4 && request[requestLength - 4] == '\r' && request[requestLength - 3] == '\n'
+                    && request[requestLength - 2] == '\r' && request[requestLength - 1] == '\n') {
+                upgrade(new String(request, 0, requestLength, StandardCharsets.ISO_8859_1));
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Validate the HTTP upgrade request, and answer it.
+     */
+    private void upgrade(String text) {
+        String[] lines = StringUtils.split(text, "\r\n");
+        String key = null;
+        boolean upgradeRequested = false;
+        for (int i = 1; i < lines.length; i++) {
+            String name = StringUtils.substringBefore(lines[i], ":").trim();
+            String value = StringUtils.substringAfter(lines[i], ":").trim();
+            if ("Upgrade".equalsIgnoreCase(name)) {
+                upgradeRequested = "websocket".equalsIgnoreCase(value);
+            } else if ("Sec-WebSocket-Key".equalsIgnoreCase(name)) {
+                key = value;
+            }
+        }
+        if (lines.length == 0 || !lines[0].startsWith("GET ") || !upgradeRequested || StringUtils.isEmpty(key)) {
+            reject("400 Bad Request");
+            return;
+        }
+        queueControl(("HTTP/1.1 101 Switching Protocols\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1), -1);
+        upgraded = true;
+    }
+
+    /**
+     * Answer the HTTP request with an error, and close the connection.
+     */
+    private void reject(String status) {
+        log.debug("Rejecting WebSocket request: {}", status);
+        queueControl(("HTTP/1.1 " + status + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1), -1);
+        closing = true;
+    }
+
+    /**
+     * @return The value of the Sec-WebSocket-Accept header for a Sec-WebSocket-Key.
+     */
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] hash = sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported", e);
+        }
+    }
+
+    /**
+     * @return The length of the frame header, based on the first two bytes.
+     */
+    private int headerSize() {
+        int length = header[1] & 0x7F;
+        int size = 2 + ((header[1] & 0x80) != 0 ? 4 : 0);
+        if (length == 126) {
+            size += 2;
+        } else if (length == 127) {
+            size += 8;
+        }
+        return size;
+    }
+
+    /**
+     * Start receiving the payload of the frame whose header is complete.
+     */
+    private void startFrame() {
+        fin = (header[0] & 0x80) != 0;
+        opcode = header[0] & 0x0F;
+        boolean masked = (header[1] & 0x80) != 0;
+        int length = header[1] & 0x7F;
+        int pos = 2;
+        if (length == 126) {
+            payloadRemaining = ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+            pos = 4;
+        } else if (length == 127) {
+            payloadRemaining = 0;
+            for (pos = 2; pos < 10; pos++) {
+                payloadRemaining = (payloadRemaining << 8) | (header[pos] & 0xFF);
+            }
+        } else {
+            payloadRemaining = length;
+        }
+        if (masked) {
+            System.arraycopy(header, pos, mask, 0, 4);
+        }
+        maskIndex = 0;
+        controlLength = 0;
+        headerLength = 0;
+        inHeader = false;
+
+        if (!masked || payloadRemaining < 0 || (isControl(opcode) && (payloadRemaining > MAX_CONTROL_LENGTH || !fin))) {
+            protocolError("Invalid frame header");
+        } else if (opcode == OP_TEXT || opcode == OP_BINARY) {
+            messageOpcode = opcode;
+        } else if (opcode != OP_CONTINUATION && !isControl(opcode)) {
+            protocolError("Unknown opcode " + opcode);
+        }
+    }
+
+    /**
+     * Act on a completely received frame.
+     */
+    private void endFrame() {
+        inHeader = true;
+        switch (opcode) {
+            case OP_PING:
+                queueControl(controlPayload, OP_PONG);
+                break;
+            case OP_CLOSE:
+                // Confirm the close with the status code of the request, if any.
+                queueControl(controlPayload, OP_CLOSE, Math.min(controlLength, 2));
+                closing = true;
+                break;
+            case OP_PONG:
+                break;
+            default:
+                if (fin && messageOpcode == OP_TEXT && lastDataByte != '\n') {
+                    newlinePending = true;
+                    lastDataByte = '\n';
+                }
+                break;
+        }
+    }
+
+    /**
+     * Close the connection because of a protocol violation by the client.
+     */
+    private void protocolError(String reason) {
+        log.debug("WebSocket protocol error: {}", reason);
+        byte[] status = { (byte) (STATUS_PROTOCOL_ERROR >> 8), (byte) STATUS_PROTOCOL_ERROR };
+        queueControl(status, OP_CLOSE, status.length);
+        closing = true;
+    }
+
+    private static boolean isControl(int opcode) {
+        return (opcode & 0x8) != 0;
+    }
+
+    /**
+     * Queue a control frame for writing.
+     *
+     * @param data The buffer holding the payload.
+     * @param opcode The opcode of the frame, or -1 if the data is to be sent unframed.
+     */
+    private void queueControl(byte[] data, int opcode) {
+        queueControl(data, opcode, opcode == OP_PONG ? controlLength : data.length);
+    }
+
+    /**
+     * Queue a control frame for writing.
+     *
+     * @param data The buffer holding the payload.
+     * @param opcode The opcode of the frame, or -1 if the data is to be sent unframed.
+     * @param length The length of the payload.
+     */
+    private synchronized void queueControl(byte[] data, int opcode, int length) {
+        if (control.remaining() < length + 2) {
+            log.debug("WebSocket control buffer full, dropping opcode {}", opcode);
+            return;
+        }
+        if (opcode >= 0) {
+            control.put((byte) (0x80 | opcode)).put((byte) length);
+        }
+        control.put(data, 0, length);
+    }
+
+    /**
+     * Write the pending responses and control frames, unless a data frame is in progress.
+     * Once the close handshake is complete, the connection is shut down for output.
+     *
+     * @return {@code true} if data frames can be written.
+     * @throws IOException if the write failed.
+     */
+    synchronized boolean flush() throws IOException {
+        if (frameRemaining > 0) {
+            return true;
+        }
+        if (control.position() > 0) {
+            control.flip();
+            try {
+                lower.write(control);
+            } finally {
+                control.compact();
+            }
+        }
+        if (control.position() > 0) {
+            return false;
+        }
+        if (closing) {
+            if (!outputShutdown && socket != null) {
+                outputShutdown = true;
+                socket.shutdownOutput();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if responses or control frames are waiting to be written.
+     */
+    synchronized boolean hasPendingOutput() {
+        return control.position() > 0;
+    }
+
+    /**
+     * @return {@code true} if the upgrade to WebSocket is complete, and data frames can be sent.
+     */
+    boolean isUpgraded() {
+        return upgraded && !closing;
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.WritableByteChannel#write(java.nio.ByteBuffer)
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.GatheringByteChannel#write(java.nio.ByteBuffer[])
+     */
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * Write the data of the given buffers as the payload of binary frames. If the lower
+     * channel doesn't take everything, the current frame is continued with the next call.
+     *
+     * @return The number of payload bytes written.
+     * @see java.nio.channels.GatheringByteChannel#write(java.nio.ByteBuffer[], int, int)
+     */
+    @Override
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        if (!flush() || !upgraded) {
+            return 0L;
+        }
+        if (frameRemaining == 0) {
+            long total = 0L;
+            for (int i = offset; i < offset + length; i++) {
+                total += srcs[i].remaining();
+            }
+            if (total == 0) {
+                return 0L;
+            }
+            startOutputFrame(total);
+        }
+
+        // Gather the header (if not yet written) and the payload of the current frame.
+        if (gather.length < length + 1) {
+            gather = new ByteBuffer[length + 1];
+        }
+        int count = 0;
+        int headerBefore = frameHeader.remaining();
+        if (headerBefore > 0) {
+            gather[count++] = frameHeader;
+        }
+        long payload = 0L;
+        ByteBuffer cut = null;
+        int cutLimit = 0;
+        for (int i = offset; i < offset + length && payload < frameRemaining; i++) {
+            ByteBuffer src = srcs[i];
+            if (payload + src.remaining() > frameRemaining) {
+                cut = src;
+                cutLimit = src.limit();
+                src.limit(src.position() + (int) (frameRemaining - payload));
+            }
+            payload += src.remaining();
+            gather[count++] = src;
+        }
+
+        long written;
+        try {
+            written = lower.write(gather, 0, count);
+        } finally {
+            if (cut != null) {
+                cut.limit(cutLimit);
+            }
+            for (int i = 0; i < count; i++) {
+                gather[i] = null;
+            }
+        }
+        long payloadWritten = written - (headerBefore - frameHeader.remaining());
+        frameRemaining -= payloadWritten;
+        return payloadWritten;
+    }
+
+    /**
+     * Prepare the header of a binary frame.
+     *
+     * @param length The payload length.
+     */
+    private void startOutputFrame(long length) {
+        frameHeader.clear();
+        frameHeader.put((byte) (0x80 | OP_BINARY));
+        if (length < 126) {
+            frameHeader.put((byte) length);
+        } else if (length <= 0xFFFF) {
+            frameHeader.put((byte) 126).putShort((short) length);
+        } else {
+            frameHeader.put((byte) 127).putLong(length);
+        }
+        frameHeader.flip();
+        frameRemaining = length;
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    @Override
+    public boolean isOpen() {
+        return lower.isOpen();
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.Channel#close()
+     */
+    @Override
+    public void close() throws IOException {
+        lower.close();
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.object;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.ldmud.jldmud.rt.object.ExecutionCost.Metric;
+import org.ldmud.jldmud.rt.object.ExecutionCost.Window;
+
+import com.google.inject.Inject;
+
+/**
+ * Singleton class accounting the execution cost per {@link MudObject} and per program, and
+ * ranking the most expensive ones.<p/>
+ *
+ * An execution is measured with {@link #begin()} and {@link #end(MudObject, long)}, which read
+ * the CPU time and the allocated bytes of the current thread. The cost is charged to the object
+ * and to its program; the program's cost includes that of its objects which have been destroyed
+ * since. The program of an object is its name without the clone number.<p/>
+ *
+ * The class is used by the main thread only.
+ */
+public class CostAccounting {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * One entry of a ranking.
+     */
+    public static class Entry {
+        private final String name;
+        private final long value;
+
+        Entry(String name, long value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        /**
+         * @return The name of the object or program.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The accumulated cost.
+         */
+        public long getValue() {
+            return value;
+        }
+    }
+
+    // External modules.
+    private final MudObjects objects;
+    private final LiveConfiguration liveConfig;
+
+    // The thread measurements, if supported by the JVM.
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final com.sun.management.ThreadMXBean allocations;
+
+    // The cost per program name.
+    private final Map<String, ExecutionCost> programCosts = new HashMap<>();
+
+    // The current tick, counting the seconds since the start.
+    private long tick = 0;
+
+    // The CPU time and allocated bytes of the main thread at the start of the current execution.
+    private long startCpuTime;
+    private long startAllocated;
+
+    /**
+     * Constructor
+     *
+     * @param objects The {@link MudObjects} instance.
+     * @param liveConfig The {@link LiveConfiguration} holding the current configuration, which may be {@code null}.
+     */
+    @Inject
+    CostAccounting(MudObjects objects, LiveConfiguration liveConfig) {
+        super();
+        this.objects = objects;
+        this.liveConfig = liveConfig;
+        if (threads.isCurrentThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threads instanceof com.sun.management.ThreadMXBean
+         && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) threads;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            log.info("Measuring allocations per thread is not supported - allocations won't be accounted.");
+        }
+        allocations = allocationBean;
+    }
+
+    /**
+     * Start a new tick, and write the periodic report if it is due; called once per second.
+     */
+    public void nextTick() {
+        tick++;
+        Configuration config = liveConfig.get();
+        long interval = config != null && config.getStatsInterval() != null ? config.getStatsInterval() : 0L;
+        if (interval != 0 && tick % interval == 0) {
+            logReport(config.getStatsTopCount() != null ? config.getStatsTopCount().intValue() : 10);
+        }
+    }
+
+    /**
+     * @return The current tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Start measuring an execution.
+     */
+    public void begin() {
+        startCpuTime = getCpuTime();
+        startAllocated = getAllocatedBytes();
+    }
+
+    /**
+     * End measuring an execution started with {@link #begin()}, and charge its cost.
+     *
+     * @param obj The object which executed, may be {@code null} if there is none.
+     * @param evalCost The evaluation cost of the execution.
+     */
+    public void end(MudObject obj, long evalCost) {
+        if (obj != null) {
+            charge(obj, getCpuTime() - startCpuTime, evalCost, getAllocatedBytes() - startAllocated);
+        }
+    }
+
+    /**
+     * Charge the cost of an execution to an object and its program.
+     *
+     * @param obj The object which executed.
+     * @param cpuTime The CPU time used in nanoseconds.
+     * @param evalCost The evaluation cost.
+     * @param allocated The memory allocated in bytes.
+     */
+    public void charge(MudObject obj, long cpuTime, long evalCost, long allocated) {
+        if (obj.getCost() == null) {
+            obj.initCost(programCosts.computeIfAbsent(getProgramName(obj.getName()), name -> new ExecutionCost()));
+        }
+        obj.getCost().charge(cpuTime, evalCost, allocated, tick);
+        obj.getProgramCost().charge(cpuTime, evalCost, allocated, tick);
+    }
+
+    /**
+     * @param obj The object.
+     * @param metric The kind of cost.
+     * @param window The time window.
+     * @return The cost of the object.
+     */
+    public long getCost(MudObject obj, Metric metric, Window window) {
+        return obj.getCost() != null ? obj.getCost().get(metric, window, tick) : 0L;
+    }
+
+    /**
+     * @param program The name of the program.
+     * @param metric The kind of cost.
+     * @param window The time window.
+     * @return The cost of the program.
+     */
+    public long getProgramCost(String program, Metric metric, Window window) {
+        ExecutionCost cost = programCosts.get(program);
+        return cost != null ? cost.get(metric, window, tick) : 0L;
+    }
+
+    /**
+     * Rank the existing objects by cost.
+     *
+     * @param metric The kind of cost.
+     * @param window The time window.
+     * @param count The number of objects to return.
+     * @return The most expensive objects, the most expensive first.
+     */
+    public List<Entry> getTopObjects(Metric metric, Window window, int count) {
+        PriorityQueue<Entry> top = new PriorityQueue<>(count + 1, (a, b) -> Long.compare(a.value, b.value));
+        for (MudObject obj : objects.getObjectById().values()) {
+            if (obj.getCost() != null) {
+                offer(top, count, obj.getName(), obj.getCost().get(metric, window, tick));
+            }
+        }
+        return sorted(top);
+    }
+
+    /**
+     * Rank the programs by cost.
+     *
+     * @param metric The kind of cost.
+     * @param window The time window.
+     * @param count The number of programs to return.
+     * @return The most expensive programs, the most expensive first.
+     */
+    public List<Entry> getTopPrograms(Metric metric, Window window, int count) {
+        PriorityQueue<Entry> top = new PriorityQueue<>(count + 1, (a, b) -> Long.compare(a.value, b.value));
+        for (Map.Entry<String, ExecutionCost> entry : programCosts.entrySet()) {
+            offer(top, count, entry.getKey(), entry.getValue().get(metric, window, tick));
+        }
+        return sorted(top);
+    }
+
+    /**
+     * Create a report of the most expensive objects and programs by CPU time, for every window.
+     *
+     * @param count The number of entries per ranking.
+     * @return The report text.
+     */
+    public String report(int count) {
+        StringBuilder report = new StringBuilder("Execution cost by CPU time (ms), evaluation cost and allocation (KB):");
+        for (Window window : Window.values()) {
+            report.append("\n  Top objects, ").append(window.name().toLowerCase()).append(':');
+            appendEntries(report, getTopObjects(Metric.CPU_TIME, window, count), window, true);
+            report.append("\n  Top programs, ").append(window.name().toLowerCase()).append(':');
+            appendEntries(report, getTopPrograms(Metric.CPU_TIME, window, count), window, false);
+        }
+        return report.toString();
+    }
+
+    /**
+     * Log the report at the info level.
+     *
+     * @param count The number of entries per ranking.
+     */
+    public void logReport(int count) {
+        if (log.isInfoEnabled()) {
+            log.info(report(count));
+        }
+    }
+
+    /**
+     * Append the lines for some ranked objects or programs to a report.
+     */
+    private void appendEntries(StringBuilder report, Collection<Entry> entries, Window window, boolean isObject) {
+        if (entries.isEmpty()) {
+            report.append("\n    -");
+        }
+        for (Entry entry : entries) {
+            long evalCost, allocated;
+            if (isObject) {
+                MudObject obj = objects.find(entry.getName());
+                evalCost = obj != null ? getCost(obj, Metric.EVAL_COST, window) : 0L;
+                allocated = obj != null ? getCost(obj, Metric.ALLOCATION, window) : 0L;
+            } else {
+                evalCost = getProgramCost(entry.getName(), Metric.EVAL_COST, window);
+                allocated = getProgramCost(entry.getName(), Metric.ALLOCATION, window);
+            }
+            report.append(String.format("\n    %10.1f %12d %10d  %s", entry.getValue() / 1e6, evalCost, allocated / 1024,
+                                        entry.getName()));
+        }
+    }
+
+    /**
+     * Add a candidate to a ranking, keeping only the {@code count} most expensive ones.
+     */
+    private static void offer(PriorityQueue<Entry> top, int count, String name, long value) {
+        if (value <= 0) {
+            return;
+        }
+        if (top.size() < count) {
+            top.add(new Entry(name, value));
+        } else if (count > 0 && top.peek().value < value) {
+            top.poll();
+            top.add(new Entry(name, value));
+        }
+    }
+
+    /**
+     * @return The entries of a ranking, the most expensive first.
+     */
+    private static List<Entry> sorted(PriorityQueue<Entry> top) {
+        List<Entry> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(0, top.poll());
+        }
+        return result;
+    }
+
+    /**
+     * @param objectName The name of an object.
+     * @return The name of the object's program, i.e. the name without the clone number.
+     */
+    static String getProgramName(String objectName) {
+        return StringUtils.substringBefore(objectName, "#");
+    }
+
+    /**
+     * @return The CPU time of the current thread in nanoseconds, or 0 if not supported.
+     */
+    private long getCpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0L;
+    }
+
+    /**
+     * @return The bytes allocated by the current thread, or 0 if not supported.
+     */
+    private long getAllocatedBytes() {
+        return allocations != null ? allocations.getCurrentThreadAllocatedBytes() : 0L;
+    }
+}
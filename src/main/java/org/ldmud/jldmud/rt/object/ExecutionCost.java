@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.object;
+
+/**
+ * The execution cost accumulated by an object or a program: CPU time, evaluation cost,
+ * allocated memory and number of executions, each since boot and over the last minute and hour.<p/>
+ *
+ * The minute and hour values are exponentially decaying sums with a time constant of one minute
+ * resp. hour: for a steady load they equal the cost of the last minute resp. hour, while
+ * they need no history per object. The decay is applied lazily, at most once per tick and
+ * object, so charging an execution is a few additions.<p/>
+ *
+ * The class is not thread-safe; it is used by the main thread only.
+ */
+public class ExecutionCost {
+
+    /**
+     * The kinds of cost.
+     */
+    public enum Metric {
+        CPU_TIME,    // CPU time in nanoseconds.
+        EVAL_COST,   // Evaluation cost.
+        ALLOCATION,  // Allocated memory in bytes.
+        EXECUTIONS   // Number of executions.
+    }
+
+    /**
+     * The time windows the cost is accumulated over.
+     */
+    public enum Window {
+        MINUTE(60),
+        HOUR(3600),
+        TOTAL(0);
+
+        // The decay per tick (second); 1 for no decay.
+        final double decay;
+
+        private Window(int seconds) {
+            decay = seconds > 0 ? Math.exp(-1.0 / seconds) : 1.0;
+        }
+    }
+
+    private static final int METRICS = Metric.values().length;
+
+    // The totals, and the decaying sums, indexed by metric.
+    private final long[] total = new long[METRICS];
+    private final double[] minute = new double[METRICS];
+    private final double[] hour = new double[METRICS];
+
+    // The tick the decaying sums were last brought up to date.
+    private long tick = 0;
+
+    /**
+     * Add the cost of one execution.
+     *
+     * @param cpuTime The CPU time used in nanoseconds.
+     * @param evalCost The evaluation cost.
+     * @param allocated The memory allocated in bytes.
+     * @param now The current tick.
+     */
+    public void charge(long cpuTime, long evalCost, long allocated, long now) {
+        decay(now);
+        add(Metric.CPU_TIME.ordinal(), cpuTime);
+        add(Metric.EVAL_COST.ordinal(), evalCost);
+        add(Metric.ALLOCATION.ordinal(), allocated);
+        add(Metric.EXECUTIONS.ordinal(), 1L);
+    }
+
+    /**
+     * @param metric The kind of cost.
+     * @param window The time window.
+     * @param now The current tick.
+     * @return The cost accumulated over the window.
+     */
+    public long get(Metric metric, Window window, long now) {
+        decay(now);
+        switch (window) {
+            case MINUTE:
+                return Math.round(minute[metric.ordinal()]);
+            case HOUR:
+                return Math.round(hour[metric.ordinal()]);
+            case TOTAL:
+            default:
+                return total[metric.ordinal()];
+        }
+    }
+
+    /**
+     * Add a value to one metric.
+     */
+    private void add(int metric, long value) {
+        total[metric] += value;
+        minute[metric] += value;
+        hour[metric] += value;
+    }
+
+    /**
+     * Decay the minute and hour sums for the ticks passed since the last update.
+     */
+    private void decay(long now) {
+        long ticks = now - tick;
+        if (ticks <= 0) {
+            return;
+        }
+        tick = now;
+        double minuteDecay = Math.pow(Window.MINUTE.decay, ticks);
+        double hourDecay = Math.pow(Window.HOUR.decay, ticks);
+        for (int i = 0; i < METRICS; i++) {
+            minute[i] *= minuteDecay;
+            hour[i] *= hourDecay;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.object;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.ldmud.jldmud.rt.value.ObjectRef;
+import org.ldmud.jldmud.rt.value.StringValue;
+import org.ldmud.jldmud.rt.value.Value;
+
+import com.google.inject.Inject;
+
+/**
+ * Singleton class taking a census of the memory retained by the game objects, per program.<p/>
+ *
+ * A census walks all objects, a slice at a time: every call of {@link #step()} (once per game
+ * loop pass) examines objects until the configured time slice is used up, so that even a census
+ * of a large game doesn't pause it noticeably. The object table isn't copied for this: the census
+ * resumes its (weakly consistent) iterator over the table with every step. Objects created after the start of a census aren't
+ * counted, objects destroyed before they are reached are skipped.<p/>
+ *
+ * The retained bytes are estimated from the shape of the data, assuming a 64 bit JVM with
+ * compressed references: the object itself, its name, its variables (strings, arrays and
+ * mappings, recursively) and its accounting data. Structures shared between objects, like
+ * the accounting data of a program, a shared string or an array held in several variables, are counted once,
+ * for the first object found holding them. References to other objects count as a reference only.<p/>
+ *
+ * A census is started on demand with {@link #start()}, and periodically if configured; the result
+ * of the last complete census is kept, and logged at the info level.<p/>
+ *
+ * The class is used by the main thread only.
+ */
+public class MemoryCensus {
+    private Logger log = LogManager.getLogger(this.getClass());
+
+    /**
+     * The default time slice of a step in milliseconds, if not configured.
+     */
+    static final long DEFAULT_SLICE = 2L;
+
+    // The size estimates in bytes of the JVM structures.
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    static final int STRING = 24;
+    static final int STRING_VALUE = 32;
+    static final int BOXED_VALUE = 16;
+    static final int MAP_ENTRY = 32;
+    static final int WEAK_REFERENCE = 48;
+    static final int MUD_OBJECT = 48;
+    static final int EXECUTION_COST = 176;
+
+    // The number of objects examined between two checks of the time slice.
+    private static final int CHECK_INTERVAL = 64;
+
+    /**
+     * The memory retained by the objects of one program.
+     */
+    public static class Entry {
+        private final String program;
+        private int objects;
+        private long bytes;
+
+        Entry(String program) {
+            this.program = program;
+        }
+
+        /**
+         * @return The name of the program.
+         */
+        public String getProgram() {
+            return program;
+        }
+
+        /**
+         * @return The number of objects of the program.
+         */
+        public int getObjects() {
+            return objects;
+        }
+
+        /**
+         * @return The estimated bytes retained by the objects.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    // External modules.
+    private final MudObjects objects;
+    private final LiveConfiguration liveConfig;
+
+    // The census in progress: the iterator over the objects still to examine, the id of the last
+    // object created before the start, the number of objects examined, the structures counted
+    // so far, and the usage found so far per program.
+    private Iterator<MudObject> pending = null;
+    private long lastId;
+    private int examinedCount;
+    private Set<Object> counted;
+    private Map<String, Entry> usage;
+
+    // The statistics of the census in progress.
+    private long startTime;
+    private long stepTime;
+    private int steps;
+
+    // The result of the last complete census, the largest program first.
+    private List<Entry> result = Collections.emptyList();
+
+    // The number of ticks since the start of the last periodic census.
+    private long ticks = 0;
+
+    /**
+     * Constructor
+     *
+     * @param objects The {@link MudObjects} instance.
+     * @param liveConfig The {@link LiveConfiguration} holding the current configuration, which may be {@code null}.
+     */
+    @Inject
+    MemoryCensus(MudObjects objects, LiveConfiguration liveConfig) {
+        super();
+        this.objects = objects;
+        this.liveConfig = liveConfig;
+    }
+
+    /**
+     * Start a new tick, and start the periodic census if it is due; called once per second.
+     */
+    public void nextTick() {
+        ticks++;
+        Configuration config = liveConfig.get();
+        long interval = config != null && config.getCensusInterval() != null ? config.getCensusInterval() : 0L;
+        if (interval != 0 && ticks >= interval) {
+            ticks = 0;
+            start();
+        }
+    }
+
+    /**
+     * Start a census, unless one is already in progress.
+     *
+     * @return {@code true} if a new census was started.
+     */
+    public boolean start() {
+        if (isRunning()) {
+            return false;
+        }
+        pending = objects.getObjectById().values().iterator();
+        lastId = MudObject.getLastId();
+        examinedCount = 0;
+        counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        usage = new HashMap<>();
+        startTime = System.currentTimeMillis();
+        stepTime = 0;
+        steps = 0;
+        log.debug("Starting memory census of {} objects", objects.getObjectById().size());
+        return true;
+    }
+
+    /**
+     * @return {@code true} if a census is in progress.
+     */
+    public boolean isRunning() {
+        return pending != null;
+    }
+
+    /**
+     * Continue the census in progress for one time slice, and complete it when all objects are examined.
+     */
+    public void step() {
+        if (!isRunning()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + getSlice() * 1000000L;
+        int examined = 0;
+        while (pending.hasNext()) {
+            MudObject obj = pending.next();
+            if (obj.getId() <= lastId && !obj.isDestroyed()) {
+                examinedCount++;
+                Entry entry = usage.computeIfAbsent(CostAccounting.getProgramName(obj.getName()), Entry::new);
+                entry.objects++;
+                entry.bytes += estimate(obj);
+            }
+            if (++examined % CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+        stepTime += System.nanoTime() - start;
+        steps++;
+
+        if (!pending.hasNext()) {
+            complete();
+        }
+    }
+
+    /**
+     * Complete the census in progress: rank the programs, and log the report.
+     */
+    private void complete() {
+        List<Entry> entries = new ArrayList<>(usage.values());
+        entries.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+        result = Collections.unmodifiableList(entries);
+        log.debug("Memory census of {} objects completed in {} ms, {} ms of it in {} steps",
+                  examinedCount, System.currentTimeMillis() - startTime, stepTime / 1000000L, steps);
+
+        pending = null;
+        counted = null;
+        usage = null;
+
+        Configuration config = liveConfig.get();
+        if (log.isInfoEnabled()) {
+            log.info(report(config != null && config.getStatsTopCount() != null ? config.getStatsTopCount().intValue() : 10));
+        }
+    }
+
+    /**
+     * @return The usage per program found by the last complete census, the largest first.
+     */
+    public List<Entry> getResult() {
+        return result;
+    }
+
+    /**
+     * Create a report of the programs retaining the most memory, as found by the last complete census.
+     *
+     * @param count The number of programs to list.
+     * @return The report text.
+     */
+    public String report(int count) {
+        long totalBytes = 0;
+        int totalObjects = 0;
+        for (Entry entry : result) {
+            totalBytes += entry.bytes;
+            totalObjects += entry.objects;
+        }
+        StringBuilder report = new StringBuilder(String.format("Memory census: %d KB estimated in %d objects of %d programs; top programs (KB, objects):",
+                                                               totalBytes / 1024, totalObjects, result.size()));
+        if (result.isEmpty()) {
+            report.append("\n    -");
+        }
+        for (Entry entry : result.subList(0, Math.min(count, result.size()))) {
+            report.append(String.format("\n    %10d %8d  %s", entry.bytes / 1024, entry.objects, entry.program));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Estimate the bytes retained by one object, which were not counted for another object before.
+     *
+     * @param obj The object.
+     * @return The estimated size in bytes.
+     */
+    long estimate(MudObject obj) {
+        long size = MUD_OBJECT + estimateValue(obj.getName());
+        if (obj.getCost() != null) {
+            size += EXECUTION_COST;
+        }
+        if (obj.getProgramCost() != null && counted.add(obj.getProgramCost())) {
+            size += EXECUTION_COST;
+        }
+        // TODO: Add the variables, once the objects have them.
+        return size;
+    }
+
+    /**
+     * Estimate the bytes retained by a value held in a variable (or an element of one), which
+     * were not counted before.
+     *
+     * @param value The value, may be {@code null}.
+     * @return The estimated size in bytes.
+     */
+    long estimateValue(Object value) {
+        if (value == null || value instanceof MudObject || value instanceof MudObject.Ref) {
+            // Objects are counted in their own right; a reference to the weak reference is counted below.
+            return 0;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return BOXED_VALUE;
+        }
+        if (!counted.add(value)) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return STRING + align(ARRAY_HEADER + stringBytes((String) value));
+        }
+        if (value instanceof StringValue) {
+            return STRING_VALUE + align(ARRAY_HEADER + ((StringValue) value).getByteLength());
+        }
+        if (value instanceof ObjectRef) {
+            return align(OBJECT_HEADER + REFERENCE) + WEAK_REFERENCE;
+        }
+        if (value instanceof Value) {
+            return align(OBJECT_HEADER + REFERENCE) + estimateValue(((Value<?>) value).get());
+        }
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            long size = align(ARRAY_HEADER + (long) REFERENCE * array.length);
+            for (Object element : array) {
+                size += estimateValue(element);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            long size = align(OBJECT_HEADER + 3 * REFERENCE) + align(ARRAY_HEADER + (long) REFERENCE * collection.size());
+            for (Object element : collection) {
+                size += estimateValue(element);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            long size = align(OBJECT_HEADER + 6 * REFERENCE)
+                      + align(ARRAY_HEADER + (long) REFERENCE * Integer.highestOneBit(Math.max(1, map.size() * 4 / 3) * 2 - 1))
+                      + (long) MAP_ENTRY * map.size();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimateValue(entry.getKey()) + estimateValue(entry.getValue());
+            }
+            return size;
+        }
+        return OBJECT_HEADER + REFERENCE;
+    }
+
+    /**
+     * @return The time slice of a step in milliseconds.
+     */
+    private long getSlice() {
+        Configuration config = liveConfig.get();
+        return config != null && config.getCensusSlice() != null ? config.getCensusSlice() : DEFAULT_SLICE;
+    }
+
+    /**
+     * @return The bytes of the character array of a string: one per character if all characters
+     *   are Latin-1 (compact strings), two otherwise.
+     */
+    private static int stringBytes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xff) {
+                return 2 * s.length();
+            }
+        }
+        return s.length();
+    }
+
+    /**
+     * @return The size rounded up to the JVM's object alignment of 8 bytes.
+     */
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -61,6 +61,10 @@ public class MudObject {
     // If {@code true}, the object was at some point associated with a network connection.
     private boolean onceInteractive;
 
+    // The execution cost of this object, and of its program; {@code null} until the object is first charged.
+    private ExecutionCost cost;
+    private ExecutionCost programCost;
+
     // Modules used by this class
     private MudObjects objects;
 
@@ -77,6 +81,13 @@ public class MudObject {
         this.log.debug("Created object #{} '{}'", this.id, this.name);
     }
 
+    /**
+     * @return The id of the most recently created object.
+     */
+    static long getLastId() {
+        return currentInteractiveId.get();
+    }
+
     /**
      * Transform the object to be logically destroyed.
      */
@@ -190,6 +201,30 @@ public class MudObject {
         return interactive != null;
     }
 
+    /**
+     * @return The execution cost of this object, or {@code null} if it never executed.
+     */
+    public ExecutionCost getCost() {
+        return cost;
+    }
+
+    /**
+     * @return The execution cost of this object's program, or {@code null} if the object never executed.
+     */
+    ExecutionCost getProgramCost() {
+        return programCost;
+    }
+
+    /**
+     * Set up the cost accounting for this object.
+     *
+     * @param programCost The execution cost of this object's program.
+     */
+    void initCost(ExecutionCost programCost) {
+        this.cost = new ExecutionCost();
+        this.programCost = programCost;
+    }
+
     /**
      * @param onceInteractive The onceInteractive to set
      */
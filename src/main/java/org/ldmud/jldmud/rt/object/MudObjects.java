@@ -8,10 +8,13 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.ldmud.jldmud.rt.jfr.ObjectCreatedEvent;
+import org.ldmud.jldmud.rt.jfr.ObjectDestroyedEvent;
 
 import com.google.inject.Inject;
 
@@ -28,8 +31,9 @@ public class MudObjects {
      */
     public static final long INVALID_ID = 0L;
 
-    // Tables of all active objects.
-    private Map<Long, MudObject> objectById = new HashMap<>();
+    // Tables of all active objects. The id table is concurrent only for its weakly consistent
+    // iterators, which a memory census resumes across game loop passes while objects come and go.
+    private Map<Long, MudObject> objectById = new ConcurrentHashMap<>();
     private Map<String, MudObject> objectByName = new HashMap<>();
 
     // List of newly destructed objects which still need to be cleaned up.
@@ -55,6 +59,13 @@ public class MudObjects {
         objectById.put(obj.getId(), obj);
         objectByName.put(obj.getName(), obj);
 
+        ObjectCreatedEvent event = new ObjectCreatedEvent();
+        if (event.isEnabled()) {
+            event.objectName = obj.getName();
+            event.objectId = obj.getId();
+            event.commit();
+        }
+
         return obj;
     }
 
@@ -69,6 +80,13 @@ public class MudObjects {
                 destroyedObjects.add(obj);
                 objectById.remove(obj.getId());
                 objectByName.remove(obj.getName());
+
+                ObjectDestroyedEvent event = new ObjectDestroyedEvent();
+                if (event.isEnabled()) {
+                    event.objectName = obj.getName();
+                    event.objectId = obj.getId();
+                    event.commit();
+                }
             }
         }
     }
@@ -18,5 +18,7 @@ public class RuntimeObjectModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(MudObjects.class).in(Singleton.class);
+        bind(CostAccounting.class).in(Singleton.class);
+        bind(MemoryCensus.class).in(Singleton.class);
     }
 }
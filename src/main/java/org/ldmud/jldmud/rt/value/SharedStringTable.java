@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.value;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * The table of the shared strings: it holds at most one {@link StringValue} per content, so that
+ * the many repeated strings of a game (property names, descriptions, ids) are stored only once.<p/>
+ *
+ * The table references its strings weakly: a string no longer used by the game is collected, and its
+ * entry dropped on the next change of the table.<p/>
+ *
+ * The table is split into {@link #SEGMENTS} segments by hash code, each locked on its own, so that
+ * threads interning strings at the same time rarely contend.
+ */
+public class SharedStringTable {
+
+    /**
+     * The number of segments, a power of two.
+     */
+    static final int SEGMENTS = 16;
+
+    // The initial number of buckets of a segment, a power of two.
+    private static final int INITIAL_BUCKETS = 64;
+
+    // The table used by {@link StringValue#of(String)}.
+    private static final SharedStringTable defaultTable = new SharedStringTable();
+
+    /**
+     * An entry of the table: a weak reference to the string, chained per bucket.
+     */
+    private static final class Entry extends WeakReference<StringValue> {
+        final int hash;
+        Entry next;
+
+        Entry(StringValue value, ReferenceQueue<StringValue> queue, Entry next) {
+            super(value, queue);
+            this.hash = value.hashCode();
+            this.next = next;
+        }
+    }
+
+    /**
+     * A segment of the table: a hash table of chained entries.
+     */
+    private static final class Segment {
+        private final ReferenceQueue<StringValue> queue = new ReferenceQueue<>();
+        private Entry[] buckets = new Entry[INITIAL_BUCKETS];
+        private int count = 0;
+
+        /**
+         * Find the shared string, or add it if not found.
+         */
+        synchronized StringValue intern(String s, int hash) {
+            expunge();
+            int index = hash & (buckets.length - 1);
+            for (Entry entry = buckets[index]; entry != null; entry = entry.next) {
+                if (entry.hash == hash) {
+                    StringValue value = entry.get();
+                    if (value != null && value.contentEquals(s)) {
+                        return value;
+                    }
+                }
+            }
+
+            StringValue value = new StringValue(s, hash);
+            buckets[index] = new Entry(value, queue, buckets[index]);
+            if (++count > buckets.length / 4 * 3) {
+                resize();
+            }
+            return value;
+        }
+
+        /**
+         * @return The number of entries, after dropping those of collected strings.
+         */
+        synchronized int size() {
+            expunge();
+            return count;
+        }
+
+        /**
+         * Drop the entries of the collected strings.
+         */
+        private void expunge() {
+            Reference<? extends StringValue> reference;
+            while ((reference = queue.poll()) != null) {
+                Entry stale = (Entry) reference;
+                int index = stale.hash & (buckets.length - 1);
+                Entry previous = null;
+                for (Entry entry = buckets[index]; entry != null; previous = entry, entry = entry.next) {
+                    if (entry == stale) {
+                        if (previous == null) {
+                            buckets[index] = entry.next;
+                        } else {
+                            previous.next = entry.next;
+                        }
+                        count--;
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Double the number of buckets.
+         */
+        private void resize() {
+            Entry[] newBuckets = new Entry[buckets.length * 2];
+            for (Entry entry : buckets) {
+                while (entry != null) {
+                    Entry next = entry.next;
+                    int index = entry.hash & (newBuckets.length - 1);
+                    entry.next = newBuckets[index];
+                    newBuckets[index] = entry;
+                    entry = next;
+                }
+            }
+            buckets = newBuckets;
+        }
+    }
+
+    // The segments, selected by the high bits of the hash code.
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Constructor
+     */
+    public SharedStringTable() {
+        super();
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return The table used by {@link StringValue#of(String)}.
+     */
+    public static SharedStringTable getDefault() {
+        return defaultTable;
+    }
+
+    /**
+     * Get the shared instance of a string, adding it to the table if needed.
+     *
+     * @param s The string.
+     * @return The shared instance.
+     */
+    public StringValue intern(String s) {
+        int hash = s.hashCode();
+        return segment(hash).intern(s, hash);
+    }
+
+    /**
+     * @return The number of strings in the table.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return The segment holding the strings of the hash code.
+     */
+    private Segment segment(int hash) {
+        int spread = hash ^ (hash >>> 16);
+        return segments[(spread * 0x9e3779b9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS))];
+    }
+}
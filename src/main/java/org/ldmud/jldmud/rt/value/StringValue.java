@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.value;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An LPC string, shared through a {@link SharedStringTable}.<p/>
+ *
+ * The characters are stored as a byte array: one byte per character if all characters are
+ * Latin-1, UTF-8 otherwise. The hash code is computed once, and is that of the equal {@link String}.<p/>
+ *
+ * Instances are only created by a table, which holds at most one instance per content; two
+ * strings of the same table are thus equal if and only if they are identical, and {@link #equals(Object)}
+ * is the identity comparison. As the strings are immutable, a copy is the string itself.
+ */
+public final class StringValue implements Value<String> {
+
+    // The characters, in Latin-1 or UTF-8.
+    private final byte[] bytes;
+
+    // The hash code, the number of characters, and {@code true} if the bytes are Latin-1.
+    private final int hash;
+    private final int length;
+    private final boolean latin1;
+
+    /**
+     * Constructor
+     *
+     * @param s The string.
+     * @param hash The hash code of the string.
+     */
+    StringValue(String s, int hash) {
+        this.hash = hash;
+        this.length = s.length();
+        this.latin1 = isLatin1(s);
+        this.bytes = s.getBytes(latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the shared instance of a string from the default table.
+     *
+     * @param s The string.
+     * @return The shared instance.
+     */
+    public static StringValue of(String s) {
+        return SharedStringTable.getDefault().intern(s);
+    }
+
+    /**
+     * @return The string, decoded into a new {@link String}.
+     */
+    @Override
+    public String get() {
+        return new String(bytes, latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return This string, as it is immutable.
+     */
+    @Override
+    public StringValue copy() {
+        return this;
+    }
+
+    /**
+     * @return The number of characters.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @param index The index of the character.
+     * @return The character at the index.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public char charAt(int index) {
+        if (latin1) {
+            return (char) (bytes[index] & 0xff);
+        }
+        return get().charAt(index);
+    }
+
+    /**
+     * @return The number of bytes storing the characters.
+     */
+    public int getByteLength() {
+        return bytes.length;
+    }
+
+    /**
+     * @param s A string.
+     * @return {@code true} if this string has the same characters.
+     */
+    boolean contentEquals(String s) {
+        if (s.length() != length) {
+            return false;
+        }
+        if (!latin1) {
+            // Strings beyond Latin-1 are rare enough to not warrant comparing the encoding in place.
+            return get().equals(s);
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != (char) (bytes[i] & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return get();
+    }
+
+    /**
+     * @return {@code true} if all characters of the string are Latin-1.
+     */
+    private static boolean isLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.config;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link LiveConfiguration}.
+ */
+public class LiveConfigurationTest {
+
+    private void writeSettings(File file, File directory, long modified, String... settings) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("mud.dir.driver=" + directory.getAbsolutePath().replace('\\', '/'));
+            out.println("mud.dir.lib=" + directory.getAbsolutePath().replace('\\', '/'));
+            for (String setting : settings) {
+                out.println(setting);
+            }
+        }
+        // Don't depend on the resolution of the file system's timestamps.
+        file.setLastModified(modified);
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        File directory = Files.createTempDirectory("jldmud-config").toFile();
+        File file = new File(directory, "mud.properties");
+        try {
+            writeSettings(file, directory, 1000000L, "mud.port=4000", "mud.commands.pertick=5");
+            Configuration config = new Configuration();
+            assertTrue(new ConfigurationLoader().loadProperties(file.getPath(), new Properties(), config));
+            LiveConfiguration liveConfig = new LiveConfiguration(null);
+            liveConfig.publish(config, file, new Properties());
+            assertSame(liveConfig.get(), config);
+
+            // Unchanged: nothing happens.
+            liveConfig.checkForChanges();
+            assertSame(liveConfig.get(), config);
+
+            // A changed file is published as a new snapshot, keeping the settings which need a restart.
+            writeSettings(file, directory, 2000000L, "mud.port=5000", "mud.commands.pertick=7");
+            liveConfig.checkForChanges();
+            Configuration reloaded = liveConfig.get();
+            assertNotSame(reloaded, config);
+            assertEquals(reloaded.getCommandsPerTick(), Long.valueOf(7L));
+            assertEquals(reloaded.getPort(), Long.valueOf(4000L));
+            assertEquals(reloaded.getMudDirectory(), config.getMudDirectory());
+            assertEquals(config.getCommandsPerTick(), Long.valueOf(5L));
+            assertEquals(liveConfig.getReloadCount(), 1L);
+
+            // An invalid file is not published.
+            writeSettings(file, directory, 3000000L, "mud.commands.pertick=many");
+            assertFalse(liveConfig.reload());
+            assertSame(liveConfig.get(), reloaded);
+            assertEquals(liveConfig.getReloadProblems().length, 1);
+
+            // Once the watch is disabled, changes are ignored until reloaded explicitly.
+            writeSettings(file, directory, 4000000L, "mud.config.watch=false", "mud.commands.pertick=9");
+            assertTrue(liveConfig.reload());
+            writeSettings(file, directory, 5000000L, "mud.config.watch=false", "mud.commands.pertick=11");
+            liveConfig.checkForChanges();
+            assertEquals(liveConfig.get().getCommandsPerTick(), Long.valueOf(9L));
+            assertEquals(liveConfig.getReloadProblems().length, 0);
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        File directory = Files.createTempDirectory("jldmud-config").toFile();
+        File file = new File(directory, "mud.properties");
+        try {
+            writeSettings(file, directory, 1000000L, "mud.commands.pertick=5");
+            Properties overrides = new Properties();
+            overrides.setProperty("mud.port", "4000");
+            Configuration config = new Configuration();
+            assertTrue(new ConfigurationLoader().loadProperties(file.getPath(), overrides, config));
+            LiveConfiguration liveConfig = new LiveConfiguration(null);
+            liveConfig.publish(config, file, overrides);
+
+            // A settings file gone missing (e.g. while an editor replaces it) doesn't reset the settings,
+            // even though the override properties alone would make a valid configuration.
+            assertTrue(file.delete());
+            liveConfig.checkForChanges();
+            assertSame(liveConfig.get(), config);
+            assertEquals(liveConfig.getReloadCount(), 0L);
+            assertEquals(liveConfig.getReloadProblems().length, 1);
+
+            // Once the file is back, it is reloaded.
+            writeSettings(file, directory, 2000000L, "mud.commands.pertick=7");
+            liveConfig.checkForChanges();
+            assertEquals(liveConfig.get().getCommandsPerTick(), Long.valueOf(7L));
+            assertEquals(liveConfig.getReloadCount(), 1L);
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+    }
+}
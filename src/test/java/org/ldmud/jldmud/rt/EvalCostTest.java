@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link EvalCost}.
+ */
+public class EvalCostTest {
+
+    private EvalCost createEvalCost(long limit) {
+        Configuration config = new Configuration();
+        config.setEvalCostLimit(limit);
+        return new EvalCost(new LiveConfiguration(config));
+    }
+
+    @Test
+    public void testBudget() {
+        EvalCost evalCost = createEvalCost(100L);
+
+        evalCost.begin();
+        for (int i = 0; i < 60; i++) {
+            evalCost.tick();
+        }
+        evalCost.charge(40);
+        assertEquals(evalCost.getUsed(), 100L);
+        assertEquals(evalCost.getRemaining(), 0L);
+        assertEquals(evalCost.end(), 100L);
+
+        // The next execution starts with a full budget.
+        evalCost.begin();
+        evalCost.charge(10);
+        assertEquals(evalCost.end(), 10L);
+    }
+
+    @Test
+    public void testTooLongEvaluation() {
+        EvalCost evalCost = createEvalCost(100L);
+        evalCost.begin();
+
+        // A runaway loop is aborted.
+        try {
+            while (true) {
+                evalCost.tick();
+            }
+        } catch (TooLongEvaluationException e) {
+            assertEquals(e.getEvalCost(), 101L);
+        }
+
+        // The catching code gets the reserve...
+        evalCost.charge((int) EvalCost.CATCH_RESERVE);
+        assertEquals(evalCost.getUsed(), 100L + EvalCost.CATCH_RESERVE);
+
+        // ...but nothing more.
+        for (int i = 0; i < 2; i++) {
+            try {
+                evalCost.tick();
+                fail("Expected TooLongEvaluationException");
+            } catch (TooLongEvaluationException e) {
+                // Expected
+            }
+        }
+        assertEquals(evalCost.end(), 100L + EvalCost.CATCH_RESERVE);
+    }
+
+    @Test
+    public void testUnlimited() {
+        EvalCost evalCost = createEvalCost(0L);
+        evalCost.begin();
+        evalCost.charge(Integer.MAX_VALUE);
+        evalCost.charge(Integer.MAX_VALUE);
+        assertEquals(evalCost.end(), 2L * Integer.MAX_VALUE);
+
+        // Without a configuration, the default limit applies.
+        assertEquals(new EvalCost(new LiveConfiguration(null)).getLimit(), EvalCost.DEFAULT_LIMIT);
+    }
+}
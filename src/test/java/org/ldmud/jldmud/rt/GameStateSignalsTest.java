@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link GameStateSignals}.
+ */
+public class GameStateSignalsTest {
+
+    @Test
+    public void testSignalMask() throws Exception {
+        GameStateSignals signals = new GameStateSignals();
+        assertEquals(signals.takeSignals(), 0);
+
+        signals.signal(GameStateSignals.IO);
+        signals.signal(GameStateSignals.IO);
+        signals.signal(GameStateSignals.ERQ);
+        assertEquals(signals.waitForSignal(), GameStateSignals.IO | GameStateSignals.ERQ);
+        assertEquals(signals.takeSignals(), 0);
+
+        signals.setGameIsBeingShutdown(true);
+        assertTrue(signals.isGameIsBeingShutdown());
+        assertEquals(signals.takeSignals(), GameStateSignals.SHUTDOWN);
+    }
+
+    @Test
+    public void testWakeup() throws Exception {
+        GameStateSignals signals = new GameStateSignals();
+        CompletableFuture<Integer> received = new CompletableFuture<>();
+        Thread mainThread = new Thread(() -> {
+            try {
+                received.complete(signals.waitForSignal());
+            } catch (InterruptedException e) {
+                received.completeExceptionally(e);
+            }
+        });
+        mainThread.start();
+
+        Thread.sleep(50);
+        signals.signal(GameStateSignals.TIMER);
+        assertEquals(received.get(5, TimeUnit.SECONDS).intValue(), GameStateSignals.TIMER);
+        mainThread.join(5000);
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        GameStateSignals signals = new GameStateSignals();
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        Thread mainThread = new Thread(() -> {
+            try {
+                signals.waitForSignal();
+                interrupted.complete(false);
+            } catch (InterruptedException e) {
+                interrupted.complete(true);
+            }
+        });
+        mainThread.start();
+
+        Thread.sleep(50);
+        mainThread.interrupt();
+        assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import static org.testng.Assert.assertEquals;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.rt.MemoryMonitor.Level;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link MemoryMonitor}.
+ */
+public class MemoryMonitorTest {
+
+    private MemoryMonitor createMonitor(GameStateSignals signals, long evict, long noLogin, long shutdown) {
+        Configuration config = new Configuration();
+        config.setMemoryEvictThreshold(evict);
+        config.setMemoryNoLoginThreshold(noLogin);
+        config.setMemoryShutdownThreshold(shutdown);
+        return new MemoryMonitor(config, signals);
+    }
+
+    @Test
+    public void testEvaluate() {
+        MemoryMonitor monitor = createMonitor(new GameStateSignals(), 70, 85, 95);
+
+        assertEquals(monitor.evaluate(Level.NORMAL, 50), Level.NORMAL);
+        assertEquals(monitor.evaluate(Level.NORMAL, 70), Level.EVICT);
+        assertEquals(monitor.evaluate(Level.NORMAL, 90), Level.NO_LOGIN);
+        assertEquals(monitor.evaluate(Level.EVICT, 99), Level.SHUTDOWN);
+
+        // Lowering the level requires the usage to drop below the threshold by the hysteresis.
+        assertEquals(monitor.evaluate(Level.NO_LOGIN, 82), Level.NO_LOGIN);
+        assertEquals(monitor.evaluate(Level.NO_LOGIN, 79), Level.EVICT);
+        assertEquals(monitor.evaluate(Level.NO_LOGIN, 64), Level.NORMAL);
+        assertEquals(monitor.evaluate(Level.EVICT, 66), Level.EVICT);
+
+        // There is no way back from a shutdown.
+        assertEquals(monitor.evaluate(Level.SHUTDOWN, 10), Level.SHUTDOWN);
+    }
+
+    @Test
+    public void testDisabledStage() {
+        MemoryMonitor monitor = createMonitor(new GameStateSignals(), 0, 85, 0);
+
+        assertEquals(monitor.evaluate(Level.NORMAL, 80), Level.NORMAL);
+        assertEquals(monitor.evaluate(Level.NORMAL, 100), Level.NO_LOGIN);
+    }
+
+    @Test
+    public void testUpdateSignals() {
+        GameStateSignals signals = new GameStateSignals();
+        MemoryMonitor monitor = createMonitor(signals, 70, 85, 95);
+
+        monitor.update(50);
+        assertEquals(monitor.getLevel(), Level.NORMAL);
+        assertEquals(signals.takeSignals(), 0);
+
+        monitor.update(88);
+        assertEquals(monitor.getLevel(), Level.NO_LOGIN);
+        assertEquals(signals.takeSignals(), GameStateSignals.MEMORY);
+
+        monitor.update(84);
+        assertEquals(monitor.getLevel(), Level.NO_LOGIN);
+        assertEquals(signals.takeSignals(), 0);
+
+        monitor.update(40);
+        assertEquals(monitor.getLevel(), Level.NORMAL);
+        assertEquals(signals.takeSignals(), GameStateSignals.MEMORY);
+    }
+}
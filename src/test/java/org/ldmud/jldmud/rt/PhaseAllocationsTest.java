@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.ldmud.jldmud.rt.GameLoop.Phase;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PhaseAllocations} and {@link Histogram}.
+ */
+public class PhaseAllocationsTest {
+
+    // Keeps the allocations of the test from being optimized away.
+    private Object sink;
+
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals(histogram.getPercentile(99), 0L);
+        for (int i = 0; i < 98; i++) {
+            histogram.record(100L);
+        }
+        histogram.record(0L);
+        histogram.record(5000L);
+
+        assertEquals(histogram.getCount(), 100L);
+        assertEquals(histogram.getMean(), (98 * 100L + 5000L) / 100);
+        assertEquals(histogram.getPercentile(0), 0L);
+        assertEquals(histogram.getPercentile(50), 127L);
+        assertEquals(histogram.getPercentile(100), 5000L);
+        assertEquals(histogram.getCounts()[7], 98L);
+    }
+
+    @Test
+    public void testPhases() {
+        PhaseAllocations allocations = new PhaseAllocations();
+        for (int tick = 0; tick < 3; tick++) {
+            allocations.startPass(true);
+            allocations.startPhase();
+            sink = new byte[100000];
+            allocations.endPhase(Phase.COMMANDS);
+            allocations.startPhase();
+            allocations.endPhase(Phase.OUTPUT);
+            allocations.endPass();
+        }
+
+        Histogram commands = allocations.getHistogram(Phase.COMMANDS.name());
+        assertEquals(commands.getCount(), 3L);
+        assertEquals(allocations.getHistogram(PhaseAllocations.TICK).getCount(), 2L);
+        assertEquals(allocations.getHistogram(PhaseAllocations.PASS).getCount(), 3L);
+        if (commands.getMax() > 0) {
+            // Allocations are measured (the JVM supports it).
+            assertTrue(commands.getMean() >= 100000L, "Mean: " + commands.getMean());
+            assertTrue(allocations.getHistogram(Phase.OUTPUT.name()).getMean() < 1000L);
+
+            List<String> exceeded = allocations.checkBudgets(Collections.singletonMap(Phase.COMMANDS.name(), 50000L));
+            assertEquals(exceeded.size(), 1);
+            assertTrue(exceeded.get(0).startsWith("COMMANDS"));
+        }
+        assertEquals(allocations.checkBudgets(Collections.singletonMap(PhaseAllocations.PASS, 10000000L)).size(), 0);
+        assertTrue(allocations.report().contains("COMMANDS"));
+        assertTrue(sink != null);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.ldmud.jldmud.rt.GameLoop.Phase;
+import org.ldmud.jldmud.rt.object.MudObject;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link SlowPassWatchdog}.
+ */
+public class SlowPassWatchdogTest {
+
+    private void slowCommand(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Test
+    public void testSlowPassReport() throws Exception {
+        File directory = Files.createTempDirectory("jldmud-").toFile();
+        try {
+            Configuration config = new Configuration();
+            config.setDriverLogDirectory(directory);
+            config.setSlowPassThreshold(50L);
+            SlowPassWatchdog watchdog = new SlowPassWatchdog(new LiveConfiguration(config));
+            watchdog.start(Thread.currentThread());
+
+            // A fast pass isn't reported.
+            watchdog.passStarted(GameStateSignals.IO);
+            watchdog.passEnded();
+
+            watchdog.passStarted(GameStateSignals.IO);
+            watchdog.phaseStarted(Phase.COMMANDS);
+            watchdog.executionStarted(new MudObject("/room/church", null), "command");
+            slowCommand(300L);
+            watchdog.executionEnded();
+            watchdog.passEnded();
+
+            File[] reports = null;
+            for (int i = 0; i < 100 && (reports == null || reports.length == 0); i++) {
+                Thread.sleep(SlowPassWatchdog.SAMPLE_INTERVAL);
+                reports = directory.listFiles((dir, name) -> name.startsWith("slowpass-"));
+            }
+            watchdog.stop();
+
+            assertEquals(reports.length, 1);
+            String report = new String(Files.readAllBytes(reports[0].toPath()), StandardCharsets.UTF_8);
+            assertTrue(report.startsWith("Slow game loop pass at"), report);
+            assertTrue(report.contains("phase COMMANDS, executing command in /room/church"), report);
+            assertTrue(report.contains("SlowPassWatchdogTest.slowCommand"), report);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testHangingPass() throws Exception {
+        File directory = Files.createTempDirectory("jldmud-").toFile();
+        try {
+            Configuration config = new Configuration();
+            config.setDriverLogDirectory(directory);
+            config.setSlowPassThreshold(20L);
+            SlowPassWatchdog watchdog = new SlowPassWatchdog(new LiveConfiguration(config));
+            watchdog.start(Thread.currentThread());
+
+            // A pass running for much longer than the threshold is reported before it ends...
+            watchdog.passStarted(GameStateSignals.IO);
+            File[] reports = null;
+            for (int i = 0; i < 200 && (reports == null || reports.length == 0); i++) {
+                slowCommand(SlowPassWatchdog.SAMPLE_INTERVAL);
+                reports = directory.listFiles((dir, name) -> name.startsWith("slowpass-"));
+            }
+            assertEquals(reports.length, 1);
+            String report = new String(Files.readAllBytes(reports[0].toPath()), StandardCharsets.UTF_8);
+            assertTrue(report.startsWith("Running game loop pass at"), report);
+
+            // ...and the report is completed once it ends after all.
+            watchdog.passEnded();
+            for (int i = 0; i < 100 && !report.startsWith("Slow"); i++) {
+                Thread.sleep(SlowPassWatchdog.SAMPLE_INTERVAL);
+                report = new String(Files.readAllBytes(reports[0].toPath()), StandardCharsets.UTF_8);
+            }
+            watchdog.stop();
+            assertTrue(report.startsWith("Slow game loop pass at"), report);
+            assertEquals(directory.listFiles().length, 1);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testSampleLimit() {
+        SlowPassWatchdog watchdog = new SlowPassWatchdog(new LiveConfiguration(null));
+        for (int i = 0; i < SlowPassWatchdog.MAX_SAMPLES + 50; i++) {
+            watchdog.addSample("phase COMMANDS #" + i);
+        }
+        watchdog.addSample("phase COMMANDS #0");
+        String report = watchdog.report(1000000000L, false);
+        assertTrue(report.contains(" 2 samples (1%): phase COMMANDS #0"), report);
+        assertTrue(report.contains("phase COMMANDS #" + (SlowPassWatchdog.MAX_SAMPLES - 1)), report);
+        assertFalse(report.contains("phase COMMANDS #" + SlowPassWatchdog.MAX_SAMPLES), report);
+        assertTrue(report.contains("  50 samples (33%) of other stacks, not listed"), report);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        File directory = Files.createTempDirectory("jldmud-").toFile();
+        try {
+            Configuration config = new Configuration();
+            config.setDriverLogDirectory(directory);
+            config.setSlowPassThreshold(0L);
+            LiveConfiguration liveConfig = new LiveConfiguration(config);
+            SlowPassWatchdog watchdog = new SlowPassWatchdog(liveConfig);
+            watchdog.start(Thread.currentThread());
+
+            // While disabled, slow passes aren't reported...
+            watchdog.passStarted(GameStateSignals.IO);
+            slowCommand(100L);
+            watchdog.passEnded();
+            Thread.sleep(5 * SlowPassWatchdog.SAMPLE_INTERVAL);
+            assertEquals(directory.listFiles().length, 0);
+
+            // ...but once enabled by a new configuration, they are.
+            Configuration enabled = new Configuration();
+            enabled.setDriverLogDirectory(directory);
+            enabled.setSlowPassThreshold(50L);
+            liveConfig.publish(enabled, new File(directory, "mud.properties"), new Properties());
+            watchdog.passStarted(GameStateSignals.IO);
+            slowCommand(200L);
+            watchdog.passEnded();
+            for (int i = 0; i < 100 && directory.listFiles().length == 0; i++) {
+                Thread.sleep(SlowPassWatchdog.SAMPLE_INTERVAL);
+            }
+            watchdog.stop();
+            assertEquals(directory.listFiles().length, 1);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+        assertEquals(new SlowPassWatchdog(new LiveConfiguration(null)).getThreshold(), SlowPassWatchdog.DEFAULT_THRESHOLD);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.erq;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.rt.GameStateSignals;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ErqService}.
+ */
+public class ErqServiceTest {
+
+    @Test
+    public void testLookups() throws Exception {
+        InetAddress address = InetAddress.getByAddress(new byte[] { (byte) 192, 0, 2, 7 });
+        StubResolver resolver = new StubResolver().add("mud.example.org", address);
+        GameStateSignals signals = mock(GameStateSignals.class);
+        ErqService erq = new ErqService(new Configuration(), signals, resolver);
+        erq.start();
+        try {
+            List<Object> results = new ArrayList<>();
+            Thread mainThread = Thread.currentThread();
+            erq.reverseLookup(address, (name, error) -> {
+                assertEquals(Thread.currentThread(), mainThread);
+                results.add(name);
+            });
+            erq.lookup("MUD.example.org", (addresses, error) -> results.add(addresses));
+            erq.lookup("unknown.example.org", (addresses, error) -> {
+                assertNull(addresses);
+                results.add(error);
+            });
+
+            // The results are only delivered by the main thread
+            assertTrue(results.isEmpty());
+            awaitCompletions(erq, results, 3);
+            verify(signals, timeout(5000).atLeastOnce()).signal(GameStateSignals.ERQ);
+
+            assertTrue(results.contains("mud.example.org"));
+            assertTrue(results.contains(Collections.singletonList(address)));
+            assertTrue(results.stream().anyMatch(r -> r instanceof UnknownHostException));
+        } finally {
+            erq.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        File directory = Files.createTempDirectory("erq").toFile();
+        File script = new File(directory, "greet");
+        Files.write(script.toPath(), "#!/bin/sh\necho \"Hello, $1\"\nexit 3\n".getBytes(StandardCharsets.ISO_8859_1));
+        script.setExecutable(true);
+
+        Configuration config = new Configuration();
+        config.setErqDirectory(directory);
+        ErqService erq = new ErqService(config, null, new StubResolver());
+        erq.start();
+        try {
+            List<Object> results = new ArrayList<>();
+            erq.execute("greet", Arrays.asList("world"), (result, error) -> results.add(result != null ? result : error));
+            erq.execute("../greet", Collections.emptyList(), (result, error) -> results.add(error));
+            awaitCompletions(erq, results, 2);
+
+            ExecResult result = (ExecResult) results.stream().filter(r -> r instanceof ExecResult).findFirst().orElse(null);
+            assertNotNull(result);
+            assertEquals(result.getExitStatus(), 3);
+            assertEquals(result.getOutput(), "Hello, world\n");
+            assertFalse(result.isTruncated());
+            assertTrue(results.stream().anyMatch(r -> r instanceof IOException));
+        } finally {
+            erq.shutdown();
+            script.delete();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testNotRunning() {
+        ErqService erq = new ErqService(new Configuration(), null, new StubResolver());
+        List<Object> results = new ArrayList<>();
+        erq.lookup("mud.example.org", (addresses, error) -> results.add(error));
+        assertTrue(erq.hasCompletions());
+        assertEquals(erq.processCompletions(), 1);
+        assertTrue(results.get(0) instanceof IOException);
+    }
+
+    /**
+     * Process the completions until the expected number of results arrived.
+     */
+    private void awaitCompletions(ErqService erq, List<Object> results, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (results.size() < expected && System.currentTimeMillis() < deadline) {
+            if (!erq.hasCompletions()) {
+                Thread.sleep(10);
+            }
+            erq.processCompletions();
+        }
+        assertEquals(results.size(), expected);
+    }
+}
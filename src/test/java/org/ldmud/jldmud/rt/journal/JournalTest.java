@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.journal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import org.ldmud.jldmud.rt.journal.JournalRecord.Type;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link JournalWriter} and {@link JournalReader}.
+ */
+public class JournalTest {
+
+    private byte[] writeJournal() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JournalWriter writer = new JournalWriter(out, 1000L)) {
+            writer.pass(1000L, 1);
+            writer.interactive(Type.LOGON, 7L, null);
+            writer.pass(1001000000L, 3);
+            writer.interactive(Type.COMMAND, 7L, "say Grüß dich");
+            writer.interactive(Type.GMCP, 7L, "Core.Ping");
+            writer.interactive(Type.DISCONNECT, 7L, null);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] journal = writeJournal();
+        // Header, end marker, and a few bytes per record.
+        assertTrue(journal.length < 60, "Journal size: " + journal.length);
+
+        try (JournalReader reader = new JournalReader(new ByteArrayInputStream(journal))) {
+            JournalRecord record = reader.next();
+            assertEquals(record.getType(), Type.PASS);
+            assertEquals(record.getTime(), 0L);
+            assertEquals(record.getSignals(), 1);
+
+            record = reader.next();
+            assertEquals(record.getType(), Type.LOGON);
+            assertEquals(record.getInteractiveId(), 7L);
+
+            record = reader.next();
+            assertEquals(record.getType(), Type.PASS);
+            assertEquals(record.getTime(), 1000999000L);
+            assertEquals(record.getSignals(), 3);
+
+            record = reader.next();
+            assertEquals(record.getType(), Type.COMMAND);
+            assertEquals(record.getText(), "say Grüß dich");
+            assertEquals(reader.next().getText(), "Core.Ping");
+            assertEquals(reader.next().getType(), Type.DISCONNECT);
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] journal = writeJournal();
+        // A journal cut off in the middle of the command ends before it.
+        try (JournalReader reader = new JournalReader(new ByteArrayInputStream(Arrays.copyOf(journal, journal.length - 16)))) {
+            int records = 0;
+            while (reader.next() != null) {
+                records++;
+            }
+            assertEquals(records, 3);
+        }
+    }
+
+    @Test
+    public void testRedacted() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JournalWriter writer = new JournalWriter(out, 1000L)) {
+            writer.pass(1000L, 1);
+            writer.interactive(Type.REDACTED, 7L, "secret");
+        }
+        assertFalse(new String(out.toByteArray(), StandardCharsets.ISO_8859_1).contains("secret"));
+
+        try (JournalReader reader = new JournalReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(reader.next().getType(), Type.PASS);
+            JournalRecord record = reader.next();
+            assertEquals(record.getType(), Type.REDACTED);
+            assertEquals(record.getInteractiveId(), 7L);
+            assertEquals(record.getText(), "******");
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testInputJournal() throws IOException {
+        File dir = Files.createTempDirectory("journal").toFile();
+        File file = new File(dir, "input.journal");
+        try {
+            InputJournal journal = new InputJournal(null);
+            journal.start(file);
+            assertTrue(journal.isRecording());
+            journal.pass(1);
+            journal.command(7L, "say hello", false);
+            journal.command(7L, "secret", true);
+            journal.stop();
+
+            if (file.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())), "rw-------");
+            }
+            try (JournalReader reader = new JournalReader(new FileInputStream(file))) {
+                assertEquals(reader.next().getType(), Type.PASS);
+                assertEquals(reader.next().getText(), "say hello");
+                assertEquals(reader.next().getText(), "******");
+                assertNull(reader.next());
+            }
+        } finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNoJournal() throws IOException {
+        new JournalReader(new ByteArrayInputStream("Hello world".getBytes())).close();
+    }
+
+    @Test
+    public void testStatistics() {
+        ReplayStatistics statistics = new ReplayStatistics();
+        for (int i = 1; i <= 2000; i++) {
+            statistics.addPass(i * 1000L, i % 10 == 0);
+        }
+        assertEquals(statistics.getPassCount(), 2000);
+        assertEquals(statistics.getTickCount(), 200);
+        assertEquals(statistics.getPercentile(50, false), 1000000L);
+        assertEquals(statistics.getPercentile(99, false), 1980000L);
+        assertEquals(statistics.getPercentile(100, true), 2000000L);
+        assertTrue(statistics.report().contains("Replayed 2000 passes (200 ticks, 0 commands)"));
+    }
+}
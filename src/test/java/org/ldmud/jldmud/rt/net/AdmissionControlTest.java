@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import static org.testng.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.ldmud.jldmud.rt.net.AdmissionControl.Verdict;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link AdmissionControl}.
+ */
+public class AdmissionControlTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testGlobalRate() throws Exception {
+        AdmissionControl admission = new AdmissionControl(2L, 0L, 0, 0L);
+        InetAddress address = InetAddress.getByName("192.0.2.1");
+
+        assertEquals(admission.admit(address, 0, 0L), Verdict.ACCEPT);
+        assertEquals(admission.admit(address, 0, 0L), Verdict.ACCEPT);
+        assertEquals(admission.admit(address, 0, 0L), Verdict.GLOBAL_RATE);
+        assertEquals(admission.admit(address, 0, SECOND / 2), Verdict.ACCEPT);
+        assertEquals(admission.admit(address, 0, SECOND / 2), Verdict.GLOBAL_RATE);
+
+        // The bucket doesn't fill beyond its capacity
+        assertEquals(admission.admit(address, 0, 10 * SECOND), Verdict.ACCEPT);
+        assertEquals(admission.admit(address, 0, 10 * SECOND), Verdict.ACCEPT);
+        assertEquals(admission.admit(address, 0, 10 * SECOND), Verdict.GLOBAL_RATE);
+    }
+
+    @Test
+    public void testAddressRate() throws Exception {
+        AdmissionControl admission = new AdmissionControl(0L, 1L, 0, 0L);
+        InetAddress address1 = InetAddress.getByName("192.0.2.1");
+        InetAddress address2 = InetAddress.getByName("192.0.2.2");
+
+        assertEquals(admission.admit(address1, 0, 0L), Verdict.ACCEPT);
+        assertEquals(admission.admit(address1, 0, SECOND), Verdict.ADDRESS_RATE);
+        assertEquals(admission.admit(address2, 0, SECOND), Verdict.ACCEPT);
+        assertEquals(admission.getTrackedAddressCount(), 2);
+
+        // The bucket is refilled, and the idle address is forgotten
+        assertEquals(admission.admit(address1, 0, 61 * SECOND), Verdict.ACCEPT);
+        assertEquals(admission.getTrackedAddressCount(), 1);
+    }
+
+    @Test
+    public void testPendingLogons() throws Exception {
+        AdmissionControl admission = new AdmissionControl(0L, 0L, 10, 0L);
+        InetAddress address = InetAddress.getByName("192.0.2.1");
+
+        assertEquals(admission.admit(address, 9, 0L), Verdict.ACCEPT);
+        assertEquals(admission.admit(address, 10, 0L), Verdict.LOGON_QUEUE_FULL);
+    }
+}
@@ -8,9 +8,33 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertNull;
 
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.security.cert.X509Certificate;
+import java.util.zip.Inflater;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.commons.lang.StringUtils;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.ldmud.jldmud.rt.GameStateSignals;
 import org.ldmud.jldmud.rt.object.MudObject;
 import org.testng.annotations.Test;
 
@@ -19,9 +43,17 @@ import org.testng.annotations.Test;
  */
 public class CommunicatorTest {
 
+    // The keystore for the TLS tests, created on demand.
+    private File keystore;
+
+    // The telnet options offered to every connection (besides compression):
+    // IAC WILL CHARSET, IAC WILL GMCP, IAC WILL MSSP, IAC DO NAWS, IAC DO TTYPE
+    private static final String OFFERS = "\u00ff\u00fb\u002a\u00ff\u00fb\u00c9\u00ff\u00fb\u0046"
+                                       + "\u00ff\u00fd\u001f\u00ff\u00fd\u0018";
+
     @Test
     public void testInteractiveClassification() {
-        Communicator communicator = new Communicator(null);
+        Communicator communicator = new Communicator(new LiveConfiguration(null), null);
 
         Interactive interactive = mock(Interactive.class);
 
@@ -45,7 +77,7 @@ public class CommunicatorTest {
 
     @Test
     public void testInteractiveLifecycle() {
-        Communicator communicator = new Communicator(null);
+        Communicator communicator = new Communicator(new LiveConfiguration(null), null);
 
         MudObject obj = mock(MudObject.class);
         when(obj.ref()).thenReturn(new MudObject.Ref(obj));
@@ -87,4 +119,474 @@ public class CommunicatorTest {
         assertNull(communicator.nextPendingInteractive()); // Removes interactive2
         assertFalse(communicator.getAllInteractives().contains(interactive2));
     }
+
+    @Test
+    public void testFairCommandExecution() {
+        Configuration config = new Configuration();
+        config.setCommandsPerTick(2L);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), null);
+
+        Interactive speedwalker = new Interactive(communicator);
+        Interactive player = new Interactive(communicator);
+        speedwalker.setState(Interactive.State.ACTIVE);
+        player.setState(Interactive.State.ACTIVE);
+        communicator.add(speedwalker);
+        communicator.add(player);
+        speedwalker.received(ByteBuffer.wrap("n\nn\nn\nn\nn\n".getBytes(StandardCharsets.ISO_8859_1)));
+        player.received(ByteBuffer.wrap("look\nsay hi\n".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(communicator.getCommandQueueDepth(), 7);
+        assertEquals(communicator.getMaxCommandQueueDepth(), 5);
+
+        // The interactives take turns, until their budget is used up
+        StringBuilder order = new StringBuilder();
+        Interactive interactive;
+        while ((interactive = communicator.nextPendingInteractive()) != null) {
+            assertTrue(interactive.hasCommandBudget());
+            order.append(interactive == speedwalker ? 'S' : 'P');
+            interactive.nextInputLine();
+            interactive.commandExecuted(0);
+        }
+        assertEquals(order.toString(), "SPSP");
+        assertEquals(communicator.getCommandQueueDepth(), 3);
+
+        // The next tick renews the budget
+        communicator.nextTick();
+        assertEquals(communicator.nextPendingInteractive(), speedwalker);
+        assertEquals(communicator.getExecutedCommandCount(), 4L);
+    }
+
+    @Test
+    public void testTimeouts() throws Exception {
+        Configuration config = new Configuration();
+        config.setLogonTimeout(60L);
+        config.setIdleTimeout(600L);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), null);
+        long start = System.nanoTime();
+
+        Interactive newcomer = new Interactive(communicator);
+        Interactive player = new Interactive(communicator);
+        player.setState(Interactive.State.ACTIVE);
+        communicator.add(newcomer);
+        communicator.add(player);
+
+        // A closed connection keeps its timer, which is discarded once reached
+        Interactive leaver = new Interactive(communicator);
+        communicator.add(leaver);
+        leaver.remove();
+
+        // The newcomer misses its logon deadline
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(30));
+        assertEquals(newcomer.getState(), Interactive.State.NEW);
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(61));
+        assertEquals(newcomer.getState(), Interactive.State.CONNECTION_LOST);
+        assertEquals(communicator.getTimedOutConnectionCount(), 1L);
+
+        // Activity moves the idle deadline of the player
+        Thread.sleep(50);
+        player.received(ByteBuffer.wrap("look\n".getBytes(StandardCharsets.ISO_8859_1)));
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(600) + TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(player.getState(), Interactive.State.ACTIVE);
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(700));
+        assertEquals(player.getState(), Interactive.State.CONNECTION_LOST);
+        assertEquals(communicator.getTimedOutConnectionCount(), 2L);
+        assertEquals(player.getOutput().getPendingBytes(), Communicator.IDLE_TIMEOUT_MESSAGE.length() + 1L);
+    }
+
+    @Test
+    public void testTimeoutChanges() throws Exception {
+        Configuration config = new Configuration();
+        config.setIdleTimeout(0L);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), null);
+        long start = System.nanoTime();
+
+        Interactive player = new Interactive(communicator);
+        player.setState(Interactive.State.ACTIVE);
+        communicator.add(player);
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(1000));
+        assertEquals(player.getState(), Interactive.State.ACTIVE);
+
+        // A timeout enabled later applies to the connections accepted before...
+        config.setIdleTimeout(600L);
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(601));
+        assertEquals(player.getState(), Interactive.State.CONNECTION_LOST);
+
+        // ...a lowered timeout applies right away...
+        Interactive other = new Interactive(communicator);
+        other.setState(Interactive.State.ACTIVE);
+        communicator.add(other);
+        config.setIdleTimeout(60L);
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(61));
+        assertEquals(other.getState(), Interactive.State.CONNECTION_LOST);
+
+        // ...and a timeout disabled for a while applies again once enabled.
+        Interactive third = new Interactive(communicator);
+        third.setState(Interactive.State.ACTIVE);
+        communicator.add(third);
+        config.setIdleTimeout(0L);
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(100));
+        assertEquals(third.getState(), Interactive.State.ACTIVE);
+        config.setIdleTimeout(60L);
+        communicator.checkTimeouts(start + TimeUnit.SECONDS.toNanos(101));
+        assertEquals(third.getState(), Interactive.State.CONNECTION_LOST);
+        assertEquals(communicator.getTimedOutConnectionCount(), 3L);
+    }
+
+    @Test
+    public void testSelectorConnection() throws Exception {
+        checkConnection(Configuration.IoMode.SELECTOR);
+    }
+
+    @Test
+    public void testThreadedConnection() throws Exception {
+        checkConnection(Configuration.IoMode.THREADS);
+    }
+
+    @Test
+    public void testSelectorTlsConnection() throws Exception {
+        checkConnection(Configuration.IoMode.SELECTOR, true);
+    }
+
+    @Test
+    public void testThreadedTlsConnection() throws Exception {
+        checkConnection(Configuration.IoMode.THREADS, true);
+    }
+
+    @Test
+    public void testWebSocketConnection() throws Exception {
+        Configuration config = new Configuration();
+        config.setPort(0L);
+        config.setIoMode(Configuration.IoMode.SELECTOR);
+        config.setMccp(true);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), mock(GameStateSignals.class));
+        communicator.start();
+        try {
+            InetSocketAddress address = communicator.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), null, true);
+
+            try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+                socket.setSoTimeout(5000);
+                Interactive interactive = awaitPendingInteractive(communicator);
+                assertTrue(interactive.isWebSocket());
+                interactive.setState(Interactive.State.ACTIVE);
+
+                OutputStream out = socket.getOutputStream();
+                InputStream in = socket.getInputStream();
+                out.write(("GET / HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                         + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n")
+                         .getBytes(StandardCharsets.ISO_8859_1));
+                StringBuilder response = new StringBuilder();
+                while (!response.toString().endsWith("\r\n\r\n")) {
+                    response.append(readFully(in, 1));
+                }
+                assertTrue(response.toString().startsWith("HTTP/1.1 101 "));
+
+                // Text frame "look", masked with 0x01020304
+                out.write(new byte[] { (byte) 0x81, (byte) 0x84, 1, 2, 3, 4, 'l' ^ 1, 'o' ^ 2, 'o' ^ 3, 'k' ^ 4 });
+                assertEquals(awaitPendingInteractive(communicator), interactive);
+                assertEquals(interactive.nextInputLine(), "look");
+
+                // Output arrives as binary frame, in UTF-8, without any telnet negotiation
+                interactive.send("Grüße\n");
+                communicator.flushOutput();
+                assertEquals(readFully(in, 11), "\u0082\u0009Gr\u00c3\u00bc\u00c3\u009fe\r\n");
+
+                // Close frame without status
+                out.write(new byte[] { (byte) 0x88, (byte) 0x80, 1, 2, 3, 4 });
+                assertEquals(readFully(in, 2), "\u0088\u0000");
+                assertEquals(in.read(), -1);
+                socket.close();
+                assertEquals(awaitPendingInteractive(communicator), interactive);
+                assertEquals(interactive.getState(), Interactive.State.CONNECTION_LOST);
+            }
+        } finally {
+            communicator.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownDrainsOutput() throws Exception {
+        Configuration config = new Configuration();
+        config.setPort(0L);
+        config.setIoMode(Configuration.IoMode.SELECTOR);
+        config.setOutputLimit(100000L);
+        config.setMccp(false);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), mock(GameStateSignals.class));
+        communicator.start();
+        InetSocketAddress address = communicator.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setSoTimeout(5000);
+            InputStream in = socket.getInputStream();
+            readFully(in, OFFERS.length());
+            Interactive interactive = awaitPendingInteractive(communicator);
+            interactive.setState(Interactive.State.ACTIVE);
+
+            // The message is not flushed by a game loop pass anymore, but still arrives before the connection closes.
+            String text = StringUtils.repeat("The game is shutting down. ", 2000) + "\n";
+            communicator.broadcast(text, communicator.getInteractives());
+            communicator.shutdown();
+            assertEquals(readFully(in, text.length() + 1), text.replace("\n", "\r\n"));
+            assertEquals(in.read(), -1);
+        }
+    }
+
+    @Test
+    public void testRemoveDrainsOutput() throws Exception {
+        Configuration config = new Configuration();
+        config.setPort(0L);
+        config.setIoMode(Configuration.IoMode.SELECTOR);
+        config.setMccp(false);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), mock(GameStateSignals.class));
+        communicator.start();
+        try {
+            InetSocketAddress address = communicator.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+                socket.setSoTimeout(5000);
+                InputStream in = socket.getInputStream();
+                readFully(in, OFFERS.length());
+                Interactive interactive = awaitPendingInteractive(communicator);
+                interactive.setState(Interactive.State.ACTIVE);
+
+                // The output of the pass removing the interactive is still written...
+                interactive.send("Goodbye.\n");
+                interactive.remove();
+                communicator.flushOutput();
+                assertEquals(readFully(in, 10), "Goodbye.\r\n");
+
+                // ...and the connection closed by a following pass.
+                for (int i = 0; i < 500 && interactive.getChannel().isOpen(); i++) {
+                    Thread.sleep(10);
+                    communicator.flushOutput();
+                }
+                assertEquals(in.read(), -1);
+            }
+        } finally {
+            communicator.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompressedConnection() throws Exception {
+        Configuration config = new Configuration();
+        config.setPort(0L);
+        config.setIoMode(Configuration.IoMode.SELECTOR);
+        config.setMccp(true);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), mock(GameStateSignals.class));
+        communicator.start();
+        try {
+            InetSocketAddress address = communicator.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+                socket.setSoTimeout(5000);
+                InputStream in = socket.getInputStream();
+                assertEquals(readFully(in, 3), "\u00ff\u00fb\u0056"); // IAC WILL COMPRESS2
+                readFully(in, OFFERS.length());
+
+                Interactive interactive = awaitPendingInteractive(communicator);
+                interactive.setState(Interactive.State.ACTIVE);
+
+                socket.getOutputStream().write(new byte[] { (byte) 255, (byte) 253, 86 }); // IAC DO COMPRESS2
+                assertEquals(readFully(in, 5), "\u00ff\u00fa\u0056\u00ff\u00f0"); // IAC SB COMPRESS2 IAC SE
+
+                interactive.send("Compressed hello.\n");
+                communicator.flushOutput();
+
+                Inflater inflater = new Inflater();
+                byte[] inflated = new byte[100];
+                int length = 0;
+                while (length < 19) {
+                    byte[] compressed = new byte[100];
+                    int n = in.read(compressed);
+                    assertTrue(n > 0);
+                    inflater.setInput(compressed, 0, n);
+                    length += inflater.inflate(inflated, length, inflated.length - length);
+                }
+                assertEquals(new String(inflated, 0, length, StandardCharsets.ISO_8859_1), "Compressed hello.\r\n");
+            }
+        } finally {
+            communicator.shutdown();
+        }
+    }
+
+    @Test
+    public void testAdmissionControl() throws Exception {
+        Configuration config = new Configuration();
+        config.setPort(0L);
+        config.setIoMode(Configuration.IoMode.SELECTOR);
+        config.setMccp(false);
+        config.setAddressAcceptRate(1L);
+        config.setLogonsPerTick(1L);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), mock(GameStateSignals.class));
+        communicator.start();
+        try {
+            InetSocketAddress address = communicator.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            try (Socket first = new Socket(address.getAddress(), address.getPort());
+                 Socket second = new Socket(address.getAddress(), address.getPort())) {
+                first.setSoTimeout(5000);
+                second.setSoTimeout(5000);
+                assertEquals(readFully(first.getInputStream(), OFFERS.length()), OFFERS);
+
+                // The second connection from the same address is refused
+                StringBuilder refusal = new StringBuilder();
+                int b;
+                while ((b = second.getInputStream().read()) != -1) {
+                    refusal.append((char) b);
+                }
+                assertTrue(refusal.toString().startsWith("The game is too busy"));
+                assertEquals(communicator.getRefusedConnectionCount(), 1L);
+                assertEquals(communicator.getInteractiveCount(), 1);
+                assertEquals(communicator.getPendingLogonCount(), 1);
+
+                // Only one logon is processed per tick
+                Interactive interactive = awaitPendingInteractive(communicator);
+                communicator.logonExecuted();
+                interactive.setState(Interactive.State.ACTIVE);
+                assertEquals(communicator.getPendingLogonCount(), 0);
+
+                Interactive other = new Interactive(communicator);
+                communicator.add(other);
+                assertEquals(communicator.getPendingLogonCount(), 1);
+                assertNull(communicator.nextPendingInteractive());
+                communicator.nextTick();
+                assertEquals(communicator.nextPendingInteractive(), other);
+            }
+        } finally {
+            communicator.shutdown();
+        }
+    }
+
+    /**
+     * Connect to a communicator running in the given I/O mode, send a line of input,
+     * receive output, and close the connection again.
+     */
+    private void checkConnection(Configuration.IoMode ioMode) throws Exception {
+        checkConnection(ioMode, false);
+    }
+
+    /**
+     * Connect to a communicator running in the given I/O mode, possibly with TLS, send a line
+     * of input, receive output, and close the connection again.
+     */
+    private void checkConnection(Configuration.IoMode ioMode, boolean tls) throws Exception {
+        Configuration config = new Configuration();
+        config.setPort(0L);
+        config.setIoMode(ioMode);
+        config.setOutputLimit(100000L);
+        config.setMccp(false);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), mock(GameStateSignals.class));
+        communicator.start();
+        try {
+            InetSocketAddress address = communicator.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                                                            tls ? newTlsContext() : null, false);
+
+            try (Socket socket = tls ? newTlsSocket(address) : new Socket(address.getAddress(), address.getPort())) {
+                socket.setSoTimeout(5000);
+                assertEquals(readFully(socket.getInputStream(), OFFERS.length()), OFFERS);
+                Interactive interactive = awaitPendingInteractive(communicator);
+                assertEquals(interactive.getState(), Interactive.State.NEW);
+                interactive.setState(Interactive.State.ACTIVE);
+
+                OutputStream out = socket.getOutputStream();
+                out.write("look\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+
+                assertEquals(awaitPendingInteractive(communicator), interactive);
+                assertEquals(interactive.nextInputLine(), "look");
+                assertNull(interactive.nextInputLine());
+
+                Interactive other = new Interactive(communicator);
+                interactive.send("You see");
+                communicator.broadcast(" nothing.\n", Arrays.asList(interactive, other));
+                communicator.flushOutput();
+                assertEquals(readFully(socket.getInputStream(), 18), "You see nothing.\r\n");
+                assertEquals(interactive.isSecure(), tls);
+
+                // Output spanning several chunks and TLS records
+                String text = StringUtils.repeat("0123456789", 5000) + "\n";
+                interactive.send(text);
+                communicator.flushOutput();
+                assertEquals(readFully(socket.getInputStream(), text.length() + 1), text.replace("\n", "\r\n"));
+
+                socket.close();
+                assertEquals(awaitPendingInteractive(communicator), interactive);
+                assertEquals(interactive.getState(), Interactive.State.CONNECTION_LOST);
+            }
+        } finally {
+            communicator.shutdown();
+        }
+    }
+
+    /**
+     * Create a TLS context for the server, using a self-signed certificate generated with keytool.
+     */
+    private TlsContext newTlsContext() throws Exception {
+        if (keystore == null) {
+            keystore = File.createTempFile("jldmud-test", ".p12");
+            keystore.delete();
+            keystore.deleteOnExit();
+            Process keytool = new ProcessBuilder(System.getProperty("java.home") + "/bin/keytool",
+                    "-genkeypair", "-keystore", keystore.getPath(), "-storetype", "PKCS12",
+                    "-storepass", "secret", "-keypass", "secret", "-alias", "mud",
+                    "-keyalg", "EC", "-dname", "CN=localhost", "-validity", "1")
+                    .inheritIO().start();
+            assertEquals(keytool.waitFor(), 0);
+        }
+        return TlsContext.load(keystore, "secret");
+    }
+
+    /**
+     * Connect to a TLS port, trusting any certificate, and complete the handshake.
+     */
+    private Socket newTlsSocket(InetSocketAddress address) throws Exception {
+        TrustManager trustAll = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[] { trustAll }, null);
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(address.getAddress(), address.getPort());
+        socket.setSoTimeout(5000);
+        socket.startHandshake();
+        return socket;
+    }
+
+    /**
+     * Read the given number of bytes from a stream.
+     */
+    private String readFully(InputStream in, int length) throws Exception {
+        byte[] data = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(data, read, length - read);
+            assertTrue(n > 0);
+            read += n;
+        }
+        return new String(data, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Wait (for a limited time) for the communicator to have an interactive pending.
+     */
+    private Interactive awaitPendingInteractive(Communicator communicator) throws InterruptedException {
+        Interactive interactive = null;
+        for (int i = 0; interactive == null && i < 500; i++) {
+            interactive = communicator.nextPendingInteractive();
+            if (interactive == null) {
+                Thread.sleep(10);
+            }
+        }
+        assertNotNull(interactive);
+        return interactive;
+    }
 }
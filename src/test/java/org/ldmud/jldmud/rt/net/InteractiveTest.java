@@ -4,10 +4,120 @@
  */
 package org.ldmud.jldmud.rt.net;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.testng.annotations.Test;
+
 /**
  * Unit tests for {@link Interactive}.
  */
 public class InteractiveTest {
 
-    // Nothing to test yet.
+    @Test
+    public void testLineAssembly() {
+        Interactive interactive = new Interactive(null);
+        assertEquals(interactive.getState(), Interactive.State.NEW);
+        assertFalse(interactive.isDataPending());
+
+        assertFalse(interactive.received(bytes("no")));
+        assertFalse(interactive.isDataPending());
+        assertTrue(interactive.received(bytes("rth\r\nsay hi\nsou")));
+        assertTrue(interactive.isDataPending());
+
+        assertEquals(interactive.nextInputLine(), "north");
+        assertEquals(interactive.nextInputLine(), "say hi");
+        assertNull(interactive.nextInputLine());
+        assertFalse(interactive.isDataPending());
+
+        assertTrue(interactive.received(bytes("th\r\n")));
+        assertEquals(interactive.nextInputLine(), "south");
+    }
+
+    @Test
+    public void testOverlongLine() {
+        Interactive interactive = new Interactive(null);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Interactive.MAX_LINE_LENGTH + 10; i++) {
+            sb.append('x');
+        }
+
+        assertTrue(interactive.received(bytes(sb.toString())));
+        assertEquals(interactive.nextInputLine().length(), Interactive.MAX_LINE_LENGTH);
+        assertNull(interactive.nextInputLine());
+    }
+
+    @Test
+    public void testConnectionLost() {
+        Interactive interactive = new Interactive(null);
+        interactive.connectionLost();
+        assertEquals(interactive.getState(), Interactive.State.CONNECTION_LOST);
+
+        interactive.setState(Interactive.State.CLOSED);
+        interactive.connectionLost();
+        assertEquals(interactive.getState(), Interactive.State.CLOSED);
+    }
+
+    @Test
+    public void testCommandQueueLimit() {
+        Configuration config = new Configuration();
+        config.setCommandQueueLimit(2L);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), null);
+        Interactive interactive = new Interactive(communicator);
+
+        assertTrue(interactive.received(bytes("n\ne\ns\nw\n")));
+        assertEquals(interactive.getCommandQueueDepth(), 2);
+        assertEquals(communicator.getDiscardedCommandCount(), 2L);
+        assertFalse(interactive.received(bytes("up\n")));
+
+        assertEquals(interactive.nextInputLine(), "n");
+        assertEquals(interactive.getCommandQueueDepth(), 1);
+        assertTrue(interactive.received(bytes("down\n")));
+        assertEquals(interactive.nextInputLine(), "e");
+        assertEquals(interactive.nextInputLine(), "down");
+        assertEquals(interactive.getCommandQueueDepth(), 0);
+    }
+
+    @Test
+    public void testCommandBudget() {
+        Configuration config = new Configuration();
+        config.setCommandsPerTick(2L);
+        config.setEvalCostPerTick(1000L);
+        Communicator communicator = new Communicator(new LiveConfiguration(config), null);
+        Interactive interactive = new Interactive(communicator);
+        interactive.received(bytes("n\ne\ns\nw\n"));
+
+        // Limited by the number of commands
+        assertTrue(interactive.isDataPending());
+        interactive.nextInputLine();
+        interactive.commandExecuted(10);
+        assertTrue(interactive.hasCommandBudget());
+        interactive.nextInputLine();
+        interactive.commandExecuted(10);
+        assertFalse(interactive.hasCommandBudget());
+        assertFalse(interactive.isDataPending());
+
+        // Limited by the evaluation cost
+        communicator.nextTick();
+        assertTrue(interactive.isDataPending());
+        interactive.nextInputLine();
+        interactive.commandExecuted(1000);
+        assertFalse(interactive.isDataPending());
+        assertEquals(interactive.getCommandQueueDepth(), 1);
+
+        communicator.nextTick();
+        assertTrue(interactive.isDataPending());
+        assertEquals(communicator.getExecutedCommandCount(), 3L);
+    }
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
 }
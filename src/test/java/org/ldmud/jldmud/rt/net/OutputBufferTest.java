@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Inflater;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link OutputBuffer}.
+ */
+public class OutputBufferTest {
+
+    @Test
+    public void testEncoding() {
+        assertEquals(decode(OutputBuffer.encode("a\nbÿ€", false)), "a\r\nbÿÿ?");
+        assertTrue(OutputBuffer.encode("text", false).isReadOnly());
+    }
+
+    @Test
+    public void testUtf8Encoding() throws IOException {
+        ByteBuffer encoded = OutputBuffer.encode("a\nÿ€\uD83D\uDE00", true);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        assertEquals(new String(bytes, StandardCharsets.UTF_8), "a\r\nÿ€\uD83D\uDE00");
+
+        OutputBuffer output = new OutputBuffer(new BufferPool(8, false, 10), 1000L);
+        output.setUtf8(true);
+        assertTrue(output.append("€€€€\n"));
+        assertEquals(output.getPendingBytes(), 14L);
+        assertEquals(new String(drain(output).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8), "€€€€\r\n");
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        BufferPool pool = new BufferPool(8, false, 10);
+        OutputBuffer output = new OutputBuffer(pool, 1000L);
+        ByteBuffer shared = OutputBuffer.encode("<shared>", false);
+
+        assertFalse(output.hasPending());
+        assertTrue(output.append("Hello, world\n"));
+        assertTrue(output.append(shared));
+        assertTrue(output.append("bye"));
+        assertEquals(output.getPendingBytes(), 14L + 8L + 3L);
+
+        assertEquals(drain(output), "Hello, world\r\n<shared>bye");
+        assertFalse(output.hasPending());
+        assertEquals(shared.remaining(), 8, "Shared payload must not be consumed");
+        assertTrue(pool.getPooledCount() > 0, "Text chunks must be recycled");
+    }
+
+    @Test
+    public void testLimit() throws IOException {
+        OutputBuffer output = new OutputBuffer(new BufferPool(8, false, 10), 10L);
+
+        assertTrue(output.append("0123456789"));
+        assertFalse(output.append("x"));
+        assertEquals(output.getPendingBytes(), 10L);
+
+        assertEquals(drain(output), "0123456789");
+        assertTrue(output.append("more"));
+        assertEquals(drain(output), "more");
+    }
+
+    @Test
+    public void testClear() {
+        BufferPool pool = new BufferPool(8, false, 10);
+        OutputBuffer output = new OutputBuffer(pool, 1000L);
+
+        output.append("some text for a chunk or two");
+        output.clear();
+        assertFalse(output.hasPending());
+        assertTrue(pool.getPooledCount() > 0);
+    }
+
+    @Test
+    public void testDispose() {
+        BufferPool pool = new BufferPool(8, false, 10);
+        OutputBuffer output = new OutputBuffer(pool, 1000L);
+
+        output.append("some text for a chunk or two");
+        output.dispose();
+        assertFalse(output.hasPending());
+        assertEquals(pool.getPooledCount(), 6);
+        assertFalse(output.append("more text"));
+        assertFalse(output.hasPending());
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        BufferPool pool = new BufferPool(64, false, 10);
+        DeflaterPool deflaterPool = new DeflaterPool(2);
+        OutputBuffer output = new OutputBuffer(pool, 100000L);
+
+        output.append("plain ");
+        output.startCompression(OutputBuffer.encode("<start>", false), new MccpCompressor(deflaterPool, pool));
+        assertTrue(output.isCompressing());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("The quick brown fox jumps over the lazy dog.\n");
+        }
+        output.append(text.toString());
+
+        String result = drain(output);
+        assertTrue(result.startsWith("plain <start>"));
+        byte[] compressed = result.substring(13).getBytes(StandardCharsets.ISO_8859_1);
+        assertTrue(compressed.length < text.length() / 4);
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] inflated = new byte[text.length() * 2];
+        int length = inflater.inflate(inflated);
+        assertEquals(new String(inflated, 0, length, StandardCharsets.ISO_8859_1), text.toString().replace("\n", "\r\n"));
+
+        output.endCompression();
+        assertFalse(output.isCompressing());
+        assertEquals(deflaterPool.getPooledCount(), 1);
+    }
+
+    @Test
+    public void testCompressionWhileAppending() throws Exception {
+        BufferPool pool = new BufferPool(64, false, 100);
+        OutputBuffer output = new OutputBuffer(pool, 10000000L);
+        output.startCompression(OutputBuffer.encode("<start>", false), new MccpCompressor(new DeflaterPool(1), pool));
+
+        // The I/O thread compresses and writes while the main thread appends.
+        Pipe pipe = Pipe.open();
+        AtomicBoolean appending = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            try {
+                while (appending.get() || output.hasPending()) {
+                    output.writeTo(pipe.sink());
+                }
+                pipe.sink().close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Thread reader = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            try {
+                while (pipe.source().read(buffer) >= 0) {
+                    received.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.start();
+        reader.start();
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            String line = "Line " + i + " of the text.\n";
+            assertTrue(output.append(line));
+            text.append(line);
+        }
+        appending.set(false);
+        writer.join(10000L);
+        reader.join(10000L);
+
+        byte[] result = received.toByteArray();
+        assertEquals(new String(result, 0, 7, StandardCharsets.ISO_8859_1), "<start>");
+        Inflater inflater = new Inflater();
+        inflater.setInput(result, 7, result.length - 7);
+        byte[] inflated = new byte[text.length() * 2];
+        int length = 0;
+        while (!inflater.needsInput() && length < inflated.length) {
+            length += inflater.inflate(inflated, length, inflated.length - length);
+        }
+        assertEquals(new String(inflated, 0, length, StandardCharsets.ISO_8859_1), text.toString().replace("\n", "\r\n"));
+    }
+
+    /**
+     * Write all pending output through a pipe and return it as string.
+     */
+    private static String drain(OutputBuffer output) throws IOException {
+        Pipe pipe = Pipe.open();
+        long written = 0L;
+        while (output.hasPending()) {
+            written += output.writeTo(pipe.sink());
+        }
+        ByteBuffer result = ByteBuffer.allocate((int) written);
+        while (result.hasRemaining()) {
+            pipe.source().read(result);
+        }
+        result.flip();
+        return decode(result);
+    }
+
+    private static String decode(ByteBuffer buffer) {
+        ByteBuffer copy = buffer.duplicate();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
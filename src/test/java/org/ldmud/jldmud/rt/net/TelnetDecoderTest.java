@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link TelnetDecoder}.
+ */
+public class TelnetDecoderTest {
+
+    private List<String> negotiations;
+    private TelnetDecoder decoder;
+
+    @BeforeMethod
+    public void setUp() {
+        negotiations = new ArrayList<>();
+        decoder = new TelnetDecoder(new TelnetDecoder.Handler() {
+            @Override
+            public void negotiate(int command, int option) {
+                negotiations.add(command + " " + option);
+            }
+
+            @Override
+            public void subnegotiate(int option, byte[] data, int length) {
+                negotiations.add("SB " + option + " " + new String(data, 0, length, StandardCharsets.ISO_8859_1));
+            }
+        });
+    }
+
+    @Test
+    public void testPlainData() {
+        assertEquals(decode("hello"), "hello");
+        assertEquals(negotiations.size(), 0);
+    }
+
+    @Test
+    public void testCommands() {
+        assertEquals(decode("a", 255, 255, "b", 255, 241, "c"), "aÿbc");
+        assertEquals(decode(255, 253, 86, "d", 255, 252, 1), "d");
+        assertEquals(negotiations.get(0), "253 86");
+        assertEquals(negotiations.get(1), "252 1");
+    }
+
+    @Test
+    public void testSplitCommands() {
+        assertEquals(decode("a", 255), "a");
+        assertEquals(decode(251), "");
+        assertEquals(decode(24, "b"), "b");
+        assertEquals(negotiations.get(0), "251 24");
+    }
+
+    @Test
+    public void testSubnegotiation() {
+        assertEquals(decode("a", 255, 250, 24, 0, 255, 255, "xterm", 255), "a");
+        assertEquals(decode(240, "b"), "b");
+        assertEquals(negotiations.get(0), "SB 24 \u0000\u00ffxterm");
+    }
+
+    @Test
+    public void testOverlongSubnegotiation() {
+        String data = StringUtils.repeat("x", TelnetDecoder.MAX_SUBNEGOTIATION_LENGTH + 10);
+        assertEquals(decode(255, 250, 201, data, 255, 240, "c"), "c");
+        assertEquals(negotiations.get(0), "SB 201 " + data.substring(0, TelnetDecoder.MAX_SUBNEGOTIATION_LENGTH));
+    }
+
+    /**
+     * Decode a sequence of strings and byte values, and return the resulting data as string.
+     */
+    private String decode(Object... parts) {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (Object part : parts) {
+            if (part instanceof String) {
+                buffer.put(((String) part).getBytes(StandardCharsets.ISO_8859_1));
+            } else {
+                buffer.put((byte) ((Integer) part).intValue());
+            }
+        }
+        buffer.flip();
+        decoder.decode(buffer);
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new String(data, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link TelnetNegotiation}, driven through an {@link Interactive}.
+ */
+public class TelnetNegotiationTest {
+
+    @Test
+    public void testWindowSizeAndTerminalType() throws IOException {
+        Interactive interactive = new Interactive(null);
+        interactive.startNegotiation(false);
+        drain(interactive);
+
+        interactive.received(bytes(255, 251, 31, 255, 250, 31, 0, 132, 0, 40, 255, 240)); // WILL NAWS, SB NAWS
+        assertEquals(interactive.getWindowWidth(), 132);
+        assertEquals(interactive.getWindowHeight(), 40);
+        assertEquals(drain(interactive), "");
+
+        interactive.received(bytes(255, 251, 24)); // WILL TTYPE
+        assertEquals(drain(interactive), "ÿú\u0018\u0001ÿð"); // SB TTYPE SEND
+        interactive.received(bytes(255, 250, 24, 0, "xterm", 255, 240));
+        assertEquals(interactive.getTerminalType(), "xterm");
+    }
+
+    @Test
+    public void testCharset() throws IOException {
+        Interactive interactive = new Interactive(null);
+        interactive.startNegotiation(false);
+        drain(interactive);
+
+        interactive.received(bytes(255, 253, 42)); // DO CHARSET
+        assertEquals(drain(interactive), "ÿú*\u0001;UTF-8;ISO-8859-1ÿð");
+        assertFalse(interactive.isUtf8());
+
+        interactive.received(bytes(255, 250, 42, 2, "UTF-8", 255, 240));
+        assertTrue(interactive.isUtf8());
+        interactive.received(bytes("h", 0xC3, 0xA4, "\n"));
+        assertEquals(interactive.nextInputLine(), "hä");
+
+        interactive.send("€");
+        assertEquals(new String(drain(interactive).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8), "€");
+    }
+
+    @Test
+    public void testGmcp() throws IOException {
+        Interactive interactive = new Interactive(null);
+        assertFalse(interactive.sendGmcp("Core.Hello {}"));
+
+        interactive.startNegotiation(false);
+        interactive.received(bytes(255, 253, 201)); // DO GMCP
+        drain(interactive);
+        assertTrue(interactive.sendGmcp("Char.Vitals {\"hp\":10}"));
+        assertEquals(drain(interactive), "ÿúÉChar.Vitals {\"hp\":10}ÿð");
+
+        interactive.received(bytes(255, 250, 201, "Core.Hello {}", 255, 240));
+        assertTrue(interactive.isDataPending());
+        assertEquals(interactive.nextGmcpMessage(), "Core.Hello {}");
+        assertNull(interactive.nextGmcpMessage());
+    }
+
+    @Test
+    public void testNoNegotiationLoops() throws IOException {
+        Interactive interactive = new Interactive(null);
+        interactive.startNegotiation(false);
+        drain(interactive);
+
+        // Acknowledgements of our own offers, and repeated requests, are not answered.
+        interactive.received(bytes(255, 253, 201, 255, 253, 201, 255, 251, 31, 255, 251, 31));
+        assertEquals(drain(interactive), "");
+
+        // Unsupported options are refused, compression as it wasn't offered.
+        interactive.received(bytes(255, 253, 1, 255, 251, 3, 255, 253, 86));
+        assertEquals(drain(interactive), "ÿü\u0001ÿþ\u0003ÿüV");
+
+        // Disabling an option is acknowledged once.
+        interactive.received(bytes(255, 252, 31, 255, 252, 31));
+        assertEquals(drain(interactive), "ÿþ\u001f");
+    }
+
+    @Test
+    public void testCompressionNotEnded() throws Exception {
+        Communicator communicator = new Communicator(new LiveConfiguration(new Configuration()), null);
+        Interactive interactive = new Interactive(communicator);
+        interactive.startNegotiation(true);
+        drain(interactive);
+
+        interactive.received(bytes(255, 253, 86)); // DO COMPRESS2
+        assertEquals(drain(interactive), "ÿúVÿð");
+        assertTrue(interactive.getOutput().isCompressing());
+
+        // The compressed stream can't be ended, so a DONT isn't confirmed, and the output stays compressed.
+        interactive.received(bytes(255, 254, 86)); // DONT COMPRESS2
+        assertTrue(interactive.getOutput().isCompressing());
+        interactive.send("still compressed\n");
+        byte[] compressed = drain(interactive).getBytes(StandardCharsets.ISO_8859_1);
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] inflated = new byte[256];
+        int length = inflater.inflate(inflated);
+        assertEquals(new String(inflated, 0, length, StandardCharsets.ISO_8859_1), "still compressed\r\n");
+    }
+
+    /**
+     * Create a buffer from a sequence of strings and byte values.
+     */
+    private static ByteBuffer bytes(Object... parts) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        for (Object part : parts) {
+            if (part instanceof String) {
+                buffer.put(((String) part).getBytes(StandardCharsets.ISO_8859_1));
+            } else {
+                buffer.put((byte) ((Integer) part).intValue());
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Write all pending output of the interactive through a pipe and return it as string.
+     */
+    private static String drain(Interactive interactive) throws IOException {
+        OutputBuffer output = interactive.getOutput();
+        Pipe pipe = Pipe.open();
+        long written = 0L;
+        while (output.hasPending()) {
+            written += output.writeTo(pipe.sink());
+        }
+        ByteBuffer result = ByteBuffer.allocate((int) written);
+        while (result.hasRemaining()) {
+            pipe.source().read(result);
+        }
+        result.flip();
+        return new String(result.array(), 0, result.limit(), StandardCharsets.ISO_8859_1);
+    }
+}
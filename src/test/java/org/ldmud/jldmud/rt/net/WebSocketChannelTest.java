@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link WebSocketChannel}.
+ */
+public class WebSocketChannelTest {
+
+    private static final String REQUEST = "GET /mud HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+                                        + "Connection: Upgrade\r\nSec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                                        + "Sec-WebSocket-Version: 13\r\n\r\n";
+
+    private Pipe pipe;
+    private WebSocketChannel webSocket;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        webSocket = new WebSocketChannel(null, pipe.sink());
+    }
+
+    @Test
+    public void testAcceptKey() {
+        // The example from RFC 6455
+        assertEquals(WebSocketChannel.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="), "s3pPLMBiTxaQ9kYGzzhZRbK+xOo=");
+    }
+
+    @Test
+    public void testUpgrade() throws IOException {
+        assertEquals(decode(REQUEST.substring(0, 20).getBytes(StandardCharsets.ISO_8859_1)), "");
+        assertFalse(webSocket.isUpgraded());
+        assertEquals(decode(concat(REQUEST.substring(20).getBytes(StandardCharsets.ISO_8859_1), frame(0x81, "look"))), "look\n");
+        assertTrue(webSocket.isUpgraded());
+        assertTrue(webSocket.hasPendingOutput());
+        assertTrue(webSocket.flush());
+        String response = new String(drain(), StandardCharsets.ISO_8859_1);
+        assertTrue(response.startsWith("HTTP/1.1 101 Switching Protocols\r\n"));
+        assertTrue(response.contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n"));
+    }
+
+    @Test
+    public void testBadRequest() throws IOException {
+        decode("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertFalse(webSocket.isUpgraded());
+        assertFalse(webSocket.flush());
+        assertTrue(new String(drain(), StandardCharsets.ISO_8859_1).startsWith("HTTP/1.1 400 Bad Request\r\n"));
+    }
+
+    @Test
+    public void testFrames() throws IOException {
+        upgrade();
+
+        // Fragmented text message, split across reads, and a message already ending in a newline
+        byte[] data = concat(frame(0x01, "say "), frame(0x80, "hello"), frame(0x81, "smile\n"));
+        assertEquals(decode(slice(data, 0, 9)), "say");
+        assertEquals(decode(slice(data, 9, 14)), " "); // Ends within the header of the second frame
+        assertEquals(decode(slice(data, 14, data.length)), "hello\nsmile\n");
+
+        // Binary data is passed on unchanged
+        assertEquals(decode(frame(0x82, "a\nb")), "a\nb");
+
+        // Long payload with 16 bit length
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        assertEquals(decode(frame(0x81, sb.toString())), sb.toString() + "\n");
+    }
+
+    @Test
+    public void testMessageFillingTheBuffer() throws IOException {
+        upgrade();
+
+        // The payload fills the buffer, so the line end is left to the caller.
+        byte[] data = frame(0x81, "look");
+        assertEquals(decode(slice(data, 0, 6)), "");
+        ByteBuffer buffer = ByteBuffer.wrap(slice(data, 6, data.length));
+        webSocket.decode(buffer);
+        assertEquals(new String(buffer.array(), 0, buffer.limit(), StandardCharsets.ISO_8859_1), "look");
+        assertTrue(webSocket.takePendingNewline());
+        assertFalse(webSocket.takePendingNewline());
+
+        // ...and not added again to the next message.
+        assertEquals(decode(frame(0x81, "north")), "north\n");
+        assertFalse(webSocket.takePendingNewline());
+    }
+
+    @Test
+    public void testPingAndClose() throws IOException {
+        upgrade();
+
+        assertEquals(decode(concat(frame(0x89, "hi"), frame(0x81, "x"))), "x\n");
+        assertTrue(webSocket.flush());
+        assertEquals(drain(), new byte[] { (byte) 0x8A, 2, 'h', 'i' });
+
+        assertEquals(decode(concat(frame(0x88, "\u0003è"), frame(0x81, "ignored"))), "");
+        assertFalse(webSocket.isUpgraded());
+        assertFalse(webSocket.flush());
+        assertEquals(drain(), new byte[] { (byte) 0x88, 2, 0x03, (byte) 0xe8 });
+    }
+
+    @Test
+    public void testUnmaskedFrame() throws IOException {
+        upgrade();
+        assertEquals(decode(new byte[] { (byte) 0x81, 1, 'x' }), "");
+        assertFalse(webSocket.isUpgraded());
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        upgrade();
+        ByteBuffer[] payload = { ByteBuffer.wrap("Hello, ".getBytes(StandardCharsets.ISO_8859_1)),
+                                 ByteBuffer.wrap("world".getBytes(StandardCharsets.ISO_8859_1)) };
+        assertEquals(webSocket.write(payload, 0, 2), 12L);
+        assertEquals(new String(drain(), StandardCharsets.ISO_8859_1), "\u0082\u000cHello, world");
+
+        byte[] large = new byte[1000];
+        assertEquals(webSocket.write(new ByteBuffer[] { ByteBuffer.wrap(large) }, 0, 1), 1000L);
+        byte[] written = drain();
+        assertEquals(written.length, 1004);
+        assertEquals(slice(written, 0, 4), new byte[] { (byte) 0x82, 126, 0x03, (byte) 0xe8 });
+    }
+
+    /**
+     * Complete the upgrade handshake, and discard the response.
+     */
+    private void upgrade() throws IOException {
+        decode(REQUEST.getBytes(StandardCharsets.ISO_8859_1));
+        webSocket.flush();
+        drain();
+    }
+
+    /**
+     * Decode the given data, and return the result as string.
+     */
+    private String decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.put(data).flip();
+        webSocket.decode(buffer);
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return new String(result, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Create a masked client frame.
+     */
+    private static byte[] frame(int first, String text) {
+        byte[] payload = text.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] mask = { 0x12, 0x34, 0x56, 0x78 };
+        ByteBuffer frame = ByteBuffer.allocate(payload.length + 8);
+        frame.put((byte) first);
+        if (payload.length < 126) {
+            frame.put((byte) (0x80 | payload.length));
+        } else {
+            frame.put((byte) (0x80 | 126)).putShort((short) payload.length);
+        }
+        frame.put(mask);
+        for (int i = 0; i < payload.length; i++) {
+            frame.put((byte) (payload[i] ^ mask[i & 3]));
+        }
+        return slice(frame.array(), 0, frame.position());
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] slice(byte[] data, int from, int to) {
+        byte[] result = new byte[to - from];
+        System.arraycopy(data, from, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * @return All data written to the pipe so far.
+     */
+    private byte[] drain() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (pipe.source().read(buffer) > 0) {
+            buffer.flip();
+            out.write(buffer.array(), 0, buffer.limit());
+            buffer.clear();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.object;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.ldmud.jldmud.rt.object.ExecutionCost.Metric;
+import org.ldmud.jldmud.rt.object.ExecutionCost.Window;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link CostAccounting} and {@link ExecutionCost}.
+ */
+public class CostAccountingTest {
+
+    @Test
+    public void testDecay() {
+        ExecutionCost cost = new ExecutionCost();
+        cost.charge(1000L, 10L, 100L, 0L);
+        cost.charge(1000L, 10L, 100L, 0L);
+        assertEquals(cost.get(Metric.CPU_TIME, Window.MINUTE, 0L), 2000L);
+        assertEquals(cost.get(Metric.EXECUTIONS, Window.TOTAL, 0L), 2L);
+
+        // After a minute, a minute's sum has decayed to 1/e, the hour's only slightly.
+        assertEquals(cost.get(Metric.CPU_TIME, Window.MINUTE, 60L), Math.round(2000 / Math.E));
+        assertEquals(cost.get(Metric.CPU_TIME, Window.HOUR, 60L), Math.round(2000 * Math.exp(-60.0 / 3600)));
+        assertEquals(cost.get(Metric.CPU_TIME, Window.TOTAL, 60L), 2000L);
+
+        // A steady load adds up to the load of the window.
+        ExecutionCost steady = new ExecutionCost();
+        for (long tick = 0; tick < 3600; tick++) {
+            steady.charge(0L, 100L, 0L, tick);
+        }
+        long minute = steady.get(Metric.EVAL_COST, Window.MINUTE, 3599L);
+        assertTrue(minute > 5900L && minute < 6100L, "Minute sum: " + minute);
+    }
+
+    @Test
+    public void testCharge() {
+        MudObjects objects = new MudObjects();
+        CostAccounting costs = new CostAccounting(objects, new LiveConfiguration(null));
+        MudObject sword1 = objects.createObject("/obj/sword#1");
+        MudObject sword2 = objects.createObject("/obj/sword#2");
+        MudObject room = objects.createObject("/room/church");
+        MudObject idle = objects.createObject("/room/void");
+
+        costs.charge(sword1, 5000L, 10L, 64L);
+        costs.charge(sword2, 3000L, 20L, 0L);
+        costs.charge(room, 7000L, 5L, 32L);
+
+        assertEquals(costs.getCost(sword1, Metric.CPU_TIME, Window.TOTAL), 5000L);
+        assertEquals(costs.getCost(idle, Metric.CPU_TIME, Window.TOTAL), 0L);
+        assertNull(idle.getCost());
+        assertEquals(costs.getProgramCost("/obj/sword", Metric.CPU_TIME, Window.TOTAL), 8000L);
+        assertEquals(costs.getProgramCost("/obj/sword", Metric.EXECUTIONS, Window.TOTAL), 2L);
+
+        List<CostAccounting.Entry> topObjects = costs.getTopObjects(Metric.CPU_TIME, Window.MINUTE, 2);
+        assertEquals(topObjects.size(), 2);
+        assertEquals(topObjects.get(0).getName(), "/room/church");
+        assertEquals(topObjects.get(1).getName(), "/obj/sword#1");
+
+        List<CostAccounting.Entry> topPrograms = costs.getTopPrograms(Metric.CPU_TIME, Window.TOTAL, 5);
+        assertEquals(topPrograms.size(), 2);
+        assertEquals(topPrograms.get(0).getName(), "/obj/sword");
+        assertEquals(topPrograms.get(0).getValue(), 8000L);
+
+        // A destroyed object drops out of the object ranking, but stays accounted in its program.
+        sword1.destroy();
+        objects.removeDestroyedObjects();
+        topObjects = costs.getTopObjects(Metric.CPU_TIME, Window.TOTAL, 5);
+        assertEquals(topObjects.size(), 2);
+        assertEquals(costs.getProgramCost("/obj/sword", Metric.CPU_TIME, Window.TOTAL), 8000L);
+
+        assertTrue(costs.report(3).contains("/room/church"));
+    }
+}
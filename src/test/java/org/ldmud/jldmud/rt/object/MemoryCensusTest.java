@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.object;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ldmud.jldmud.config.Configuration;
+import org.ldmud.jldmud.config.LiveConfiguration;
+import org.ldmud.jldmud.rt.value.SharedStringTable;
+import org.ldmud.jldmud.rt.value.StringValue;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link MemoryCensus}.
+ */
+public class MemoryCensusTest {
+
+    @Test
+    public void testCensus() {
+        MudObjects objects = new MudObjects();
+        CostAccounting costs = new CostAccounting(objects, new LiveConfiguration(null));
+        MemoryCensus census = new MemoryCensus(objects, new LiveConfiguration(null));
+        for (int i = 0; i < 3; i++) {
+            costs.charge(objects.createObject("/obj/sword#" + i), 0L, 0L, 0L);
+        }
+        objects.createObject("/room/church");
+        MudObject destroyed = objects.createObject("/room/void");
+
+        assertTrue(census.start());
+        assertFalse(census.start());
+        destroyed.destroy();
+        census.step();
+        assertFalse(census.isRunning());
+
+        List<MemoryCensus.Entry> result = census.getResult();
+        assertEquals(result.size(), 2);
+        assertEquals(result.get(0).getProgram(), "/obj/sword");
+        assertEquals(result.get(0).getObjects(), 3);
+        // The names take 24 + 32 bytes each; the program's accounting data is shared by the swords, and counted once.
+        assertEquals(result.get(0).getBytes(), 3 * (MemoryCensus.MUD_OBJECT + 56 + MemoryCensus.EXECUTION_COST)
+                                               + MemoryCensus.EXECUTION_COST);
+        assertEquals(result.get(1).getProgram(), "/room/church");
+        assertEquals(result.get(1).getBytes(), MemoryCensus.MUD_OBJECT + 56);
+        assertTrue(census.report(10).contains("/room/church"));
+    }
+
+    @Test
+    public void testSlices() {
+        Configuration config = new Configuration();
+        config.setCensusSlice(0L);
+        MudObjects objects = new MudObjects();
+        MemoryCensus census = new MemoryCensus(objects, new LiveConfiguration(config));
+        for (int i = 0; i < 1000; i++) {
+            objects.createObject("/obj/coin#" + i);
+        }
+
+        // With no time to spare, every step examines only a few objects.
+        census.start();
+        int steps = 0;
+        while (census.isRunning()) {
+            census.step();
+            steps++;
+        }
+        assertTrue(steps > 10, "Steps: " + steps);
+        assertEquals(census.getResult().get(0).getObjects(), 1000);
+    }
+
+    @Test
+    public void testChangesDuringCensus() {
+        Configuration config = new Configuration();
+        config.setCensusSlice(0L);
+        MudObjects objects = new MudObjects();
+        MemoryCensus census = new MemoryCensus(objects, new LiveConfiguration(config));
+        for (int i = 0; i < 1000; i++) {
+            objects.createObject("/obj/coin#" + i);
+        }
+
+        // Objects created during the census aren't counted, objects destroyed before they are reached are skipped.
+        census.start();
+        census.step();
+        int created = 0;
+        while (census.isRunning()) {
+            objects.createObject("/obj/gem#" + created++);
+            objects.find("/obj/coin#" + (999 - created)).destroy();
+            census.step();
+        }
+        assertTrue(created > 10, "Created: " + created);
+        List<MemoryCensus.Entry> result = census.getResult();
+        assertEquals(result.size(), 1);
+        assertEquals(result.get(0).getProgram(), "/obj/coin");
+        assertTrue(result.get(0).getObjects() < 1000, "Objects: " + result.get(0).getObjects());
+    }
+
+    @Test
+    public void testSharedValues() {
+        MemoryCensus census = new MemoryCensus(new MudObjects(), new LiveConfiguration(null));
+        census.start();
+
+        String name = "sword";
+        long array = census.estimateValue(new Object[] { name, name, 42 });
+        assertEquals(array, 32 + (MemoryCensus.STRING + 24) + MemoryCensus.BOXED_VALUE);
+
+        // Once counted, a value is shared.
+        assertEquals(census.estimateValue(name), 0L);
+        assertTrue(census.estimateValue(Arrays.asList("a", "b")) > 0L);
+
+        // A shared string is counted for the first variable holding it.
+        StringValue shared = new SharedStringTable().intern("short sword");
+        assertEquals(census.estimateValue(shared), MemoryCensus.STRING_VALUE + 32);
+        assertEquals(census.estimateValue(shared.copy()), 0L);
+    }
+}
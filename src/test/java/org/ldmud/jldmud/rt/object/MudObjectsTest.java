@@ -8,8 +8,20 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertNull;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.ldmud.jldmud.rt.jfr.ObjectCreatedEvent;
+import org.ldmud.jldmud.rt.jfr.ObjectDestroyedEvent;
 import org.testng.annotations.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 /**
  * Unit tests for {@link MudObjects}.
  */
@@ -43,4 +55,40 @@ public class MudObjectsTest {
         objects.removeDestroyedObjects();
         assertEquals(0, objects.getDestroyedObjects().size());
     }
+
+    @Test
+    public void testLifeCycleEvents() throws IOException {
+        MudObjects objects = new MudObjects();
+        Path file = Files.createTempFile("jldmud-", ".jfr");
+        try {
+            // Without a recording, no events are emitted.
+            objects.createObject("/room/void");
+
+            MudObject obj;
+            try (Recording recording = new Recording()) {
+                recording.enable(ObjectCreatedEvent.class);
+                recording.enable(ObjectDestroyedEvent.class);
+                recording.start();
+
+                obj = objects.createObject("/obj/sword#1");
+                obj.destroy();
+                objects.removeDestroyedObjects();
+
+                recording.stop();
+                recording.dump(file);
+            }
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().startsWith("org.ldmud.jldmud."))
+                    .collect(Collectors.toList());
+            assertEquals(events.size(), 2);
+            assertEquals(events.get(0).getEventType().getName(), "org.ldmud.jldmud.ObjectCreated");
+            assertEquals(events.get(0).getString("objectName"), "/obj/sword#1");
+            assertEquals(events.get(0).getLong("objectId"), obj.getId());
+            assertEquals(events.get(1).getEventType().getName(), "org.ldmud.jldmud.ObjectDestroyed");
+            assertEquals(events.get(1).getLong("objectId"), obj.getId());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
 }
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2017 jLDMud Developers.
+ * This file is free software under the MIT License - see the file LICENSE for details.
+ */
+package org.ldmud.jldmud.rt.value;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link SharedStringTable} and {@link StringValue}.
+ */
+public class SharedStringTableTest {
+
+    @Test
+    public void testIntern() {
+        SharedStringTable table = new SharedStringTable();
+        StringValue sword = table.intern("a rusty sword");
+        assertSame(table.intern(new String("a rusty sword")), sword);
+        assertNotSame(table.intern("a rusty shield"), sword);
+        assertEquals(table.size(), 2);
+
+        assertEquals(sword.get(), "a rusty sword");
+        assertEquals(sword.hashCode(), "a rusty sword".hashCode());
+        assertEquals(sword.length(), 13);
+        assertEquals(sword.charAt(2), 'r');
+        assertEquals(sword.getByteLength(), 13);
+        assertSame(sword.copy(), sword);
+
+        // Strings of the same hash code are told apart.
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotSame(table.intern("Aa"), table.intern("BB"));
+        assertEquals(table.intern("BB").get(), "BB");
+    }
+
+    @Test
+    public void testEncoding() {
+        SharedStringTable table = new SharedStringTable();
+
+        // Latin-1 takes one byte per character...
+        StringValue latin1 = table.intern("Schwert der Stärke");
+        assertEquals(latin1.getByteLength(), 18);
+        assertEquals(latin1.get(), "Schwert der Stärke");
+        assertEquals(latin1.charAt(14), 'ä');
+
+        // ...everything else is stored as UTF-8.
+        StringValue utf8 = table.intern("剣 €");
+        assertEquals(utf8.length(), 3);
+        assertEquals(utf8.getByteLength(), 7);
+        assertEquals(utf8.get(), "剣 €");
+        assertEquals(utf8.charAt(2), '€');
+        assertSame(table.intern(new String("剣 €")), utf8);
+    }
+
+    @Test
+    public void testGrowthAndCollection() throws InterruptedException {
+        SharedStringTable table = new SharedStringTable();
+        List<StringValue> held = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            StringValue value = table.intern("id" + i);
+            if (i % 10 == 0) {
+                held.add(value);
+            }
+        }
+        for (int i = 0; i < 10000; i += 10) {
+            assertSame(table.intern("id" + i), held.get(i / 10));
+        }
+
+        // The strings no longer used are dropped.
+        for (int i = 0; i < 50 && table.size() > held.size(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(table.size(), held.size());
+        assertSame(table.intern("id0"), held.get(0));
+    }
+}